@@ -0,0 +1,206 @@
+/*
+ * BenchmarkPackets.java
+ *
+ * Synthetic and recorded event sources for the jAER JMH benchmarks.
+ */
+package net.sf.jaer.benchmarks;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import eu.seebetter.ini.chips.DavisChip;
+import eu.seebetter.ini.chips.davis.DAVIS240C;
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.eventio.AEDataFile;
+import net.sf.jaer.eventio.AEFileInputStream;
+import net.sf.jaer.eventio.AEFileOutputStream;
+
+/**
+ * Sources of raw DAVIS packets for the benchmarks, either synthetic or read
+ * from a recording.
+ * <p>
+ * Synthetic packets contain DVS events of a vertical bar that sweeps across
+ * the sensor plus uniformly distributed noise events, so that both the
+ * correlated and uncorrelated paths of the filters are exercised. Timestamps
+ * increase monotonically from packet to packet, as filters with state expect.
+ * The random generator is seeded, so that runs are comparable.
+ * <p>
+ * Recorded packets are read with AEFileInputStream.readPacketByTime from a
+ * jAER 2.0 recording of a DAVIS240 camera, rewinding at the end of the file.
+ */
+final class BenchmarkPackets {
+
+    /**
+     * Value of the recording parameter of the benchmarks that selects
+     * synthetic packets
+     */
+    static final String SYNTHETIC = "synthetic";
+    /**
+     * Fraction of synthetic events that are noise; the rest belong to the bar
+     */
+    static final float NOISE_FRACTION = 0.2f;
+    /**
+     * Speed of the synthetic bar in pixels per second
+     */
+    static final float BAR_SPEED_PPS = 500;
+
+    private BenchmarkPackets() {
+    }
+
+    /**
+     * Constructs the chip used by all benchmarks. The benchmarks run headless,
+     * so the chip has no canvas.
+     *
+     * @return the chip
+     */
+    static AEChip constructChip() {
+        return new DAVIS240C();
+    }
+
+    /**
+     * Source of raw packets, returning the next packet on each call.
+     */
+    interface Source extends AutoCloseable {
+
+        /**
+         * @return the next packet; it stays valid until the next call
+         * @throws IOException if a recording cannot be read
+         */
+        AEPacketRaw next() throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    /**
+     * Opens a source of packets.
+     *
+     * @param chip the chip
+     * @param recording SYNTHETIC, or the path of a recording
+     * @param eventsPerPacket number of events per synthetic packet
+     * @param packetDurationUs the duration of each packet in us
+     * @return the source
+     * @throws IOException if the recording cannot be opened
+     */
+    static Source open(AEChip chip, String recording, int eventsPerPacket, int packetDurationUs) throws IOException {
+        if (SYNTHETIC.equals(recording)) {
+            return new SyntheticSource(chip, eventsPerPacket, packetDurationUs);
+        }
+        return new RecordedSource(chip, new File(recording), packetDurationUs);
+    }
+
+    /**
+     * Constructs a DVS address in the raw format of DavisBaseCamera.
+     *
+     * @param x the raw x address
+     * @param y the y address
+     * @param on true for an ON event
+     * @return the address
+     */
+    static int dvsAddress(int x, int y, boolean on) {
+        return DavisChip.ADDRESS_TYPE_DVS | (y << DavisChip.YSHIFT) | (x << DavisChip.XSHIFT) | (on ? DavisChip.POLMASK : 0);
+    }
+
+    /**
+     * Writes synthetic packets to a temporary jAER 2.0 recording, e.g. for
+     * benchmarking file input without a recording at hand. The file is
+     * deleted when the JVM exits.
+     *
+     * @param chip the chip
+     * @param numPackets the number of packets to write
+     * @param eventsPerPacket events per packet
+     * @param packetDurationUs duration of each packet in us
+     * @return the file
+     * @throws IOException if the file cannot be written
+     */
+    static File writeSyntheticRecording(AEChip chip, int numPackets, int eventsPerPacket, int packetDurationUs) throws IOException {
+        final File f = File.createTempFile("jaer-benchmark-", AEDataFile.DATA_FILE_EXTENSION);
+        f.deleteOnExit();
+        try (SyntheticSource source = new SyntheticSource(chip, eventsPerPacket, packetDurationUs);
+                AEFileOutputStream out = new AEFileOutputStream(new FileOutputStream(f), chip, AEDataFile.DATA_FILE_VERSION_NUMBER)) {
+            for (int i = 0; i < numPackets; i++) {
+                out.writePacket(source.next());
+            }
+        }
+        return f;
+    }
+
+    /**
+     * Synthetic moving bar plus noise.
+     */
+    static final class SyntheticSource implements Source {
+
+        private final int sizeX, sizeY, eventsPerPacket, packetDurationUs;
+        private final Random random = new Random(42);
+        private final AEPacketRaw packet;
+        private int timestamp = 0;
+
+        SyntheticSource(AEChip chip, int eventsPerPacket, int packetDurationUs) {
+            this.sizeX = chip.getSizeX();
+            this.sizeY = chip.getSizeY();
+            this.eventsPerPacket = eventsPerPacket;
+            this.packetDurationUs = packetDurationUs;
+            packet = new AEPacketRaw(eventsPerPacket);
+        }
+
+        @Override
+        public AEPacketRaw next() {
+            final int[] addresses = packet.getAddresses();
+            final int[] timestamps = packet.getTimestamps();
+            for (int i = 0; i < eventsPerPacket; i++) {
+                final int t = timestamp + (int) (((long) i * packetDurationUs) / eventsPerPacket);
+                final int x, y;
+                if (random.nextFloat() < NOISE_FRACTION) {
+                    x = random.nextInt(sizeX);
+                    y = random.nextInt(sizeY);
+                } else {
+                    x = (int) ((t * 1e-6f * BAR_SPEED_PPS) % sizeX);
+                    y = random.nextInt(sizeY);
+                }
+                addresses[i] = dvsAddress(x, y, random.nextBoolean());
+                timestamps[i] = t;
+            }
+            packet.setNumEvents(eventsPerPacket);
+            timestamp += packetDurationUs;
+            return packet;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Packets read from a recording, rewinding at its end.
+     */
+    static final class RecordedSource implements Source {
+
+        private final AEFileInputStream in;
+        private final int packetDurationUs;
+
+        RecordedSource(AEChip chip, File file, int packetDurationUs) throws IOException {
+            this.packetDurationUs = packetDurationUs;
+            in = new AEFileInputStream(file, chip);
+            in.setRepeat(true);
+        }
+
+        @Override
+        public AEPacketRaw next() throws IOException {
+            try {
+                return in.readPacketByTime(packetDurationUs);
+            } catch (EOFException e) {
+                in.rewind();
+                return in.readPacketByTime(packetDurationUs);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
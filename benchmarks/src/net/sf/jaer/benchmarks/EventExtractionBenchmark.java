@@ -0,0 +1,85 @@
+/*
+ * EventExtractionBenchmark.java
+ *
+ * Benchmark of DavisBaseCamera.DavisEventExtractor.extractPacket.
+ */
+package net.sf.jaer.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.chip.EventExtractor2D;
+import net.sf.jaer.event.EventPacket;
+
+/**
+ * Measures the time to extract a packet of raw DAVIS events into an
+ * ApsDvsEventPacket with the extractor of DAVIS240C. The raw packets are read
+ * once at setup and extracted in turn, so the file input is not part of the
+ * measurement.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class EventExtractionBenchmark {
+
+    /**
+     * Number of raw packets that are extracted in turn
+     */
+    static final int NUM_PACKETS = 64;
+
+    /**
+     * "synthetic" or the path of a DAVIS240 recording
+     */
+    @Param({BenchmarkPackets.SYNTHETIC})
+    public String recording;
+    /**
+     * Events per synthetic packet
+     */
+    @Param({"10000"})
+    public int eventsPerPacket;
+    /**
+     * Duration of each packet in us
+     */
+    @Param({"10000"})
+    public int packetDurationUs;
+
+    private EventExtractor2D extractor;
+    private AEPacketRaw[] packets;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        final AEChip chip = BenchmarkPackets.constructChip();
+        extractor = chip.getEventExtractor();
+        packets = new AEPacketRaw[NUM_PACKETS];
+        try (BenchmarkPackets.Source source = BenchmarkPackets.open(chip, recording, eventsPerPacket, packetDurationUs)) {
+            for (int i = 0; i < NUM_PACKETS; i++) {
+                packets[i] = source.next().getPrunedCopy();
+            }
+        }
+    }
+
+    @Benchmark
+    public EventPacket extractPacket() {
+        final AEPacketRaw raw = packets[next];
+        next = (next + 1) % NUM_PACKETS;
+        return extractor.extractPacket(raw);
+    }
+}
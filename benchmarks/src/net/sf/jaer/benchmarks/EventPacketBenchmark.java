@@ -0,0 +1,116 @@
+/*
+ * EventPacketBenchmark.java
+ *
+ * Benchmarks of EventPacket iteration and OutputEventIterator.
+ */
+package net.sf.jaer.benchmarks;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.event.BasicEvent;
+import net.sf.jaer.event.EventPacket;
+import net.sf.jaer.event.OutputEventIterator;
+import net.sf.jaer.event.PolarityEvent;
+
+/**
+ * Measures iteration over an EventPacket and copying events with its
+ * OutputEventIterator, the inner loops of nearly every filter. One extracted
+ * DAVIS packet is iterated as ApsDvsEventPacket (whose input iterator skips
+ * APS samples) and, copied, as a plain EventPacket of PolarityEvent.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class EventPacketBenchmark {
+
+    /**
+     * "synthetic" or the path of a DAVIS240 recording
+     */
+    @Param({BenchmarkPackets.SYNTHETIC})
+    public String recording;
+    /**
+     * Events per synthetic packet
+     */
+    @Param({"10000"})
+    public int eventsPerPacket;
+    /**
+     * Duration of the packet in us
+     */
+    @Param({"10000"})
+    public int packetDurationUs;
+
+    private EventPacket<? extends BasicEvent> apsDvsPacket;
+    private EventPacket<PolarityEvent> polarityPacket;
+    private EventPacket<PolarityEvent> outputPacket;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        final AEChip chip = BenchmarkPackets.constructChip();
+        try (BenchmarkPackets.Source source = BenchmarkPackets.open(chip, recording, eventsPerPacket, packetDurationUs)) {
+            apsDvsPacket = chip.getEventExtractor().extractPacket(source.next().getPrunedCopy());
+        }
+        polarityPacket = new EventPacket<>(PolarityEvent.class);
+        outputPacket = new EventPacket<>(PolarityEvent.class);
+        copy(apsDvsPacket, polarityPacket);
+    }
+
+    private static void copy(EventPacket<? extends BasicEvent> in, EventPacket<PolarityEvent> out) {
+        final OutputEventIterator<PolarityEvent> outItr = out.outputIterator();
+        for (BasicEvent e : in) {
+            outItr.nextOutput().copyFrom(e);
+        }
+    }
+
+    @Benchmark
+    public int iterateApsDvsPacket() {
+        int sum = 0;
+        for (BasicEvent e : apsDvsPacket) {
+            sum += e.x;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int iteratePolarityPacket() {
+        int sum = 0;
+        final Iterator<PolarityEvent> i = polarityPacket.inputIterator();
+        while (i.hasNext()) {
+            sum += i.next().x;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int indexPolarityPacket() {
+        int sum = 0;
+        final int n = polarityPacket.getSize();
+        for (int i = 0; i < n; i++) {
+            sum += polarityPacket.getEvent(i).x;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public EventPacket<PolarityEvent> outputEventIterator() {
+        copy(polarityPacket, outputPacket);
+        return outputPacket;
+    }
+}
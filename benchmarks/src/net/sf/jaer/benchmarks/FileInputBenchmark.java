@@ -0,0 +1,92 @@
+/*
+ * FileInputBenchmark.java
+ *
+ * Benchmark of AEFileInputStream.readPacketByTime.
+ */
+package net.sf.jaer.benchmarks;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.eventio.AEFileInputStream;
+
+/**
+ * Measures AEFileInputStream.readPacketByTime, either on a recording or on a
+ * synthetic recording written to a temporary file at setup. The stream
+ * rewinds at the end of the file, so long runs repeatedly read the same file
+ * from the page cache.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class FileInputBenchmark {
+
+    /**
+     * Number of packets of the synthetic recording
+     */
+    static final int NUM_SYNTHETIC_PACKETS = 1000;
+
+    /**
+     * "synthetic" or the path of a DAVIS240 recording
+     */
+    @Param({BenchmarkPackets.SYNTHETIC})
+    public String recording;
+    /**
+     * Events per synthetic packet
+     */
+    @Param({"10000"})
+    public int eventsPerPacket;
+    /**
+     * Time slice read by each call in us
+     */
+    @Param({"1000", "10000"})
+    public int packetDurationUs;
+
+    private AEFileInputStream in;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        final AEChip chip = BenchmarkPackets.constructChip();
+        final File f = BenchmarkPackets.SYNTHETIC.equals(recording)
+                ? BenchmarkPackets.writeSyntheticRecording(chip, NUM_SYNTHETIC_PACKETS, eventsPerPacket, 10000)
+                : new File(recording);
+        in = new AEFileInputStream(f, chip);
+        in.setRepeat(true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        in.close();
+    }
+
+    @Benchmark
+    public AEPacketRaw readPacketByTime() throws IOException {
+        try {
+            return in.readPacketByTime(packetDurationUs);
+        } catch (EOFException e) {
+            in.rewind();
+            return in.readPacketByTime(packetDurationUs);
+        }
+    }
+}
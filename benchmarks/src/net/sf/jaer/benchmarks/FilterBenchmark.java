@@ -0,0 +1,103 @@
+/*
+ * FilterBenchmark.java
+ *
+ * Benchmark of the major event filters.
+ */
+package net.sf.jaer.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.chip.EventExtractor2D;
+import net.sf.jaer.event.EventPacket;
+import net.sf.jaer.eventprocessing.EventFilter2D;
+
+/**
+ * Measures filterPacket of the major filters on a continuous stream of
+ * packets. Filters keep state between packets and mark events as filtered
+ * out, so each invocation gets a freshly extracted packet that continues the
+ * stream in time; the extraction is done in an invocation level setup and is
+ * not measured. Packets of the default size take milliseconds to filter, so
+ * the overhead of invocation level setup is negligible.
+ * <p>
+ * Filters are constructed by class name with the current preferences of the
+ * DAVIS240C chip, like in AEViewer, and then reset.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class FilterBenchmark {
+
+    /**
+     * Fully qualified class name of the filter
+     */
+    @Param({
+        "net.sf.jaer.eventprocessing.filter.BackgroundActivityFilter",
+        "net.sf.jaer.eventprocessing.filter.SpatioTemporalCorrelationFilter",
+        "net.sf.jaer.eventprocessing.tracking.RectangularClusterTracker",
+        "ch.unizh.ini.jaer.projects.minliu.PatchMatchFlow"
+    })
+    public String filterClass;
+    /**
+     * "synthetic" or the path of a DAVIS240 recording
+     */
+    @Param({BenchmarkPackets.SYNTHETIC})
+    public String recording;
+    /**
+     * Events per synthetic packet
+     */
+    @Param({"10000"})
+    public int eventsPerPacket;
+    /**
+     * Duration of each packet in us
+     */
+    @Param({"10000"})
+    public int packetDurationUs;
+
+    private BenchmarkPackets.Source source;
+    private EventExtractor2D extractor;
+    private EventFilter2D filter;
+    private EventPacket packet;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        final AEChip chip = BenchmarkPackets.constructChip();
+        extractor = chip.getEventExtractor();
+        source = BenchmarkPackets.open(chip, recording, eventsPerPacket, packetDurationUs);
+        filter = (EventFilter2D) Class.forName(filterClass).getConstructor(AEChip.class).newInstance(chip);
+        filter.setFilterEnabled(true);
+        filter.resetFilter();
+    }
+
+    @Setup(Level.Invocation)
+    public void nextPacket() throws Exception {
+        packet = extractor.extractPacket(source.next());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        source.close();
+    }
+
+    @Benchmark
+    public EventPacket filterPacket() {
+        return filter.filterPacket(packet);
+    }
+}
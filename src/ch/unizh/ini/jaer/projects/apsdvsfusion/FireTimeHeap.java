@@ -0,0 +1,166 @@
+/* FireTimeHeap.java
+ *
+ * Indexed binary min-heap of scheduled firing times.
+ */
+package ch.unizh.ini.jaer.projects.apsdvsfusion;
+
+import java.util.Arrays;
+
+/**
+ * Indexed binary min-heap of the scheduled firing times of SchedulableFiringModels.
+ * The firing times are kept in a primitive array next to the models, and every model
+ * stores its own position in the heap, so that a model can be rescheduled or removed in
+ * O(log n) without searching and without allocating an entry per event.
+ * <p>
+ * The heap is not synchronized: it is only used by the filtering thread, and structural
+ * changes from other threads (like clear) have to hold SpatioTemporalFusion's filtering lock.
+ *
+ */
+public class FireTimeHeap {
+	private static final int INITIAL_CAPACITY = 64;
+
+	private int[] times = new int[INITIAL_CAPACITY];
+	private SchedulableFiringModel[] models = new SchedulableFiringModel[INITIAL_CAPACITY];
+	private int size = 0;
+
+	public FireTimeHeap() {
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean contains(SchedulableFiringModel model) {
+		return model.heapPosition >= 0;
+	}
+
+	/**
+	 * @return the earliest scheduled firing time. Only valid if the heap is not empty.
+	 */
+	public int peekTime() {
+		return times[0];
+	}
+
+	/**
+	 * @return the model with the earliest scheduled firing time, or null if the heap is empty.
+	 */
+	public SchedulableFiringModel peek() {
+		return size > 0 ? models[0] : null;
+	}
+
+	/**
+	 * Removes the model with the earliest scheduled firing time from the heap.
+	 * @return the removed model, or null if the heap is empty.
+	 */
+	public SchedulableFiringModel poll() {
+		if (size == 0)
+			return null;
+		SchedulableFiringModel first = models[0];
+		removeAt(0);
+		return first;
+	}
+
+	/**
+	 * Schedules model to fire at time, replacing an earlier scheduled time of the same model.
+	 */
+	public void schedule(SchedulableFiringModel model, int time) {
+		int position = model.heapPosition;
+		if (position < 0) {
+			if (size == times.length) {
+				times = Arrays.copyOf(times, size * 2);
+				models = Arrays.copyOf(models, size * 2);
+			}
+			position = size++;
+			models[position] = model;
+			model.heapPosition = position;
+			times[position] = time;
+			moveUp(position);
+		}
+		else {
+			int oldTime = times[position];
+			times[position] = time;
+			if (time < oldTime)
+				moveUp(position);
+			else if (time > oldTime)
+				moveDown(position);
+		}
+	}
+
+	/**
+	 * Removes model from the heap if it is scheduled.
+	 */
+	public void remove(SchedulableFiringModel model) {
+		if (model.heapPosition >= 0)
+			removeAt(model.heapPosition);
+	}
+
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			models[i].heapPosition = -1;
+			models[i] = null;
+		}
+		size = 0;
+	}
+
+	private void removeAt(int position) {
+		models[position].heapPosition = -1;
+		size--;
+		if (position == size) {
+			models[size] = null;
+			return;
+		}
+		int time = times[size];
+		SchedulableFiringModel last = models[size];
+		models[size] = null;
+		int oldTime = times[position];
+		times[position] = time;
+		models[position] = last;
+		last.heapPosition = position;
+		if (time < oldTime)
+			moveUp(position);
+		else if (time > oldTime)
+			moveDown(position);
+	}
+
+	private void moveUp(int position) {
+		int time = times[position];
+		SchedulableFiringModel model = models[position];
+		while (position > 0) {
+			int parent = (position - 1) >>> 1;
+			if (times[parent] <= time)
+				break;
+			times[position] = times[parent];
+			models[position] = models[parent];
+			models[position].heapPosition = position;
+			position = parent;
+		}
+		times[position] = time;
+		models[position] = model;
+		model.heapPosition = position;
+	}
+
+	private void moveDown(int position) {
+		int time = times[position];
+		SchedulableFiringModel model = models[position];
+		int half = size >>> 1;
+		while (position < half) {
+			int child = (2 * position) + 1;
+			int right = child + 1;
+			if (right < size && times[right] < times[child])
+				child = right;
+			if (time <= times[child])
+				break;
+			times[position] = times[child];
+			models[position] = models[child];
+			models[position].heapPosition = position;
+			position = child;
+		}
+		times[position] = time;
+		models[position] = model;
+		model.heapPosition = position;
+	}
+}
@@ -8,30 +8,32 @@ package ch.unizh.ini.jaer.projects.apsdvsfusion;
  *
  */
 public abstract class SchedulableFiringModel extends FiringModel {
-	final DynamicHeap<PostponedFireEvent>.Entry heapEntry;
+	final FireTimeHeap heap;
+	/** position of this model in heap, -1 if no event is scheduled; maintained by FireTimeHeap */
+	int heapPosition = -1;
 	public final PostponedFireEvent scheduledEvent;
 	
 	public SchedulableFiringModel(int x, int y, SignalHandler handler, SchedulableFiringModelMap map) {
 		super(x,y,handler);
 		scheduledEvent = new PostponedFireEvent(x, y, Integer.MAX_VALUE, this);
-		heapEntry = map.createEntry(scheduledEvent);
+		heap = map.getHeap();
 	}
 	
 	public void unschedule() {
-		heapEntry.remove();
+		heap.remove(this);
 	}
 	
 	public void scheduleEvent(int time) {
 		scheduledEvent.setFireTime(time);
-		heapEntry.contentChanged();
+		heap.schedule(this, time);
 	}
 
 	protected abstract void executeScheduledEvent(int time);
 	protected abstract void processSpike(double value, int timeInUs); 
 	
 	protected void runScheduledEvents(int uptoTime) {
-		while (scheduledEvent.getFireTime() <= uptoTime && heapEntry.getPosition() >= 0) {
-			heapEntry.remove();
+		while (heapPosition >= 0 && scheduledEvent.getFireTime() <= uptoTime) {
+			heap.remove(this);
 			executeScheduledEvent(scheduledEvent.getFireTime());
 		}
 			
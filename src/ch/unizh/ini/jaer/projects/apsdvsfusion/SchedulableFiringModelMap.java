@@ -12,7 +12,7 @@ import java.util.prefs.Preferences;
 public abstract class SchedulableFiringModelMap extends FiringModelMap {
 
 	
-	DynamicHeap<PostponedFireEvent> heap = new DynamicHeap<PostponedFireEvent>();
+	final FireTimeHeap heap = new FireTimeHeap();
 	
 	/**
 	 * 
@@ -25,20 +25,19 @@ public abstract class SchedulableFiringModelMap extends FiringModelMap {
 	}
 	
 	public void clearHeap() {
+		// heap is still null if this is called from the super constructor
 		if (heap != null) {
-			synchronized (heap) {
+			synchronized (SpatioTemporalFusion.getFilteringLock(this)) {
 				heap.clear();
 			}
-			
 		}
 	}
 	
 	public void processScheduledEvents(int uptoTime) {
 		if (enabled) {
-			while (!heap.isEmpty() && heap.peek().getContent().getFireTime() <= uptoTime) {
-				PostponedFireEvent event = heap.poll().getContent();
-				// TODO: 
-				event.getFiringModel().executeScheduledEvent(event.getFireTime());
+			while (!heap.isEmpty() && heap.peekTime() <= uptoTime) {
+				int fireTime = heap.peekTime();
+				heap.poll().executeScheduledEvent(fireTime);
 			}
 		} 
 	}
@@ -49,8 +48,8 @@ public abstract class SchedulableFiringModelMap extends FiringModelMap {
 		clearHeap();
 	}
 
-	public DynamicHeap<PostponedFireEvent>.Entry createEntry(PostponedFireEvent event) {
-		return heap.createEntry(event);
+	public FireTimeHeap getHeap() {
+		return heap;
 	}
 	/* (non-Javadoc)
 	 * @see ch.unizh.ini.jaer.projects.apsdvsfusion.FiringModelMap#get(int, int)
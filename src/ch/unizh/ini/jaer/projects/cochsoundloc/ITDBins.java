@@ -8,6 +8,10 @@ import java.util.logging.Logger;
 
 /**
  * Saves the histogram of the interaural time differences and has functions for decay of old ITDs.
+ * <p>
+ * The decay is applied lazily: the bins are stored divided by a common scale that decays
+ * with time, so adding an ITD only changes one bin. The scale is multiplied into the bins
+ * when they are read, or when it becomes so small that the stored values could overflow.
  *
  * @author Holger
  */
@@ -20,6 +24,9 @@ public class ITDBins {
     private int timestamp = 0;
     private int NumLoopMean;
     private float[] bins;
+    /** the actual value of bin i is bins[i] * scale */
+    private float scale = 1;
+    private static final float MIN_SCALE = 1e-10f;
     private float ITDConfidence = 0;
     private boolean useCalibration;
 
@@ -65,13 +72,12 @@ public class ITDBins {
 //                log.warning("index was too low");
 //            }
 
-            bins[index] = bins[index] + weight;
+            bins[index] = bins[index] + weight / scale;
         } else {
-            double[] addThis = new double[getNumOfBins()];
-            addThis = getCalibration().convertITD(channel, ITD);
+            double[] addThis = getCalibration().convertITD(channel, ITD);
             double sum = 0;
             for (int k = 0; k < getNumOfBins(); k++) {
-                bins[k] += (float) addThis[k] * weight;
+                bins[k] += (float) addThis[k] * weight / scale;
                 sum += addThis[k];
                 if (!(addThis[k] >= 0 && addThis[k] < 1.1)) {
                     log.info("addToBins[k] is out of good range!! addToBins[k]=" + addThis[k]);
@@ -92,6 +98,7 @@ public class ITDBins {
     public void clear() {
         timestamp = 0;
         ITDConfidence = 0;
+        scale = 1;
         for (int i = 0; i < bins.length; i++) {
             bins[i] = 0;
         }
@@ -104,7 +111,20 @@ public class ITDBins {
         getCalibration().loadCalibrationFile(calibrationFilePath);
     }
 
+    /**
+     * Multiplies the pending decay into the bins.
+     */
+    private void applyDecay() {
+        if (scale != 1) {
+            for (int i = 0; i < bins.length; i++) {
+                bins[i] = bins[i] * scale;
+            }
+            scale = 1;
+        }
+    }
+
     public int getITDMean() {
+        applyDecay();
         float sum2 = 0;
         ITDConfidence = 0;
         //Compute the Center of Mass:
@@ -148,6 +168,7 @@ public class ITDBins {
     }
 
     public int getITDMedian() {
+        applyDecay();
         //Compute Confidence:
         ITDConfidence = 0;
         for (int i = 0; i < bins.length; i++) {
@@ -206,6 +227,7 @@ public class ITDBins {
      * @return the ITD in us; can be positive or negative up to masITD.
      */
     public int getITDMax() {
+        applyDecay();
         ITDConfidence = 0;
         int max = 0;
         //Compute the Max:
@@ -223,6 +245,7 @@ public class ITDBins {
     }
 
     public int getITDMaxIndex() {
+        applyDecay();
         ITDConfidence = 0;
         int max = 0;
         //Compute the Max:
@@ -240,7 +263,7 @@ public class ITDBins {
     }
 
     public float getBin(int index) {
-        return bins[index];
+        return bins[index] * scale;
     }
 
     public int getNumOfBins() {
@@ -279,6 +302,7 @@ public class ITDBins {
      * @return the bins
      */
     public float[] getBins() {
+        applyDecay();
         return bins;
     }
 
@@ -286,7 +310,7 @@ public class ITDBins {
     public String toString() {
         String strBins = "";
         for (int i = 0; i < bins.length; i++) {
-            strBins = strBins + Float.toString(bins[i]) + "\t";
+            strBins = strBins + Float.toString(bins[i] * scale) + "\t";
         }
         return strBins;
     }
@@ -306,6 +330,7 @@ public class ITDBins {
     }
 
     public void normToValue(int confidenceThreshold) {
+        applyDecay();
         ITDConfidence = 0;
         for (int i = 0; i < bins.length; i++) {
             ITDConfidence = ITDConfidence + bins[i];
@@ -325,8 +350,9 @@ public class ITDBins {
             if (AveragingDecay != 0 && timestamp>this.getTimestamp()) {
                 float decayconstant = (float) java.lang.Math.exp(-(timestamp - this.timestamp) / AveragingDecay);
                 //log.info("exp=" + decayconstant + " thistime=" + timestamp + " lasttime="+ this.timestamp);
-                for (int i = 0; i < bins.length; i++) {
-                    bins[i] = (float) (bins[i] * decayconstant);
+                scale *= decayconstant;
+                if (scale < MIN_SCALE) {
+                    applyDecay();
                 }
             }
         } else {
@@ -0,0 +1,207 @@
+/* ITDEngine.java
+ *
+ * Computes interaural time differences from the spike histories of both ears.
+ */
+package ch.unizh.ini.jaer.projects.cochsoundloc;
+
+import java.util.Arrays;
+
+/**
+ * Computes the interaural time differences (ITDs) of cochlea spikes for ITDFilter.
+ * <p>
+ * The last depth spike timestamps of each channel, neuron type and ear are kept in one
+ * flat ring buffer, newest first. A new spike is compared with the history of the other
+ * ear from the newest timestamp backwards until the first one that is maxITD or more
+ * away; because the history is ordered in time, all older ones are further away too.
+ * The ITDs and weights of the coincidences found for the last spike are stored in
+ * reused arrays, so that processing a spike does not allocate anything.
+ *
+ */
+public class ITDEngine {
+
+    private int numChannels = 0;
+    private int numTypes = 0;
+    private int depth = 0;
+    /** timestamps at [((channel * numTypes + type) * 2 + ear) * depth + k] */
+    private int[] ts = new int[0];
+    /** position of the newest timestamp in each ring buffer at [(channel * numTypes + type) * 2 + ear] */
+    private int[] cursor = new int[0];
+
+    private int maxITD = 800;
+    private int maxWeight = 5;
+    private int maxWeightTime = 500000;
+    private boolean useLaterSpikeForWeight = true;
+    private boolean usePriorSpikeForWeight = true;
+
+    private int numITDs = 0;
+    private int numCompared = 0;
+    private int[] itds = new int[0];
+    private float[] weights = new float[0];
+
+    /**
+     * Allocates and clears the spike histories.
+     *
+     * @param numChannels the number of cochlea channels
+     * @param numTypes the number of neuron types stored separately
+     * @param depth the number of timestamps stored per channel, neuron type and ear
+     */
+    public void reset(int numChannels, int numTypes, int depth) {
+        this.numChannels = numChannels;
+        this.numTypes = numTypes;
+        this.depth = depth;
+        int n = numChannels * numTypes * 2;
+        if (ts.length != n * depth) {
+            ts = new int[n * depth];
+        }
+        if (cursor.length != n) {
+            cursor = new int[n];
+        }
+        if (itds.length != depth) {
+            itds = new int[depth];
+            weights = new float[depth];
+        }
+        clear();
+    }
+
+    /**
+     * Clears the spike histories.
+     */
+    public void clear() {
+        Arrays.fill(ts, Integer.MIN_VALUE);
+        Arrays.fill(cursor, 0);
+        numITDs = 0;
+        numCompared = 0;
+    }
+
+    /**
+     * Sets the parameters of the ITD computation.
+     *
+     * @param maxITD the largest ITD in us
+     * @param maxWeight the weight of a spike after a pause of maxWeightTime
+     * @param maxWeightTime the pause in us after which a spike gets maxWeight
+     * @param useLaterSpikeForWeight weight by the pause before the new spike
+     * @param usePriorSpikeForWeight weight by the pause before the spike of the
+     * other ear
+     */
+    public void setParameters(int maxITD, int maxWeight, int maxWeightTime, boolean useLaterSpikeForWeight, boolean usePriorSpikeForWeight) {
+        this.maxITD = maxITD;
+        this.maxWeight = maxWeight;
+        this.maxWeightTime = maxWeightTime;
+        this.useLaterSpikeForWeight = useLaterSpikeForWeight;
+        this.usePriorSpikeForWeight = usePriorSpikeForWeight;
+    }
+
+    /**
+     * Computes the ITDs of a new spike with the spikes of the other ear and then
+     * adds the spike to the history of its ear. The results are available from
+     * getITD and getWeight until the next call.
+     *
+     * @param channel the cochlea channel, less than getNumChannels()
+     * @param type the neuron type
+     * @param ear 0 for the right and 1 for the left ear
+     * @param timestamp the timestamp of the spike in us
+     * @return the number of ITDs found
+     */
+    public int addSpike(int channel, int type, int ear, int timestamp) {
+        if (type >= numTypes) {
+            throw new ArrayIndexOutOfBoundsException("neuron type " + type + " >= " + numTypes);
+        }
+        final int thisRing = ((channel * numTypes) + type) * 2 + ear;
+        final int otherRing = thisRing ^ 1;
+        final int thisBase = thisRing * depth;
+        final int otherBase = otherRing * depth;
+        final int start = cursor[otherRing];
+        numITDs = 0;
+        numCompared = 0;
+        int c = start;
+        do {
+            final int otherTs = ts[otherBase + c];
+            int diff = timestamp - otherTs;
+            if (ear == 0) {
+                diff = -diff;
+            }
+            numCompared++;
+            if (Math.abs(diff) >= maxITD) {
+                break;
+            }
+            float weight = 1f;
+            if (useLaterSpikeForWeight) {
+                int weightTimeThisSide = timestamp - ts[thisBase + cursor[thisRing]];
+                if (weightTimeThisSide > maxWeightTime) {
+                    weightTimeThisSide = maxWeightTime;
+                }
+                weight *= ((weightTimeThisSide * (maxWeight - 1f)) / maxWeightTime) + 1f;
+                if (weightTimeThisSide < 0) {
+                    weight = 0;
+                }
+            }
+            int next = c + 1;
+            if (next == depth) {
+                next = 0;
+            }
+            if (usePriorSpikeForWeight) {
+                int weightTimeOtherSide = otherTs - ts[otherBase + next];
+                if (weightTimeOtherSide > maxWeightTime) {
+                    weightTimeOtherSide = maxWeightTime;
+                }
+                weight *= ((weightTimeOtherSide * (maxWeight - 1f)) / maxWeightTime) + 1f;
+                if (weightTimeOtherSide < 0) {
+                    weight = 0;
+                }
+            }
+            itds[numITDs] = diff;
+            weights[numITDs] = weight;
+            numITDs++;
+            c = next;
+        } while (c != start);
+        // store the new timestamp in front of the newest one
+        int newest = cursor[thisRing] == 0 ? depth - 1 : cursor[thisRing] - 1;
+        cursor[thisRing] = newest;
+        ts[thisBase + newest] = timestamp;
+        return numITDs;
+    }
+
+    /**
+     * @return the number of ITDs found for the last spike
+     */
+    public int getNumITDs() {
+        return numITDs;
+    }
+
+    /**
+     * @return the number of timestamps of the other ear the last spike was
+     * compared with, i.e. the ITDs found plus the first one out of range, if
+     * any
+     */
+    public int getNumCompared() {
+        return numCompared;
+    }
+
+    /**
+     * @param k the index of the ITD, less than getNumITDs()
+     * @return the ITD in us, positive if the left ear was later
+     */
+    public int getITD(int k) {
+        return itds[k];
+    }
+
+    /**
+     * @param k the index of the ITD, less than getNumITDs()
+     * @return the weight of the ITD
+     */
+    public float getWeight(int k) {
+        return weights[k];
+    }
+
+    public int getNumChannels() {
+        return numChannels;
+    }
+
+    public int getNumTypes() {
+        return numTypes;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+}
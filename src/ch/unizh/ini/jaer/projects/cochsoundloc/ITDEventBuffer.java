@@ -0,0 +1,127 @@
+/* ITDEventBuffer.java
+ *
+ * Bounded queue of ITD events stored in primitive arrays.
+ */
+package ch.unizh.ini.jaer.projects.cochsoundloc;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded queue of ITDEvents from ITDFilter to one other thread. The events are
+ * stored in primitive ring buffers, so that offering an event does not allocate
+ * anything; the consumer copies them into its own ITDEvent.
+ * <p>
+ * Only one thread may offer and only one thread may poll. A consumer blocked
+ * in take() is parked until the producer offers the next event.
+ *
+ */
+public class ITDEventBuffer {
+
+    private final int capacity;
+    private final int[] itds;
+    private final int[] timestamps;
+    private final int[] channels;
+    private final float[] weights;
+    /** number of events ever polled; written only by the consumer */
+    private volatile long head = 0;
+    /** number of events ever offered; written only by the producer */
+    private volatile long tail = 0;
+    /** the consumer parked in take(), or null */
+    private volatile Thread waiter = null;
+
+    /**
+     * @param capacity the maximum number of queued events
+     */
+    public ITDEventBuffer(int capacity) {
+        this.capacity = capacity;
+        itds = new int[capacity];
+        timestamps = new int[capacity];
+        channels = new int[capacity];
+        weights = new float[capacity];
+    }
+
+    /**
+     * Adds an event if there is space.
+     *
+     * @return false if the queue is full
+     */
+    public boolean offer(int ITD, int timestamp, int channel, float weight) {
+        final long t = tail;
+        if (t - head >= capacity) {
+            return false;
+        }
+        final int i = (int) (t % capacity);
+        itds[i] = ITD;
+        timestamps[i] = timestamp;
+        channels[i] = channel;
+        weights[i] = weight;
+        tail = t + 1;
+        final Thread w = waiter; // read after writing tail, so either take() sees the event or we see the waiter
+        if (w != null) {
+            LockSupport.unpark(w);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the oldest event and copies it into event.
+     *
+     * @param event the event to fill
+     * @return false if the queue is empty, in which case event is not changed
+     */
+    public boolean poll(ITDEvent event) {
+        final long h = head;
+        if (h == tail) {
+            return false;
+        }
+        final int i = (int) (h % capacity);
+        event.setITD(itds[i]);
+        event.setTimestamp(timestamps[i]);
+        event.setChannel(channels[i]);
+        event.setWeight(weights[i]);
+        head = h + 1;
+        return true;
+    }
+
+    /**
+     * Removes the oldest event.
+     *
+     * @return a new ITDEvent, or null if the queue is empty
+     */
+    public ITDEvent poll() {
+        ITDEvent event = new ITDEvent();
+        return poll(event) ? event : null;
+    }
+
+    /**
+     * Waits until there is an event and removes it.
+     *
+     * @return a new ITDEvent
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public ITDEvent take() throws InterruptedException {
+        ITDEvent event = new ITDEvent();
+        if (poll(event)) {
+            return event;
+        }
+        waiter = Thread.currentThread();
+        try {
+            while (!poll(event)) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                LockSupport.park(this);
+            }
+        } finally {
+            waiter = null;
+        }
+        return event;
+    }
+
+    /**
+     * @return the number of queued events
+     */
+    public int size() {
+        return (int) (tail - head);
+    }
+}
@@ -20,7 +20,6 @@ import java.util.Iterator;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.StringTokenizer;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -116,8 +115,7 @@ public class ITDFilter extends EventFilter2D implements Observer, FrameAnnotater
     //private LinkedList[][] lastTimestamps;
     //private ArrayList<LinkedList<Integer>> lastTimestamps0;
     //private ArrayList<LinkedList<Integer>> lastTimestamps1;
-    private int[][][][] lastTs;
-    private int[][][] lastTsCursor;
+    private final ITDEngine itdEngine = new ITDEngine();
     //private int[][] AbsoluteLastTimestamp;
     Iterator iterator;
     private float lastWeight = 1f;
@@ -138,7 +136,7 @@ public class ITDFilter extends EventFilter2D implements Observer, FrameAnnotater
     BufferedWriter freqBinFile;
     private boolean wasMoving = false;
     private int numNeuronTypes = 1;
-    private static ArrayBlockingQueue ITDEventQueue = null;
+    private static ITDEventBuffer ITDEventQueue = null;
     private boolean ITDEventQueueFull = false;
     public PanTilt panTilt = null;
     private ITDBins[] freqBins;
@@ -406,7 +404,7 @@ public class ITDFilter extends EventFilter2D implements Observer, FrameAnnotater
         addPropertyToGroup("ITDWeighting", "usePriorSpikeForWeight");
         addPropertyToGroup("ITDWeighting", "maxWeight");
         addPropertyToGroup("ITDWeighting", "maxWeightTime");
-        setPropertyTooltip("sendITDsToOtherThread", "send ITD messages to another thread via an ArrayBlockingQueue available from static method pollITDEvent");
+        setPropertyTooltip("sendITDsToOtherThread", "send ITD messages to another thread via a queue available from static method pollITDEvent");
         String udp = "UDP Messages";
         setPropertyTooltip(udp, "sendITD_UDP_Messages", "send ITD messages via UDP datagrams to a chosen host and port");
         setPropertyTooltip(udp, "sendITD_UDP_port", "hostname:port (e.g. localhost:9999) to send UDP ITD histograms to; messages are int32 seq # followed by int32 bin values");
@@ -467,6 +465,7 @@ public class ITDFilter extends EventFilter2D implements Observer, FrameAnnotater
 
         OutputEventIterator outItr = out.outputIterator();
         int nleft = 0, nright = 0;
+        itdEngine.setParameters(maxITD, maxWeight, maxWeightTime, useLaterSpikeForWeight, usePriorSpikeForWeight);
         for (Object e : in) {
             BinauralCochleaEvent i = (BinauralCochleaEvent) e;
             if (i.isSpecial() || i.isFilteredOut()) {
@@ -496,94 +495,55 @@ public class ITDFilter extends EventFilter2D implements Observer, FrameAnnotater
                     ear = (ear + 1) % 2;
                 }
 
-                if (i.x >= numOfCochleaChannels) {
+                if (i.x >= itdEngine.getNumChannels()) {
                     log.warning("there was a BasicEvent i with i.x=" + i.x + " >= " + numOfCochleaChannels + "=numOfCochleaChannels! Therefore set numOfCochleaChannels=" + (i.x + 1));
                     setNumOfCochleaChannels(i.x + 1);
                 } else {
-                    int cursor = lastTsCursor[i.x][ganglionCellThreshold][1 - ear];
-                    do {
-                        int diff = i.timestamp - lastTs[i.x][ganglionCellThreshold][1 - ear][cursor];
-                        if (ear == 0) {
-                            diff = -diff;
-                            nright++;
+                    int numITDs = itdEngine.addSpike(i.x, ganglionCellThreshold, ear, i.timestamp);
+                    if (ear == 0) {
+                        nright += itdEngine.getNumCompared();
+                    } else {
+                        nleft += itdEngine.getNumCompared();
+                    }
+                    for (int k = 0; k < numITDs; k++) {
+                        int diff = itdEngine.getITD(k);
+                        lastWeight = itdEngine.getWeight(k);
+                        if (weightFrequencies && (frequencyWeights != null)) {
+                            lastWeight *= frequencyWeights[i.x];
+                        }
+                        if (normToConfThresh == true) {
+                            myBins.addITD(diff, i.timestamp, i.x, lastWeight, confidenceThreshold);
                         } else {
-                            nleft++;
+                            myBins.addITD(diff, i.timestamp, i.x, lastWeight, 0);
                         }
-                        int absdiff = java.lang.Math.abs(diff);
-                        if (absdiff < maxITD) {
-
-                            lastWeight = 1f;
-                            //Compute weight:
-                            if (useLaterSpikeForWeight == true) {
-                                int weightTimeThisSide = i.timestamp - lastTs[i.x][ganglionCellThreshold][ear][lastTsCursor[i.x][ganglionCellThreshold][ear]];
-                                if (weightTimeThisSide > maxWeightTime) {
-                                    weightTimeThisSide = maxWeightTime;
-                                }
-                                lastWeight *= ((weightTimeThisSide * (maxWeight - 1f)) / maxWeightTime) + 1f;
-                                if (weightTimeThisSide < 0) {
-                                    //log.warning("weightTimeThisSide < 0");
-                                    lastWeight = 0;
-                                }
-                            }
-                            if (usePriorSpikeForWeight == true) {
-                                int weightTimeOtherSide = lastTs[i.x][ganglionCellThreshold][1 - ear][cursor] - lastTs[i.x][ganglionCellThreshold][1 - ear][(cursor + 1) % dimLastTs];
-                                if (weightTimeOtherSide > maxWeightTime) {
-                                    weightTimeOtherSide = maxWeightTime;
-                                }
-                                lastWeight *= ((weightTimeOtherSide * (maxWeight - 1f)) / maxWeightTime) + 1f;
-                                if (weightTimeOtherSide < 0) {
-                                    //log.warning("weightTimeOtherSide < 0");
-                                    lastWeight = 0;
-                                }
-                            }
-                            if (weightFrequencies && (frequencyWeights != null)) {
-                                lastWeight *= frequencyWeights[i.x];
+                        if (freqBins != null) {
+                            freqBins[i.x].addITD(diff, i.timestamp, i.x, lastWeight, 0);
+                        }
+                        if ((writeITD2File == true) && (ITDFile != null)) {
+                            ITDFile.write(i.timestamp + "\t" + diff + "\t" + i.x + "\t" + lastWeight + "\n");
+                        }
+                        if (sendITDsToOtherThread) {
+                            if (ITDEventQueue == null) {
+                                ITDEventQueue = new ITDEventBuffer(itdEventQueueSize);
                             }
-                            if (normToConfThresh == true) {
-                                myBins.addITD(diff, i.timestamp, i.x, lastWeight, confidenceThreshold);
+                            boolean success = ITDEventQueue.offer(diff, i.timestamp, i.x, lastWeight);
+                            if (success == false) {
+                                ITDEventQueueFull = true;
+                                log.warning("Could not add ITD-Event to the ITDEventQueue. Probably itdEventQueueSize is too small!!!");
                             } else {
-                                myBins.addITD(diff, i.timestamp, i.x, lastWeight, 0);
-                            }
-                            if (freqBins != null) {
-                                freqBins[i.x].addITD(diff, i.timestamp, i.x, lastWeight, 0);
-                            }
-                            if ((writeITD2File == true) && (ITDFile != null)) {
-                                ITDFile.write(i.timestamp + "\t" + diff + "\t" + i.x + "\t" + lastWeight + "\n");
-                            }
-                            if (sendITDsToOtherThread) {
-                                if (ITDEventQueue == null) {
-                                    ITDEventQueue = new ArrayBlockingQueue(itdEventQueueSize);
-                                }
-                                ITDEvent itdEvent = new ITDEvent(diff, i.timestamp, i.x, lastWeight);
-                                boolean success = ITDEventQueue.offer(itdEvent);
-                                if (success == false) {
-                                    ITDEventQueueFull = true;
-                                    log.warning("Could not add ITD-Event to the ITDEventQueue. Probably itdEventQueueSize is too small!!!");
-                                } else {
-                                    ITDEventQueueFull = false;
-                                }
+                                ITDEventQueueFull = false;
                             }
+                        }
 
-                            if (isBeamFormingEnabled()) {
-                                // if
-                                int bestITD = Float.isNaN(beamFormingITDUs) ? (int) beamFormingITDUs : getBestITD();
-                                if (Math.abs(diff - bestITD) < beamFormingRangeUs) {
-                                    BinauralCochleaEvent oe = (BinauralCochleaEvent) outItr.nextOutput();
-                                    oe.copyFrom(i);
-                                }
+                        if (isBeamFormingEnabled()) {
+                            // if
+                            int bestITD = Float.isNaN(beamFormingITDUs) ? (int) beamFormingITDUs : getBestITD();
+                            if (Math.abs(diff - bestITD) < beamFormingRangeUs) {
+                                BinauralCochleaEvent oe = (BinauralCochleaEvent) outItr.nextOutput();
+                                oe.copyFrom(i);
                             }
-                        } else {
-                            break;
                         }
-                        cursor = (++cursor) % dimLastTs;
-                    } while (cursor != lastTsCursor[i.x][ganglionCellThreshold][1 - ear]);
-                    //Now decrement the cursor (circularly)
-                    if (lastTsCursor[i.x][ganglionCellThreshold][ear] == 0) {
-                        lastTsCursor[i.x][ganglionCellThreshold][ear] = dimLastTs;
                     }
-                    lastTsCursor[i.x][ganglionCellThreshold][ear]--;
-                    //Add the new timestamp to the list
-                    lastTs[i.x][ganglionCellThreshold][ear][lastTsCursor[i.x][ganglionCellThreshold][ear]] = i.timestamp;
 
                     if (write2FileForEverySpike == true) {
                         if ((writeAvgITD2File == true) && (AvgITDFile != null)) {
@@ -783,29 +743,7 @@ public class ITDFilter extends EventFilter2D implements Observer, FrameAnnotater
     @Override
     public void initFilter() {
         //        log.info("init() called");
-        int dim = 1;
-        switch (amsProcessingMethod) {
-            case AllNeuronsTogether:
-                dim = 1;
-                break;
-            case NeuronsIndividually:
-                dim = numNeuronTypes;
-                break;
-            case StoreSeparetlyCompareEvery:
-                dim = numNeuronTypes;
-        }
-        lastTs = new int[numOfCochleaChannels][dim][2][dimLastTs];
-        lastTsCursor = new int[numOfCochleaChannels][dim][2];
-
-        for (int i = 0; i < numOfCochleaChannels; i++) {
-            for (int j = 0; j < dim; j++) {
-                for (int k = 0; k < 2; k++) {
-                    for (int l = 0; l < dimLastTs; l++) {
-                        lastTs[i][j][k][l] = Integer.MIN_VALUE;
-                    }
-                }
-            }
-        }
+        itdEngine.reset(numOfCochleaChannels, getNumStoredNeuronTypes(), dimLastTs);
 
         ConfidenceRecentMax = 0;
         ConfidenceRecentMaxTime = 0;
@@ -819,6 +757,19 @@ public class ITDFilter extends EventFilter2D implements Observer, FrameAnnotater
         }
     }
 
+    /**
+     * @return the number of neuron types whose spikes are stored separately
+     */
+    private int getNumStoredNeuronTypes() {
+        switch (amsProcessingMethod) {
+            case NeuronsIndividually:
+            case StoreSeparetlyCompareEvery:
+                return numNeuronTypes;
+            default:
+                return 1;
+        }
+    }
+
     @Override
     public synchronized void setFilterEnabled(boolean yes) {
         //        log.info("ITDFilter.setFilterEnabled() is called");
@@ -918,7 +869,7 @@ public class ITDFilter extends EventFilter2D implements Observer, FrameAnnotater
         getSupport().firePropertyChange("itdEventQueueSize", this.itdEventQueueSize, itdEventQueueSize);
         this.itdEventQueueSize = itdEventQueueSize;
         if (sendITDsToOtherThread) {
-            ITDEventQueue = new ArrayBlockingQueue(itdEventQueueSize);
+            ITDEventQueue = new ITDEventBuffer(itdEventQueueSize);
         }
     }
 
@@ -953,7 +904,6 @@ public class ITDFilter extends EventFilter2D implements Observer, FrameAnnotater
     public void setDimLastTs(int dimLastTs) {
         getPrefs().putInt("ITDFilter.dimLastTs", dimLastTs);
         getSupport().firePropertyChange("dimLastTs", this.dimLastTs, dimLastTs);
-        //lastTs = new int[numOfCochleaChannels][numNeuronTypes][2][dimLastTs];
         this.dimLastTs = dimLastTs;
         initFilter();
     }
@@ -984,8 +934,7 @@ public class ITDFilter extends EventFilter2D implements Observer, FrameAnnotater
         getPrefs().putInt("ITDFilter.numOfCochleaChannels", numOfCochleaChannels);
         getSupport().firePropertyChange("numOfCochleaChannels", this.numOfCochleaChannels, numOfCochleaChannels);
         this.numOfCochleaChannels = numOfCochleaChannels;
-        lastTs = new int[numOfCochleaChannels][numNeuronTypes][2][dimLastTs];
-        lastTsCursor = new int[numOfCochleaChannels][numNeuronTypes][2];
+        itdEngine.reset(numOfCochleaChannels, getNumStoredNeuronTypes(), dimLastTs);
     }
 
     public float getAveragingDecay() {
@@ -1272,7 +1221,7 @@ public class ITDFilter extends EventFilter2D implements Observer, FrameAnnotater
         getSupport().firePropertyChange("sendITDsToOtherThread", this.sendITDsToOtherThread, sendITDsToOtherThread);
         this.sendITDsToOtherThread = sendITDsToOtherThread;
         if (sendITDsToOtherThread == true) {
-            ITDEventQueue = new ArrayBlockingQueue(itdEventQueueSize);
+            ITDEventQueue = new ITDEventBuffer(itdEventQueueSize);
         } else {
             ITDEventQueue = null;
         }
@@ -1563,17 +1512,27 @@ public class ITDFilter extends EventFilter2D implements Observer, FrameAnnotater
     }
 
     public static ITDEvent takeITDEvent() throws InterruptedException {
-        return (ITDEvent) ITDEventQueue.take();
+        return ITDEventQueue.take();
     }
 
     public static ITDEvent pollITDEvent() {
         if (ITDEventQueue != null) {
-            return (ITDEvent) ITDEventQueue.poll();
+            return ITDEventQueue.poll();
         } else {
             return null;
         }
     }
 
+    /**
+     * Polls the next ITD event without allocating a new one.
+     *
+     * @param event the event to fill with the next ITD event
+     * @return false if there is no event
+     */
+    public static boolean pollITDEvent(ITDEvent event) {
+        return (ITDEventQueue != null) && ITDEventQueue.poll(event);
+    }
+
     private void createBins() {
         int numLoop;
         if (computeMeanInLoop == true) {
@@ -27,6 +27,7 @@ public class SpatialSensoryFusion extends EventFilter2D implements FrameAnnotate
     BufferedWriter SensoryEventsFile;
     private boolean writeEventsToFile = getPrefs().getBoolean("ITDFilter.writeEventsToFile", false);
     private boolean receiveITDEvents = getPrefs().getBoolean("ITDFilter.receiveITDEvents", false);
+    private final ITDEvent itdEvent = new ITDEvent();
 
     public SpatialSensoryFusion(AEChip chip) {
         super(chip);
@@ -74,10 +75,8 @@ public class SpatialSensoryFusion extends EventFilter2D implements FrameAnnotate
         }
 
         //Process Auditory Input:
-        ITDEvent itdEvent;
         if (receiveITDEvents == true) {
-            itdEvent = ITDFilter.pollITDEvent();
-            while (itdEvent != null) {
+            while (ITDFilter.pollITDEvent(itdEvent)) {
 
                 //process the ITDEvent here ... 
                 //i.e. write events to file:
@@ -89,8 +88,6 @@ public class SpatialSensoryFusion extends EventFilter2D implements FrameAnnotate
                         ex.printStackTrace();
                     }
                 }
-
-                itdEvent = ITDFilter.pollITDEvent();
             }
         }
 
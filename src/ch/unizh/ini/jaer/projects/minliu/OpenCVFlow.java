@@ -157,7 +157,7 @@ public class OpenCVFlow extends AbstractMotionFlow
     }
 
     @Override
-    public EventPacket filterPacket(EventPacket in) {
+    synchronized public EventPacket filterPacket(EventPacket in) {
         if (!isFilterEnabled()) {
             return in;
         }
@@ -43,6 +43,8 @@ import java.util.List;
 import java.util.StringTokenizer;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Logger;
 import javax.imageio.ImageIO;
 import javax.swing.JFileChooser;
@@ -166,6 +168,14 @@ public class PatchMatchFlow extends AbstractMotionFlow implements FrameAnnotater
 
     private TimeLimiter timeLimiter = new TimeLimiter(); // private instance used to accumulate events to slices even if packet has timed out
 
+    // parallel block matching of the keypoints collected between slice rotations
+    private boolean parallelSearchEnabled = getBoolean("parallelSearchEnabled", false);
+    private static final int KEYPOINT_BATCH_SIZE = 256; // keypoints are searched at the latest when this many are collected, so that processingTimeLimitMs still limits the packet
+    private static final int PARALLEL_SEARCH_MIN_KEYPOINTS = 32; // smaller batches are searched on the filter thread
+    private static final int PARALLEL_SEARCH_LEAF_KEYPOINTS = 8; // keypoints searched by each fork join task
+    private final KeypointBatch keypointBatch = new KeypointBatch(KEYPOINT_BATCH_SIZE);
+    private final ThreadLocal<SearchScratch> searchScratch = ThreadLocal.withInitial(SearchScratch::new); // search buffers of each thread
+
     // results histogram for each packet
 //    private int ANGLE_HISTOGRAM_COUNT = 16;
 //    private int[] resultAngleHistogram = new int[ANGLE_HISTOGRAM_COUNT + 1];
@@ -175,7 +185,7 @@ public class PatchMatchFlow extends AbstractMotionFlow implements FrameAnnotater
     private volatile float avgMatchDistance = 0; // stores average match distance for rendering it
     private float histStdDev = 0, lastHistStdDev = 0;
     private float FSCnt = 0, DSCorrectCnt = 0;
-    float DSAverageNum = 0, DSAveError[] = {0, 0};           // Evaluate DS cost average number and the error.
+    float DSAverageNum = 0, DSAveError[] = {0, 0};           // Evaluate DS cost average number and the error. Only updated with outputSearchErrorInfo, which disables the parallel search, so only the filter thread writes them.
 //    private float lastErrSign = Math.signum(1);
 //    private final String outputFilename;
     private int sliceDeltaT;    //  The time difference between two slices used for velocity caluction. For constantDuration, this one is equal to the duration. For constantEventNumber, this value will change.
@@ -403,6 +413,10 @@ public class PatchMatchFlow extends AbstractMotionFlow implements FrameAnnotater
         setPropertyTooltip(patchTT, "outlierRejectionEnabled", "Enable outlier flow vector rejection");
         setPropertyTooltip(patchTT, "outlierRejectionThresholdSigma", "Flow vectors that are larger than this many sigma from global flow variation are discarded");
         setPropertyTooltip(patchTT, "outlierRejectionWindowSize", "Window in events for measurement of average flow for outlier rejection");
+        setPropertyTooltip(patchTT, "parallelSearchEnabled", "<html>Collects the keypoints of each slice and searches their block matches in parallel on all CPU cores.<p>"
+                + "Flow events are output in the same order but only when the slices rotate, when " + KEYPOINT_BATCH_SIZE + " keypoints are collected or at the end of the packet.<br>"
+                + "Coarse scale matches always guide the finer scales, independent of speedControlEnabled.<p>"
+                + "Not used when showBlockMatches, outputSearchErrorInfo, EDFLOW recording or SAD value logging is on.");
 
         String adaptTT = "0b: Slice and processing adaptation";
         setPropertyTooltip(adaptTT, "sliceEventCount", "number of events collected to fill a slice, when ConstantEventNumber method is used");
@@ -497,11 +511,13 @@ public class PatchMatchFlow extends AbstractMotionFlow implements FrameAnnotater
         cornerEvents.clear();
         nSkipped = 0;
         nProcessed = 0;
+        final boolean parallelSearch = isParallelSearchUsed();
 
         while (i.hasNext()) {
             Object o = i.next();
             if (o == null) {
                 log.warning("null event passed in, returning input packet");
+                keypointBatch.clear();
                 return in;
             }
             if ((o instanceof ApsDvsEvent) && ((ApsDvsEvent) o).isApsData()) {
@@ -570,9 +586,12 @@ public class PatchMatchFlow extends AbstractMotionFlow implements FrameAnnotater
                     cornerEvents.add(e);
                 }
             } else {
-                float[] sadVals = new float[numScales]; // TODO debug
-                int[] dxInitVals = new int[numScales];
-                int[] dyInitVals = new int[numScales];
+                final SearchScratch scratch = searchScratch.get();
+                scratch.checkScales();
+                float[] sadVals = scratch.sadVals; // TODO debug
+                int[] dxInitVals = scratch.dxInitVals;
+                int[] dyInitVals = scratch.dyInitVals;
+                Arrays.fill(sadVals, 0);
 
                 int rotateFlg = 0;
                 switch (patchCompareMethod) {
@@ -597,8 +616,15 @@ public class PatchMatchFlow extends AbstractMotionFlow implements FrameAnnotater
                             }
                             break;
                         }
+                        if (parallelSearch) { // the match is searched with the other keypoints of this slice
+                            keypointBatch.add(ein);
+                            if (keypointBatch.isFull()) {
+                                flushKeypointBatch();
+                            }
+                            break;
+                        }
 
-                        SADResult sliceResult = new SADResult();
+                        SADResult sliceResult = null;
                         minDistScale = 0;
                         boolean OFRetValidFlag = true;
 
@@ -618,7 +644,7 @@ public class PatchMatchFlow extends AbstractMotionFlow implements FrameAnnotater
 
                             // The reason why we inverse dx_init, dy_init i is the offset is pointing from previous slice to current slice.
                             // The dx_init, dy_init are from the corse scale's result, and it is used as the finer scale's initial guess.
-                            sliceResult = minSADDistance(ein.x, ein.y, -dx_init, -dy_init, slices[sliceIndex(1)], slices[sliceIndex(2)], scale); // from ref slice to past slice k+1, using scale 0,1,....
+                            sliceResult = minSADDistance(ein.x, ein.y, -dx_init, -dy_init, slices[sliceIndex(1)], slices[sliceIndex(2)], scale, scratch, scratch.scaleResults[scale]); // from ref slice to past slice k+1, using scale 0,1,....
                             //                        sliceSummedSADValues[sliceIndex(scale + 2)] += sliceResult.sadValue; // accumulate SAD for this past slice
                             //                        sliceSummedSADCounts[sliceIndex(scale + 2)]++; // accumulate SAD count for this past slice
                             // sliceSummedSADValues should end up filling 2 values for 4 slices 
@@ -698,27 +724,10 @@ public class PatchMatchFlow extends AbstractMotionFlow implements FrameAnnotater
                 }
             }
 
-            if (isOutlierFlowVector(result)) {
-                countOutliers++;
-                continue;
-            }
-
-//            if (result.dx != 0 || result.dy != 0) {
-//                final int bin = (int) Math.round(ANGLE_HISTOGRAM_COUNT * (Math.atan2(result.dy, result.dx) + Math.PI) / (2 * Math.PI));
-//                int v = ++resultAngleHistogram[bin];
-//                resultAngleHistogramCount++;
-//                if (v > resultAngleHistogramMax) {
-//                    resultAngleHistogramMax = v;
-//                }
-//            }
-            processGoodEvent();
-            if (resultHistogram != null) {
-                resultHistogram[result.dx + computeMaxSearchDistance()][result.dy + computeMaxSearchDistance()]++;
-                resultHistogramCount++;
-            }
-            lastGoodSadResult.set(result);
+            outputFlowEvent(result);
 
         }
+        flushKeypointBatch();
 
         motionFlowStatistics.updatePacket(countIn, countOut, ts);
         outlierRejectionMotionFlowStatistics.updatePacket(countIn, countOut, ts);
@@ -742,6 +751,164 @@ public class PatchMatchFlow extends AbstractMotionFlow implements FrameAnnotater
         return isDisplayRawInput() ? in : dirPacket;
     }
 
+    /**
+     * Outputs the flow event of the current event fields e, x, y, ts and the
+     * velocity vx, vy, v unless it is an outlier
+     *
+     * @param result the block matching result of the event
+     */
+    private void outputFlowEvent(SADResult result) {
+        if (isOutlierFlowVector(result)) {
+            countOutliers++;
+            return;
+        }
+
+//            if (result.dx != 0 || result.dy != 0) {
+//                final int bin = (int) Math.round(ANGLE_HISTOGRAM_COUNT * (Math.atan2(result.dy, result.dx) + Math.PI) / (2 * Math.PI));
+//                int v = ++resultAngleHistogram[bin];
+//                resultAngleHistogramCount++;
+//                if (v > resultAngleHistogramMax) {
+//                    resultAngleHistogramMax = v;
+//                }
+//            }
+        processGoodEvent();
+        if (resultHistogram != null) {
+            resultHistogram[result.dx + computeMaxSearchDistance()][result.dy + computeMaxSearchDistance()]++;
+            resultHistogramCount++;
+        }
+        lastGoodSadResult.set(result);
+    }
+
+    /**
+     * @return true if keypoints are collected for parallel search; the debug
+     * outputs that need the result of each event right away turn it off
+     */
+    private boolean isParallelSearchUsed() {
+        return parallelSearchEnabled && patchCompareMethod == PatchCompareMethod.SAD && !HWABMOFEnabled
+                && !showBlockMatches && !outputSearchErrorInfo && dvsWriter == null && !sadValueLogger.isEnabled();
+    }
+
+    /**
+     * Searches the block matches of the keypoints collected in keypointBatch,
+     * in parallel on the common ForkJoinPool if there are enough of them, and
+     * then outputs their flow events in the order of the keypoints. Must be
+     * called before the slices are rotated. The current event fields are
+     * restored afterwards.
+     */
+    private void flushKeypointBatch() {
+        final KeypointBatch batch = keypointBatch;
+        if (batch.size == 0) {
+            return;
+        }
+        final PolarityEvent currentEvent = e;
+        final int currentX = x, currentY = y, currentTs = ts, currentType = type;
+        final float currentVxGT = imuFlowEstimator.getVx(), currentVyGT = imuFlowEstimator.getVy(), currentVGT = imuFlowEstimator.getV();
+
+        Arrays.sort(scalesToComputeArray, Collections.reverseOrder());
+        batch.prepareSearch();
+        final KeypointSearchTask task = new KeypointSearchTask(0, batch.size);
+        if (batch.size >= PARALLEL_SEARCH_MIN_KEYPOINTS) {
+            ForkJoinPool.commonPool().invoke(task);
+        } else {
+            task.compute();
+        }
+
+        final float dt = (sliceDeltaTimeUs(2) * 1e-6f);
+        for (int k = 0; k < batch.size; k++) {
+            final SADResult result = batch.results[k];
+            if (result.sadValue == Float.MAX_VALUE) {
+                continue;
+            }
+            e = batch.events[k];
+            x = e.x >> getSubSampleShift();
+            y = e.y >> getSubSampleShift();
+            ts = batch.timestamps[k];
+            type = e.getPolarity() == PolarityEvent.Polarity.Off ? 0 : 1;
+            imuFlowEstimator.setFlow(batch.vxGT[k], batch.vyGT[k], batch.vGT[k]);
+            result.vx = result.dx / dt; // hack, convert to pix/second
+            result.vy = result.dy / dt;
+            if (isNotSufficientlyAccurate(result)) {
+                continue;
+            }
+            scaleResultCounts[batch.minDistScales[k]]++;
+            vx = result.vx;
+            vy = result.vy;
+            v = (float) Math.sqrt((vx * vx) + (vy * vy));
+            outputFlowEvent(result);
+        }
+        batch.clear();
+
+        e = currentEvent;
+        x = currentX;
+        y = currentY;
+        ts = currentTs;
+        type = currentType;
+        imuFlowEstimator.setFlow(currentVxGT, currentVyGT, currentVGT);
+    }
+
+    /**
+     * Searches the block match of keypoint k of keypointBatch over the scales,
+     * from coarse to fine. Each scale starts from the match of the coarser
+     * scale. Only reads the slices, so it can run concurrently for different
+     * keypoints.
+     *
+     * @param k the keypoint index
+     * @param scratch the search buffers of the calling thread
+     */
+    private void searchKeypoint(int k, SearchScratch scratch) {
+        final KeypointBatch batch = keypointBatch;
+        final PolarityEvent ein = batch.events[k];
+        SADResult sliceResult = null, result = null;
+        int minDistScale = 0;
+        for (int scale : batch.scales) {
+            final int dx_init = (result != null) ? (sliceResult.dx >> scale) : 0;
+            final int dy_init = (result != null) ? (sliceResult.dy >> scale) : 0;
+            sliceResult = minSADDistance(ein.x, ein.y, -dx_init, -dy_init, batch.refSlice, batch.pastSlice, scale, scratch, scratch.scaleResults[scale]);
+            if (sliceResult.sadValue >= batch.maxAllowedSadDistance) {
+                break;
+            }
+            if ((result == null) || (sliceResult.sadValue < result.sadValue)) {
+                result = sliceResult;
+                minDistScale = scale;
+            }
+        }
+        if (sliceResult == null) {
+            batch.results[k].clear();
+            batch.results[k].sadValue = Float.MAX_VALUE;
+        } else {
+            batch.results[k].set(sliceResult);
+        }
+        batch.minDistScales[k] = minDistScale;
+    }
+
+    /**
+     * Searches the keypoints from..to-1 of keypointBatch, splitting the range
+     * until it is small enough
+     */
+    private final class KeypointSearchTask extends RecursiveAction {
+
+        private final int from, to;
+
+        KeypointSearchTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_SEARCH_LEAF_KEYPOINTS) {
+                final SearchScratch scratch = searchScratch.get();
+                scratch.checkScales();
+                for (int k = from; k < to; k++) {
+                    searchKeypoint(k, scratch);
+                }
+            } else {
+                final int mid = (from + to) >>> 1;
+                invokeAll(new KeypointSearchTask(from, mid), new KeypointSearchTask(mid, to));
+            }
+        }
+    }
+
     @Override
     public void doSetDefaults() {
         super.doSetDefaults(); //To change body of generated methods, choose Tools | Templates.
@@ -1224,6 +1391,9 @@ public class PatchMatchFlow extends AbstractMotionFlow implements FrameAnnotater
         super.resetFilter();
         eventCounter = 0;
 //        lastTs = Integer.MIN_VALUE;
+        if (keypointBatch != null) { // null when called from super constructor
+            keypointBatch.clear();
+        }
 
         checkArrays();
         if (slices == null) {
@@ -1360,6 +1530,7 @@ public class PatchMatchFlow extends AbstractMotionFlow implements FrameAnnotater
      *
      */
     private void rotateSlices() {
+        flushKeypointBatch(); // the keypoints collected so far are matched between the slices they were collected for
         if (e != null) {
             sliceEndTimeUs[currentSliceIdx] = e.timestamp;
         }
@@ -1571,8 +1742,6 @@ public class PatchMatchFlow extends AbstractMotionFlow implements FrameAnnotater
 //            Arrays.fill(a, 0);
 //        }
 //    }
-    private float sumArray[][] = null;
-
     /**
      * Computes block matching image difference best match around point x,y
      * using blockDimension and searchDistance and scale
@@ -1585,27 +1754,22 @@ public class PatchMatchFlow extends AbstractMotionFlow implements FrameAnnotater
      * @param curSlice the slice from which we get the reference block
      * @param subSampleBy the scale to compute this SAD on, 0 for full
      * resolution, 1 for 2x2 subsampled block bitmap, etc
-     * @return SADResult that provides the shift and SAD value
+     * @param scratch the search buffers of the calling thread
+     * @param result the result to fill in
+     * @return result, which provides the shift and SAD value
      */
 //    private SADResult minHammingDistance(int x, int y, BitSet prevSlice, BitSet curSlice) {
-    private SADResult minSADDistance(int x, int y, int dx_init, int dy_init, byte[][][] curSlice, byte[][][] prevSlice, int subSampleBy) {
-        SADResult result = new SADResult();
+    private SADResult minSADDistance(int x, int y, int dx_init, int dy_init, byte[][][] curSlice, byte[][][] prevSlice, int subSampleBy, SearchScratch scratch, SADResult result) {
+        result.clear();
         float minSum = Float.MAX_VALUE, sum;
 
         float FSDx = 0, FSDy = 0, DSDx = 0, DSDy = 0;  // This is for testing the DS search accuracy.
         final int searchRange = (2 * searchDistance) + 1; // The maximum search distance in this subSampleBy slice
-        if ((sumArray == null) || (sumArray.length != searchRange)) {
-            sumArray = new float[searchRange][searchRange];
-        } else {
-            for (float[] row : sumArray) {
-                Arrays.fill(row, Float.MAX_VALUE);
-            }
-        }
+        scratch.checkSearchRange(searchRange);
+        final float[][] sumArray = scratch.sumArray;
 
         if (outputSearchErrorInfo) {
             searchMethod = SearchMethod.FullSearch;
-        } else {
-            searchMethod = getSearchMethod();
         }
 
         final int xsub = (x >> subSampleBy) + dx_init;
@@ -1646,7 +1810,7 @@ public class PatchMatchFlow extends AbstractMotionFlow implements FrameAnnotater
                 /* If one block has been already calculated, the computedFlg will be set so we don't to do
                        the calculation again.
                  */
-                boolean computedFlg[][] = new boolean[searchRange][searchRange];
+                final boolean computedFlg[][] = scratch.computedFlg;
                 for (boolean[] row : computedFlg) {
                     Arrays.fill(row, false);
                 }
@@ -1748,27 +1912,6 @@ public class PatchMatchFlow extends AbstractMotionFlow implements FrameAnnotater
                 }
                 break;
             case FullSearch:
-                if ((e.timestamp) == 81160149) {
-                    System.out.printf("Scale %d with Refblock is: \n", subSampleBy);
-                    int xscale = (x >> subSampleBy);
-                    int yscale = (y >> subSampleBy);
-                    for (int xx = xscale - r; xx <= (xscale + r); xx++) {
-                        for (int yy = yscale - r; yy <= (yscale + r); yy++) {
-                            System.out.printf("%d\t", curSlice[subSampleBy][xx][yy]);
-                        }
-                        System.out.printf("\n");
-                    }
-                    System.out.printf("\n");
-
-                    System.out.printf("Tagblock is: \n");
-                    for (int xx = xscale + dx_init - r - searchDistance; xx <= (xscale + dx_init + r + searchDistance); xx++) {
-                        for (int yy = yscale + dy_init - r - searchDistance; yy <= (yscale + dy_init + r + searchDistance); yy++) {
-                            System.out.printf("%d\t", prevSlice[subSampleBy][xx][yy]);
-                        }
-                        System.out.printf("\n");
-                    }
-                }
-
                 for (dx = -searchDistance; dx <= searchDistance; dx++) {
                     for (dy = -searchDistance; dy <= searchDistance; dy++) {
                         sum = sadDistance(x, y, dx_init + dx, dy_init + dy, curSlice, prevSlice, subSampleBy);
@@ -2239,6 +2382,20 @@ public class PatchMatchFlow extends AbstractMotionFlow implements FrameAnnotater
             this.scale = s.scale;
         }
 
+        /**
+         * Sets all values to zero, like a newly allocated result
+         */
+        public void clear() {
+            dx = 0;
+            dy = 0;
+            vx = 0;
+            vy = 0;
+            sadValue = 0;
+            xidx = 0;
+            yidx = 0;
+            scale = 0;
+        }
+
         @Override
         public String toString() {
             return String.format("(dx,dy=%5d,%5d), (vx,vy=%.1f,%.1f px/s), SAD=%f, scale=%d", dx, dy, vx, vy, sadValue, scale);
@@ -2246,6 +2403,105 @@ public class PatchMatchFlow extends AbstractMotionFlow implements FrameAnnotater
 
     }
 
+    /**
+     * Buffers of one thread for minSADDistance, reused for every search
+     */
+    private final class SearchScratch {
+
+        float[][] sumArray = null;
+        boolean[][] computedFlg = null;
+        SADResult[] scaleResults = null; // the result of each scale
+        float[] sadVals = null; // the SAD value of each scale, for debugging
+        int[] dxInitVals = null, dyInitVals = null; // the initial offsets of each scale, for debugging
+
+        void checkSearchRange(int searchRange) {
+            if ((sumArray == null) || (sumArray.length != searchRange)) {
+                sumArray = new float[searchRange][searchRange];
+                computedFlg = new boolean[searchRange][searchRange];
+            }
+            for (float[] row : sumArray) {
+                Arrays.fill(row, Float.MAX_VALUE);
+            }
+        }
+
+        void checkScales() {
+            if ((scaleResults == null) || (scaleResults.length != numScales)) {
+                scaleResults = new SADResult[numScales];
+                for (int s = 0; s < numScales; s++) {
+                    scaleResults[s] = new SADResult();
+                }
+                sadVals = new float[numScales];
+                dxInitVals = new int[numScales];
+                dyInitVals = new int[numScales];
+            }
+        }
+    }
+
+    /**
+     * The keypoints collected for parallel search since the last slice
+     * rotation, with the state of the filter that is needed to search them
+     * and output their flow events later
+     */
+    private final class KeypointBatch {
+
+        final PolarityEvent[] events;
+        final int[] timestamps;
+        final float[] vxGT, vyGT, vGT; // ground truth flow of each keypoint
+        final SADResult[] results;
+        final int[] minDistScales;
+        int size = 0;
+        // constant during the search
+        int[] scales = null;
+        byte[][][] refSlice, pastSlice;
+        float maxAllowedSadDistance;
+
+        KeypointBatch(int capacity) {
+            events = new PolarityEvent[capacity];
+            timestamps = new int[capacity];
+            vxGT = new float[capacity];
+            vyGT = new float[capacity];
+            vGT = new float[capacity];
+            results = new SADResult[capacity];
+            for (int k = 0; k < capacity; k++) {
+                results[k] = new SADResult();
+            }
+            minDistScales = new int[capacity];
+        }
+
+        /**
+         * Adds the keypoint ein, which is the current event
+         */
+        void add(PolarityEvent ein) {
+            events[size] = ein;
+            timestamps[size] = ts;
+            vxGT[size] = imuFlowEstimator.getVx();
+            vyGT[size] = imuFlowEstimator.getVy();
+            vGT[size] = imuFlowEstimator.getV();
+            size++;
+        }
+
+        boolean isFull() {
+            return size == events.length;
+        }
+
+        void prepareSearch() {
+            if ((scales == null) || (scales.length != scalesToComputeArray.length)) {
+                scales = new int[scalesToComputeArray.length];
+            }
+            for (int i = 0; i < scales.length; i++) {
+                scales[i] = scalesToComputeArray[i];
+            }
+            refSlice = slices[sliceIndex(1)];
+            pastSlice = slices[sliceIndex(2)];
+            maxAllowedSadDistance = PatchMatchFlow.this.maxAllowedSadDistance;
+        }
+
+        void clear() {
+            Arrays.fill(events, 0, size, null);
+            size = 0;
+        }
+    }
+
     private class Statistics {
 
         double[] data;
@@ -3908,6 +4164,24 @@ public class PatchMatchFlow extends AbstractMotionFlow implements FrameAnnotater
         putFloat("outlierRejectionThresholdSigma", outlierRejectionThresholdSigma);
     }
 
+    /**
+     * @return the parallelSearchEnabled
+     */
+    public boolean isParallelSearchEnabled() {
+        return parallelSearchEnabled;
+    }
+
+    /**
+     * @param parallelSearchEnabled true to search the block matches of the
+     * keypoints of each slice in parallel
+     */
+    synchronized public void setParallelSearchEnabled(boolean parallelSearchEnabled) {
+        boolean old = this.parallelSearchEnabled;
+        this.parallelSearchEnabled = parallelSearchEnabled;
+        putBoolean("parallelSearchEnabled", parallelSearchEnabled);
+        getSupport().firePropertyChange("parallelSearchEnabled", old, this.parallelSearchEnabled);
+    }
+
     private boolean isOutlierFlowVector(PatchMatchFlow.SADResult result) {
         if (!outlierRejectionEnabled) {
             return false;
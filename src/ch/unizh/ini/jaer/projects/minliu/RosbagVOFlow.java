@@ -105,7 +105,7 @@ public class RosbagVOFlow extends AbstractMotionFlowIMU {
     }
     
     @Override
-    public EventPacket filterPacket(EventPacket in) {
+    synchronized public EventPacket filterPacket(EventPacket in) {
         setupFilter(in);
         if (!subcribersAddedFlg) {
             VOGTReader.doAddSubscribers();
@@ -175,7 +175,7 @@ public class RosbagVOFlow extends AbstractMotionFlowIMU {
             Object o = i.next();
             if (o == null) {
                 log.warning("null event passed in, returning input packet");
-                return in;
+                break;
             }
             if ((o instanceof ApsDvsEvent) && ((ApsDvsEvent) o).isApsData()) {
                 continue;
@@ -248,6 +248,7 @@ public class RosbagVOFlow extends AbstractMotionFlowIMU {
                 
             }            
         }
+        getMotionFlowStatistics().updatePacket(countIn, countOut, ts);
 
         return in;
     }
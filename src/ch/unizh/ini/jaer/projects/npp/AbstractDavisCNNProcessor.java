@@ -92,6 +92,9 @@ public abstract class AbstractDavisCNNProcessor extends EventFilter2D implements
     public ImageDisplay inputImageDisplay;
     protected boolean softMaxOutput = getBoolean("softMaxOutput", true); // more reasonable output by setting true
     protected boolean zeroPadding = getBoolean("zeroPadding", false); // false for original nullhop and roshambo nets
+    protected DavisCNNPureJava.ConvolutionMethod convolutionMethod = DavisCNNPureJava.ConvolutionMethod.valueOf(getString("convolutionMethod", DavisCNNPureJava.ConvolutionMethod.Im2col.toString()));
+    protected boolean incrementalInference = getBoolean("incrementalInference", false);
+    protected float incrementalMaxChangedFraction = getFloat("incrementalMaxChangedFraction", 0.25f);
     protected boolean normalizeDVSForZsNullhop = getBoolean("normalizeDVSForZsNullhop", false); // uses DvsFramer normalizeFrame method to normalize DVS histogram images and in addition it shifts the pixel values to be centered around zero with range -1 to +1
     protected int lastProcessedEventTimestamp = 0;
     protected String performanceString = null; // holds string representation of processing time
@@ -149,6 +152,9 @@ public abstract class AbstractDavisCNNProcessor extends EventFilter2D implements
         setPropertyTooltip(anal, "processAPSDVSFrames", "sends 2-channel APS and DVS frame input to CNN to process each time either APS or DVS frame is updated");
         setPropertyTooltip(anal, "processAPSDVSTogetherInAPSNet", "sends APS frames and DVS time slices to single convnet");
         setPropertyTooltip(anal, "zeroPadding", "CNN uses zero padding; must be set properly according to CNN to run CNN");
+        setPropertyTooltip(anal, "convolutionMethod", "<html>(XML networks only) How the convolutional layers are computed:<br>Scalar: reference nested loops<br>Im2col: unrolled input patches multiplied with the kernels in blocks, in parallel over output maps; much faster<br>Im2colInt8: as Im2col with kernels and inputs quantized to 8 bits; usually not faster on the JVM, use it to check the accuracy of a network with 8 bit weights");
+        setPropertyTooltip(anal, "incrementalInference", "<html>(XML networks only) Compares each input frame with the previous one and recomputes only the convolution and pooling outputs whose receptive fields overlap the changed region;<br>much faster for mostly static scenes. Needs an Im2col convolutionMethod and single channel input.");
+        setPropertyTooltip(anal, "incrementalMaxChangedFraction", "<html>With incrementalInference, the whole network is recomputed if the bounding box of the changed input covers more than this fraction of the input");
         setPropertyTooltip(anal, "processingTimeLimitMs", "<html>time limit for processing packet in ms to process OF events (events still accumulate). <br> Set to 0 to disable. <p>Alternative to the system EventPacket timelimiter, which cannot be used here because we still need to accumulate and render the events");
         setPropertyTooltip(anal, "maxFrameAccumulationTimeToProcessMs", "maximum time in ms for accumulated DvsFrame to process it; set this to a value of e.g. 300ms to avoid processing DVS frames from very slow movements. Set to 0 to disable.");
         setPropertyTooltip(tf, "makeRGBFrames", "(TensorFlow only) Tells the CNN to make RGB input from grayscale DVS/APS frames; use it with a network configured for RGB input");
@@ -548,6 +554,11 @@ public abstract class AbstractDavisCNNProcessor extends EventFilter2D implements
                 }
                 apsDvsNet.setSoftMaxOutput(softMaxOutput); // must set manually since net doesn't know option kept here.
                 apsDvsNet.setZeroPadding(zeroPadding); // must set manually since net doesn't know option kept here.
+                if (apsDvsNet instanceof DavisCNNPureJava) {
+                    ((DavisCNNPureJava) apsDvsNet).setConvolutionMethod(convolutionMethod);
+                    ((DavisCNNPureJava) apsDvsNet).setIncrementalInference(incrementalInference);
+                    ((DavisCNNPureJava) apsDvsNet).setIncrementalMaxChangedFraction(incrementalMaxChangedFraction);
+                }
                 dvsFramer.setFromNetwork(apsDvsNet);
             } else {
                 log.warning("file " + f + " does not exist");
@@ -997,6 +1008,71 @@ public abstract class AbstractDavisCNNProcessor extends EventFilter2D implements
         apsDvsNet.setZeroPadding(zeroPadding);
     }
 
+    /**
+     * @return the method used by DavisCNNPureJava to compute the
+     * convolutional layers
+     */
+    public DavisCNNPureJava.ConvolutionMethod getConvolutionMethod() {
+        return convolutionMethod;
+    }
+
+    /**
+     * @param convolutionMethod the method used by DavisCNNPureJava to compute
+     * the convolutional layers
+     */
+    public void setConvolutionMethod(DavisCNNPureJava.ConvolutionMethod convolutionMethod) {
+        this.convolutionMethod = convolutionMethod;
+        putString("convolutionMethod", convolutionMethod.toString());
+        if (apsDvsNet instanceof DavisCNNPureJava) {
+            ((DavisCNNPureJava) apsDvsNet).setConvolutionMethod(convolutionMethod);
+        }
+    }
+
+    /**
+     * @return true if DavisCNNPureJava recomputes only the activations that
+     * depend on the changed part of the input
+     */
+    public boolean isIncrementalInference() {
+        return incrementalInference;
+    }
+
+    /**
+     * @param incrementalInference true to recompute only the activations that
+     * depend on the changed part of the input
+     */
+    public void setIncrementalInference(boolean incrementalInference) {
+        this.incrementalInference = incrementalInference;
+        putBoolean("incrementalInference", incrementalInference);
+        if (apsDvsNet instanceof DavisCNNPureJava) {
+            ((DavisCNNPureJava) apsDvsNet).setIncrementalInference(incrementalInference);
+        }
+    }
+
+    /**
+     * @return the fraction of the input above which the whole network is
+     * recomputed
+     */
+    public float getIncrementalMaxChangedFraction() {
+        return incrementalMaxChangedFraction;
+    }
+
+    /**
+     * @param incrementalMaxChangedFraction the fraction of the input above
+     * which the whole network is recomputed
+     */
+    public void setIncrementalMaxChangedFraction(float incrementalMaxChangedFraction) {
+        if (incrementalMaxChangedFraction < 0) {
+            incrementalMaxChangedFraction = 0;
+        } else if (incrementalMaxChangedFraction > 1) {
+            incrementalMaxChangedFraction = 1;
+        }
+        this.incrementalMaxChangedFraction = incrementalMaxChangedFraction;
+        putFloat("incrementalMaxChangedFraction", incrementalMaxChangedFraction);
+        if (apsDvsNet instanceof DavisCNNPureJava) {
+            ((DavisCNNPureJava) apsDvsNet).setIncrementalMaxChangedFraction(incrementalMaxChangedFraction);
+        }
+    }
+
     @Override
     public synchronized void setFilterEnabled(boolean yes) {
         super.setFilterEnabled(yes);
@@ -27,6 +27,8 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import javax.swing.BoxLayout;
 import javax.swing.JFrame;
@@ -98,6 +100,15 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
     public OutputOrInnerProductFullyConnectedLayer outputLayer; // the final layer, not part of layers
     protected boolean normalizeKernelDisplayWeightsGlobally = true;
     protected boolean normalizeActivationDisplayGlobally = true;
+    protected ConvolutionMethod convolutionMethod = ConvolutionMethod.Im2col;
+    private static final int GEMM_BLOCK_POSITIONS = 512; // output positions accumulated per pass over the weights, so that they stay in L1 cache
+    private static final int GEMM_BLOCK_MAPS = 4; // output maps computed together, sharing each load of the im2col input
+    private static final int PARALLEL_CONV_MIN_MACS = 1 << 18; // smaller layers are computed in the calling thread
+    protected boolean incrementalInference = false;
+    protected float incrementalMaxChangedFraction = 0.25f;
+    private boolean incrementalStateValid = false; // true if the activations of all layers were computed from the previous input
+    private int unchangedFrameCount = 0, incrementalFrameCount = 0, fullFrameCount = 0;
+    private float lastChangedFraction = 1;
 
     public DavisCNNPureJava(AbstractDavisCNNProcessor processor) {
         super(processor);
@@ -161,13 +172,39 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
     private float[] processLayers() {
         operationCounter = 0;
         startProcessingTimeNs = System.nanoTime();
-        for (int i = 1; i < nLayers; i++) { // skip input layer, whose activations are computed by reading in frame and downsampling it
-            layers[i].compute(layers[i - 1]);
+        int[] region = incrementalInference ? inputLayer.changedRegion() : null; // null means recompute everything
+        if (region != null) {
+            lastChangedFraction = isEmptyRegion(region) ? 0
+                    : (float) ((region[1] - region[0] + 1) * (region[3] - region[2] + 1)) / (inputLayer.width * inputLayer.height);
+            if (!incrementalStateValid || !networkRanOnce || (lastChangedFraction > incrementalMaxChangedFraction)) {
+                region = null;
+            }
+        }
+        if (region == null) {
+            fullFrameCount++;
+            lastChangedFraction = 1;
+            for (int i = 1; i < nLayers; i++) { // skip input layer, whose activations are computed by reading in frame and downsampling it
+                layers[i].compute(layers[i - 1]);
+            }
+        } else if (isEmptyRegion(region)) {
+            unchangedFrameCount++; // the output is the same as for the previous frame
+        } else {
+            incrementalFrameCount++;
+            for (int i = 1; i < nLayers; i++) {
+                if (region != null) {
+                    region = layers[i].computeRegion(layers[i - 1], region);
+                } else {
+                    layers[i].compute(layers[i - 1]);
+                }
+            }
         }
-        outputLayer.compute(layers[nLayers - 1]);
-        if (isSoftMaxOutput()) {
-            outputLayer.computeSoftMax();
+        if ((region == null) || !isEmptyRegion(region)) {
+            outputLayer.compute(layers[nLayers - 1]);
+            if (isSoftMaxOutput()) {
+                outputLayer.computeSoftMax();
+            }
         }
+        incrementalStateValid = incrementalInference;
 
         if (isPrintActivations()) {
             printActivations();
@@ -180,7 +217,49 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
         getSupport().firePropertyChange(EVENT_MADE_DECISION, null, this);
         return outputLayer.activations;
     }
-    
+
+    /**
+     * @param region {x0,x1,y0,y1}
+     * @return true if the region contains no positions
+     */
+    static boolean isEmptyRegion(int[] region) {
+        return (region[0] > region[1]) || (region[2] > region[3]);
+    }
+
+    /**
+     * Makes the next frame compute all the layers, e.g. after the weights or
+     * the way they are applied changed
+     */
+    public void invalidateIncrementalState() {
+        incrementalStateValid = false;
+    }
+
+    @Override
+    public String getPerformanceString() {
+        if (!incrementalInference) {
+            return super.getPerformanceString();
+        }
+        return String.format("%s; %.1f%% of input changed (%d unchanged, %d incremental, %d full frames)",
+                super.getPerformanceString(), 100 * lastChangedFraction, unchangedFrameCount, incrementalFrameCount, fullFrameCount);
+    }
+
+    @Override
+    public void setZeroPadding(boolean zeroPadding) {
+        super.setZeroPadding(zeroPadding);
+        invalidateIncrementalState();
+    }
+
+    @Override
+    public void setSoftMaxOutput(boolean softMaxOutput) {
+        super.setSoftMaxOutput(softMaxOutput);
+        invalidateIncrementalState();
+    }
+
+    @Override
+    public void setNettype(String nettype) {
+        super.setNettype(nettype);
+        invalidateIncrementalState();
+    }
   
     public void drawActivations() {
         checkActivationsFrame();
@@ -323,6 +402,22 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
          * @param input the input layer to processAPSFrame from
          */
         abstract public void compute(Layer input);
+
+        /**
+         * Recomputes the activations after only a region of the input
+         * changed. Layers that cannot limit the computation to a region
+         * compute all their activations.
+         *
+         * @param input the input layer
+         * @param inputRegion the changed input positions {x0,x1,y0,y1}
+         * (inclusive) in all input maps
+         * @return the changed output positions, or null if all may have
+         * changed
+         */
+        int[] computeRegion(Layer input, int[] inputRegion) {
+            compute(input);
+            return null;
+        }
     }
 
     /**
@@ -344,6 +439,7 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
         private boolean inputClampedToIncreasingIntegers = false; // debug
         public int nUnits;
         private ImageDisplay imageDisplay = null;
+        private float[] previousActivations = null; // the input of the previous frame, for incremental inference
 
         /**
          * Computes the output from input frame.
@@ -467,6 +563,41 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
             return activations;
         }
 
+        /**
+         * Compares the activations with those of the previous frame and
+         * remembers them for the next frame. Only single channel input is
+         * compared; nets with more input channels (nUnits larger than
+         * width*height) are always recomputed in full.
+         *
+         * @return the bounding box {x0,x1,y0,y1} of the changed activations,
+         * which is empty if none changed, or null if there is no previous
+         * frame to compare with or the input has more than one channel
+         */
+        int[] changedRegion() {
+            if ((activations == null) || (activations.length != width * height)) { // multichannel input, recompute everything
+                previousActivations = null;
+                return null;
+            }
+            if ((previousActivations == null) || (previousActivations.length != activations.length)) {
+                previousActivations = activations.clone();
+                return null;
+            }
+            int x0 = width, x1 = -1, y0 = height, y1 = -1;
+            for (int x = 0; x < width; x++) {
+                final int column = o(x, 0);
+                for (int y = 0; y < height; y++) {
+                    if (activations[column + y] != previousActivations[column + y]) {
+                        x0 = Math.min(x0, x);
+                        x1 = x;
+                        y0 = Math.min(y0, y);
+                        y1 = Math.max(y1, y);
+                    }
+                }
+            }
+            System.arraycopy(activations, 0, previousActivations, 0, activations.length);
+            return new int[]{x0, x1, y0, y1};
+        }
+
         private int o(int x, int y) {
             if (((height * x) + y) < 0) {
                 System.out.print("a");
@@ -674,6 +805,29 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
         Sigmoid, ReLu, None, Undefined;
     };
 
+    /**
+     * How the convolutional layers are computed
+     */
+    public enum ConvolutionMethod {
+
+        /**
+         * Nested loops over input maps, output maps and kernel positions; the
+         * reference implementation
+         */
+        Scalar,
+        /**
+         * The input patches are unrolled to the columns of a matrix (im2col)
+         * that is multiplied by the kernel matrix in blocks, in parallel over
+         * the output maps
+         */
+        Im2col,
+        /**
+         * As Im2col, with kernels quantized to 8 bits per output map and
+         * inputs quantized to 8 bits per layer and integer accumulation
+         */
+        Im2colInt8
+    };
+
     /**
      * The allowed activation functions for the CNN convolutional and final
      * layers
@@ -730,6 +884,14 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
         private ImageDisplay[] activationDisplays = null;
         private ImageDisplay[][] kernelDisplays = null;
         private int warningCountMax = 10;
+        // buffers of the im2col convolution, reused from frame to frame
+        private int paddedInputDim, outputPositionsDim, nOutputPositions, columnRows;
+        private int regionX0, regionY0, regionDimX, regionDimY; // the output positions computed by the current im2col pass
+        private float[] paddedInput, columns, packedKernels, gemmOutput;
+        private byte[] quantizedPaddedInput, quantizedColumns, quantizedKernels;
+        private int[] gemmOutputInt;
+        private float[] kernelScales;
+        private float inputScale;
 
         private ActivationFunction activationFunction = ActivationFunction.Undefined; // default is the sigmoid, the only choice in DeepLearnToolbox
 
@@ -852,15 +1014,334 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
                 Arrays.fill(activations, 0);  // clear the output, since results from inputMaps will be accumulated
             }
 
-            for (int inputMap = 0; inputMap < nInputMaps; inputMap++) { // for each inputMap
-                for (int outputMap = 0; outputMap < nOutputMaps; outputMap++) { // for each kernel/outputMap
-                    conv(inputLayer, outputMap, inputMap);
+            if (convolutionMethod == ConvolutionMethod.Scalar) {
+                for (int inputMap = 0; inputMap < nInputMaps; inputMap++) { // for each inputMap
+                    for (int outputMap = 0; outputMap < nOutputMaps; outputMap++) { // for each kernel/outputMap
+                        conv(inputLayer, outputMap, inputMap);
+                    }
                 }
+            } else {
+                convIm2col(inputLayer, convolutionMethod == ConvolutionMethod.Im2colInt8);
             }
 
             applyBiasAndNonlinearity();
         }
 
+        /**
+         * Computes the same convolution as conv() for all input and output
+         * maps at once, as the product of the kernel matrix (one row of
+         * nInputMaps*kernelDim*kernelDim weights per output map) and the
+         * matrix of unrolled input patches (one column per output position).
+         * The kernels are packed in the order of the patch rows, flipped where
+         * conv() flips them, so the inner loops run over contiguous memory.
+         */
+        private void convIm2col(Layer inputLayer, boolean int8) {
+            final int pad = zeroPadding ? halfKernelDim : 0;
+            paddedInputDim = inputMapDim + 2 * pad;
+            // the output positions computed by conv(), which are fewer than outputMapDim for even kernelDim without zero padding
+            outputPositionsDim = zeroPadding ? inputMapDim : inputMapDim - 2 * halfKernelDim;
+            columnRows = nInputMaps * singleKernelLength;
+            if (outputPositionsDim <= 0) {
+                return;
+            }
+            final int paddedMapLength = paddedInputDim * paddedInputDim;
+            if ((paddedInput == null) || (paddedInput.length != nInputMaps * paddedMapLength)) {
+                paddedInput = new float[nInputMaps * paddedMapLength]; // the zero border is never written
+            }
+            padInput(inputLayer, 0, inputMapDim - 1, 0, inputMapDim - 1);
+            convIm2colRegion(0, outputPositionsDim - 1, 0, outputPositionsDim - 1, int8);
+        }
+
+        /**
+         * Recomputes only the outputs whose receptive fields overlap the
+         * changed region of the input, leaving the other activations as they
+         * were computed for the previous frame. Only the im2col methods can
+         * compute a region; with the Scalar method, or if the layer has not
+         * yet been computed with the current input size, the whole layer is
+         * computed.
+         *
+         * @param inputLayer the input to this layer
+         * @param inputRegion the changed input positions {x0,x1,y0,y1}
+         * @return the changed output positions, or null if all may have
+         * changed
+         */
+        @Override
+        int[] computeRegion(Layer inputLayer, int[] inputRegion) {
+            if ((convolutionMethod == ConvolutionMethod.Scalar) || (activations == null) || (paddedInput == null)
+                    || (inputLayer.activations == null) || (inputLayer.activations.length != nInputMaps * inputMapLength)) {
+                compute(inputLayer);
+                return null;
+            }
+            if (isEmptyRegion(inputRegion)) {
+                return inputRegion;
+            }
+            // output xo reads the padded input xo..xo+kernelDim-1, i.e. the input xo-pad..xo-pad+kernelDim-1
+            final int pad = zeroPadding ? halfKernelDim : 0;
+            final int[] outputRegion = {
+                Math.max(0, (inputRegion[0] + pad) - kernelDim + 1), Math.min(outputPositionsDim - 1, inputRegion[1] + pad),
+                Math.max(0, (inputRegion[2] + pad) - kernelDim + 1), Math.min(outputPositionsDim - 1, inputRegion[3] + pad)};
+            padInput(inputLayer, inputRegion[0], inputRegion[1], inputRegion[2], inputRegion[3]);
+            if (!isEmptyRegion(outputRegion)) {
+                convIm2colRegion(outputRegion[0], outputRegion[1], outputRegion[2], outputRegion[3], convolutionMethod == ConvolutionMethod.Im2colInt8);
+                applyBiasAndNonlinearity(outputRegion[0], outputRegion[1], outputRegion[2], outputRegion[3]);
+            }
+            return outputRegion;
+        }
+
+        /**
+         * Copies the input positions x0..x1, y0..y1 of all input maps into the
+         * padded input
+         */
+        private void padInput(Layer inputLayer, int x0, int x1, int y0, int y1) {
+            final int pad = zeroPadding ? halfKernelDim : 0;
+            final int paddedMapLength = paddedInputDim * paddedInputDim;
+            for (int inputMap = 0; inputMap < nInputMaps; inputMap++) {
+                for (int x = x0; x <= x1; x++) {
+                    final int row = (inputMap * paddedMapLength) + ((x + pad) * paddedInputDim) + pad;
+                    for (int y = y0; y <= y1; y++) {
+                        paddedInput[row + y] = inputLayer.a(inputMap, x, y);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Computes the output positions x0..x1, y0..y1 of all output maps from
+         * the padded input into the activations, without bias
+         */
+        private void convIm2colRegion(int x0, int x1, int y0, int y1, boolean int8) {
+            regionX0 = x0;
+            regionY0 = y0;
+            regionDimX = x1 - x0 + 1;
+            regionDimY = y1 - y0 + 1;
+            nOutputPositions = regionDimX * regionDimY;
+            // buffers only grow, so that computing a region does not reallocate them
+            if ((packedKernels == null) || (packedKernels.length != nOutputMaps * columnRows)) {
+                packedKernels = new float[nOutputMaps * columnRows];
+            }
+            if ((gemmOutput == null) || (gemmOutput.length < nOutputMaps * nOutputPositions)) {
+                gemmOutput = new float[nOutputMaps * nOutputPositions];
+            }
+            final boolean flip = !zeroPadding && !"caffe_net".equals(getNettype()); // see convsingle
+            for (int outputMap = 0; outputMap < nOutputMaps; outputMap++) {
+                int r = outputMap * columnRows;
+                for (int inputMap = 0; inputMap < nInputMaps; inputMap++) {
+                    for (int xx = 0; xx < kernelDim; xx++) {
+                        for (int yy = 0; yy < kernelDim; yy++) {
+                            packedKernels[r++] = flip ? kernels[k(inputMap, outputMap, kernelDim - xx - 1, kernelDim - yy - 1)] : kernels[k(inputMap, outputMap, xx, yy)];
+                        }
+                    }
+                }
+            }
+            if (int8) {
+                quantize();
+            } else {
+                if ((columns == null) || (columns.length < columnRows * nOutputPositions)) {
+                    columns = new float[columnRows * nOutputPositions];
+                }
+                im2col(paddedInput, columns);
+            }
+
+            final long macs = (long) nOutputMaps * columnRows * nOutputPositions;
+            if ((macs >= PARALLEL_CONV_MIN_MACS) && (nOutputMaps > GEMM_BLOCK_MAPS)) {
+                ForkJoinPool.commonPool().invoke(new OutputMapsTask(0, nOutputMaps, int8));
+            } else {
+                gemm(0, nOutputMaps, int8);
+            }
+            operationCounter += 2 * macs;
+
+            for (int outputMap = 0; outputMap < nOutputMaps; outputMap++) {
+                for (int xo = 0; xo < regionDimX; xo++) {
+                    System.arraycopy(gemmOutput, (outputMap * nOutputPositions) + (xo * regionDimY), activations, o(outputMap, regionX0 + xo, regionY0), regionDimY);
+                }
+            }
+        }
+
+        /**
+         * Unrolls the padded input maps so that row
+         * (inputMap*kernelDim+xx)*kernelDim+yy of the columns holds the input
+         * at offset xx,yy from each output position of the current region
+         */
+        private void im2col(Object src, Object dst) {
+            final int paddedMapLength = paddedInputDim * paddedInputDim;
+            int r = 0;
+            for (int inputMap = 0; inputMap < nInputMaps; inputMap++) {
+                for (int xx = 0; xx < kernelDim; xx++) {
+                    for (int yy = 0; yy < kernelDim; yy++) {
+                        for (int xo = 0; xo < regionDimX; xo++) {
+                            System.arraycopy(src, (inputMap * paddedMapLength) + ((regionX0 + xo + xx) * paddedInputDim) + regionY0 + yy,
+                                    dst, (r * nOutputPositions) + (xo * regionDimY), regionDimY);
+                        }
+                        r++;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Quantizes the packed kernels symmetrically to 8 bits with a scale
+         * per output map, and the padded input with one scale for the layer,
+         * and unrolls the quantized input
+         */
+        private void quantize() {
+            if ((quantizedKernels == null) || (quantizedKernels.length != packedKernels.length)) {
+                quantizedKernels = new byte[packedKernels.length];
+                kernelScales = new float[nOutputMaps];
+            }
+            for (int outputMap = 0; outputMap < nOutputMaps; outputMap++) {
+                final int from = outputMap * columnRows, to = from + columnRows;
+                float max = 0;
+                for (int i = from; i < to; i++) {
+                    max = Math.max(max, Math.abs(packedKernels[i]));
+                }
+                final float scale = max > 0 ? max / 127 : 1;
+                kernelScales[outputMap] = scale;
+                for (int i = from; i < to; i++) {
+                    quantizedKernels[i] = (byte) Math.round(packedKernels[i] / scale);
+                }
+            }
+            if ((quantizedPaddedInput == null) || (quantizedPaddedInput.length != paddedInput.length)) {
+                quantizedPaddedInput = new byte[paddedInput.length];
+            }
+            float max = 0;
+            for (float v : paddedInput) {
+                max = Math.max(max, Math.abs(v));
+            }
+            inputScale = max > 0 ? max / 127 : 1;
+            for (int i = 0; i < paddedInput.length; i++) {
+                quantizedPaddedInput[i] = (byte) Math.round(paddedInput[i] / inputScale);
+            }
+            if ((quantizedColumns == null) || (quantizedColumns.length < columnRows * nOutputPositions)) {
+                quantizedColumns = new byte[columnRows * nOutputPositions];
+            }
+            if ((gemmOutputInt == null) || (gemmOutputInt.length < nOutputMaps * nOutputPositions)) {
+                gemmOutputInt = new int[nOutputMaps * nOutputPositions];
+            }
+            im2col(quantizedPaddedInput, quantizedColumns);
+        }
+
+        /**
+         * Multiplies the packed kernels of output maps from..to-1 with the
+         * columns into gemmOutput, GEMM_BLOCK_MAPS output maps and
+         * GEMM_BLOCK_POSITIONS positions at a time
+         */
+        private void gemm(int from, int to, boolean int8) {
+            final int n = nOutputPositions;
+            for (int m = from; m < to; m += GEMM_BLOCK_MAPS) {
+                final int maps = Math.min(GEMM_BLOCK_MAPS, to - m);
+                if (int8) {
+                    Arrays.fill(gemmOutputInt, m * n, (m + maps) * n, 0);
+                } else {
+                    Arrays.fill(gemmOutput, m * n, (m + maps) * n, 0);
+                }
+                for (int p0 = 0; p0 < n; p0 += GEMM_BLOCK_POSITIONS) {
+                    final int p1 = Math.min(n, p0 + GEMM_BLOCK_POSITIONS);
+                    if (int8) {
+                        gemmBlockInt8(m, maps, p0, p1);
+                    } else {
+                        gemmBlock(m, maps, p0, p1);
+                    }
+                }
+                if (int8) {
+                    for (int map = m; map < m + maps; map++) {
+                        final float scale = kernelScales[map] * inputScale;
+                        for (int p = map * n; p < (map + 1) * n; p++) {
+                            gemmOutput[p] = gemmOutputInt[p] * scale;
+                        }
+                    }
+                }
+            }
+        }
+
+        private void gemmBlock(int m, int maps, int p0, int p1) {
+            final int n = nOutputPositions;
+            final float[] c = columns, out = gemmOutput;
+            if (maps == GEMM_BLOCK_MAPS) {
+                final int o0 = m * n, o1 = o0 + n, o2 = o1 + n, o3 = o2 + n;
+                final int k0 = m * columnRows, k1 = k0 + columnRows, k2 = k1 + columnRows, k3 = k2 + columnRows;
+                for (int r = 0; r < columnRows; r++) {
+                    final float w0 = packedKernels[k0 + r], w1 = packedKernels[k1 + r], w2 = packedKernels[k2 + r], w3 = packedKernels[k3 + r];
+                    final int cr = r * n;
+                    for (int p = p0; p < p1; p++) {
+                        final float v = c[cr + p];
+                        out[o0 + p] += w0 * v;
+                        out[o1 + p] += w1 * v;
+                        out[o2 + p] += w2 * v;
+                        out[o3 + p] += w3 * v;
+                    }
+                }
+            } else {
+                for (int map = m; map < m + maps; map++) {
+                    final int o = map * n, kr = map * columnRows;
+                    for (int r = 0; r < columnRows; r++) {
+                        final float w = packedKernels[kr + r];
+                        final int cr = r * n;
+                        for (int p = p0; p < p1; p++) {
+                            out[o + p] += w * c[cr + p];
+                        }
+                    }
+                }
+            }
+        }
+
+        private void gemmBlockInt8(int m, int maps, int p0, int p1) {
+            final int n = nOutputPositions;
+            final byte[] c = quantizedColumns;
+            final int[] out = gemmOutputInt;
+            if (maps == GEMM_BLOCK_MAPS) {
+                final int o0 = m * n, o1 = o0 + n, o2 = o1 + n, o3 = o2 + n;
+                final int k0 = m * columnRows, k1 = k0 + columnRows, k2 = k1 + columnRows, k3 = k2 + columnRows;
+                for (int r = 0; r < columnRows; r++) {
+                    final int w0 = quantizedKernels[k0 + r], w1 = quantizedKernels[k1 + r], w2 = quantizedKernels[k2 + r], w3 = quantizedKernels[k3 + r];
+                    final int cr = r * n;
+                    for (int p = p0; p < p1; p++) {
+                        final int v = c[cr + p];
+                        out[o0 + p] += w0 * v;
+                        out[o1 + p] += w1 * v;
+                        out[o2 + p] += w2 * v;
+                        out[o3 + p] += w3 * v;
+                    }
+                }
+            } else {
+                for (int map = m; map < m + maps; map++) {
+                    final int o = map * n, kr = map * columnRows;
+                    for (int r = 0; r < columnRows; r++) {
+                        final int w = quantizedKernels[kr + r];
+                        final int cr = r * n;
+                        for (int p = p0; p < p1; p++) {
+                            out[o + p] += w * c[cr + p];
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Computes output maps from..to-1, splitting the range into blocks of
+         * GEMM_BLOCK_MAPS maps
+         */
+        private final class OutputMapsTask extends RecursiveAction {
+
+            private final int from, to;
+            private final boolean int8;
+
+            OutputMapsTask(int from, int to, boolean int8) {
+                this.from = from;
+                this.to = to;
+                this.int8 = int8;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from <= GEMM_BLOCK_MAPS) {
+                    gemm(from, to, int8);
+                } else {
+                    final int mid = from + ((((to - from) / GEMM_BLOCK_MAPS) + 1) / 2) * GEMM_BLOCK_MAPS; // split on block boundaries
+                    invokeAll(new OutputMapsTask(from, mid, int8), new OutputMapsTask(mid, to, int8));
+                }
+            }
+        }
+
         // convolves a given kernel over the inputMap and accumulates output to activations
         private void conv(Layer inputLayer, int outputMap, int inputMap) {
             int startx = halfKernelDim, starty = halfKernelDim, endx = inputMapDim - halfKernelDim, endy = inputMapDim - halfKernelDim;
@@ -871,8 +1352,8 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
                 starty = halfKernelDim;
                 endx = inputMapDim + halfKernelDim;
                 endy = inputMapDim + halfKernelDim;
-                for (int xi = halfKernelDim; xi <= inputMapDim - halfKernelDim; xi++) { // index to outputMap
-                    for (int yi = halfKernelDim; yi <= inputMapDim - halfKernelDim; yi++) {
+                for (int xi = halfKernelDim; xi < inputMapDim + halfKernelDim; xi++) { // index to padded input, the whole input map
+                    for (int yi = halfKernelDim; yi < inputMapDim + halfKernelDim; yi++) {
                         newInputArray[xi][yi] = inputLayer.a(inputMap, xi - halfKernelDim, yi - halfKernelDim);
                     }
                 }
@@ -948,12 +1429,16 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
         }
 
         private void applyBiasAndNonlinearity() {
+            applyBiasAndNonlinearity(0, outputMapDim - 1, 0, outputMapDim - 1);
+        }
+
+        private void applyBiasAndNonlinearity(int x0, int x1, int y0, int y1) {
             if (activations == null) {
                 return;
             }
             for (int b = 0; b < biases.length; b++) {
-                for (int x = 0; x < outputMapDim; x++) {
-                    for (int y = 0; y < outputMapDim; y++) {
+                for (int x = x0; x <= x1; x++) {
+                    for (int y = y0; y <= y1; y++) {
                         int idx = o(b, x, y);
                         switch (activationFunction) {
                             case Sigmoid:
@@ -1132,10 +1617,43 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
             if ((activations == null) || (activations.length != activationsLength)) {
                 activations = new float[activationsLength];
             }
+            pool(convLayer, 0, outputMapDim - 1, 0, outputMapDim - 1);
+        }
 
+        /**
+         * Recomputes the outputs whose pooling windows overlap the changed
+         * region of the input
+         *
+         * @param input the input to this layer
+         * @param inputRegion the changed input positions {x0,x1,y0,y1}
+         * @return the changed output positions, or null if all may have
+         * changed
+         */
+        @Override
+        int[] computeRegion(Layer input, int[] inputRegion) {
+            if (!(input instanceof ConvLayer) || (activations == null) || (((ConvLayer) input).outputMapDim != inputMapDim)) {
+                compute(input);
+                return null;
+            }
+            if (isEmptyRegion(inputRegion)) {
+                return inputRegion;
+            }
+            final int[] outputRegion = {
+                inputRegion[0] / averageOverDim, Math.min(outputMapDim - 1, inputRegion[1] / averageOverDim),
+                inputRegion[2] / averageOverDim, Math.min(outputMapDim - 1, inputRegion[3] / averageOverDim)};
+            if (!isEmptyRegion(outputRegion)) {
+                pool((ConvLayer) input, outputRegion[0], outputRegion[1], outputRegion[2], outputRegion[3]);
+            }
+            return outputRegion;
+        }
+
+        /**
+         * Pools the outputs x0..x1, y0..y1 of all maps
+         */
+        private void pool(ConvLayer convLayer, int x0, int x1, int y0, int y1) {
             for (int map = 0; map < nOutputMaps; map++) {
-                for (int xo = 0; xo < outputMapDim; xo++) { // output map index
-                    for (int yo = 0; yo < outputMapDim; yo++) { // output map
+                for (int xo = x0; xo <= x1; xo++) { // output map index
+                    for (int yo = y0; yo <= y1; yo++) { // output map
                         float sumOrMax = 0; // sum
                         // input indices
                         int startx = xo * averageOverDim, endx = startx + averageOverDim, starty = yo * averageOverDim, endy = starty + averageOverDim;
@@ -1293,15 +1811,19 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
                 Arrays.fill(activations, 0);
             }
             try {
-                int aidx = 0;
-                for (int unit = 0; unit < biases.length; unit++) {  // for each output unit
-                    for (int w = 0; w < input.activations.length; w++) { // simply MAC the weight times the input activation
-                        activations[unit] += input.activations[aidx] * weight(unit, biases.length, w);
-                        aidx++; // the input activations are stored in the feature maps of last layer, column, row, map order
-                        operationCounter += 2;
+                // the weights are stored by input (see weight()), so the inputs are the outer loop, which adds to each unit in the same order
+                final int nUnits = biases.length;
+                for (int w = 0; w < input.activations.length; w++) { // the input activations are stored in the feature maps of last layer, column, row, map order
+                    final float a = input.activations[w];
+                    if (a == 0) {
+                        continue; // common after ReLu
+                    }
+                    final int base = nUnits * w;
+                    for (int unit = 0; unit < nUnits; unit++) {  // simply MAC the weight times the input activation
+                        activations[unit] += a * weights[base + unit];
                     }
-                    aidx = 0;
                 }
+                operationCounter += 2 * nUnits * input.activations.length;
             } catch (ArrayIndexOutOfBoundsException e) {
                 log.warning("ArrayIndexOutOfBoundsException while computing fully connected or output layer. Could you have an incorrect zeroPadding setting? " + e.toString());
                 throw new ArrayIndexOutOfBoundsException(e.toString());
@@ -1615,6 +2137,7 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
 
             }
         }
+        invalidateIncrementalState();
     }
 
     public void loadNetwork(File f) throws IOException {
@@ -1893,4 +2416,64 @@ public class DavisCNNPureJava extends AbstractDavisCNN {
         this.normalizeActivationDisplayGlobally = normalizeActivationDisplayGlobally;
     }
 
+    /**
+     * @return the method used to compute the convolutional layers
+     */
+    public ConvolutionMethod getConvolutionMethod() {
+        return convolutionMethod;
+    }
+
+    /**
+     * @param convolutionMethod the method used to compute the convolutional
+     * layers
+     */
+    public void setConvolutionMethod(ConvolutionMethod convolutionMethod) {
+        this.convolutionMethod = convolutionMethod;
+        invalidateIncrementalState();
+    }
+
+    /**
+     * @return true if only the activations that depend on the changed part of
+     * the input are recomputed
+     */
+    public boolean isIncrementalInference() {
+        return incrementalInference;
+    }
+
+    /**
+     * Sets incremental inference. The input of each frame is compared with
+     * that of the previous frame, and only the activations of the
+     * convolutional and pooling layers whose receptive fields overlap the
+     * bounding box of the changed input are recomputed; the fully connected
+     * layers are always computed. If the input did not change at all, the
+     * previous output is returned. Needs an im2col convolution method and
+     * single channel input, otherwise every frame is computed in full; with
+     * Im2colInt8 the activations that are not recomputed keep the
+     * quantization scale of the frame they were computed from.
+     *
+     * @param incrementalInference true to recompute only the changed
+     * activations
+     */
+    public void setIncrementalInference(boolean incrementalInference) {
+        this.incrementalInference = incrementalInference;
+        invalidateIncrementalState();
+    }
+
+    /**
+     * @return the fraction of the input area above which the whole network is
+     * recomputed
+     */
+    public float getIncrementalMaxChangedFraction() {
+        return incrementalMaxChangedFraction;
+    }
+
+    /**
+     * @param incrementalMaxChangedFraction the fraction of the input area
+     * covered by the bounding box of the changed input above which the whole
+     * network is recomputed, since the receptive fields of the changed
+     * activations cover most of the deeper layers anyhow
+     */
+    public void setIncrementalMaxChangedFraction(float incrementalMaxChangedFraction) {
+        this.incrementalMaxChangedFraction = incrementalMaxChangedFraction;
+    }
 }
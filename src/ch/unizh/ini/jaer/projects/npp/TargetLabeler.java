@@ -30,7 +30,6 @@ import java.beans.PropertyChangeListener;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -992,70 +991,15 @@ public class TargetLabeler extends EventFilter2DMouseAdaptor implements Property
     }
 
     synchronized private void loadLocations(File f) {
-        long startMs = System.currentTimeMillis();
-        log.info("loading " + f);
         boolean oldEraseSamples = this.eraseSamplesEnabled;
         doClearLocations();
         try {
             setCursor(new Cursor(Cursor.WAIT_CURSOR));
-            targetLocations.clear();
-            minSampleTimestamp = Integer.MAX_VALUE;
-            maxSampleTimestamp = Integer.MIN_VALUE;
             try {
-                LineNumberReader reader = new LineNumberReader(new FileReader(f));
-                String s = reader.readLine();
-                StringBuilder sb = new StringBuilder();
-                while ((s != null) && s.startsWith("#")) {
-                    sb.append(s + "\n");
-                    s = reader.readLine();
-                }
-                log.info("header lines on " + f.getCanonicalPath() + " are\n" + sb.toString());
-                Scanner scanner = new Scanner(reader);
-                while (scanner.hasNext()) {
-                    try {
-                        int videoFileFrameNumberIgnore = scanner.nextInt(); // writren to file for ground truth labels file
-                        int frame = scanner.nextInt();
-                        int ts = scanner.nextInt();
-                        int x = scanner.nextInt();
-                        int y = scanner.nextInt();
-                        int targetTypeID = 0;
-                        int width = targetRadius * 2;
-                        int height = targetRadius * 2;
-                        // see if more tokens in this line
-                        String mt = scanner.findInLine("\\d+");
-                        if (mt != null) {
-                            targetTypeID = Integer.parseInt(scanner.match().group());
-                        }
-                        mt = scanner.findInLine("\\d+");
-                        if (mt != null) {
-                            width = Integer.parseInt(scanner.match().group());
-                        }
-                        mt = scanner.findInLine("\\d+");
-                        if (mt != null) {
-                            height = Integer.parseInt(scanner.match().group());
-                        }
-                        Point p = null;
-                        if ((x != -1) && (y != -1)) {
-                            p = new Point(x, y);
-                        }
-                        addSample(frame, ts, p, width, height, targetTypeID, true);
-
-                    } catch (NoSuchElementException ex2) {
-                        String l = ("couldn't parse file " + f) == null ? "null" : f.toString() + ", got InputMismatchException on line: " + reader.getLineNumber();
-                        log.warning(l);
-                        throw new IOException(l);
-                    }
-
-                }
-                long endMs = System.currentTimeMillis();
-                log.info("Took " + (endMs - startMs) + " ms to load " + f + " with " + targetLocations.size() + " SimultaneouTargetLocations entries");
+                readLocations(f);
                 if (lastDataFilename != null) {
                     mapDataFilenameToTargetFilename.put(lastDataFilename, f.getPath());
                 }
-                this.targetLocation = null;  // null out current location
-                locationsLoadedFromFile = true;
-            } catch (FileNotFoundException ex) {
-                JOptionPane.showMessageDialog(glCanvas, ex.toString(), "Couldn't load locations", JOptionPane.WARNING_MESSAGE, null);
             } catch (IOException ex) {
                 JOptionPane.showMessageDialog(glCanvas, ex.toString(), "Couldn't load locations", JOptionPane.WARNING_MESSAGE, null);
             }
@@ -1066,6 +1010,72 @@ public class TargetLabeler extends EventFilter2DMouseAdaptor implements Property
         fixLabeledFraction();
     }
 
+    /**
+     * Replaces the target locations by the ones in a locations file, without
+     * any dialogs, e.g. for batch processing without AEViewer.
+     *
+     * @param f the file written by saveLocations or by DvsSliceAviWriter
+     * @throws IOException if the file cannot be read or parsed
+     */
+    synchronized public void readLocations(File f) throws IOException {
+        long startMs = System.currentTimeMillis();
+        log.info("loading " + f);
+        targetLocations.clear();
+        minSampleTimestamp = Integer.MAX_VALUE;
+        maxSampleTimestamp = Integer.MIN_VALUE;
+        locationsLoadedFromFile = false;
+        try (LineNumberReader reader = new LineNumberReader(new FileReader(f))) {
+            String s = reader.readLine();
+            StringBuilder sb = new StringBuilder();
+            while ((s != null) && s.startsWith("#")) {
+                sb.append(s + "\n");
+                s = reader.readLine();
+            }
+            log.info("header lines on " + f.getCanonicalPath() + " are\n" + sb.toString());
+            Scanner scanner = new Scanner(reader);
+            while (scanner.hasNext()) {
+                try {
+                    int videoFileFrameNumberIgnore = scanner.nextInt(); // writren to file for ground truth labels file
+                    int frame = scanner.nextInt();
+                    int ts = scanner.nextInt();
+                    int x = scanner.nextInt();
+                    int y = scanner.nextInt();
+                    int targetTypeID = 0;
+                    int width = targetRadius * 2;
+                    int height = targetRadius * 2;
+                    // see if more tokens in this line
+                    String mt = scanner.findInLine("\\d+");
+                    if (mt != null) {
+                        targetTypeID = Integer.parseInt(scanner.match().group());
+                    }
+                    mt = scanner.findInLine("\\d+");
+                    if (mt != null) {
+                        width = Integer.parseInt(scanner.match().group());
+                    }
+                    mt = scanner.findInLine("\\d+");
+                    if (mt != null) {
+                        height = Integer.parseInt(scanner.match().group());
+                    }
+                    Point p = null;
+                    if ((x != -1) && (y != -1)) {
+                        p = new Point(x, y);
+                    }
+                    addSample(frame, ts, p, width, height, targetTypeID, true);
+
+                } catch (NoSuchElementException ex2) {
+                    String l = f.toString() + ", got InputMismatchException on line: " + reader.getLineNumber();
+                    log.warning(l);
+                    throw new IOException(l);
+                }
+
+            }
+        }
+        long endMs = System.currentTimeMillis();
+        log.info("Took " + (endMs - startMs) + " ms to load " + f + " with " + targetLocations.size() + " SimultaneouTargetLocations entries");
+        this.targetLocation = null;  // null out current location
+        locationsLoadedFromFile = true;
+    }
+
     int maxDataHasTargetWarningCount = 10;
 
     /**
@@ -69,6 +69,14 @@ import org.jetbrains.bio.npy.NpyFile;
  * class use different methods to compute the optical flow vectors and override
  * the filterPacket method in this class. Several methods were taken from
  * AbstractDirectionSelectiveFilter and Steadicam and slightly modified.
+ * <p>
+ * Subclasses must declare filterPacket synchronized, so that the lock of the
+ * filter is taken once per packet. The per-event methods extractEventInfo,
+ * isInvalidAddress, processGoodEvent and accuracyTests are called from
+ * filterPacket and are therefore not synchronized themselves; they keep the
+ * state of the current event in the instance fields e, x, y, ts, type and vx,
+ * vy, v. Flow statistics are buffered per event and applied once per packet
+ * by MotionFlowStatistics.updatePacket.
  *
  * @author rbodo
  */
@@ -76,8 +84,8 @@ import org.jetbrains.bio.npy.NpyFile;
 @DevelopmentStatus(DevelopmentStatus.Status.Abstract)
 abstract public class AbstractMotionFlowIMU extends EventFilter2DMouseAdaptor implements FrameAnnotater, PropertyChangeListener {
 
-    // Observed motion flow.
-    public static float vx, vy, v;
+    // Observed motion flow of the current event.
+    public float vx, vy, v;
 
     public int numInputTypes;
 
@@ -780,18 +788,32 @@ abstract public class AbstractMotionFlowIMU extends EventFilter2DMouseAdaptor im
             v = 0;
         }
 
-        float getVx() {
+        public float getVx() {
             return vx;
         }
 
-        float getVy() {
+        public float getVy() {
             return vy;
         }
 
-        float getV() {
+        public float getV() {
             return v;
         }
 
+        /**
+         * Sets the flow, e.g. to restore the ground truth flow of an event
+         * whose motion flow is computed after later events were processed
+         *
+         * @param vx
+         * @param vy
+         * @param v the speed
+         */
+        public void setFlow(float vx, float vy, float v) {
+            this.vx = vx;
+            this.vy = vy;
+            this.v = v;
+        }
+
         boolean isCalibrationSet() {
             return calibrated;
         }
@@ -1463,7 +1485,7 @@ abstract public class AbstractMotionFlowIMU extends EventFilter2DMouseAdaptor im
      * @param d equals the spatial search distance plus some extra spacing
      * needed for applying finite differences to calculate gradients.
      */
-    protected synchronized boolean isInvalidAddress(int d) {
+    protected boolean isInvalidAddress(int d) {
         if (x >= d && y >= d && x < subSizeX - d && y < subSizeY - d) {
             if (subSampleShift > 0 && !subsampledPixelIsSet[x][y]) {
                 subsampledPixelIsSet[x][y] = true;
@@ -1488,7 +1510,7 @@ abstract public class AbstractMotionFlowIMU extends EventFilter2DMouseAdaptor im
      *
      * @return true if invalid timestamp, older than refractoryPeriodUs ago
      */
-    private synchronized boolean isInvalidTimestamp(PolarityEvent e) {
+    private boolean isInvalidTimestamp(PolarityEvent e) {
         if (prevTs == Integer.MIN_VALUE) {
             prevTs = e.timestamp;
             return false;
@@ -1523,7 +1545,7 @@ abstract public class AbstractMotionFlowIMU extends EventFilter2DMouseAdaptor im
      * the camera cameraCalibration magnifies the address beyond the sensor
      * coordinates
      */
-    protected synchronized boolean extractEventInfo(Object ein) {
+    protected boolean extractEventInfo(Object ein) {
         e = (PolarityEvent) ein;
 
         if (warnNonmonotonicTimestamps && isInvalidTimestamp(e)) {
@@ -1537,10 +1559,11 @@ abstract public class AbstractMotionFlowIMU extends EventFilter2DMouseAdaptor im
     }
 
     /**
-     * Takes output event eout and logs it
+     * Takes output event eout and logs it. Called for each event from the
+     * synchronized filterPacket.
      *
      */
-    synchronized public void processGoodEvent() {
+    public void processGoodEvent() {
         // Copy the input event to a new output event and append the computed optical flow properties
         eout = (ApsDvsMotionOrientationEvent) outItr.nextOutput();
         eout.copyFrom(e);
@@ -1625,7 +1648,7 @@ abstract public class AbstractMotionFlowIMU extends EventFilter2DMouseAdaptor im
      *
      * @return true if event is accurate enough, false if it should be rejected.
      */
-    synchronized public boolean accuracyTests() {
+    public boolean accuracyTests() {
         // 1.) Filter out events with speed high above average.
         // 2.) Filter out events whose velocity deviates from IMU estimate by a 
         // certain degree.
@@ -2221,7 +2244,7 @@ abstract public class AbstractMotionFlowIMU extends EventFilter2DMouseAdaptor im
          * @param vx flow vx, pps
          * @param vy
          */
-        synchronized public void update(int timestamp, int x, int y, float vx, float vy, float speed) {
+        public void update(int timestamp, int x, int y, float vx, float vy, float speed) {
             if (!displayMotionField) {
                 return;
             }
@@ -2399,15 +2422,17 @@ abstract public class AbstractMotionFlowIMU extends EventFilter2DMouseAdaptor im
          * @param motionFieldSubsamplingShift the motionFieldSubsamplingShift to
          * set
          */
-        synchronized public void setMotionFieldSubsamplingShift(int motionFieldSubsamplingShift) {
+        public void setMotionFieldSubsamplingShift(int motionFieldSubsamplingShift) {
             if (motionFieldSubsamplingShift < 0) {
                 motionFieldSubsamplingShift = 0;
             } else if (motionFieldSubsamplingShift > 5) {
                 motionFieldSubsamplingShift = 5;
             }
-            this.motionFieldSubsamplingShift = motionFieldSubsamplingShift;
-            putInt("motionFieldSubsamplingShift", motionFieldSubsamplingShift);
-            reset();
+            synchronized (AbstractMotionFlowIMU.this) { // update() is called from filterPacket, which holds the lock of the filter
+                this.motionFieldSubsamplingShift = motionFieldSubsamplingShift;
+                putInt("motionFieldSubsamplingShift", motionFieldSubsamplingShift);
+                reset();
+            }
         }
 
 //        /**
@@ -12,6 +12,7 @@ import java.io.PrintStream;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
@@ -41,6 +42,12 @@ import org.apache.commons.math3.stat.Frequency;
  * large sample sizes. The SD is a measure of how much we can expect the sample
  * individuals to differ from the sample mean; it will converge towards the
  * population standard deviation for larger sample sizes.
+ * <p>
+ * The per-event update(...) and GlobalMotion.update(...) only buffer their
+ * arguments in primitive arrays; the samples are applied to the statistics in
+ * order by updatePacket(...) at the end of each packet, or when
+ * MAX_BUFFERED_SAMPLES have been buffered. Statistics read during a packet
+ * therefore reflect the events up to the previous packet.
  *
  * @author rbodo
  */
@@ -88,6 +95,16 @@ public class MotionFlowStatistics {
     private int outlierCount = 0;
     private boolean wasAbsOutlier = false; // flag 
 
+    /**
+     * Maximum number of samples buffered by update() and
+     * GlobalMotion.update() before they are applied to the statistics
+     */
+    public static final int MAX_BUFFERED_SAMPLES = 4096;
+    private static final int INITIAL_BUFFERED_SAMPLES = 256;
+    // vx, vy, v, vxGT, vyGT, vGT of each buffered accuracy sample
+    private float[] accuracySamples = new float[6 * INITIAL_BUFFERED_SAMPLES];
+    private int numAccuracySamples = 0;
+
     public MotionFlowStatistics(String filterClassName, int sX, int sY, int windowSize) {
         DATE_FORMAT = new SimpleDateFormat("yyyyMMdd'T'HHmmss");
         reset(sX, sY, windowSize);
@@ -101,6 +118,7 @@ public class MotionFlowStatistics {
         sampleCount = 0;
         outlierCount = 0;
         wasAbsOutlier = false;
+        numAccuracySamples = 0;
         globalMotion = new GlobalMotion(sX, sY, windowSize);
         angularError = new AngularError();
         endpointErrorAbs = new EndpointErrorAbs();
@@ -168,7 +186,8 @@ public class MotionFlowStatistics {
     }
 
     /**
-     * Updates the statistics given a measurement and ground truth
+     * Updates the statistics given a measurement and ground truth. The sample
+     * is buffered and applied by the next updatePacket().
      *
      * @param vx measured flow in x direction in pixels per second
      * @param vy etc
@@ -178,17 +197,44 @@ public class MotionFlowStatistics {
      * @param vGT GT speed in pixels per second
      */
     public void update(float vx, float vy, float v, float vxGT, float vyGT, float vGT) {
-        if (warmupCounter > 0) {
-            warmupCounter--;
-            return;
-        }
-        if (Float.isNaN(vxGT) || Float.isNaN(vyGT) || Float.isNaN(vGT)) {
-            return;
+        if (numAccuracySamples == MAX_BUFFERED_SAMPLES) {
+            flushAccuracySamples();
+        }
+        int i = 6 * numAccuracySamples;
+        if (i == accuracySamples.length) {
+            accuracySamples = Arrays.copyOf(accuracySamples, 2 * i);
+        }
+        final float[] a = accuracySamples;
+        a[i++] = vx;
+        a[i++] = vy;
+        a[i++] = v;
+        a[i++] = vxGT;
+        a[i++] = vyGT;
+        a[i] = vGT;
+        numAccuracySamples++;
+    }
+
+    /**
+     * Applies the buffered accuracy samples to the statistics.
+     */
+    private void flushAccuracySamples() {
+        final float[] a = accuracySamples;
+        final int n = 6 * numAccuracySamples;
+        numAccuracySamples = 0;
+        for (int i = 0; i < n; i += 6) {
+            if (warmupCounter > 0) {
+                warmupCounter--;
+                continue;
+            }
+            final float vx = a[i], vy = a[i + 1], v = a[i + 2], vxGT = a[i + 3], vyGT = a[i + 4], vGT = a[i + 5];
+            if (Float.isNaN(vxGT) || Float.isNaN(vyGT) || Float.isNaN(vGT)) {
+                continue;
+            }
+            sampleCount++;
+            angularError.update(vx, vy, v, vxGT, vyGT, vGT);
+            endpointErrorAbs.update(vx, vy, v, vxGT, vyGT, vGT);
+            endpointErrorRel.update(vx, vy, v, vxGT, vyGT, vGT); // make sure this runs second for accurate outlier count
         }
-        sampleCount++;
-        angularError.update(vx, vy, v, vxGT, vyGT, vGT);
-        endpointErrorAbs.update(vx, vy, v, vxGT, vyGT, vGT);
-        endpointErrorRel.update(vx, vy, v, vxGT, vyGT, vGT); // make sure this runs second for accurate outlier count
     }
 
     /**
@@ -200,6 +246,8 @@ public class MotionFlowStatistics {
      * @param currentTs
      */
     public void updatePacket(int countIn, int countOut, int currentTs) {
+        flushAccuracySamples();
+        globalMotion.flush();
         eventDensity.update(countIn, countOut);
         if (measureProcessingTime) {
             processingTime.update();
@@ -326,6 +374,11 @@ public class MotionFlowStatistics {
         public float ANGLE_BIN_DEGREES = 10, ANGLE_HISTOGRAM_MAX_RADIUS_PIXELS = 100;
 
         private int windowSize = Measurand.WINDOW_SIZE;
+        // vx, vy and x, y of each buffered sample
+        private float[] velocitySamples = new float[2 * INITIAL_BUFFERED_SAMPLES];
+        private int[] locationSamples = new int[2 * INITIAL_BUFFERED_SAMPLES];
+        private int numSamples = 0;
+        private long[] angleBinCounts = new long[0]; // counts of the current flush, indexed by angleBin+angleBinOffset
 
         /**
          * makes a new instance
@@ -371,6 +424,7 @@ public class MotionFlowStatistics {
         void reset(int sX, int sY) {
             subSizeX = sX;
             subSizeY = sY;
+            numSamples = 0;
             globalVy.clear();
             globalVy.clear();
             globalRotation.clear();
@@ -380,7 +434,8 @@ public class MotionFlowStatistics {
         }
 
         /**
-         * Updates statistics, to be computed on each valid flow result
+         * Updates statistics, to be computed on each valid flow result. The
+         * sample is buffered and applied by the next updatePacket().
          *
          * @param vx flow x
          * @param vy flow y
@@ -390,10 +445,61 @@ public class MotionFlowStatistics {
          * @param y coordinate y vertical
          */
         public void update(float vx, float vy, float v, int x, int y) {
-            // Translation
             if (v == 0) {
                 return;
             }
+            if (numSamples == MAX_BUFFERED_SAMPLES) {
+                flush();
+            }
+            final int i = 2 * numSamples;
+            if (i == velocitySamples.length) {
+                velocitySamples = Arrays.copyOf(velocitySamples, 2 * i);
+                locationSamples = Arrays.copyOf(locationSamples, 2 * i);
+            }
+            velocitySamples[i] = vx;
+            velocitySamples[i + 1] = vy;
+            locationSamples[i] = x;
+            locationSamples[i + 1] = y;
+            numSamples++;
+        }
+
+        /**
+         * Applies the buffered samples to the statistics. The angle histogram
+         * is counted in an array and added to globalMotionAngleFrequency once
+         * per bin, rather than once per sample.
+         */
+        void flush() {
+            final int n = numSamples;
+            numSamples = 0;
+            if (n == 0) {
+                return;
+            }
+            final int angleBinOffset = (int) Math.ceil(180 / ANGLE_BIN_DEGREES);
+            if (angleBinCounts.length != (2 * angleBinOffset) + 1) {
+                angleBinCounts = new long[(2 * angleBinOffset) + 1];
+            }
+            long sumFreq = globalMotionAngleFrequency.getSumFreq();
+            for (int i = 0; i < 2 * n; i += 2) {
+                sumFreq = addSample(velocitySamples[i], velocitySamples[i + 1], locationSamples[i], locationSamples[i + 1], angleBinOffset, sumFreq);
+            }
+            for (int b = 0; b < angleBinCounts.length; b++) {
+                if (angleBinCounts[b] != 0) {
+                    globalMotionAngleFrequency.incrementValue(Long.valueOf(b - angleBinOffset), angleBinCounts[b]);
+                    angleBinCounts[b] = 0;
+                }
+            }
+        }
+
+        /**
+         * Adds one sample with nonzero speed, counting its angle bin in
+         * angleBinCounts.
+         *
+         * @param sumFreq the number of values in globalMotionAngleFrequency
+         * plus the ones counted in angleBinCounts
+         * @return the new sumFreq
+         */
+        private long addSample(float vx, float vy, int x, int y, int angleBinOffset, long sumFreq) {
+            // Translation
             globalVx.addValue(vx);
             globalVy.addValue(vy);
             final float speed = (float) Math.sqrt(vx * vx + vy * vy);
@@ -418,7 +524,7 @@ public class MotionFlowStatistics {
             rx = x - subSizeX / 2;
             ry = y - subSizeY / 2;
             if (rx == 0 && ry == 0) {
-                return; // Don't add singular event at origin.
+                return sumFreq; // Don't add singular event at origin.
             }
             globalRotation.addValue((float) (180 / Math.PI) * (vy * rx - vx * ry) / (rx * rx + ry * ry));
 
@@ -440,19 +546,20 @@ public class MotionFlowStatistics {
              */
             // </editor-fold>
             if (rx > -2 && rx < 2 && ry > -2 && ry < 2) {
-                return; // Don't add singular event at origin.
+                return sumFreq; // Don't add singular event at origin.
             }
             final float exProj = (vx * rx + vy * ry);
             globalExpansion.addValue(exProj / (rx * rx + ry * ry));
 
             double angleDeg = 180 / Math.PI * Math.atan2(vy, vx);
             int angleBin = (int) Math.round(angleDeg / ANGLE_BIN_DEGREES);
-            if (globalMotionAngleFrequency.getSumFreq() >= windowSize) {
+            if (sumFreq >= windowSize) {
                 globalMotionAngleFrequency.clear();
-            } else {
-                globalMotionAngleFrequency.addValue(angleBin);
+                Arrays.fill(angleBinCounts, 0);
+                return 0;
             }
-
+            angleBinCounts[angleBin + angleBinOffset]++;
+            return sumFreq + 1;
         }
 
         public void drawAngleHistogram(GL2 gl, float fullScalePixels) {
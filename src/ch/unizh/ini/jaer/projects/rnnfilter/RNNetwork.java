@@ -6,6 +6,7 @@ import static net.sf.jaer.eventprocessing.EventFilter.log;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.jblas.MatrixFunctions;
 
@@ -16,6 +17,12 @@ import org.jblas.FloatMatrix;
 /**
  * Implements an recurrent neural network framework
  * The framework currently supports GRU layer, LSTM layer and Dense layer
+ * <p>
+ * The forward pass does not allocate memory: each layer computes its
+ * activations in place in preallocated arrays, with the activation functions
+ * applied in place by Activation.applyi. outputBatch advances many
+ * independent sequences by one frame at once, so that each weight matrix is
+ * read once for several sequences.
  * @author jithendar
  */
 public class RNNetwork {
@@ -57,16 +64,132 @@ public class RNNetwork {
     /**
      * Computes the output of the network when given an input frame
      * @param input - A one dimensional float array as the input frame
-     * @return - the activation of the last layer as a DoubleMatrix (jblas)
+     * @return - the activation of the last layer as a DoubleMatrix (jblas); it is reused and overwritten by the next call
      */
     public FloatMatrix output(float[] input) {
-        FloatMatrix tempOutput = new FloatMatrix(input);
-        this.layers[0].computeFromInput(tempOutput);
+        ((InputLayer) this.layers[0]).setInput(input);
         for(int i=1;i<this.nLayers;i++) {
             this.layers[i].compute(this.layers[i-1]);
         }
         return this.layers[this.nLayers-1].output;
     }
+
+    /**
+     * Computes the next frame of numSequences independent sequences at once.
+     * Each sequence has its own recurrent state, which is kept separately from the state used by output(float[]);
+     * sequence i of one call continues sequence i of the previous call. resetBatch() clears the states.
+     * @param inputs - the input frames of the sequences, one after the other
+     * @param numSequences - the number of sequences
+     * @param outputs - the activations of the last layer for each sequence are written here, one after the other
+     */
+    public void outputBatch(float[] inputs, int numSequences, float[] outputs) {
+        InputLayer in = (InputLayer) this.layers[0];
+        if (inputs.length < numSequences * in.output.length) {
+            throw new IllegalArgumentException("inputs has length " + inputs.length + " but " + numSequences + " frames of length " + in.output.length + " are needed");
+        }
+        in.setBatchInput(inputs);
+        for(int i=1;i<this.nLayers;i++) {
+            this.layers[i].computeBatch(this.layers[i-1], numSequences);
+        }
+        Layer last = this.layers[this.nLayers-1];
+        final int n = last.output.length;
+        System.arraycopy(last.batchOutput, 0, outputs, 0, numSequences * n);
+    }
+
+    /**
+     * Resets the states of the sequences computed by outputBatch
+     */
+    public void resetBatch() {
+        for(int i=0;i<this.nLayers;i++) {
+            this.layers[i].resetBatch();
+        }
+    }
+
+    /**
+     * Computes y=W*x+bias, or y+=W*x if accumulate is true, for numSequences vectors x and y stored one after the other.
+     * Four sequences are computed together so that they share each load of a column of W, and inputs that are zero for all four are skipped.
+     * @param w - the weight matrix
+     * @param x - numSequences vectors of w.columns values
+     * @param bias - w.rows bias values, or null for none; not used when accumulating
+     * @param y - numSequences vectors of w.rows values
+     * @param numSequences - the number of vectors
+     * @param accumulate - true to add W*x to y
+     */
+    static void mmul(FloatMatrix w, float[] x, float[] bias, float[] y, int numSequences, boolean accumulate) {
+        final int rows = w.rows, cols = w.columns;
+        final float[] wd = w.data; // column major
+        if ((x.length < numSequences * cols) || (y.length < numSequences * rows)) {
+            throw new IllegalArgumentException(String.format("%d sequences need inputs of length %d and outputs of length %d but they have lengths %d and %d",
+                    numSequences, numSequences * cols, numSequences * rows, x.length, y.length));
+        }
+        if (!accumulate) {
+            for (int b = 0; b < numSequences; b++) {
+                if (bias != null) {
+                    System.arraycopy(bias, 0, y, b * rows, rows);
+                } else {
+                    Arrays.fill(y, b * rows, (b + 1) * rows, 0);
+                }
+            }
+        }
+        int b = 0;
+        for (; b + 4 <= numSequences; b += 4) {
+            final int x0 = b * cols, x1 = x0 + cols, x2 = x1 + cols, x3 = x2 + cols;
+            final int y0 = b * rows, y1 = y0 + rows, y2 = y1 + rows, y3 = y2 + rows;
+            for (int j = 0; j < cols; j++) {
+                final float v0 = x[x0 + j], v1 = x[x1 + j], v2 = x[x2 + j], v3 = x[x3 + j];
+                if (v0 == 0 && v1 == 0 && v2 == 0 && v3 == 0) {
+                    continue;
+                }
+                final int wj = j * rows;
+                for (int i = 0; i < rows; i++) {
+                    final float wij = wd[wj + i];
+                    y[y0 + i] += wij * v0;
+                    y[y1 + i] += wij * v1;
+                    y[y2 + i] += wij * v2;
+                    y[y3 + i] += wij * v3;
+                }
+            }
+        }
+        for (; b < numSequences; b++) {
+            final int x0 = b * cols, y0 = b * rows;
+            for (int j = 0; j < cols; j++) {
+                final float v = x[x0 + j];
+                if (v == 0) {
+                    continue;
+                }
+                final int wj = j * rows;
+                for (int i = 0; i < rows; i++) {
+                    y[y0 + i] += wd[wj + i] * v;
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the activation in place to each of numSequences vectors of n values
+     */
+    private static void applyRows(Activation a, float[] values, int n, int numSequences) {
+        for (int b = 0; b < numSequences; b++) {
+            a.applyi(values, b * n, n);
+        }
+    }
+
+    /**
+     * @return buffer if it holds at least length values, otherwise a longer copy of it padded with zeros
+     */
+    private static float[] grow(float[] buffer, int length) {
+        if (buffer == null) {
+            return new float[length];
+        }
+        return buffer.length >= length ? buffer : Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * @return matrix if it is a vector of length n, otherwise a new zero vector of length n
+     */
+    private static FloatMatrix vector(FloatMatrix matrix, int n) {
+        return (matrix != null && matrix.length == n) ? matrix : FloatMatrix.zeros(n);
+    }
     /**
      * Loads the network from an XML file, presently incomplete
      * @param f - the XML file holding the network
@@ -260,6 +383,17 @@ public class RNNetwork {
          * @return DoubleMatrix with the activations
          */
         public float apply(float input);
+        /**
+         * Applies the activation in place to part of an array
+         * @param values - the array holding the linear combinations, overwritten by the activations
+         * @param offset - the index of the first value
+         * @param length - the number of values
+         */
+        default public void applyi(float[] values, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                values[i] = apply(values[i]);
+            }
+        }
     }
 
     /**
@@ -285,6 +419,13 @@ public class RNNetwork {
         public float apply(float input) {
             return (float) (1.0 / (1.0 + Math.exp(-input)));
         }
+
+        @Override
+        public void applyi(float[] values, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                values[i] = (float) (1.0 / (1.0 + Math.exp(-values[i])));
+            }
+        }
     }
     
     public class HardSigmoid implements Activation {
@@ -305,6 +446,13 @@ public class RNNetwork {
         public float apply(float input) {
             return (float) Math.max(0, Math.min(1, input*0.2 + 0.5));
         }
+
+        @Override
+        public void applyi(float[] values, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                values[i] = (float) Math.max(0, Math.min(1, values[i]*0.2 + 0.5));
+            }
+        }
     }
     /**
      * Implements the tanh activation function.
@@ -324,6 +472,13 @@ public class RNNetwork {
         public float apply(float input) {
             return MatrixFunctions.tanh(input);
         }
+
+        @Override
+        public void applyi(float[] values, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                values[i] = (float) Math.tanh(values[i]);
+            }
+        }
     }
     /**
      * Implements the relu activation function.
@@ -348,6 +503,15 @@ public class RNNetwork {
             }
             return input;
         }
+
+        @Override
+        public void applyi(float[] values, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                if (values[i] < 0) {
+                    values[i] = 0;
+                }
+            }
+        }
     }
     /**
      * Implements the softmax activation function.
@@ -370,6 +534,26 @@ public class RNNetwork {
             return 1;
         }
 
+        /**
+         * Applies the softmax over the length values; the maximum is subtracted before exponentiating so that large inputs do not overflow
+         */
+        @Override
+        public void applyi(float[] values, int offset, int length) {
+            float max = Float.NEGATIVE_INFINITY;
+            for (int i = offset; i < offset + length; i++) {
+                max = Math.max(max, values[i]);
+            }
+            float sum = 0;
+            for (int i = offset; i < offset + length; i++) {
+                values[i] = (float) Math.exp(values[i] - max);
+                sum += values[i];
+            }
+            final float scale = 1 / sum;
+            for (int i = offset; i < offset + length; i++) {
+                values[i] *= scale;
+            }
+        }
+
     }
     /**
      * Implements the softsign activation function.
@@ -394,6 +578,13 @@ public class RNNetwork {
             return (float) (input / (1.0 + Math.abs(input)));
         }
 
+        @Override
+        public void applyi(float[] values, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                values[i] = values[i] / (1 + Math.abs(values[i]));
+            }
+        }
+
     }
     /**
      * Implements the linear activation function
@@ -411,6 +602,10 @@ public class RNNetwork {
         public float apply(float input) {
             return input;
         }
+
+        @Override
+        public void applyi(float[] values, int offset, int length) {
+        }
         
     }
 
@@ -433,6 +628,10 @@ public class RNNetwork {
          *  Activations of the layer
          */
         FloatMatrix output;
+        /**
+         *  Activations of the layer for the sequences computed by outputBatch, one after the other
+         */
+        float[] batchOutput;
         /**
          * Computes the output activations of the layer for a given input activation,
          * @param input - for the case of the InputLayer, it should throw an exception for there is no previous layer, for every other layer it would be activations of the previous layer
@@ -448,6 +647,22 @@ public class RNNetwork {
         abstract public void computeFromInput(FloatMatrix input);
         
         abstract public void resetLayer();
+
+        /**
+         * Computes batchOutput for the sequences of a batch from the batchOutput of the input layer
+         * @param input - the previous layer
+         * @param numSequences - the number of sequences
+         */
+        abstract public void computeBatch(Layer input, int numSequences);
+
+        /**
+         * Resets the states of the sequences computed by computeBatch
+         */
+        public void resetBatch() {
+            if (this.batchOutput != null) {
+                Arrays.fill(this.batchOutput, 0);
+            }
+        }
         
     }
     /**
@@ -473,6 +688,38 @@ public class RNNetwork {
         public void computeFromInput(FloatMatrix input) {
                 this.output = input;
         }
+
+        private FloatMatrix inputMatrix; // holds the input frame copied by setInput
+
+        /**
+         * Copies the input frame to the activations of the layer, reusing the same matrix for every frame
+         * @param input - the input to the network
+         */
+        public void setInput(float[] input) {
+            if ((this.inputMatrix == null) || (this.inputMatrix.length != input.length)) {
+                this.inputMatrix = new FloatMatrix(input.length);
+            }
+            System.arraycopy(input, 0, this.inputMatrix.data, 0, input.length);
+            this.output = this.inputMatrix;
+        }
+
+        /**
+         * Sets the input frames of the sequences of a batch as the batch activations, without copying them
+         * @param inputs - the input frames, one after the other
+         */
+        public void setBatchInput(float[] inputs) {
+            this.batchOutput = inputs;
+        }
+
+        @Override
+        public void computeBatch(Layer input, int numSequences) {
+            throw new UnsupportedOperationException("Input layer only computes on input frames");
+        }
+
+        @Override
+        public void resetBatch() {
+            this.batchOutput = null; // the input frames belong to the caller
+        }
         /**
          * Initializes an input layer given the input dimension, sets layer index to 0 and creates a FloatMatrix of size inputDimension x 1
          * @param inputDimension
@@ -514,9 +761,19 @@ public class RNNetwork {
          */
         @Override
         public void compute(Layer input) {
-            FloatMatrix temp = this.weightMatrix.mmul(input.output);
-            temp.addi(biases);
-            this.output = this.getActivationFunction().apply(temp);
+            this.output = vector(this.output, this.weightMatrix.rows);
+            forward(input.output.data, this.output.data, 1);
+        }
+
+        @Override
+        public void computeBatch(Layer input, int numSequences) {
+            this.batchOutput = grow(this.batchOutput, numSequences * this.weightMatrix.rows);
+            forward(input.batchOutput, this.batchOutput, numSequences);
+        }
+
+        private void forward(float[] x, float[] y, int numSequences) {
+            mmul(this.weightMatrix, x, this.biases.data, y, numSequences, false);
+            applyRows(this.getActivationFunction(), y, this.weightMatrix.rows, numSequences);
         }
         
         
@@ -692,26 +949,54 @@ public class RNNetwork {
          */
         @Override
         public void compute(Layer input) {
-            //Temporary variable to calculate the updateGate, for input x and previous activation h, calculates updateW*x+updateU*h
-            FloatMatrix updateTemp = this.updateW.mmul(input.output);
-            updateTemp.addi(this.updateU.mmul(this.output));
-            updateTemp.addi(this.updateBias);
-            this.updateGate = this.updateActivation.apply(updateTemp);
-            // Temporary variable to calculate the resetGate, for input x and previous activation h, calculates resetW*x+resetU*h
-            FloatMatrix resetTemp = this.resetW.mmul(input.output);
-            resetTemp.addi(this.resetU.mmul(this.output));
-            resetTemp.addi(this.resetBias);
-            this.resetGate = this.resetActivation.apply(resetTemp);
-            // Temporary variable which holds the linear combination of input and hidden activation to calculate the candidate activation
-            FloatMatrix candidateActivation = this.hiddenU.mmul(this.resetGate.mul(this.output));
-            candidateActivation.addi(this.hiddenW.mmul(input.output));
-            candidateActivation.addi(this.hiddenBias);
-            // Temporary variable which holds the linear combination of input and candidate activation to calculate the final activation
-            FloatMatrix outputTemp = this.updateGate.mul(-1);
-            outputTemp.addi(1);
-            outputTemp.muli(this.activationFunction.apply(candidateActivation));
-            this.output = outputTemp.add(this.updateGate.mul(this.output));
+            final int n = this.hiddenU.rows;
+            this.output = vector(this.output, n);
+            this.updateGate = vector(this.updateGate, n);
+            this.resetGate = vector(this.resetGate, n);
+            this.candidate = grow(this.candidate, n);
+            this.resetHidden = grow(this.resetHidden, n);
+            forward(input.output.data, this.output.data, 1, this.updateGate.data, this.resetGate.data, this.candidate, this.resetHidden);
         }
+
+        @Override
+        public void computeBatch(Layer input, int numSequences) {
+            final int length = numSequences * this.hiddenU.rows;
+            this.batchOutput = grow(this.batchOutput, length);
+            this.batchUpdateGate = grow(this.batchUpdateGate, length);
+            this.batchResetGate = grow(this.batchResetGate, length);
+            this.batchCandidate = grow(this.batchCandidate, length);
+            this.batchResetHidden = grow(this.batchResetHidden, length);
+            forward(input.batchOutput, this.batchOutput, numSequences, this.batchUpdateGate, this.batchResetGate, this.batchCandidate, this.batchResetHidden);
+        }
+
+        /**
+         * Computes the new activation h of numSequences sequences in place from their inputs x and previous activations h
+         */
+        private void forward(float[] x, float[] h, int numSequences, float[] z, float[] r, float[] c, float[] rh) {
+            final int n = this.hiddenU.rows, length = numSequences * n;
+            // updateGate z = updateActivation(updateW*x+updateU*h+updateBias)
+            mmul(this.updateW, x, this.updateBias.data, z, numSequences, false);
+            mmul(this.updateU, h, null, z, numSequences, true);
+            applyRows(this.updateActivation, z, n, numSequences);
+            // resetGate r = resetActivation(resetW*x+resetU*h+resetBias)
+            mmul(this.resetW, x, this.resetBias.data, r, numSequences, false);
+            mmul(this.resetU, h, null, r, numSequences, true);
+            applyRows(this.resetActivation, r, n, numSequences);
+            // candidate activation c = activationFunction(hiddenW*x+hiddenU*(r.h)+hiddenBias)
+            for (int i = 0; i < length; i++) {
+                rh[i] = r[i] * h[i];
+            }
+            mmul(this.hiddenW, x, this.hiddenBias.data, c, numSequences, false);
+            mmul(this.hiddenU, rh, null, c, numSequences, true);
+            applyRows(this.activationFunction, c, n, numSequences);
+            // h = (1-z).c + z.h
+            for (int i = 0; i < length; i++) {
+                h[i] = ((1 - z[i]) * c[i]) + (z[i] * h[i]);
+            }
+        }
+
+        private float[] candidate, resetHidden; // scratch of compute
+        private float[] batchUpdateGate, batchResetGate, batchCandidate, batchResetHidden; // scratch of computeBatch
         
         @Override
         public void resetLayer() {
@@ -979,31 +1264,69 @@ public class RNNetwork {
         
         @Override
         public void compute(Layer input) {
-            FloatMatrix forgetTemp = this.getWf().mmul(input.output);
-            forgetTemp.addi(this.getUf().mmul(this.output));
-            forgetTemp.addi(this.getVf().mmul(this.memoryCell));
-            forgetTemp.addi(this.getBf());
-            this.forgetGate = this.getForgetGateActivation().apply(forgetTemp);
-            FloatMatrix inputTemp = this.getWi().mmul(input.output);
-            inputTemp.addi(this.getUi().mmul(this.output));
-            inputTemp.addi(this.getVi().mmul(this.memoryCell));
-            inputTemp.addi(this.getBi());
-            this.inputGate = this.getInputGateActivation().apply(inputTemp);
-            FloatMatrix newMemoryTemp = this.getWc().mmul(input.output);
-            newMemoryTemp.addi(this.getUc().mmul(this.output));
-            newMemoryTemp.addi(this.getBc());
-            newMemoryTemp = this.getNewMemoryActivation().apply(newMemoryTemp);
-            FloatMatrix memoryTemp = this.forgetGate.mul(this.memoryCell);
-            memoryTemp.addi(this.inputGate.mul(newMemoryTemp));
-            this.memoryCell = memoryTemp;
-            FloatMatrix outputGateTemp = this.getWo().mmul(input.output);
-            outputGateTemp.addi(this.getUo().mmul(this.output));
-            outputGateTemp.addi(this.getVo().mmul(this.memoryCell));
-            outputGateTemp.addi(this.getBo());
-            this.outputGate = this.getOutputGateActivation().apply(outputGateTemp);
-            this.output = this.outputGate.mul(this.getOutputActivation().apply(this.memoryCell));
+            final int n = this.Uo.rows;
+            this.output = vector(this.output, n);
+            this.memoryCell = vector(this.memoryCell, n);
+            this.forgetGate = vector(this.forgetGate, n);
+            this.inputGate = vector(this.inputGate, n);
+            this.outputGate = vector(this.outputGate, n);
+            this.newMemory = grow(this.newMemory, n);
+            forward(input.output.data, this.output.data, this.memoryCell.data, 1, this.forgetGate.data, this.inputGate.data, this.newMemory, this.outputGate.data);
         }
 
+        @Override
+        public void computeBatch(Layer input, int numSequences) {
+            final int length = numSequences * this.Uo.rows;
+            this.batchOutput = grow(this.batchOutput, length);
+            this.batchMemoryCell = grow(this.batchMemoryCell, length);
+            this.batchForgetGate = grow(this.batchForgetGate, length);
+            this.batchInputGate = grow(this.batchInputGate, length);
+            this.batchNewMemory = grow(this.batchNewMemory, length);
+            this.batchOutputGate = grow(this.batchOutputGate, length);
+            forward(input.batchOutput, this.batchOutput, this.batchMemoryCell, numSequences, this.batchForgetGate, this.batchInputGate, this.batchNewMemory, this.batchOutputGate);
+        }
+
+        @Override
+        public void resetBatch() {
+            super.resetBatch();
+            if (this.batchMemoryCell != null) {
+                Arrays.fill(this.batchMemoryCell, 0);
+            }
+        }
+
+        /**
+         * Computes the new activation h and memory cell m of numSequences sequences in place from their inputs x and previous h and m
+         */
+        private void forward(float[] x, float[] h, float[] m, int numSequences, float[] f, float[] i, float[] c, float[] o) {
+            final int n = this.Uo.rows, length = numSequences * n;
+            mmul(this.Wf, x, this.bf.data, f, numSequences, false);
+            mmul(this.Uf, h, null, f, numSequences, true);
+            mmul(this.Vf, m, null, f, numSequences, true);
+            applyRows(this.forgetGateActivation, f, n, numSequences);
+            mmul(this.Wi, x, this.bi.data, i, numSequences, false);
+            mmul(this.Ui, h, null, i, numSequences, true);
+            mmul(this.Vi, m, null, i, numSequences, true);
+            applyRows(this.inputGateActivation, i, n, numSequences);
+            mmul(this.Wc, x, this.bc.data, c, numSequences, false);
+            mmul(this.Uc, h, null, c, numSequences, true);
+            applyRows(this.newMemoryActivation, c, n, numSequences);
+            for (int k = 0; k < length; k++) {
+                m[k] = (f[k] * m[k]) + (i[k] * c[k]);
+            }
+            mmul(this.Wo, x, this.bo.data, o, numSequences, false);
+            mmul(this.Uo, h, null, o, numSequences, true);
+            mmul(this.Vo, m, null, o, numSequences, true);
+            applyRows(this.outputGateActivation, o, n, numSequences);
+            System.arraycopy(m, 0, c, 0, length); // the output activation must not change the memory cell
+            applyRows(this.outputActivation, c, n, numSequences);
+            for (int k = 0; k < length; k++) {
+                h[k] = o[k] * c[k];
+            }
+        }
+
+        private float[] newMemory; // scratch of compute
+        private float[] batchMemoryCell, batchForgetGate, batchInputGate, batchNewMemory, batchOutputGate; // memory cells and scratch of computeBatch
+
         @Override
         public void computeFromInput(FloatMatrix input) {
             throw new UnsupportedOperationException("Not supported on any layer but the input layer"); //To change body of generated methods, choose Tools | Templates.
@@ -1366,9 +1689,19 @@ public class RNNetwork {
          */
         @Override
         public void compute(Layer input) {
-            FloatMatrix tempOutput = this.weightMatrix.mmul(input.output);
-            tempOutput.addi(biases);
-            this.output = this.activationFunction.apply(tempOutput);
+            this.output = vector(this.output, this.weightMatrix.rows);
+            forward(input.output.data, this.output.data, 1);
+        }
+
+        @Override
+        public void computeBatch(Layer input, int numSequences) {
+            this.batchOutput = grow(this.batchOutput, numSequences * this.weightMatrix.rows);
+            forward(input.batchOutput, this.batchOutput, numSequences);
+        }
+
+        private void forward(float[] x, float[] y, int numSequences) {
+            mmul(this.weightMatrix, x, this.biases.data, y, numSequences, false);
+            applyRows(this.activationFunction, y, this.weightMatrix.rows, numSequences);
         }
 
         /**
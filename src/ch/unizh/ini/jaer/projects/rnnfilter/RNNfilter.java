@@ -156,6 +156,7 @@ public class RNNfilter extends EventFilter2D implements FrameAnnotater, Property
      * Array to store the binned data, this has the data from the latest bin
      */
     private int[] binnedData = new int[this.getnChannels()];
+    private float[] networkInput = null; // binnedData converted to float for the network, reused for every frame
     /**
      * When not using continuous live recording, this array list holds the list
      * of binned data at all previous times, which is then given to an RNN
@@ -613,7 +614,8 @@ public class RNNfilter extends EventFilter2D implements FrameAnnotater, Property
         FloatMatrix tempOutput;
         tempOutput = FloatMatrix.zeros(this.getnChannels());
         for (int[] currentBinnedData : this.binnedDataList) {
-            tempOutput = this.rnnetwork.output(RNNfilter.intToFloat(currentBinnedData));
+            this.networkInput = RNNfilter.intToFloat(currentBinnedData, this.networkInput);
+            tempOutput = this.rnnetwork.output(this.networkInput);
         }
         this.networkOutput = RNNfilter.DMToFloat(tempOutput);
         this.label = RNNfilter.indexOfMaxValue(this.networkOutput);
@@ -670,7 +672,8 @@ public class RNNfilter extends EventFilter2D implements FrameAnnotater, Property
      */
     public void processRNN(int timeStamp) {
         long now = System.nanoTime();
-        FloatMatrix tempOutput = this.rnnetwork.output(RNNfilter.intToFloat(this.binnedData));
+        this.networkInput = RNNfilter.intToFloat(this.binnedData, this.networkInput);
+        FloatMatrix tempOutput = this.rnnetwork.output(this.networkInput);
         long dt = System.nanoTime() - now;
         // log.log(Level.INFO, String.format("%d nanoseconds for one frame computation", dt));
         this.networkOutput = RNNfilter.DMToFloat(tempOutput);
@@ -692,7 +695,8 @@ public class RNNfilter extends EventFilter2D implements FrameAnnotater, Property
         // if the present timeStamp is very far from the last time RNN was processed, that means an appropriate number
         // of zero bins have to be sent to the network
         while (timeStamp > (this.lastBinCompleteTime + this.getBinTimeLength())) {
-            tempOutput = this.rnnetwork.output(RNNfilter.intToFloat(this.binnedData));
+            this.networkInput = RNNfilter.intToFloat(this.binnedData, this.networkInput);
+            tempOutput = this.rnnetwork.output(this.networkInput);
             this.networkOutput = RNNfilter.DMToFloat(tempOutput);
             this.rnnOutputList.add(this.networkOutput);
             this.label = RNNfilter.indexOfMaxValue(this.networkOutput);
@@ -721,7 +725,21 @@ public class RNNfilter extends EventFilter2D implements FrameAnnotater, Property
      * @return floatArray - 1 dimensional float array
      */
     public static float[] intToFloat(int[] intArray) {
-        float[] floatArray = new float[intArray.length];
+        return intToFloat(intArray, null);
+    }
+
+    /**
+     * Copies int array to a float array, reusing floatArray if it has the
+     * same length
+     *
+     * @param intArray - 1 dimensional int array
+     * @param floatArray - 1 dimensional float array to reuse, or null
+     * @return floatArray, or a new array if it was null or of another length
+     */
+    public static float[] intToFloat(int[] intArray, float[] floatArray) {
+        if ((floatArray == null) || (floatArray.length != intArray.length)) {
+            floatArray = new float[intArray.length];
+        }
         for (int i = 0; i < intArray.length; i++) {
             floatArray[i] = intArray[i];
         }
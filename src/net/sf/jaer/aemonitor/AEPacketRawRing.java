@@ -0,0 +1,244 @@
+package net.sf.jaer.aemonitor;
+
+/**
+ * Lock-free single producer, single consumer ring of AEPacketRaw that hands
+ * captured events from the acquisition thread (e.g. the USB reader of an
+ * AEMonitorInterface) to the consumer thread (e.g. AEViewer.run()). It
+ * replaces the double buffering of AEPacketRawPool, where both threads acquire
+ * the monitor of the pool to swap the two buffers.
+ * <p>
+ * The producer fills writeBuffer() and calls publish() when it has finished a
+ * chunk of data, e.g. after each USB transfer. Published packets are then
+ * visible to the consumer, which calls poll() to get the oldest published
+ * packet or pollAll() to get all published packets at once. Neither call
+ * blocks; a packet returned to the consumer stays valid until its next call.
+ * <p>
+ * If the consumer falls behind so that all slots are published, publish()
+ * fails and the producer keeps appending to its write buffer; these overruns
+ * are counted by getOverrunCount(). Events are only lost if the write buffer
+ * then also fills up, in which case the producer sets its overrunOccuredFlag,
+ * which is passed on to the packet returned by pollAll().
+ * <p>
+ * Only the producer may call writeBuffer() and publish(), and only the
+ * consumer may call poll() and pollAll(). reset(), allocateMemory() and
+ * setDepth() may only be called when the producer is not writing, e.g. while
+ * holding a lock that the producer also holds while writing, but need not
+ * exclude the consumer: allocateMemory() installs a new set of slots that the
+ * consumer switches to at its next call, and reset() only asks the consumer
+ * to discard the published packets at its next call, so that the read index
+ * is only ever written by the consumer.
+ *
+ * @see AEPacketRawPool
+ */
+public class AEPacketRawRing {
+
+    /**
+     * Default number of packets in the ring
+     */
+    public static final int DEFAULT_DEPTH = 8;
+    private final AEMonitorInterface outer;
+    private int depth;
+    private volatile Slots ring; // the slots the producer writes, replaced by allocateMemory()
+    private Slots consumerRing = null; // the slots the consumer reads, switched to ring at its next call
+    private boolean holding = false; // consumer holds slot readIndex of consumerRing, returned by poll()
+    private final AEPacketRaw drained = new AEPacketRaw(); // used by pollAll() to concatenate slots
+    private volatile long overrunCount = 0;
+
+    /**
+     * The packets of the ring and the indices into them.
+     */
+    private static final class Slots {
+
+        final AEPacketRaw[] packets;
+        // packets readIndex..writeIndex-1 are published, packet writeIndex is being written by the producer
+        volatile long writeIndex = 0, readIndex = 0;
+        volatile long discardIndex = 0; // set by reset(), the consumer skips packets before it
+
+        Slots(AEPacketRaw[] packets) {
+            this.packets = packets;
+        }
+
+        AEPacketRaw get(long index) {
+            return packets[(int) (index % packets.length)];
+        }
+    }
+
+    /**
+     * Constructs a new ring.
+     *
+     * @param outer the interface, used for getAEBufferSize()
+     * @param depth the number of packets, at least 2
+     */
+    public AEPacketRawRing(AEMonitorInterface outer, int depth) {
+        this.outer = outer;
+        this.depth = Math.max(2, depth);
+        allocateMemory();
+    }
+
+    /**
+     * @return buffer that the producer writes to.
+     */
+    public final AEPacketRaw writeBuffer() {
+        final Slots s = ring;
+        return s.get(s.writeIndex);
+    }
+
+    /**
+     * Makes the write buffer visible to the consumer and starts a new, empty
+     * write buffer. Called by the producer. Nothing happens if the write
+     * buffer is empty.
+     *
+     * @return true if the write buffer was published, false if it was empty
+     * or all slots are full, in which case the producer should continue to
+     * append to the same write buffer.
+     */
+    public final boolean publish() {
+        final Slots s = ring;
+        final long w = s.writeIndex;
+        final AEPacketRaw current = s.get(w);
+        if ((current.getNumEvents() == 0) && !current.overrunOccuredFlag) {
+            return false;
+        }
+        if (((w + 1) - s.readIndex) >= s.packets.length) { // the consumer has not yet released the next slot
+            overrunCount++;
+            return false;
+        }
+        final AEPacketRaw next = s.get(w + 1);
+        next.clear();
+        next.overrunOccuredFlag = false;
+        s.writeIndex = w + 1; // volatile write publishes current to the consumer
+        return true;
+    }
+
+    /**
+     * Returns the oldest published packet, without blocking. Called by the
+     * consumer. The packet that was returned by the previous call is
+     * released.
+     *
+     * @return the packet, or null if none is published
+     */
+    public final AEPacketRaw poll() {
+        final Slots s = consumerSlots();
+        release(s);
+        if (s.readIndex == s.writeIndex) {
+            return null;
+        }
+        holding = true;
+        return s.get(s.readIndex);
+    }
+
+    /**
+     * Returns all published packets as one packet, without blocking. Called
+     * by the consumer. If more than one packet is published, the addresses
+     * and timestamps are concatenated into a packet owned by the ring. The
+     * packet that was returned by the previous call is released.
+     *
+     * @return the events published since the last call; an empty packet if
+     * there are none
+     */
+    public final AEPacketRaw pollAll() {
+        final Slots s = consumerSlots();
+        release(s);
+        final long w = s.writeIndex;
+        long r = s.readIndex;
+        if ((w - r) == 1) {
+            return poll();
+        }
+        drained.clear();
+        drained.overrunOccuredFlag = false;
+        int count = 0;
+        for (; r < w; r++) {
+            final AEPacketRaw slot = s.get(r);
+            final int n = slot.getNumEvents();
+            drained.ensureCapacity(count + n);
+            System.arraycopy(slot.getAddresses(), 0, drained.getAddresses(), count, n);
+            System.arraycopy(slot.getTimestamps(), 0, drained.getTimestamps(), count, n);
+            drained.overrunOccuredFlag |= slot.overrunOccuredFlag;
+            count += n;
+        }
+        drained.setNumEvents(count);
+        s.readIndex = w; // release the slots to the producer
+        return drained;
+    }
+
+    /**
+     * Switches the consumer to the slots installed by allocateMemory() and
+     * acts on reset(). Called by the consumer.
+     *
+     * @return the slots to read
+     */
+    private Slots consumerSlots() {
+        final Slots s = ring;
+        if (s != consumerRing) { // the old slots are no longer written
+            consumerRing = s;
+            holding = false;
+        }
+        final long d = s.discardIndex;
+        if (s.readIndex < d) { // discard the packets published before reset(), including the one held
+            holding = false;
+            s.readIndex = d;
+        }
+        return s;
+    }
+
+    private void release(Slots s) {
+        if (holding) {
+            holding = false;
+            s.readIndex = s.readIndex + 1;
+        }
+    }
+
+    /**
+     * Discards all events and starts over with an empty write buffer. The
+     * packets published so far are discarded by the consumer at its next
+     * call.
+     */
+    public final void reset() {
+        final Slots s = ring;
+        final AEPacketRaw current = s.get(s.writeIndex);
+        current.clear();
+        current.overrunOccuredFlag = false;
+        s.discardIndex = s.writeIndex;
+    }
+
+    /**
+     * Allocates the packets. Each gets an initial capacity such that all
+     * packets together hold twice getAEBufferSize() of the interface, like the
+     * double buffer of AEPacketRawPool; packets grow if needed.
+     */
+    public final void allocateMemory() {
+        final AEPacketRaw[] newSlots = new AEPacketRaw[depth];
+        final int capacity = Math.max(1000, (2 * outer.getAEBufferSize()) / depth);
+        for (int i = 0; i < newSlots.length; i++) {
+            newSlots[i] = new AEPacketRaw();
+            newSlots[i].ensureCapacity(capacity);
+        }
+        ring = new Slots(newSlots);
+    }
+
+    /**
+     * @return the number of packets in the ring
+     */
+    public final int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Sets the number of packets in the ring and reallocates them, discarding
+     * all events.
+     *
+     * @param depth the number of packets, at least 2
+     */
+    public final void setDepth(int depth) {
+        this.depth = Math.max(2, depth);
+        allocateMemory();
+    }
+
+    /**
+     * @return the number of times publish() failed because the consumer had
+     * not released any slot
+     */
+    public final long getOverrunCount() {
+        return overrunCount;
+    }
+}
@@ -72,6 +72,12 @@ public class BasicEvent implements EventInterface<BasicEvent>, BasicEventInterfa
      */
     public byte source;
 
+    /**
+     * True if this event is the reused flyweight of a ColumnarEventPacket,
+     * so that EventPacket copies it instead of keeping the reference.
+     */
+    transient boolean flyweight = false;
+
     /** Utility Comparator that compares BasicEvent by timestamp */
     final public class TimeStampComparator<E extends BasicEvent> implements Comparator<E> {
 
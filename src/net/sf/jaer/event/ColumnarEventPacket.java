@@ -0,0 +1,960 @@
+/*
+ * ColumnarEventPacket.java
+ *
+ * Structure-of-arrays EventPacket.
+ */
+package net.sf.jaer.event;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import eu.seebetter.ini.chips.davis.imu.IMUSample;
+import net.sf.jaer.event.ApsDvsEvent.ColorFilter;
+import net.sf.jaer.event.ApsDvsEvent.ReadoutType;
+import net.sf.jaer.event.PolarityEvent.Polarity;
+
+/**
+ * An EventPacket that stores its events as primitive columns (structure of
+ * arrays) rather than as an array of pre-allocated event objects. Packets of
+ * this type are opt-in; construct one instead of a plain EventPacket or
+ * ApsDvsEventPacket in an event extractor or filter to use it.
+ * <p>
+ * Each event field lives in its own array: timestamp, address, x, y, source
+ * and a flags byte (filteredOut and special) for all events, plus
+ * <code>type</code> for TypedEvent, <code>polarity</code> for PolarityEvent
+ * and <code>adcSample</code>, <code>readoutType</code>,
+ * <code>colorFilter</code> and <code>imuSample</code> for ApsDvsEvent. Fields
+ * of other event subclasses are not stored.
+ * <p>
+ * Existing filters that iterate with <code>for(BasicEvent e:in)</code> or
+ * write with {@link #outputIterator()} still work: the iterators hand out a
+ * single reused "flyweight" event object that is loaded from the columns when
+ * the iterator advances and stored back to the columns when it advances again
+ * (or when {@link #flush()} is called). Therefore <b>references to events
+ * obtained from this packet are only valid until the iterator advances</b>;
+ * filters that keep references to events, or that access
+ * {@link #elementData} directly, must copy the event or use an ordinary
+ * EventPacket. Writing a flyweight to an ordinary EventPacket with
+ * writeToNextOutput copies it. {@link #getElementData()} returns copies of
+ * the events.
+ * <p>
+ * New filters can avoid the per-event object overhead entirely by iterating
+ * the primitive columns, e.g.
+ * <pre>
+ * final int[] ts = in.getTimestampColumn();
+ * final short[] xs = in.getXColumn(), ys = in.getYColumn();
+ * for (int i = 0; i &lt; in.getSize(); i++) {
+ *     if (in.isFilteredOut(i)) continue;
+ *     ... ts[i], xs[i], ys[i] ...
+ * }
+ * </pre> The column arrays are replaced when the packet capacity grows, so
+ * they should be obtained again for every packet. Obtaining a column flushes
+ * and unbinds the flyweights, so changes to events obtained before are not
+ * stored afterwards.
+ *
+ * @param <E> the class of the (flyweight) events in this packet
+ * @see EventPacket
+ * @see ApsDvsEventPacket
+ */
+public class ColumnarEventPacket<E extends BasicEvent> extends EventPacket<E> {
+
+    /**
+     * Bit in the flags column marking an event as filtered out
+     */
+    public static final byte FLAG_FILTERED_OUT = 1;
+    /**
+     * Bit in the flags column marking an event as special
+     */
+    public static final byte FLAG_SPECIAL = 2;
+
+    private static final ReadoutType[] READOUT_TYPES = ReadoutType.values();
+    private static final ColorFilter[] COLOR_FILTERS = ColorFilter.values();
+
+    // NOTE: fields must not have initializers because initializeEvents() is called from the superclass constructor
+    private int columnCapacity;
+    private int[] timestamp;
+    private int[] address;
+    private short[] x;
+    private short[] y;
+    private byte[] source;
+    private byte[] flags;
+    private byte[] type; // null unless events are TypedEvent
+    private byte[] polarity; // null unless events are PolarityEvent, 1 for On, 0 for Off
+    private int[] adcSample; // following are null unless events are ApsDvsEvent
+    private byte[] readoutType;
+    private byte[] colorFilter;
+    private IMUSample[] imuSample;
+
+    private boolean typed, polarized, aps;
+
+    /**
+     * Flyweights handed out by the input iterator, the output iterator and
+     * getEvent(), and the index each is currently bound to, or -1 if unbound.
+     */
+    private E inputFlyweight, outputFlyweight, accessFlyweight;
+    private int inputFlyweightIndex, outputFlyweightIndex, accessFlyweightIndex;
+    private ColumnOutItr columnOutputIterator;
+    private E[] elementCopies; // returned by getElementData()
+
+    /**
+     * Constructs a new ColumnarEventPacket holding BasicEvent.
+     */
+    public ColumnarEventPacket() {
+        this(BasicEvent.class);
+    }
+
+    /**
+     * Constructs a new ColumnarEventPacket holding the given event class.
+     *
+     * @param eventClass the event class, which must have a public no-arg
+     * constructor
+     */
+    public ColumnarEventPacket(final Class<? extends BasicEvent> eventClass) {
+        super(eventClass);
+    }
+
+    /**
+     * Allocates the columns with DEFAULT_INITIAL_CAPACITY and constructs the
+     * flyweight events. No per-event objects are allocated.
+     */
+    @Override
+    protected void initializeEvents() {
+        final Class<E> c = getEventClass();
+        typed = TypedEvent.class.isAssignableFrom(c);
+        polarized = PolarityEvent.class.isAssignableFrom(c);
+        aps = ApsDvsEvent.class.isAssignableFrom(c);
+        columnCapacity = 0;
+        ensureColumnCapacity(DEFAULT_INITIAL_CAPACITY);
+        try {
+            inputFlyweight = eventConstructor.newInstance();
+            outputFlyweight = eventConstructor.newInstance();
+            accessFlyweight = eventConstructor.newInstance();
+            inputFlyweight.flyweight = true;
+            outputFlyweight.flyweight = true;
+            accessFlyweight.flyweight = true;
+        } catch (final Exception e) {
+            log.warning("could not construct flyweight events for " + c + ": " + e);
+        }
+        setEventPrototype(inputFlyweight);
+        elementData = (E[]) Array.newInstance(c, 0); // direct element access is not supported, fail fast
+        unbindFlyweights();
+        size = 0;
+    }
+
+    private void unbindFlyweights() {
+        inputFlyweightIndex = -1;
+        outputFlyweightIndex = -1;
+        accessFlyweightIndex = -1;
+    }
+
+    /**
+     * Grows the columns to hold at least n events, retaining existing events.
+     */
+    private void ensureColumnCapacity(final int n) {
+        if (n <= columnCapacity) {
+            return;
+        }
+        int ncapacity = columnCapacity == 0 ? n : columnCapacity;
+        while (ncapacity < n) {
+            ncapacity *= 2;
+        }
+        if (columnCapacity > 0) {
+            log.info("enlarging capacity of " + this + " to " + ncapacity + " events");
+        }
+        try {
+            timestamp = grow(timestamp, ncapacity);
+            address = grow(address, ncapacity);
+            x = grow(x, ncapacity);
+            y = grow(y, ncapacity);
+            source = grow(source, ncapacity);
+            flags = grow(flags, ncapacity);
+            if (typed) {
+                type = grow(type, ncapacity);
+            }
+            if (polarized) {
+                polarity = grow(polarity, ncapacity);
+            }
+            if (aps) {
+                adcSample = grow(adcSample, ncapacity);
+                readoutType = grow(readoutType, ncapacity);
+                colorFilter = grow(colorFilter, ncapacity);
+                imuSample = imuSample == null ? new IMUSample[ncapacity] : Arrays.copyOf(imuSample, ncapacity);
+            }
+            columnCapacity = ncapacity;
+        } catch (final OutOfMemoryError e) {
+            throw new ArrayIndexOutOfBoundsException(e.toString() + ":could not enlarge capacity from " + columnCapacity);
+        }
+    }
+
+    private static int[] grow(final int[] a, final int n) {
+        return a == null ? new int[n] : Arrays.copyOf(a, n);
+    }
+
+    private static short[] grow(final short[] a, final int n) {
+        return a == null ? new short[n] : Arrays.copyOf(a, n);
+    }
+
+    private static byte[] grow(final byte[] a, final int n) {
+        return a == null ? new byte[n] : Arrays.copyOf(a, n);
+    }
+
+    /**
+     * Loads event k from the columns into the event object e.
+     */
+    private void load(final E e, final int k) {
+        final byte f = flags[k];
+        e.setFilteredOut((f & FLAG_FILTERED_OUT) != 0);
+        e.setSpecial((f & FLAG_SPECIAL) != 0); // modifies address, so set address afterwards
+        e.timestamp = timestamp[k];
+        e.address = address[k];
+        e.x = x[k];
+        e.y = y[k];
+        e.source = source[k];
+        if (typed) {
+            ((TypedEvent) e).type = type[k];
+        }
+        if (polarized) {
+            ((PolarityEvent) e).polarity = polarity[k] == 0 ? Polarity.Off : Polarity.On;
+        }
+        if (aps) {
+            final ApsDvsEvent a = (ApsDvsEvent) e;
+            a.setAdcSample(adcSample[k]);
+            a.setImuSample(imuSample[k]); // modifies readoutType, so set it afterwards
+            a.setReadoutType(READOUT_TYPES[readoutType[k]]);
+            a.setColorFilter(COLOR_FILTERS[colorFilter[k]]);
+        }
+    }
+
+    /**
+     * Stores the fields of event e to slot k of the columns. e can be any
+     * event; fields it does not have are left unchanged.
+     */
+    private void store(final BasicEvent e, final int k) {
+        flags[k] = (byte) ((e.isFilteredOut() ? FLAG_FILTERED_OUT : 0) | (e.isSpecial() ? FLAG_SPECIAL : 0));
+        timestamp[k] = e.timestamp;
+        address[k] = e.address;
+        x[k] = e.x;
+        y[k] = e.y;
+        source[k] = e.source;
+        if (typed && (e instanceof TypedEvent)) {
+            type[k] = ((TypedEvent) e).type;
+        }
+        if (polarized && (e instanceof PolarityEvent)) {
+            polarity[k] = (byte) (((PolarityEvent) e).polarity == Polarity.Off ? 0 : 1);
+        }
+        if (aps && (e instanceof ApsDvsEvent)) {
+            final ApsDvsEvent a = (ApsDvsEvent) e;
+            adcSample[k] = a.getAdcSample();
+            readoutType[k] = (byte) a.getReadoutType().ordinal();
+            colorFilter[k] = (byte) a.getColorFilter().ordinal();
+            imuSample[k] = a.getImuSample();
+        }
+    }
+
+    /**
+     * Stores any modifications made to the flyweight events handed out by the
+     * iterators or getEvent() back to the columns and unbinds the flyweights,
+     * so that later changes to them are not stored. Called automatically by
+     * the column getters; flushing again costs nothing until an iterator or
+     * getEvent() binds a flyweight again.
+     */
+    public void flush() {
+        if (inputFlyweightIndex >= 0) {
+            store(inputFlyweight, inputFlyweightIndex);
+        }
+        if (accessFlyweightIndex >= 0) {
+            store(accessFlyweight, accessFlyweightIndex);
+        }
+        if (outputFlyweightIndex >= 0) {
+            store(outputFlyweight, outputFlyweightIndex);
+        }
+        unbindFlyweights();
+    }
+
+    /**
+     * Stores the flyweights that are bound to event k, which stay bound.
+     */
+    private void flush(final int k) {
+        if (inputFlyweightIndex == k) {
+            store(inputFlyweight, k);
+        }
+        if (accessFlyweightIndex == k) {
+            store(accessFlyweight, k);
+        }
+        if (outputFlyweightIndex == k) {
+            store(outputFlyweight, k);
+        }
+    }
+
+    @Override
+    public void clear() {
+        flush();
+        super.clear();
+    }
+
+    /**
+     * Sets the size, growing the columns if needed. Events beyond the old
+     * size keep the values left in the columns.
+     *
+     * @param n the new size
+     */
+    @Override
+    public void setSize(final int n) {
+        flush();
+        ensureColumnCapacity(n);
+        size = n;
+    }
+
+    @Override
+    public EventPacket<E> constructNewPacket() {
+        return new ColumnarEventPacket<>(getEventClass());
+    }
+
+    @Override
+    public E getFirstEvent() {
+        if (size == 0) {
+            return null;
+        }
+        return getEvent(0);
+    }
+
+    @Override
+    public E getLastEvent() {
+        if (size == 0) {
+            return null;
+        }
+        return getEvent(size - 1);
+    }
+
+    /**
+     * Returns the k'th event for getEvent as a flyweight that stays valid
+     * until the next call of getEvent (or getFirstEvent/getLastEvent).
+     */
+    @Override
+    protected E eventAt(final int k) {
+        if (accessFlyweightIndex >= 0) {
+            store(accessFlyweight, accessFlyweightIndex);
+        }
+        flush(k);
+        load(accessFlyweight, k);
+        accessFlyweightIndex = k;
+        return accessFlyweight;
+    }
+
+    @Override
+    public int getFirstTimestamp() {
+        flush(0);
+        return timestamp[0];
+    }
+
+    @Override
+    public int getLastTimestamp() {
+        if (size == 0) {
+            return lastTimestamp;
+        }
+        flush(size - 1);
+        lastTimestamp = timestamp[size - 1];
+        return lastTimestamp;
+    }
+
+    /**
+     * Returns after initializing the iterator over input events. For
+     * ApsDvsEvent packets, like ApsDvsEventPacket, this iterator returns only
+     * the DVS events; use {@link #fullIterator()} for all events.
+     *
+     * @return an iterator that can iterate over the events that are NOT
+     * filtered out.
+     */
+    @Override
+    public Iterator<E> inputIterator() {
+        return columnIterator(aps);
+    }
+
+    /**
+     * Returns an iterator over all events including APS and IMU samples.
+     *
+     * @return the iterator
+     */
+    public Iterator<E> fullIterator() {
+        return columnIterator(false);
+    }
+
+    private Iterator<E> columnIterator(final boolean dvsOnly) {
+        flush();
+        inputFlyweightIndex = -1;
+        if (!(inputIterator instanceof ColumnarEventPacket.ColumnInItr)) {
+            inputIterator = new ColumnInItr();
+        } else {
+            inputIterator.reset();
+        }
+        ((ColumnInItr) inputIterator).dvsOnly = dvsOnly;
+        filteredOutCount = 0;
+        return inputIterator;
+    }
+
+    @Override
+    protected OutputEventIterator<E> resetOutputIterator() {
+        if (columnOutputIterator == null) {
+            columnOutputIterator = new ColumnOutItr();
+        }
+        columnOutputIterator.reset();
+        return columnOutputIterator;
+    }
+
+    @Override
+    public OutputEventIterator<E> getOutputIterator() {
+        if (columnOutputIterator == null) {
+            columnOutputIterator = new ColumnOutItr();
+        }
+        return columnOutputIterator;
+    }
+
+    /**
+     * Iterates over the columns using the input flyweight. The flyweight is
+     * stored back before it is loaded with the next event, so in-place changes
+     * like setFilteredOut(true) are retained.
+     */
+    public class ColumnInItr extends InItr {
+
+        /**
+         * Skip non-DVS (APS and IMU) events
+         */
+        protected boolean dvsOnly;
+
+        protected ColumnInItr() {
+            super();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (inputFlyweightIndex >= 0) {
+                store(inputFlyweight, inputFlyweightIndex);
+                inputFlyweightIndex = -1;
+            }
+            final int dvs = ReadoutType.DVS.ordinal();
+            while ((cursor < size)
+                    && (((flags[cursor] & FLAG_FILTERED_OUT) != 0) || (dvsOnly && readoutType[cursor] != dvs))) {
+                filteredOutCount++;
+                cursor++;
+            }
+            return cursor < size;
+        }
+
+        @Override
+        public E next() {
+            if (inputFlyweightIndex >= 0) {
+                store(inputFlyweight, inputFlyweightIndex);
+            }
+            load(inputFlyweight, cursor);
+            inputFlyweightIndex = cursor++;
+            return inputFlyweight;
+        }
+
+        /**
+         * Removes the last event returned by next() by shifting the following
+         * events down.
+         */
+        @Override
+        public void remove() {
+            flush();
+            removeRange(cursor - 1, cursor);
+            cursor--;
+        }
+
+        @Override
+        public String toString() {
+            return "ColumnInItr cursor=" + cursor + " dvsOnly=" + dvsOnly + " for packet with size=" + size + " and capacity=" + columnCapacity;
+        }
+    }
+
+    /**
+     * Writes to the columns using the output flyweight. The flyweight is
+     * stored to its slot when the next output is obtained, or on flush().
+     */
+    final public class ColumnOutItr implements OutputEventIterator<E> {
+
+        @Override
+        public E nextOutput() {
+            if (outputFlyweightIndex >= 0) {
+                store(outputFlyweight, outputFlyweightIndex);
+            }
+            ensureColumnCapacity(size + 1);
+            outputFlyweight.setFilteredOut(false);
+            outputFlyweightIndex = size++;
+            return outputFlyweight;
+        }
+
+        /**
+         * Copies the fields of event to the next output slot. Unlike
+         * EventPacket, the reference itself is not retained.
+         *
+         * @param event the event to copy
+         */
+        @Override
+        public void writeToNextOutput(final E event) {
+            if (outputFlyweightIndex >= 0) {
+                store(outputFlyweight, outputFlyweightIndex);
+                outputFlyweightIndex = -1;
+            }
+            ensureColumnCapacity(size + 1);
+            event.setFilteredOut(false);
+            store(event, size++);
+        }
+
+        /**
+         * Sets the packet size to zero, without changing capacity.
+         */
+        public void reset() {
+            outputFlyweightIndex = -1;
+            size = 0;
+        }
+
+        @Override
+        public String toString() {
+            return "ColumnOutItr with size/cursor=" + size + " and capacity=" + columnCapacity;
+        }
+    }
+
+    private void removeRange(final int from, final int to) {
+        final int n = size - to;
+        System.arraycopy(timestamp, to, timestamp, from, n);
+        System.arraycopy(address, to, address, from, n);
+        System.arraycopy(x, to, x, from, n);
+        System.arraycopy(y, to, y, from, n);
+        System.arraycopy(source, to, source, from, n);
+        System.arraycopy(flags, to, flags, from, n);
+        if (typed) {
+            System.arraycopy(type, to, type, from, n);
+        }
+        if (polarized) {
+            System.arraycopy(polarity, to, polarity, from, n);
+        }
+        if (aps) {
+            System.arraycopy(adcSample, to, adcSample, from, n);
+            System.arraycopy(readoutType, to, readoutType, from, n);
+            System.arraycopy(colorFilter, to, colorFilter, from, n);
+            System.arraycopy(imuSample, to, imuSample, from, n);
+        }
+        size -= to - from;
+    }
+
+    /**
+     * Sorts the events by ascending timestamp. The sort is stable and works on
+     * the primitive columns.
+     */
+    @Override
+    public void sortByTimeStamp() {
+        if (size == 0) {
+            return;
+        }
+        flush();
+        final int n = size;
+        final long[] keys = new long[n];
+        boolean sorted = true;
+        for (int i = 0; i < n; i++) {
+            keys[i] = ((long) timestamp[i] << 32) | i;
+            if (i > 0 && timestamp[i] < timestamp[i - 1]) {
+                sorted = false;
+            }
+        }
+        if (sorted) {
+            return;
+        }
+        Arrays.sort(keys);
+        final int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = (int) keys[i];
+        }
+        timestamp = permute(timestamp, order);
+        address = permute(address, order);
+        x = permute(x, order);
+        y = permute(y, order);
+        source = permute(source, order);
+        flags = permute(flags, order);
+        if (typed) {
+            type = permute(type, order);
+        }
+        if (polarized) {
+            polarity = permute(polarity, order);
+        }
+        if (aps) {
+            adcSample = permute(adcSample, order);
+            readoutType = permute(readoutType, order);
+            colorFilter = permute(colorFilter, order);
+            final IMUSample[] s = new IMUSample[imuSample.length];
+            for (int i = 0; i < order.length; i++) {
+                s[i] = imuSample[order[i]];
+            }
+            imuSample = s;
+        }
+    }
+
+    private static int[] permute(final int[] a, final int[] order) {
+        final int[] r = new int[a.length];
+        for (int i = 0; i < order.length; i++) {
+            r[i] = a[order[i]];
+        }
+        return r;
+    }
+
+    private static short[] permute(final short[] a, final int[] order) {
+        final short[] r = new short[a.length];
+        for (int i = 0; i < order.length; i++) {
+            r[i] = a[order[i]];
+        }
+        return r;
+    }
+
+    private static byte[] permute(final byte[] a, final int[] order) {
+        final byte[] r = new byte[a.length];
+        for (int i = 0; i < order.length; i++) {
+            r[i] = a[order[i]];
+        }
+        return r;
+    }
+
+    /**
+     * Ensures packet has room for n events. The original events are retained.
+     *
+     * @param n capacity
+     */
+    @Override
+    public void allocate(final int n) {
+        ensureColumnCapacity(n);
+    }
+
+    /**
+     * Appends copies of the events of another packet. Since this packet holds
+     * no event objects, the event fields are copied rather than the
+     * references. Copying from another ColumnarEventPacket of the same event
+     * class copies the columns directly.
+     *
+     * @param packet EventPacket to be added
+     */
+    @Override
+    public void appendCopyOfEventReferences(final EventPacket<E> packet) {
+        if (packet.getEventClass() != getEventClass()) {
+            log.warning("Trying to merge packets that contain different events types");
+        }
+        flush();
+        final int n = packet.getSize();
+        ensureColumnCapacity(size + n);
+        if (packet instanceof ColumnarEventPacket && packet.getEventClass() == getEventClass()) {
+            final ColumnarEventPacket<E> p = (ColumnarEventPacket<E>) packet;
+            p.flush();
+            System.arraycopy(p.timestamp, 0, timestamp, size, n);
+            System.arraycopy(p.address, 0, address, size, n);
+            System.arraycopy(p.x, 0, x, size, n);
+            System.arraycopy(p.y, 0, y, size, n);
+            System.arraycopy(p.source, 0, source, size, n);
+            System.arraycopy(p.flags, 0, flags, size, n);
+            if (typed) {
+                System.arraycopy(p.type, 0, type, size, n);
+            }
+            if (polarized) {
+                System.arraycopy(p.polarity, 0, polarity, size, n);
+            }
+            if (aps) {
+                System.arraycopy(p.adcSample, 0, adcSample, size, n);
+                System.arraycopy(p.readoutType, 0, readoutType, size, n);
+                System.arraycopy(p.colorFilter, 0, colorFilter, size, n);
+                System.arraycopy(p.imuSample, 0, imuSample, size, n);
+            }
+            size += n;
+        } else {
+            for (int i = 0; i < n; i++) {
+                store(packet.getEvent(i), size++);
+            }
+        }
+    }
+
+    /**
+     * Appends a copy of the event.
+     *
+     * @param event the event to be copied from.
+     */
+    @Override
+    public void appendCopyOfEvent(final E event) {
+        ensureColumnCapacity(size + 1);
+        event.setFilteredOut(false);
+        store(event, size++);
+    }
+
+    /**
+     * Appends a new event with the given fields to the packet. Optional
+     * columns (type, polarity, APS) of the new event are zeroed and can be set
+     * through the column arrays using the returned index.
+     *
+     * @return the index of the new event
+     */
+    public int appendEvent(final int timestamp, final int address, final short x, final short y) {
+        ensureColumnCapacity(size + 1);
+        final int k = size++;
+        this.timestamp[k] = timestamp;
+        this.address[k] = address;
+        this.x[k] = x;
+        this.y[k] = y;
+        source[k] = 0;
+        flags[k] = 0;
+        if (typed) {
+            type[k] = 0;
+        }
+        if (polarized) {
+            polarity[k] = 0;
+        }
+        if (aps) {
+            adcSample[k] = 0;
+            readoutType[k] = (byte) ReadoutType.DVS.ordinal();
+            colorFilter[k] = 0;
+            imuSample[k] = null;
+        }
+        return k;
+    }
+
+    /**
+     * Returns copies of the events, since this packet does not hold event
+     * objects. The copies are reused by the next call; changes to them are
+     * only stored by setElementData.
+     *
+     * @return an array holding copies of the events up to the packet size
+     */
+    @Override
+    public E[] getElementData() {
+        flush();
+        if ((elementCopies == null) || (elementCopies.length < size)) {
+            final int n0 = elementCopies == null ? 0 : elementCopies.length;
+            elementCopies = elementCopies == null ? (E[]) Array.newInstance(getEventClass(), size) : Arrays.copyOf(elementCopies, size);
+            try {
+                for (int i = n0; i < size; i++) {
+                    elementCopies[i] = eventConstructor.newInstance();
+                }
+            } catch (final Exception e) {
+                log.warning("could not construct events for " + getEventClass() + ": " + e);
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            load(elementCopies[i], i);
+        }
+        return elementCopies;
+    }
+
+    /**
+     * Stores the events of the array to the columns, since this packet does
+     * not hold event objects. The size is not changed.
+     *
+     * @param elementData the events to store, starting with event 0
+     */
+    @Override
+    public void setElementData(final E[] elementData) {
+        flush();
+        ensureColumnCapacity(elementData.length);
+        for (int i = 0; i < elementData.length; i++) {
+            if (elementData[i] != null) {
+                store(elementData[i], i);
+            }
+        }
+    }
+
+    /**
+     * Exchanges the columns of this packet with those of another
+     * ColumnarEventPacket of the same event class, without copying them.
+     *
+     * @param other the other packet
+     * @throws IllegalArgumentException if !canSwapEvents(other)
+     */
+    @Override
+    public void swapEvents(final EventPacket<E> other) {
+        super.swapEvents(other); // checks other and swaps size and the other packet state
+        final ColumnarEventPacket<E> p = (ColumnarEventPacket<E>) other;
+        flush();
+        p.flush();
+        final int c = columnCapacity;
+        columnCapacity = p.columnCapacity;
+        p.columnCapacity = c;
+        final int[] ts = timestamp;
+        timestamp = p.timestamp;
+        p.timestamp = ts;
+        final int[] a = address;
+        address = p.address;
+        p.address = a;
+        final short[] xs = x;
+        x = p.x;
+        p.x = xs;
+        final short[] ys = y;
+        y = p.y;
+        p.y = ys;
+        final byte[] src = source;
+        source = p.source;
+        p.source = src;
+        final byte[] f = flags;
+        flags = p.flags;
+        p.flags = f;
+        final byte[] ty = type;
+        type = p.type;
+        p.type = ty;
+        final byte[] pol = polarity;
+        polarity = p.polarity;
+        p.polarity = pol;
+        final int[] adc = adcSample;
+        adcSample = p.adcSample;
+        p.adcSample = adc;
+        final byte[] rt = readoutType;
+        readoutType = p.readoutType;
+        p.readoutType = rt;
+        final byte[] cf = colorFilter;
+        colorFilter = p.colorFilter;
+        p.colorFilter = cf;
+        final IMUSample[] imu = imuSample;
+        imuSample = p.imuSample;
+        p.imuSample = imu;
+    }
+
+    /**
+     * @param k the event index
+     * @return true if event k is filtered out
+     */
+    public boolean isFilteredOut(final int k) {
+        flush(k);
+        return (flags[k] & FLAG_FILTERED_OUT) != 0;
+    }
+
+    /**
+     * Sets or clears the filteredOut flag of event k
+     *
+     * @param k the event index
+     * @param filteredOut true to filter out the event
+     */
+    public void setFilteredOut(final int k, final boolean filteredOut) {
+        flush(k);
+        if (filteredOut) {
+            flags[k] |= FLAG_FILTERED_OUT;
+        } else {
+            flags[k] &= ~FLAG_FILTERED_OUT;
+        }
+        // flyweights bound to event k are stored again later, so keep them consistent
+        if (inputFlyweightIndex == k) {
+            inputFlyweight.setFilteredOut(filteredOut);
+        }
+        if (accessFlyweightIndex == k) {
+            accessFlyweight.setFilteredOut(filteredOut);
+        }
+        if (outputFlyweightIndex == k) {
+            outputFlyweight.setFilteredOut(filteredOut);
+        }
+    }
+
+    /**
+     * @return the timestamp column
+     */
+    public int[] getTimestampColumn() {
+        flush();
+        return timestamp;
+    }
+
+    /**
+     * @return the raw address column
+     */
+    public int[] getAddressColumn() {
+        flush();
+        return address;
+    }
+
+    /**
+     * @return the x address column
+     */
+    public short[] getXColumn() {
+        flush();
+        return x;
+    }
+
+    /**
+     * @return the y address column
+     */
+    public short[] getYColumn() {
+        flush();
+        return y;
+    }
+
+    /**
+     * @return the source column
+     */
+    public byte[] getSourceColumn() {
+        flush();
+        return source;
+    }
+
+    /**
+     * @return the flags column, see FLAG_FILTERED_OUT and FLAG_SPECIAL
+     */
+    public byte[] getFlagsColumn() {
+        flush();
+        return flags;
+    }
+
+    /**
+     * @return the type column, or null if the events are not TypedEvent
+     */
+    public byte[] getTypeColumn() {
+        flush();
+        return type;
+    }
+
+    /**
+     * @return the polarity column (1 for On, 0 for Off), or null if the
+     * events are not PolarityEvent
+     */
+    public byte[] getPolarityColumn() {
+        flush();
+        return polarity;
+    }
+
+    /**
+     * @return the ADC sample column, or null if the events are not
+     * ApsDvsEvent
+     */
+    public int[] getAdcSampleColumn() {
+        flush();
+        return adcSample;
+    }
+
+    /**
+     * @return the readout type column holding ReadoutType ordinals, or null
+     * if the events are not ApsDvsEvent
+     */
+    public byte[] getReadoutTypeColumn() {
+        flush();
+        return readoutType;
+    }
+
+    /**
+     * @return the color filter column holding ColorFilter ordinals, or null
+     * if the events are not ApsDvsEvent
+     */
+    public byte[] getColorFilterColumn() {
+        flush();
+        return colorFilter;
+    }
+
+    /**
+     * @return the IMU sample column (mostly null), or null if the events are
+     * not ApsDvsEvent
+     */
+    public IMUSample[] getImuSampleColumn() {
+        flush();
+        return imuSample;
+    }
+
+    /**
+     * @return the capacity in events of the columns
+     */
+    public int getCapacity() {
+        return columnCapacity;
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnarEventPacket #" + hashCode() + " holding " + getEventClass().getSimpleName() + " with size=" + getSize() + " capacity="
+                + columnCapacity + " filteredOutCount=" + filteredOutCount;
+    }
+}
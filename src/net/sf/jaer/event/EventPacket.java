@@ -67,8 +67,9 @@ import net.sf.jaer.eventprocessing.TimeLimiter;
  * the InputIterator of this packet if they are the last event in a packet.
  * Individual filters can still check the BasicEvent's isFilteredOut()
  * method.</b>
- *
- *
+ * <p>
+ * For high event rates, {@link ColumnarEventPacket} is an opt-in alternative
+ * that stores the event fields in primitive arrays instead of event objects.
  *
  * @param <E> the class of the events in this packet
  * @author tobi
@@ -102,6 +103,12 @@ public class EventPacket<E extends BasicEvent> implements /* EventPacketInterfac
      * The backing array of element data of type E
      */
     public transient E[] elementData;
+    /**
+     * True if elementData may hold references to events of other packets,
+     * e.g. written by writeToNextOutput, so that swapEvents cannot hand them
+     * over.
+     */
+    private boolean sharesEvents = false;
     private AEPacketRaw rawPacket = null;
     /**
      * This packet's input iterator.
@@ -328,10 +335,21 @@ public class EventPacket<E extends BasicEvent> implements /* EventPacketInterfac
         if (k >= size) {
             throw new ArrayIndexOutOfBoundsException();
         }
-        return elementData[k];
+        return eventAt(k);
         // return eventList.get(k);
     }
 
+    /**
+     * Returns the k'th event for getEvent, k being within the packet size.
+     * Overridden by packets that do not hold event objects.
+     *
+     * @param k the event index
+     * @return the event
+     */
+    protected E eventAt(final int k) {
+        return elementData[k];
+    }
+
     /**
      * Constructs a new empty EventPacket containing <code>eventClass</code>.
      *
@@ -368,6 +386,16 @@ public class EventPacket<E extends BasicEvent> implements /* EventPacketInterfac
      * then copied from other events or modified.
      */
     final public OutputEventIterator<E> outputIterator() {
+        return resetOutputIterator();
+    }
+
+    /**
+     * Constructs or resets the output iterator for outputIterator().
+     * Overridden by packets with their own output iterator.
+     *
+     * @return the reset iterator
+     */
+    protected OutputEventIterator<E> resetOutputIterator() {
         if (outputIterator == null) {
             outputIterator = new OutItr();
         } else {
@@ -480,11 +508,18 @@ public class EventPacket<E extends BasicEvent> implements /* EventPacketInterfac
 
         /**
          * Writes event to next output, and sets the filteredOut field to false.
+         * The flyweight events of a ColumnarEventPacket are copied, since
+         * they are reused for every event of that packet.
          *
          * @param event the event to write out.
          */
         @Override
         public void writeToNextOutput(final E event) {
+            if (event.flyweight) {
+                event.setFilteredOut(false);
+                nextOutput().copyFrom(event);
+                return;
+            }
             {
                 if (size >= capacity) {
                     enlargeCapacity();
@@ -492,6 +527,7 @@ public class EventPacket<E extends BasicEvent> implements /* EventPacketInterfac
                 // System.out.println("at position "+size+" wrote event "+event);
                 event.setFilteredOut(false);
                 elementData[size++] = event;
+                sharesEvents = true;
             }
         }
     }
@@ -673,6 +709,7 @@ public class EventPacket<E extends BasicEvent> implements /* EventPacketInterfac
         System.arraycopy(oldData, 0, elementData, 0, size);
         System.arraycopy(newData, 0, elementData, size, packet.size);
         size = size + packet.size;
+        sharesEvents = true;
     }
 
     /**
@@ -993,6 +1030,56 @@ public class EventPacket<E extends BasicEvent> implements /* EventPacketInterfac
      */
     public void setElementData(final E[] elementData) {
         this.elementData = elementData;
+        sharesEvents = true;
+    }
+
+    /**
+     * Reports if swapEvents can exchange the events of this packet with
+     * those of another packet.
+     *
+     * @param other the other packet
+     * @return true if both packets have the same class and event class and
+     * own all of their events
+     */
+    public boolean canSwapEvents(final EventPacket<?> other) {
+        return (other.getClass() == getClass()) && (other.eventClass == eventClass) && !sharesEvents && !other.sharesEvents;
+    }
+
+    /**
+     * Exchanges the events of this packet with those of another packet
+     * without copying them, e.g. to hand a packet that a filter reuses over to
+     * another thread. Afterwards each packet holds the events, size,
+     * capacity, raw packet and system modification time that the other held
+     * before. Iterators obtained before must not be used afterwards.
+     *
+     * @param other the other packet
+     * @throws IllegalArgumentException if !canSwapEvents(other)
+     */
+    public void swapEvents(final EventPacket<E> other) {
+        if (!canSwapEvents(other)) {
+            throw new IllegalArgumentException("cannot swap events of " + this + " with " + other);
+        }
+        final E[] d = elementData;
+        elementData = other.elementData;
+        other.elementData = d;
+        int t = capacity;
+        capacity = other.capacity;
+        other.capacity = t;
+        t = size;
+        size = other.size;
+        other.size = t;
+        t = filteredOutCount;
+        filteredOutCount = other.filteredOutCount;
+        other.filteredOutCount = t;
+        t = lastTimestamp;
+        lastTimestamp = other.lastTimestamp;
+        other.lastTimestamp = t;
+        final AEPacketRaw r = rawPacket;
+        rawPacket = other.rawPacket;
+        other.rawPacket = r;
+        final long ns = systemModificationTimeNs;
+        systemModificationTimeNs = other.systemModificationTimeNs;
+        other.systemModificationTimeNs = ns;
     }
 
 }
@@ -277,6 +277,11 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
      * The ZoneID of this file as parsed from the filename
      */
     private ZoneId zoneId = ZoneId.systemDefault();
+    /**
+     * Coarse timestamp index for seeking by time, only for jAER 2.0 files
+     */
+    private AEFileTimestampIndex timestampIndex = null;
+    private final AEFileTimestampIndex.SeekResult seekResult = new AEFileTimestampIndex.SeekResult();
 
     /**
      * Creates a new instance of AEInputStream
@@ -448,9 +453,6 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
         int pixelData = 0; // For jAER 3.0, no influence on jAER 2.0
         EventType etype = EventType.PolarityEvent; // For jAER 3.0, no influence on jAER 2.0
         int lastTs = mostRecentTimestamp;
-        int lastBufferPosition = 0;
-
-        ByteBuffer tmpEventBuffer = ByteBuffer.allocate(16); // TODO why allocate every time?
 
         // if(jaer3fileinputstream!=null){
         // return jaer3fileinputstream.readEventForwards();
@@ -473,13 +475,11 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
             // ts=eventByteBuffer.getInt();
 
             if (jaer3EnableFlg) {
-                lastBufferPosition = byteBuffer.position();
-                tmpEventBuffer = jaer3BufferParser.getJaer2EventBuf();
-                int etypeValue = tmpEventBuffer.getInt();
-                etype = EventType.values()[etypeValue];
-                addr = tmpEventBuffer.getInt();
-                ts = tmpEventBuffer.getInt();
-                pixelData = tmpEventBuffer.getInt();
+                jaer3BufferParser.nextDecodedEvent(tmpEvent);
+                etype = tmpEvent.eventtype;
+                addr = tmpEvent.address;
+                ts = tmpEvent.timestamp;
+                pixelData = tmpEvent.pixelData;
             } else {
                 if (addressType == Integer.TYPE) {
                     addr = byteBuffer.getInt();
@@ -498,20 +498,23 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
                 }
 
                 if (jaer3EnableFlg) {
-                    tmpEventBuffer = jaer3BufferParser.getJaer2EventBuf();
-                    tmpEventBuffer = jaer3BufferParser.getJaer2EventBuf();
-                    int etypeValue = tmpEventBuffer.getInt();
-                    etype = EventType.values()[etypeValue];
-                    addr = tmpEventBuffer.getInt();
-                    ts = tmpEventBuffer.getInt();
-                    pixelData = tmpEventBuffer.getInt();
+                    jaer3BufferParser.nextDecodedEvent(tmpEvent);
+                    jaer3BufferParser.nextDecodedEvent(tmpEvent);
+                    etype = tmpEvent.eventtype;
+                    addr = tmpEvent.address;
+                    ts = tmpEvent.timestamp;
+                    pixelData = tmpEvent.pixelData;
                 } else {
-                    if (addressType == Integer.TYPE) {
-                        addr = byteBuffer.getInt();
-                    } else {
-                        addr = (byteBuffer.getShort() & 0xffff); // TODO reads addr as negative number if msb is set
-                    }
-                    ts = byteBuffer.getInt();
+                    // skip all zero timestamp events, counting them in position so that it stays the event number in the file (like AEFileTimestampIndex)
+                    do {
+                        position++;
+                        if (addressType == Integer.TYPE) {
+                            addr = byteBuffer.getInt();
+                        } else {
+                            addr = (byteBuffer.getShort() & 0xffff); // TODO reads addr as negative number if msb is set
+                        }
+                        ts = byteBuffer.getInt();
+                    } while (ts == 0);
                 }
 
             }
@@ -529,7 +532,7 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
                 if (jaer3EnableFlg == false) {
                     position(position); // we haven't updated our position field yet
                 } else {
-                    byteBuffer.position(lastBufferPosition);
+                    jaer3BufferParser.unreadDecodedEvent();
                 }
                 ts = lastTs; // this is the one last read successfully
                 mostRecentTimestamp = ts;
@@ -596,6 +599,107 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
         }
     }
 
+    /**
+     * Set by readEventsForwardsBulk to signal that the packet is complete.
+     */
+    private boolean bulkReadDone = false;
+
+    /**
+     * Decodes jAER 2.0 events forwards directly from the mapped byteBuffer into
+     * the packet arrays, without going through EventRaw or allocating anything
+     * per event. Chunk boundaries are handled by mapping the next chunk and
+     * continuing. Reading stops before any event that needs the special
+     * handling of readEventForwards(int) (OUT marker, zero timestamp,
+     * timestamp reset bitmask, wrapped or non-monotonic timestamp); that event
+     * is left in the buffer to be read by readEventForwards(int).
+     * <p>
+     * The termination conditions are those of the forwards loop of
+     * readPacketByTime. bulkReadDone is set if the packet is complete.
+     *
+     * @param endTimestamp the last timestamp to read
+     * @param startTimestamp the mostRecentTimestamp at start of the packet
+     * @param i the number of events already in the packet
+     * @return the new number of events in the packet
+     * @throws EOFException at end of file
+     */
+    private int readEventsForwardsBulk(final int endTimestamp, final int startTimestamp, int i, final int[] addr, final int[] ts,
+            final EventType[] etypes, final int[] pixelDataArray) throws IOException {
+        bulkReadDone = false;
+        final boolean intAddr = addressType == Integer.TYPE;
+        final int tsOffsetBytes = intAddr ? 4 : 2;
+        final int size = eventSizeBytes;
+        final int offset = timestampOffset, resetMask = timestampResetBitmask;
+        final boolean checkNonMonotonic = enableTimeWrappingExceptionsChecking;
+        final int capacity = Math.min(Math.min(addr.length, ts.length), Math.min(etypes.length, pixelDataArray.length));
+        int mostRecent = mostRecentTimestamp;
+        while (i < capacity) {
+            if (position == marks.markOut) {
+                return i; // readEventForwards handles rewind or EOF at OUT marker
+            }
+            final ByteBuffer bb = byteBuffer;
+            int p = bb.position();
+            long n = (bb.limit() - p) / size;
+            if (n == 0) {
+                try {
+                    mapNextChunk();
+                } catch (ClosedByInterruptException cbi) {
+                    log.info(String.format("Closing file; FileChannel was closed by interrupt from another thread (probably GUI Swing thread): %s", cbi.toString()));
+                    close();
+                    bulkReadDone = true;
+                    return i;
+                } catch (IOException eof) {
+                    System.gc(); // free the mapped byteBuffers since we're at end of file anyhow
+                    getSupport().firePropertyChange(AEInputStream.EVENT_EOF, null, position());
+                    throw new EOFException("reached end of file");
+                }
+                continue;
+            }
+            if (marks.markOut > position) {
+                n = Math.min(n, marks.markOut - position);
+            }
+            n = Math.min(n, capacity - i);
+            boolean special = false;
+            int k;
+            for (k = 0; k < n; k++) {
+                final int a = intAddr ? bb.getInt(p) : (bb.getShort(p) & 0xffff);
+                int t = bb.getInt(p + tsOffsetBytes);
+                if ((t == 0) || ((a & resetMask) != 0)) {
+                    special = true;
+                    break;
+                }
+                t -= offset;
+                if (t > endTimestamp) { // leave this event for the next packet
+                    bulkReadDone = true;
+                    break;
+                }
+                if (isWrappedTime(t, mostRecent, 1) || (checkNonMonotonic && (t < mostRecent))) {
+                    special = true; // readEventForwards throws the exception
+                    break;
+                }
+                addr[i] = a;
+                ts[i] = t;
+                etypes[i] = EventType.PolarityEvent;
+                pixelDataArray[i] = 0;
+                i++;
+                p += size;
+                mostRecent = t;
+                if ((mostRecent >= endTimestamp) || (mostRecent < startTimestamp)) {
+                    bulkReadDone = true;
+                    k++;
+                    break;
+                }
+            }
+            bb.position(p);
+            position += k;
+            mostRecentTimestamp = mostRecent;
+            if (special || bulkReadDone) {
+                return i;
+            }
+        }
+        bulkReadDone = true;
+        return i;
+    }
+
     /**
      * Reads the next event backwards and leaves the position and byte buffer
      * pointing to event one earlier than the one we just read. I.e., we back
@@ -803,6 +907,12 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
             if (dt > 0) { // read forwards
                 if (!bigWrap) { // normal situation
                     do {
+                        if (!jaer3EnableFlg) { // decode directly from the mapped buffer until an event needs special handling
+                            i = readEventsForwardsBulk(endTimestamp, startTimestamp, i, addr, ts, etypes, pixelDataArray);
+                            if (bulkReadDone) {
+                                break;
+                            }
+                        }
                         ae = readEventForwards(endTimestamp); // if we hit end (mark or file), we rewind here and get the first event and rewindFlag is set
                         if (ae == null) {
                             break;
@@ -948,6 +1058,9 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
 
             }
             byteBuffer.position((int) ((event * eventSizeBytes) % chunkSizeBytes));
+            if (jaer3EnableFlg && (jaer3BufferParser != null)) {
+                jaer3BufferParser.discardDecodedEvents();
+            }
 
             position = event;
         } catch (ClosedByInterruptException e3) {
@@ -1004,6 +1117,97 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
         log.info(String.format("Set fractional position %.1f%%", frac * 100));
     }
 
+    /**
+     * Seeks to the first event with timestamp at least <code>timestamp</code>
+     * using the timestamp index, which is loaded or built in the background on
+     * the first call (see startTimestampIndex()). The index gives the position within
+     * AEFileTimestampIndex.EVENTS_PER_ENTRY events, from where the events are
+     * decoded directly from the file to find the exact event, so the seek does
+     * not go through readEventForwards and never rewinds at the OUT marker.
+     * <p>
+     * Timestamps are compared in the time base of readEventForwards, i.e. with
+     * the timestamp offset of the timestamp reset bitmask subtracted. Since
+     * timestamps wrap, <code>timestamp</code> is taken as the occurrence
+     * nearest to the current position, within the same timestamp reset segment
+     * (see AEFileTimestampIndex).
+     * <p>
+     * The next readPacketByTime starts at the event found. Fires a property
+     * change AEInputStream.EVENT_POSITION.
+     *
+     * @param timestamp the timestamp to seek to, in the units of the file
+     * timestamps
+     * @return true if the seek was done, false if there is no index (jAER 3.x
+     * file), the index is not ready yet, or the segment ends before the
+     * timestamp, in which case the position is not changed
+     * @see #startTimestampIndex()
+     */
+    synchronized public boolean seekToTimestamp(int timestamp) {
+        startTimestampIndex();
+        if ((timestampIndex == null) || !timestampIndex.isReady() || (fileChannel == null)) {
+            return false;
+        }
+        final long oldPosition = position();
+        try {
+            if (!timestampIndex.findTimestamp(fileChannel, oldPosition, timestamp, seekResult)) {
+                return false;
+            }
+        } catch (IOException e) {
+            log.warning("while seeking to timestamp " + timestamp + " got " + e.toString());
+            return false;
+        }
+        position(seekResult.position);
+        timestampOffset = seekResult.timestampOffset; // readEventForwards applies a reset at the event found itself
+        currentStartTimestamp = seekResult.timestamp;
+        mostRecentTimestamp = seekResult.timestamp;
+        getSupport().firePropertyChange(AEInputStream.EVENT_POSITION, oldPosition, position());
+        return true;
+    }
+
+    /**
+     * Creates the timestamp index for jAER 2.0 files and loads or builds it in
+     * the background.
+     */
+    private void createTimestampIndex() {
+        if (timestampIndex != null) {
+            timestampIndex.cancel();
+            timestampIndex = null;
+        }
+        if (!jaer3EnableFlg && (getFile() != null)) {
+            timestampIndex = new AEFileTimestampIndex(getFile(), AEFileTimestampIndex.getCacheFile(getFile()), headerOffset, eventSizeBytes,
+                    addressType == Integer.TYPE ? Integer.BYTES : Short.BYTES, chunkSizeBytes, timestampResetBitmask);
+            timestampIndex.loadOrBuildInBackground();
+        }
+    }
+
+    /**
+     * Starts loading the timestamp index from its cache file, or building it
+     * in the background by reading the whole file, if this has not been done
+     * yet. The index is not created when the file is opened, so that playing a
+     * file does not scan it unless it is seeked by timestamp.
+     *
+     * @return the index, which is null for jAER 3.x files and which may not be
+     * ready yet
+     * @see AEFileTimestampIndex#isReady()
+     */
+    synchronized public AEFileTimestampIndex startTimestampIndex() {
+        if (timestampIndex == null) {
+            createTimestampIndex();
+        }
+        return timestampIndex;
+    }
+
+    /**
+     * Returns the coarse timestamp index of this file, which is null for jAER
+     * 3.x files and before startTimestampIndex() is called, and which may not
+     * be ready yet.
+     *
+     * @return the index, or null
+     * @see AEFileTimestampIndex#isReady()
+     */
+    public AEFileTimestampIndex getTimestampIndex() {
+        return timestampIndex;
+    }
+
     /**
      * AEFileInputStream has PropertyChangeSupport. This support fires events on
      * certain events such as "rewind".
@@ -1156,6 +1360,9 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
     @Override
     public void close() throws IOException {
         super.close();
+        if (timestampIndex != null) {
+            timestampIndex.cancel();
+        }
         if (fileChannel != null) {
             // tobi commented out since it causes a crash in JDK21
 //            if (getByteBuffer() != null && getByteBuffer().isDirect()) {
@@ -1366,7 +1573,7 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
         if ((start >= fileSize) || (start < 0)) {
             chunkNumber = 0; // overflow will wrap<0
         }
-        mapChunk(chunkNumber);
+        mapChunk(chunkNumber, chunkNumber > 0);
     }
 
     /**
@@ -1393,6 +1600,17 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
      * @param chunkNumber the number of the chunk, starting with 0
      */
     synchronized private void mapChunk(int chunkNumber) throws IOException {
+        mapChunk(chunkNumber, false);
+    }
+
+    /**
+     * memory-maps a chunk of the input file.
+     *
+     * @param chunkNumber the number of the chunk, starting with 0
+     * @param continued true if the chunk continues the chunk mapped before, so
+     * that a jAER 3.x packet that straddles the two chunks is decoded
+     */
+    synchronized private void mapChunk(int chunkNumber, boolean continued) throws IOException {
         this.chunkNumber = chunkNumber;
         long start = getChunkStartPosition(chunkNumber);
         if (start >= fileSize) {
@@ -1435,7 +1653,11 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
                 // jaer3ByteBuffer = jaer3ParseBuffer.extractAddrAndTs();
             } else {
                 // Update in buffer at the same time, just for jAER 3.0 format file
-                jaer3BufferParser.setInBuffer(byteBuffer);
+                if (continued) {
+                    jaer3BufferParser.setNextInBuffer(byteBuffer);
+                } else {
+                    jaer3BufferParser.setInBuffer(byteBuffer);
+                }
                 jaer3BufferParser.setInBufferOrder(ByteOrder.LITTLE_ENDIAN);
                 jaer3BufferParser.setInFrameEvent(false);
             }
@@ -1783,7 +2005,11 @@ public class AEFileInputStream extends DataInputStream implements AEFileInputStr
      * @param timestampResetBitmask the timestampResetBitmask to set
      */
     public void setTimestampResetBitmask(int timestampResetBitmask) {
+        final boolean changed = this.timestampResetBitmask != timestampResetBitmask;
         this.timestampResetBitmask = timestampResetBitmask;
+        if (changed && (timestampIndex != null)) {
+            createTimestampIndex(); // the index time base depends on the bitmask
+        }
     }
 
 }
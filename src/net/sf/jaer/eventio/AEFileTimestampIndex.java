@@ -0,0 +1,596 @@
+/*
+ * AEFileTimestampIndex.java
+ *
+ * Persistent coarse timestamp index for jAER 2.0 recordings.
+ */
+package net.sf.jaer.eventio;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A coarse index from timestamp to event position for a jAER 2.0 recording
+ * (fixed size events), allowing AEFileInputStream to seek by timestamp in
+ * O(log n) rather than by scanning the file.
+ * <p>
+ * The index is built once in a background thread by reading the timestamps of
+ * all events, and is then cached in an index file in the temporary directory
+ * (see getCacheFile), so that nothing is written next to the recording. The
+ * cached index is rebuilt if the recording length or modification time or the
+ * timestamp reset bitmask changes. If there is no index file or it cannot be
+ * written, the index is only kept in memory.
+ * <p>
+ * Timestamps are indexed in the time base that AEFileInputStream produces when
+ * playing the file from the start, i.e. with the timestamp offset of the last
+ * timestamp reset event (see AEFileInputStream.setTimestampResetBitmask)
+ * subtracted. To stay sorted across the int32 wrap of the timestamps, the
+ * index uses unwrapped long times. A timestamp reset event or a jump back in
+ * time by more than RESET_JUMP_US starts a new segment, whose times start over
+ * at the timestamp of its first event. Within a segment, the time of an event
+ * is the latest time so far, so that small non-monotonic jitter does not
+ * unsort the index.
+ * <p>
+ * Events with zero timestamp are skipped like AEFileInputStream skips them,
+ * but count in the event positions, which are event numbers in the file.
+ * <p>
+ * Every EVENTS_PER_ENTRY'th event is an index entry holding its segment and
+ * time and the state of this unwrapping before the event, so that the exact
+ * event can be found by decoding at most EVENTS_PER_ENTRY events from there.
+ *
+ * @see AEFileInputStream#seekToTimestamp(int)
+ */
+public class AEFileTimestampIndex {
+
+    private static final Logger log = Logger.getLogger("net.sf.jaer");
+    /**
+     * Extension of the cached index files
+     */
+    public static final String INDEX_FILE_EXTENSION = ".tsindex";
+    /**
+     * Number of events per index entry
+     */
+    public static final int EVENTS_PER_ENTRY = 1 << 12;
+    /**
+     * A jump back in time by more than this many timestamp ticks is taken as a
+     * timestamp reset and starts a new segment
+     */
+    public static final int RESET_JUMP_US = 1000000;
+    private static final int MAGIC = 0x4a545349; // "JTSI"
+    private static final int VERSION = 2;
+    private static final int READ_BUFFER_BYTES = 1 << 20;
+
+    private final File dataFile, indexFile;
+    private final long headerOffset;
+    private final int eventSizeBytes;
+    private final int timestampOffsetBytes;
+    private final long chunkSizeBytes;
+    private final int timestampResetBitmask;
+
+    private volatile boolean ready = false;
+    private int numEntries = 0;
+    /**
+     * Segment and time of the entry event
+     */
+    private int[] segments;
+    private long[] times;
+    /**
+     * Scan state before the entry event
+     */
+    private int[] stateSegments, stateOffsets, stateLastTimestamps;
+    private long[] stateLastTimes, stateMaxTimes;
+    private Thread builderThread = null;
+    private ByteBuffer seekBuffer = null;
+
+    /**
+     * The unwrapping of timestamps into segments and times, in the same way
+     * for building the index and for seeking.
+     */
+    private static final class ScanState {
+
+        /**
+         * The segment of the last event, -1 before the first one
+         */
+        int segment = -1;
+        /**
+         * The timestamp offset subtracted from raw timestamps, like
+         * AEFileInputStream.timestampOffset
+         */
+        int offset = 0;
+        /**
+         * The last corrected timestamp
+         */
+        int lastTimestamp = 0;
+        /**
+         * The unwrapped time of the last event and the latest time so far in
+         * the segment
+         */
+        long lastTime = 0, maxTime = 0;
+
+        /**
+         * Updates the state with the next event. Must not be called for events
+         * with zero timestamp, which AEFileInputStream skips.
+         *
+         * @return the corrected timestamp, as AEFileInputStream would return
+         * it
+         */
+        int next(int addr, int rawTimestamp, int resetBitmask) {
+            final boolean reset = (addr & resetBitmask) != 0;
+            if (reset) {
+                offset = rawTimestamp;
+            }
+            final int ts = rawTimestamp - offset;
+            if (segment < 0 || reset || (ts - lastTimestamp) < -RESET_JUMP_US) {
+                segment++;
+                lastTime = ts;
+                maxTime = ts;
+            } else {
+                lastTime += ts - lastTimestamp; // int difference is correct across the wrap
+                if (lastTime > maxTime) {
+                    maxTime = lastTime;
+                }
+            }
+            lastTimestamp = ts;
+            return ts;
+        }
+    }
+
+    /**
+     * Constructs an index for a recording. Call loadOrBuildInBackground() to
+     * fill it.
+     *
+     * @param dataFile the recording
+     * @param indexFile the file to cache the index in, or null to keep it
+     * only in memory
+     * @param headerOffset the byte offset of the first event after the header
+     * @param eventSizeBytes the size of each event in bytes
+     * @param timestampOffsetBytes the offset of the timestamp in each event,
+     * i.e. the size of the address
+     * @param chunkSizeBytes the size of the memory mapped chunks of
+     * AEFileInputStream
+     * @param timestampResetBitmask the timestamp reset bitmask of
+     * AEFileInputStream
+     */
+    public AEFileTimestampIndex(File dataFile, File indexFile, long headerOffset, int eventSizeBytes, int timestampOffsetBytes, long chunkSizeBytes, int timestampResetBitmask) {
+        this.dataFile = dataFile;
+        this.indexFile = indexFile;
+        this.headerOffset = headerOffset;
+        this.eventSizeBytes = eventSizeBytes;
+        this.timestampOffsetBytes = timestampOffsetBytes;
+        this.chunkSizeBytes = chunkSizeBytes;
+        this.timestampResetBitmask = timestampResetBitmask;
+    }
+
+    /**
+     * Returns the file in the temporary directory to cache the index of a
+     * recording in. The name includes a hash of the path of the recording, so
+     * that recordings with the same name in different folders do not
+     * overwrite each other's index.
+     *
+     * @param dataFile the recording
+     * @return the index file
+     */
+    public static File getCacheFile(File dataFile) {
+        return new File(System.getProperty("java.io.tmpdir"), dataFile.getName() + "-"
+                + Integer.toHexString(dataFile.getAbsolutePath().hashCode()) + INDEX_FILE_EXTENSION);
+    }
+
+    /**
+     * Loads the index from the index file if it is valid, otherwise starts a
+     * background thread that builds the index and saves it. isReady() returns
+     * true once the index can be used.
+     */
+    synchronized public void loadOrBuildInBackground() {
+        if (ready || builderThread != null) {
+            return;
+        }
+        builderThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (!load()) {
+                        build();
+                        if (ready) {
+                            save();
+                        }
+                    }
+                } catch (ClosedByInterruptException e) {
+                    log.info("cancelled building timestamp index for " + dataFile);
+                } catch (IOException e) {
+                    log.log(Level.WARNING, "could not build timestamp index for " + dataFile + ": " + e.toString(), e);
+                }
+            }
+        }, "AEFileTimestampIndex-" + dataFile.getName());
+        builderThread.setDaemon(true);
+        builderThread.setPriority(Thread.MIN_PRIORITY);
+        builderThread.start();
+    }
+
+    /**
+     * Stops building the index, e.g. when the recording is closed.
+     */
+    synchronized public void cancel() {
+        if (builderThread != null && builderThread.isAlive()) {
+            builderThread.interrupt();
+        }
+    }
+
+    /**
+     * Loads the index file if it exists and matches the recording.
+     *
+     * @return true if loaded
+     */
+    private boolean load() {
+        if ((indexFile == null) || !indexFile.isFile()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                log.info("ignoring " + indexFile + " which has an unknown format");
+                return false;
+            }
+            if (in.readLong() != dataFile.length() || in.readLong() != dataFile.lastModified()
+                    || in.readLong() != headerOffset || in.readInt() != eventSizeBytes
+                    || in.readInt() != timestampResetBitmask || in.readInt() != EVENTS_PER_ENTRY) {
+                log.info("ignoring stale timestamp index " + indexFile);
+                return false;
+            }
+            final int n = in.readInt();
+            allocate(n);
+            for (int i = 0; i < n; i++) {
+                segments[i] = in.readInt();
+                times[i] = in.readLong();
+                stateSegments[i] = in.readInt();
+                stateOffsets[i] = in.readInt();
+                stateLastTimestamps[i] = in.readInt();
+                stateLastTimes[i] = in.readLong();
+                stateMaxTimes[i] = in.readLong();
+            }
+            setReady(n);
+            log.info("loaded timestamp index with " + n + " entries from " + indexFile);
+            return true;
+        } catch (IOException e) {
+            log.warning("could not load timestamp index " + indexFile + ": " + e.toString());
+            return false;
+        }
+    }
+
+    /**
+     * Builds the index by reading the addresses and timestamps of all events.
+     */
+    private void build() throws IOException {
+        final long start = System.currentTimeMillis();
+        try (RandomAccessFile raf = new RandomAccessFile(dataFile, "r")) {
+            final FileChannel channel = raf.getChannel();
+            final long numEvents = (channel.size() - headerOffset) / eventSizeBytes;
+            final int n = (int) ((numEvents + EVENTS_PER_ENTRY - 1) / EVENTS_PER_ENTRY);
+            allocate(n);
+            final ByteBuffer buf = ByteBuffer.allocate((READ_BUFFER_BYTES / eventSizeBytes) * eventSizeBytes); // big endian like AEFileOutputStream
+            final ScanState state = new ScanState();
+            long eventNumber = 0;
+            while (eventNumber < numEvents) {
+                if (Thread.currentThread().isInterrupted()) {
+                    log.info("cancelled building timestamp index for " + dataFile);
+                    return;
+                }
+                final int numRead = read(channel, buf, eventNumber, numEvents);
+                for (int k = 0; k < numRead; k++, eventNumber++) {
+                    final int entry = (int) (eventNumber / EVENTS_PER_ENTRY);
+                    final boolean isEntry = (eventNumber % EVENTS_PER_ENTRY) == 0;
+                    if (isEntry) {
+                        stateSegments[entry] = state.segment;
+                        stateOffsets[entry] = state.offset;
+                        stateLastTimestamps[entry] = state.lastTimestamp;
+                        stateLastTimes[entry] = state.lastTime;
+                        stateMaxTimes[entry] = state.maxTime;
+                    }
+                    final int rawTimestamp = buf.getInt((k * eventSizeBytes) + timestampOffsetBytes);
+                    if (rawTimestamp != 0) {
+                        state.next(address(buf, k), rawTimestamp, timestampResetBitmask);
+                    }
+                    if (isEntry) {
+                        segments[entry] = state.segment;
+                        times[entry] = state.maxTime;
+                    }
+                }
+            }
+            setReady(n);
+        }
+        log.info(String.format("built timestamp index with %d entries in %d segments for %s in %d ms", numEntries,
+                numEntries == 0 ? 0 : segments[numEntries - 1] + 1, dataFile, System.currentTimeMillis() - start));
+    }
+
+    /**
+     * Reads events from the channel into buf.
+     *
+     * @return the number of events read
+     */
+    private int read(FileChannel channel, ByteBuffer buf, long eventNumber, long numEvents) throws IOException {
+        final int numToRead = (int) Math.min(buf.capacity() / eventSizeBytes, numEvents - eventNumber);
+        buf.clear();
+        buf.limit(numToRead * eventSizeBytes);
+        final long offset = headerOffset + (eventNumber * eventSizeBytes);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, offset + buf.position()) < 0) {
+                throw new IOException("unexpected end of file at byte " + (offset + buf.position()));
+            }
+        }
+        return numToRead;
+    }
+
+    private int address(ByteBuffer buf, int k) {
+        return timestampOffsetBytes == Integer.BYTES ? buf.getInt(k * eventSizeBytes) : (buf.getShort(k * eventSizeBytes) & 0xffff);
+    }
+
+    /**
+     * Saves the index to the index file. Failure is logged but not fatal.
+     */
+    private void save() {
+        if (indexFile == null) {
+            return;
+        }
+        File tmp = new File(indexFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(dataFile.length());
+            out.writeLong(dataFile.lastModified());
+            out.writeLong(headerOffset);
+            out.writeInt(eventSizeBytes);
+            out.writeInt(timestampResetBitmask);
+            out.writeInt(EVENTS_PER_ENTRY);
+            out.writeInt(numEntries);
+            for (int i = 0; i < numEntries; i++) {
+                out.writeInt(segments[i]);
+                out.writeLong(times[i]);
+                out.writeInt(stateSegments[i]);
+                out.writeInt(stateOffsets[i]);
+                out.writeInt(stateLastTimestamps[i]);
+                out.writeLong(stateLastTimes[i]);
+                out.writeLong(stateMaxTimes[i]);
+            }
+        } catch (IOException e) {
+            log.info("could not save timestamp index to " + indexFile + " (" + e.toString() + "), keeping it only in memory");
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(indexFile)) {
+            indexFile.delete();
+            if (!tmp.renameTo(indexFile)) {
+                log.info("could not rename " + tmp + " to " + indexFile);
+                tmp.delete();
+                return;
+            }
+        }
+        log.info("saved timestamp index to " + indexFile);
+    }
+
+    private void allocate(int n) {
+        segments = new int[n];
+        times = new long[n];
+        stateSegments = new int[n];
+        stateOffsets = new int[n];
+        stateLastTimestamps = new int[n];
+        stateLastTimes = new long[n];
+        stateMaxTimes = new long[n];
+    }
+
+    synchronized private void setReady(int n) {
+        numEntries = n;
+        ready = true;
+    }
+
+    /**
+     * @return true when the index has been loaded or built and can be used
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @return the number of index entries
+     */
+    synchronized public int getNumEntries() {
+        return numEntries;
+    }
+
+    /**
+     * @return the timestamp reset bitmask the index was built with
+     */
+    public int getTimestampResetBitmask() {
+        return timestampResetBitmask;
+    }
+
+    /**
+     * The result of findTimestamp
+     */
+    public static class SeekResult {
+
+        /**
+         * The event position found
+         */
+        public long position;
+        /**
+         * Its corrected timestamp
+         */
+        public int timestamp;
+        /**
+         * The timestamp offset in effect before the event
+         */
+        public int timestampOffset;
+    }
+
+    /**
+     * Finds the first event with a timestamp at least <code>timestamp</code>
+     * in the segment of the event before <code>fromPosition</code>. Since
+     * timestamps wrap, <code>timestamp</code> is taken as the occurrence
+     * nearest to the time of that event. The entry to start from is found by
+     * binary search, then at most EVENTS_PER_ENTRY + 1 events are decoded from
+     * the file.
+     *
+     * @param channel the channel of the recording
+     * @param fromPosition the current event position, i.e. the one after the
+     * last event read
+     * @param timestamp the timestamp to seek to, in the corrected time base of
+     * AEFileInputStream
+     * @param result filled with the event found
+     * @return true if found, false if the index is not ready or the segment
+     * ends before the timestamp
+     * @throws IOException on reading the file
+     */
+    synchronized public boolean findTimestamp(FileChannel channel, long fromPosition, int timestamp, SeekResult result) throws IOException {
+        if (!ready || numEntries == 0) {
+            return false;
+        }
+        final long numEvents = (channel.size() - headerOffset) / eventSizeBytes;
+        if (seekBuffer == null) {
+            seekBuffer = ByteBuffer.allocate((EVENTS_PER_ENTRY + 1) * eventSizeBytes);
+        }
+        final ScanState state = new ScanState();
+
+        // the segment and time of the event before fromPosition
+        final long last = Math.min(fromPosition, numEvents) - 1;
+        final int segment;
+        final long target;
+        if (last < 0) {
+            segment = 0;
+            target = timestamp;
+        } else {
+            final int entry = (int) (last / EVENTS_PER_ENTRY);
+            loadState(entry, state);
+            scan(channel, state, getPosition(entry), last + 1, -1, 0, null);
+            segment = Math.max(0, state.segment);
+            target = state.lastTime + (timestamp - state.lastTimestamp);
+        }
+
+        // last entry before (segment, target)
+        int lo = -1, hi = numEntries - 1;
+        while (lo < hi) {
+            final int mid = (lo + hi + 1) >>> 1;
+            if (segments[mid] < segment || (segments[mid] == segment && times[mid] < target)) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        final long start;
+        final ScanState from = new ScanState();
+        if (lo < 0) {
+            start = 0;
+        } else {
+            loadState(lo, from);
+            start = getPosition(lo);
+        }
+        final long limit = Math.min(numEvents, lo + 1 < numEntries ? getPosition(lo + 1) + 1 : numEvents);
+        return scan(channel, from, start, limit, segment, target, result);
+    }
+
+    private void loadState(int entry, ScanState state) {
+        state.segment = stateSegments[entry];
+        state.offset = stateOffsets[entry];
+        state.lastTimestamp = stateLastTimestamps[entry];
+        state.lastTime = stateLastTimes[entry];
+        state.maxTime = stateMaxTimes[entry];
+    }
+
+    /**
+     * Decodes the events from start to limit. If result is not null, stops at
+     * the first event in segment with a time at least target and fills
+     * result. Events with zero timestamp are skipped, so the event found is
+     * the one that readEventForwards of AEFileInputStream returns from there.
+     *
+     * @return true if an event was found
+     */
+    private boolean scan(FileChannel channel, ScanState state, long start, long limit, int segment, long target, SeekResult result) throws IOException {
+        long eventNumber = start;
+        while (eventNumber < limit) {
+            final int numRead = read(channel, seekBuffer, eventNumber, limit);
+            for (int k = 0; k < numRead; k++, eventNumber++) {
+                final int rawTimestamp = seekBuffer.getInt((k * eventSizeBytes) + timestampOffsetBytes);
+                if (rawTimestamp == 0) {
+                    continue;
+                }
+                final int offsetBefore = state.offset;
+                final int ts = state.next(address(seekBuffer, k), rawTimestamp, timestampResetBitmask);
+                if (result == null) {
+                    continue;
+                }
+                if (state.segment > segment) {
+                    return false;
+                }
+                if (state.segment == segment && state.maxTime >= target) {
+                    result.position = eventNumber;
+                    result.timestamp = ts;
+                    result.timestampOffset = offsetBefore;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param entry the entry number
+     * @return the event position (event number) of the entry
+     */
+    public long getPosition(int entry) {
+        return (long) entry * EVENTS_PER_ENTRY;
+    }
+
+    /**
+     * @param entry the entry number
+     * @return the segment of the entry event; segments start at timestamp
+     * resets
+     */
+    synchronized public int getSegment(int entry) {
+        return segments[entry];
+    }
+
+    /**
+     * @param entry the entry number
+     * @return the unwrapped time of the entry event within its segment
+     */
+    synchronized public long getTime(int entry) {
+        return times[entry];
+    }
+
+    /**
+     * @param entry the entry number
+     * @return the byte offset of the entry in the recording
+     */
+    public long getByteOffset(int entry) {
+        return headerOffset + (getPosition(entry) * eventSizeBytes);
+    }
+
+    /**
+     * @param entry the entry number
+     * @return the memory mapped chunk of AEFileInputStream holding the entry
+     */
+    public int getChunkNumber(int entry) {
+        return (int) ((getPosition(entry) * eventSizeBytes) / chunkSizeBytes);
+    }
+
+    /**
+     * @return the file the index is cached in, or null if it is only kept in
+     * memory
+     */
+    public File getIndexFile() {
+        return indexFile;
+    }
+
+    @Override
+    public String toString() {
+        return "AEFileTimestampIndex for " + dataFile.getName() + (ready ? " with " + numEntries + " entries" : " (not ready)");
+    }
+}
@@ -14,25 +14,53 @@ package net.sf.jaer.eventio;
 import java.beans.PropertyChangeSupport;
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.prefs.Preferences;
 
+import net.sf.jaer.aemonitor.AEPacketRaw;
+
 /**
- * Following is target functionality (right now this class only opens a single socket to most recent client connecting to it
-and events are only streamed to this one socket): This server socket allows a source host to listen for connections from other hosts and open AESockets to them to allow
-streaming AE data to them, so as a server, we stream events to the clients.
-These stream socket connections transmit data reliably.
-<p>
-Multile clients can recieve events from a single server through the use of java.nio channels and selectors.
-<p>
-The AESocket's are manufactured when a client connects to the AEViewer. The AESocket's are built with options that are
-set using the AEServerSocketOptionsDialog.
-This AEServerSocket is a Thread and it must be started after construction to allow incoming connections.
-<p>
- * AEServerSocket has PropertyChangeSupport; see the {@link #getSupport() } method for change event information.
+ * This server socket allows a source host to listen for connections from other
+ * hosts and to stream AE data to all of them, so as a server, we stream events
+ * to the clients. These stream socket connections transmit data reliably.
+ * <p>
+ * Multiple clients receive events from a single server through java.nio
+ * channels and a Selector, all served by this one Thread, which must be
+ * started after construction to allow incoming connections. The producer
+ * (e.g. AEViewer) calls writePacket, which encodes each packet once into a
+ * buffer that is shared by all clients and queues it to each client without
+ * blocking. The stream format is the one read by AESocket: int32 timestamp,
+ * int32 address for each event, big endian unless
+ * swapBytesEnabled is set, with timestamps relative to the first event sent
+ * to each client or as ISIs if AESocket.isiEnabled.
+ * <p>
+ * Each client has a send queue of at most getMaxQueuedPackets() packets. When
+ * a client cannot keep up and its queue is full, the SlowClientPolicy decides
+ * whether new packets are dropped for this client or the client is
+ * disconnected; other clients are not affected.
+ * <p>
+ * A client may optionally send the ASCII command line
+ * <code>subsample n</code> to receive only every n'th event. Clients that send
+ * nothing, like AESocket, receive all events.
+ * <p>
+ * AEServerSocket has PropertyChangeSupport; see the {@link #getSupport() }
+ * method for change event information.
+ *
  * @author tobi
  */
 public class AEServerSocket extends Thread {
@@ -40,97 +68,374 @@ public class AEServerSocket extends Thread {
     static Preferences prefs = net.sf.jaer.JaerConstants.PREFS_ROOT;
     static Logger log = Logger.getLogger("net.sf.jaer");
     private PropertyChangeSupport support = new PropertyChangeSupport(this);
-    public static final int DEFAULT_BUFFERED_STREAM_SIZE_BYTES = 8192;
     public static final int DEFAULT_SEND_BUFFER_SIZE_BYTES = 8192;
     public static final int DEFAULT_RECIEVE_BUFFER_SIZE_BYTES = 8192;
-    private ServerSocket serverSocket;
-    private AESocket socket = null;
-    private int bufferedStreamSize = prefs.getInt("AEServerSocket.bufferedStreamSize", DEFAULT_BUFFERED_STREAM_SIZE_BYTES);
+    /**
+     * Default capacity of the send queue of each client, in packets
+     */
+    public static final int DEFAULT_MAX_QUEUED_PACKETS = 64;
+    /**
+     * Command sent by a client to receive only every n'th event
+     */
+    public static final String SUBSAMPLE_COMMAND = "subsample";
+    private static final int EVENT_SIZE_BYTES = 8;
+    private static final int COMMAND_BUFFER_SIZE_BYTES = 256;
+    private static final int DROP_WARNING_INTERVAL = 1000;
+
+    /**
+     * What to do with a client whose send queue is full
+     */
+    public enum SlowClientPolicy {
+        /**
+         * Drop new packets for the client until it has caught up
+         */
+        DROP_PACKETS,
+        /**
+         * Close the connection to the client
+         */
+        DISCONNECT
+    };
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final CopyOnWriteArrayList<Client> clients = new CopyOnWriteArrayList<>();
     private int sendBufferSize = prefs.getInt("AEServerSocket.sendBufferSize", DEFAULT_SEND_BUFFER_SIZE_BYTES);
     private int port = prefs.getInt("AEServerSocket.port", AENetworkInterfaceConstants.STREAM_PORT);
     private int receiveBufferSize = prefs.getInt("AEServerSocket.receiveBufferSize", DEFAULT_RECIEVE_BUFFER_SIZE_BYTES);
     private boolean flushPackets = prefs.getBoolean("AESocket.flushPackets", true);
-    private boolean useBufferedStreams = prefs.getBoolean("AEServerSocket.useBufferedStreams", true);
-    private Thread T = null;
+    private int maxQueuedPackets = prefs.getInt("AEServerSocket.maxQueuedPackets", DEFAULT_MAX_QUEUED_PACKETS);
+    private SlowClientPolicy slowClientPolicy = SlowClientPolicy.valueOf(prefs.get("AEServerSocket.slowClientPolicy", SlowClientPolicy.DROP_PACKETS.name()));
+    private volatile boolean swapBytesEnabled = prefs.getBoolean("AESocket.swapBytesEnabled", AESocketSettings.DEFAULT_SWAPBYTES_ENABLED);
+    private final ArrayList<Encoded> encodedBuffers = new ArrayList<>(); // for the current writePacket
 
-    /** Creates a new instance of AEServerSocket. This Thread must be started to serve connections.
-    @throws java.net.BindException when the socket is already bound (probably by another viewer)
+    /**
+     * A packet encoded for clients with the same subsampling and timestamp
+     * state, shared by them.
      */
-    public AEServerSocket() throws java.io.IOException {
-        T = this;
-        serverSocket = new ServerSocket();
-        serverSocket.setReceiveBufferSize(receiveBufferSize);
-        /*}catch(java.net.BindException be){
-        log.warning("server socket already bound to port (probably from another AEViewer)");
+    private static final class Encoded {
+
+        final int subsample, t0, lastTimestamp;
+        final ByteBuffer buffer;
+
+        Encoded(int subsample, int t0, int lastTimestamp, ByteBuffer buffer) {
+            this.subsample = subsample;
+            this.t0 = t0;
+            this.lastTimestamp = lastTimestamp;
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * One connected client and its send queue.
+     */
+    private final class Client {
+
+        final SocketChannel channel;
+        final SocketAddress address;
+        final ArrayBlockingQueue<ByteBuffer> queue = new ArrayBlockingQueue<>(Math.max(1, maxQueuedPackets));
+        final ByteBuffer commandBuffer = ByteBuffer.allocate(COMMAND_BUFFER_SIZE_BYTES);
+        ByteBuffer sending = null; // the packet being written, a duplicate of the shared buffer
+        volatile int subsample = 1;
+        volatile boolean closeRequested = false;
+        long sentPackets = 0, droppedPackets = 0;
+        // timestamp state of the events queued for this client, only used by writePacket
+        boolean t0Set = false;
+        int t0 = 0, lastTimestamp = 0;
+
+        Client(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            this.address = channel.getRemoteAddress();
+        }
+
+        /**
+         * Queues a packet. Called by the producer thread.
+         *
+         * @return false if the queue was full
          */
+        boolean offer(ByteBuffer encoded) {
+            if (queue.offer(encoded)) {
+                return true;
+            }
+            if (droppedPackets++ % DROP_WARNING_INTERVAL == 0) {
+                log.warning(this + " is not keeping up, " + droppedPackets + " packets not sent so far");
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "client " + address + (subsample > 1 ? " (subsample " + subsample + ")" : "");
+        }
+    }
+
+    /**
+     * Creates a new instance of AEServerSocket. This Thread must be started to
+     * serve connections.
+     *
+     * @throws java.io.IOException if the selector or server channel cannot be
+     * opened
+     */
+    public AEServerSocket() throws java.io.IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().setReceiveBufferSize(receiveBufferSize);
+        serverChannel.configureBlocking(false);
         setName("AEServerSocket port=" + port);
+        setDaemon(true);
     }
 
+    @Override
     public String toString() {
-        return "AEServerSocket on port=" + port;
+        return "AEServerSocket on port=" + port + " with " + clients.size() + " clients";
     }
 
-    /** Accepts incoming connections and manufactures AESocket's for them. Currently only a single
-     * client is supported.
+    /**
+     * Binds the server channel and then accepts connections, reads client
+     * commands and writes the queued packets to all clients until the server
+     * is closed.
      */
+    @Override
     public void run() {
-        if (serverSocket == null) {
-            return; // port was already bound
+        try {
+            serverChannel.bind(new InetSocketAddress(port)); // FIXME TODO, if we have a port here that is already in use, then we can't use the ServerSocket options dialog to change it!!
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            log.info("bound " + this);
+        } catch (IOException ioe) {
+            log.warning("couldn't bind AEServerSocket to port " + port + " : " + ioe + "; this run() will break. A new AEServerSocket should be contructed.");
+            return;
         }
-        while (!isInterrupted()) {
-            try {
-                if (!serverSocket.isBound()) {
-                    try {
-                        serverSocket.bind(new InetSocketAddress(port)); // FIXME TODO, if we have a port here that is already in use, then we can't use the ServerSocket options dialog to change it!!
-                        log.info("bound " + this);
-                    } catch (IOException ioe) {
-                        log.warning("couldn't bind AEServerSocket to port " + port + " : " + ioe+ "; this run() will break. A new AEServerSocket should be contructed.");
-                        break;
+        try {
+            while (!isInterrupted() && selector.isOpen()) {
+                updateInterestOps();
+                selector.select();
+                final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
                     }
-                }
-                Socket newSocket = serverSocket.accept(); // makes a new socket to the connecting client
-                if (socket != null) {
-                    log.info("closing existing stream TCP output socket " + socket + " to accept a new connection"); // TODO multiple clients should be possible
+                    if (key.isAcceptable()) {
+                        try {
+                            accept();
+                        } catch (IOException e) {
+                            log.warning("could not accept connection on port " + port + ": " + e.toString());
+                        }
+                        continue;
+                    }
+                    final Client client = (Client) key.attachment();
                     try {
-                        socket.close();
-                    } catch (IOException ioe) {
-                        log.warning("while closing old socket caught " + ioe.getMessage());
+                        if (key.isReadable()) {
+                            readCommands(client);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            writeQueued(client);
+                        }
+                    } catch (IOException e) {
+                        log.info(client + " closed connection: " + e.toString());
+                        closeClient(client);
                     }
                 }
-                newSocket.setSendBufferSize(sendBufferSize);
-                if (newSocket.getSendBufferSize() != getSendBufferSize()) {
-                    log.warning("accepted connection and asked for sendBufferSize=" + getSendBufferSize() + " but only got sendBufferSize=" + newSocket.getSendBufferSize());
+            }
+        } catch (ClosedSelectorException e) {
+            // closed by close()
+        } catch (IOException e) {
+            if (!isInterrupted()) {
+                log.log(Level.WARNING, "AEServerSocket on port " + port + " stopped serving clients: " + e.toString(), e);
+            }
+        } finally {
+            for (Client c : clients) {
+                closeClient(c);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        final SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setSendBufferSize(sendBufferSize);
+        channel.socket().setTcpNoDelay(flushPackets);
+        if (channel.socket().getSendBufferSize() != getSendBufferSize()) {
+            log.warning("accepted connection and asked for sendBufferSize=" + getSendBufferSize() + " but only got sendBufferSize=" + channel.socket().getSendBufferSize());
+        }
+        final Client client = new Client(channel);
+        channel.register(selector, SelectionKey.OP_READ, client);
+        clients.add(client);
+        log.info("accepted incoming stream TCP connection from " + client.address + ", now serving " + clients.size() + " clients");
+        getSupport().firePropertyChange("clientconnected", null, client.address);
+    }
+
+    /**
+     * Sets OP_WRITE interest for clients that have queued packets and closes
+     * clients that were marked for disconnection by the producer.
+     */
+    private void updateInterestOps() {
+        for (Client c : clients) {
+            if (c.closeRequested) {
+                log.warning("disconnecting " + c + " because it is not keeping up");
+                closeClient(c);
+                continue;
+            }
+            final SelectionKey key = c.channel.keyFor(selector);
+            if (key != null && key.isValid()) {
+                final boolean pending = c.sending != null || !c.queue.isEmpty();
+                key.interestOps(SelectionKey.OP_READ | (pending ? SelectionKey.OP_WRITE : 0));
+            }
+        }
+    }
+
+    private void writeQueued(Client c) throws IOException {
+        while (true) {
+            if (c.sending == null) {
+                final ByteBuffer next = c.queue.poll();
+                if (next == null) {
+                    return;
                 }
-                AESocket aeSocket = new AESocket(newSocket);
-                aeSocket.setFlushPackets(isFlushPackets());
-                aeSocket.setUseBufferedStreams(isUseBufferedStreams());
-                AESocket oldSocket = aeSocket;
-                synchronized (this) {
-                    setSocket(aeSocket);
+                c.sending = next.duplicate(); // each client has its own position in the shared buffer
+            }
+            c.channel.write(c.sending);
+            if (c.sending.hasRemaining()) {
+                return; // socket buffer full, wait for the next OP_WRITE
+            }
+            c.sending = null;
+            c.sentPackets++;
+        }
+    }
+
+    /**
+     * Reads command lines from a client, e.g. "subsample 4".
+     */
+    private void readCommands(Client c) throws IOException {
+        if (c.channel.read(c.commandBuffer) < 0) {
+            throw new ClosedChannelException();
+        }
+        c.commandBuffer.flip();
+        final String s = StandardCharsets.US_ASCII.decode(c.commandBuffer).toString();
+        final int end = s.lastIndexOf('\n');
+        c.commandBuffer.clear();
+        if (end < 0) {
+            if (s.length() >= COMMAND_BUFFER_SIZE_BYTES) {
+                log.warning("ignoring too long command from " + c);
+            } else {
+                c.commandBuffer.put(s.getBytes(StandardCharsets.US_ASCII)); // keep the partial line
+            }
+            return;
+        }
+        c.commandBuffer.put(s.substring(end + 1).getBytes(StandardCharsets.US_ASCII));
+        for (String line : s.substring(0, end).split("\n")) {
+            final String[] tokens = line.trim().split("\\s+");
+            if (tokens.length == 2 && tokens[0].equalsIgnoreCase(SUBSAMPLE_COMMAND)) {
+                try {
+                    c.subsample = Math.max(1, Integer.parseInt(tokens[1]));
+                    log.info(c + " set subsampling");
+                } catch (NumberFormatException e) {
+                    log.warning("bad subsample command \"" + line + "\" from " + c);
                 }
-                log.info("accepted incoming stream TCP socket request to send events on socket " + newSocket);
-                getSupport().firePropertyChange("clientconnected", oldSocket, aeSocket);
-            }catch(SocketException se){
-                log.info("socket closed gracefully? caught "+ se.toString());
-                break;
-            } catch (IOException e) {
-                if (!isInterrupted()) {
-                    log.warning(e.toString() + ": AEServerSocket on port " + port + " may already be bound by another viewer");
+            } else if (!line.isBlank()) {
+                log.warning("ignoring unknown command \"" + line + "\" from " + c);
+            }
+        }
+    }
+
+    private void closeClient(Client c) {
+        if (!clients.remove(c)) {
+            return;
+        }
+        try {
+            c.channel.close();
+        } catch (IOException e) {
+            log.warning("while closing " + c + " caught " + e.toString());
+        }
+        log.info(String.format("closed %s after sending %d packets (%d dropped), now serving %d clients", c, c.sentPackets, c.droppedPackets, clients.size()));
+        getSupport().firePropertyChange("clientdisconnected", c.address, null);
+    }
+
+    /**
+     * Sends the packet to all connected clients without blocking. The packet
+     * is encoded once for each distinct client subsampling and timestamp state
+     * and the encoded buffer is shared by these clients. Clients whose queue
+     * is full are handled according to getSlowClientPolicy(); their
+     * timestamps continue from the last event that was queued for them.
+     *
+     * @param packet the packet; returns doing nothing if null or empty
+     */
+    synchronized public void writePacket(AEPacketRaw packet) {
+        if (packet == null || packet.getNumEvents() == 0 || clients.isEmpty()) {
+            return;
+        }
+        final int n = packet.getNumEvents();
+        final int[] ts = packet.getTimestamps();
+        for (Client c : clients) {
+            if (c.closeRequested) {
+                continue;
+            }
+            final int subsample = c.subsample;
+            // a new client starts at time zero like a new AESocket
+            final int t0 = c.t0Set ? c.t0 : ts[0];
+            final int last = c.t0Set ? c.lastTimestamp : ts[0];
+            ByteBuffer encoded = null;
+            for (Encoded e : encodedBuffers) {
+                if (e.subsample == subsample && e.t0 == t0 && e.lastTimestamp == last) {
+                    encoded = e.buffer;
+                    break;
                 }
-                break;
+            }
+            if (encoded == null) {
+                encoded = encode(packet, subsample, t0, last);
+                encodedBuffers.add(new Encoded(subsample, t0, last, encoded));
+            }
+            if (c.offer(encoded)) {
+                c.t0 = t0;
+                c.t0Set = true;
+                c.lastTimestamp = ts[((n - 1) / subsample) * subsample]; // the last event sent to this client
+            } else if (slowClientPolicy == SlowClientPolicy.DISCONNECT) {
+                c.closeRequested = true;
             }
         }
+        encodedBuffers.clear();
+        selector.wakeup();
     }
 
-    synchronized public AESocket getAESocket() {
-        return socket;
+    /**
+     * Encodes every subsample'th event as int32 timestamp, int32 address,
+     * with the timestamp normalization of AESocket.writePacket and the current
+     * byte order. With subsampling, ISIs are between the transmitted events.
+     *
+     * @param t0 the timestamp that is sent as zero
+     * @param lastTimestamp the timestamp of the last event sent before, for
+     * ISIs
+     * @return a read-only buffer ready to be written
+     */
+    private ByteBuffer encode(AEPacketRaw packet, int subsample, int t0, int lastTimestamp) {
+        final int n = packet.getNumEvents();
+        final int[] a = packet.getAddresses();
+        final int[] ts = packet.getTimestamps();
+        final boolean isi = AESocket.isiEnabled;
+        final ByteBuffer b = ByteBuffer.allocate(((n + subsample - 1) / subsample) * EVENT_SIZE_BYTES)
+                .order(swapBytesEnabled ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        int last = lastTimestamp;
+        for (int i = 0; i < n; i += subsample) {
+            b.putInt(isi ? ts[i] - last : ts[i] - t0);
+            b.putInt(a[i]);
+            last = ts[i];
+        }
+        b.flip();
+        return b.asReadOnlyBuffer();
     }
 
-    public void setSocket(AESocket socket) {
-        this.socket = socket;
+    /**
+     * @return the number of connected clients
+     */
+    public int getNumClients() {
+        return clients.size();
     }
 
-    /** Tests class by constructing a socket and starting the thread */
+    /**
+     * Tests class by constructing a socket and starting the thread
+     */
     public static void main(String[] a) {
         AEServerSocket ss;
         try {
@@ -141,11 +446,6 @@ public class AEServerSocket extends Thread {
         }
     }
 
-    public void setBufferedStreamSize(int bufferedStreamSize) {
-        this.bufferedStreamSize = bufferedStreamSize;
-        prefs.putInt("AEServerSocket.bufferedStreamSize", bufferedStreamSize);
-    }
-
     public void setSendBufferSize(int sendBufferSize) {
         this.sendBufferSize = sendBufferSize;
         prefs.putInt("AEServerSocket.sendBufferSize", sendBufferSize);
@@ -160,10 +460,6 @@ public class AEServerSocket extends Thread {
         return sendBufferSize;
     }
 
-    public int getBufferedStreamSize() {
-        return bufferedStreamSize;
-    }
-
     public int getReceiveBufferSize() {
         return receiveBufferSize;
     }
@@ -177,6 +473,10 @@ public class AEServerSocket extends Thread {
         return port;
     }
 
+    /**
+     * @return true if TCP_NODELAY is set on new connections, so that each
+     * packet is sent immediately
+     */
     public boolean isFlushPackets() {
         return flushPackets;
     }
@@ -186,44 +486,85 @@ public class AEServerSocket extends Thread {
         prefs.putBoolean("AESocket.flushPackets", flushPackets);
     }
 
-    /** shuts down the server socket thread and closes the server socket */
-    public void close() throws IOException {
-        log.info("closing AEServerSocket thread");
-//        T.interrupt();
-//        try {
-//            T.join(50,0); // wait some ms for server thread to die
-//        } catch (InterruptedException ex) {
-//            log.info("interrupted during thread shutdown");
-//        }
-        serverSocket.close();
-        try {
-            T.join(1000);
-        } catch (InterruptedException ex) {
-            log.info("join after server socket close was interrupted");
-        }
-        log.info("closed server socket");
+    /**
+     * @return true if events are sent little endian
+     */
+    public boolean isSwapBytesEnabled() {
+        return swapBytesEnabled;
+    }
+
+    /**
+     * Sets the byte order of the events; takes effect with the next packet.
+     *
+     * @param swapBytesEnabled true to send little endian, e.g. to native
+     * clients, false for big endian like AESocket
+     */
+    public void setSwapBytesEnabled(boolean swapBytesEnabled) {
+        this.swapBytesEnabled = swapBytesEnabled;
+        prefs.putBoolean("AESocket.swapBytesEnabled", swapBytesEnabled);
+    }
+
+    /**
+     * @return the maximum number of packets queued for each client
+     */
+    public int getMaxQueuedPackets() {
+        return maxQueuedPackets;
     }
 
     /**
-     * @return the useBufferedStreams
+     * Sets the capacity of the send queue of clients that connect from now
+     * on.
+     *
+     * @param maxQueuedPackets the maximum number of packets queued for each
+     * client
      */
-    public boolean isUseBufferedStreams() {
-        return useBufferedStreams;
+    public void setMaxQueuedPackets(int maxQueuedPackets) {
+        this.maxQueuedPackets = Math.max(1, maxQueuedPackets);
+        prefs.putInt("AEServerSocket.maxQueuedPackets", this.maxQueuedPackets);
     }
 
     /**
-     * @param useBufferedStreams the useBufferedStreams to set
+     * @return what is done with a client whose send queue is full
      */
-    public void setUseBufferedStreams(boolean useBufferedStreams) {
-        this.useBufferedStreams = useBufferedStreams;
+    public SlowClientPolicy getSlowClientPolicy() {
+        return slowClientPolicy;
+    }
+
+    /**
+     * @param slowClientPolicy what to do with a client whose send queue is
+     * full
+     */
+    public void setSlowClientPolicy(SlowClientPolicy slowClientPolicy) {
+        this.slowClientPolicy = slowClientPolicy;
+        prefs.put("AEServerSocket.slowClientPolicy", slowClientPolicy.name());
+    }
+
+    /**
+     * shuts down the server socket thread and closes the server socket and
+     * all client connections
+     */
+    public void close() throws IOException {
+        log.info("closing AEServerSocket thread");
+        interrupt();
+        selector.close();
+        serverChannel.close();
+        try {
+            join(1000);
+        } catch (InterruptedException ex) {
+            log.info("join after server socket close was interrupted");
+        }
+        log.info("closed server socket");
     }
 
     /**
      * PropertyChange events are fired as follows:
      * <ul>
-     * <li> "clientconnected" - when a client has connected to us.
+     * <li> "clientconnected" - when a client has connected to us. The new
+     * value is the SocketAddress of the client.
+     * <li> "clientdisconnected" - when a client has disconnected or was
+     * disconnected. The old value is the SocketAddress of the client.
      * </ul>
-
+     *
      * @return the support.
      */
     public PropertyChangeSupport getSupport() {
@@ -9,7 +9,7 @@ package net.sf.jaer.eventio;
 import java.util.logging.Logger;
 
 /**
-A dialog for opening AEServerSocket connections. Includes buffer sizes.
+A dialog for opening AEServerSocket connections. Includes the send buffer size.
 @author  tobi
  */
 public class AEServerSocketOptionsDialog extends javax.swing.JDialog {
@@ -29,11 +29,9 @@ public class AEServerSocketOptionsDialog extends javax.swing.JDialog {
             throw new RuntimeException("null aeServerSocket");
         }
         this.aeServerSocket = aeServerSocket;
-        bufferSizeTextField.setText(Integer.toString(aeServerSocket.getBufferedStreamSize()));
         sendBufferSizeTextField.setText(Integer.toString(aeServerSocket.getSendBufferSize()));
         portTextField.setText(Integer.toString(aeServerSocket.getPort()));
         flushPacketsCheckBox.setSelected(aeServerSocket.isFlushPackets());
-        useBufferedStreamsCheckBox.setSelected(aeServerSocket.isUseBufferedStreams());
         getRootPane().setDefaultButton(okButton); // allows enter to just accept values
     }
 
@@ -52,15 +50,12 @@ public class AEServerSocketOptionsDialog extends javax.swing.JDialog {
 
         okButton = new javax.swing.JButton();
         cancelButton = new javax.swing.JButton();
-        jLabel2 = new javax.swing.JLabel();
-        bufferSizeTextField = new javax.swing.JTextField();
         jLabel3 = new javax.swing.JLabel();
         sendBufferSizeTextField = new javax.swing.JTextField();
         defaultsButton = new javax.swing.JButton();
         jLabel5 = new javax.swing.JLabel();
         portTextField = new javax.swing.JTextField();
         flushPacketsCheckBox = new javax.swing.JCheckBox();
-        useBufferedStreamsCheckBox = new javax.swing.JCheckBox();
 
         addWindowListener(new java.awt.event.WindowAdapter() {
             public void windowClosing(java.awt.event.WindowEvent evt) {
@@ -83,10 +78,6 @@ public class AEServerSocketOptionsDialog extends javax.swing.JDialog {
             }
         });
 
-        jLabel2.setText("Buffered stream  size (bytes)");
-
-        bufferSizeTextField.setToolTipText("size of buffered stream enclosing writes to socket (increasing reduces pauses on sender but increases latency)");
-
         jLabel3.setText("Send buffer size (bytes)");
 
         sendBufferSizeTextField.setToolTipText("size of underlying buffer for socket writes (has maximum defined by underlying layer)");
@@ -113,17 +104,6 @@ public class AEServerSocketOptionsDialog extends javax.swing.JDialog {
         flushPacketsCheckBox.setBorder(javax.swing.BorderFactory.createEmptyBorder(0, 0, 0, 0));
         flushPacketsCheckBox.setMargin(new java.awt.Insets(0, 0, 0, 0));
 
-        useBufferedStreamsCheckBox.setSelected(true);
-        useBufferedStreamsCheckBox.setText("Use buffered streams");
-        useBufferedStreamsCheckBox.setToolTipText("Enabled to use BufferedInputStream and BufferedOutputStream on the socket");
-        useBufferedStreamsCheckBox.setBorder(javax.swing.BorderFactory.createEmptyBorder(0, 0, 0, 0));
-        useBufferedStreamsCheckBox.setMargin(new java.awt.Insets(0, 0, 0, 0));
-        useBufferedStreamsCheckBox.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                useBufferedStreamsCheckBoxActionPerformed(evt);
-            }
-        });
-
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(getContentPane());
         getContentPane().setLayout(layout);
         layout.setHorizontalGroup(
@@ -139,19 +119,13 @@ public class AEServerSocketOptionsDialog extends javax.swing.JDialog {
                         .addComponent(cancelButton))
                     .addComponent(jLabel3)
                     .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.TRAILING, false)
+                        .addComponent(flushPacketsCheckBox, javax.swing.GroupLayout.Alignment.LEADING)
                         .addGroup(javax.swing.GroupLayout.Alignment.LEADING, layout.createSequentialGroup()
-                            .addComponent(flushPacketsCheckBox)
-                            .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
-                            .addComponent(useBufferedStreamsCheckBox))
-                        .addGroup(javax.swing.GroupLayout.Alignment.LEADING, layout.createSequentialGroup()
-                            .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
-                                .addComponent(jLabel2)
-                                .addComponent(jLabel5))
+                            .addComponent(jLabel5)
                             .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                             .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING, false)
-                                .addComponent(portTextField)
-                                .addComponent(sendBufferSizeTextField)
-                                .addComponent(bufferSizeTextField, javax.swing.GroupLayout.DEFAULT_SIZE, 104, Short.MAX_VALUE)))))
+                                .addComponent(portTextField, javax.swing.GroupLayout.DEFAULT_SIZE, 104, Short.MAX_VALUE)
+                                .addComponent(sendBufferSizeTextField)))))
                 .addContainerGap())
         );
 
@@ -165,17 +139,11 @@ public class AEServerSocketOptionsDialog extends javax.swing.JDialog {
                     .addComponent(portTextField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(jLabel5))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
-                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
-                    .addComponent(jLabel2)
-                    .addComponent(bufferSizeTextField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
-                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(jLabel3)
                     .addComponent(sendBufferSizeTextField, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
-                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
-                    .addComponent(flushPacketsCheckBox)
-                    .addComponent(useBufferedStreamsCheckBox))
+                .addComponent(flushPacketsCheckBox)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED, 14, Short.MAX_VALUE)
                 .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
                     .addComponent(cancelButton)
@@ -189,7 +157,6 @@ public class AEServerSocketOptionsDialog extends javax.swing.JDialog {
 
 private void defaultsButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_defaultsButtonActionPerformed
       portTextField.setText(Integer.toString(AENetworkInterfaceConstants.STREAM_PORT));
-      bufferSizeTextField.setText(Integer.toString(AEServerSocket.DEFAULT_BUFFERED_STREAM_SIZE_BYTES));
       sendBufferSizeTextField.setText(Integer.toString(AEServerSocket.DEFAULT_SEND_BUFFER_SIZE_BYTES));
 //      receiveBufferSizeTextField.setText(Integer.toString(AEServerSocket.DEFAULT_RECEIVE_BUFFER_SIZE_BYTES));
 }//GEN-LAST:event_defaultsButtonActionPerformed
@@ -201,7 +168,6 @@ private void defaultsButtonActionPerformed(java.awt.event.ActionEvent evt) {//GE
     private void okButtonActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_okButtonActionPerformed
         int sendBufferSize=AEServerSocket.DEFAULT_SEND_BUFFER_SIZE_BYTES;
         int receiveBufferSize=AEServerSocket.DEFAULT_RECIEVE_BUFFER_SIZE_BYTES;
-        int bufferedStreamSize=AEServerSocket.DEFAULT_BUFFERED_STREAM_SIZE_BYTES;
         int port=aeServerSocket.getPort();
         try {
             port = Integer.parseInt(portTextField.getText());
@@ -221,14 +187,7 @@ private void defaultsButtonActionPerformed(java.awt.event.ActionEvent evt) {//GE
 //            receiveBufferSizeTextField.selectAll();
 //            return;
 //        }
-        try {
-            bufferedStreamSize = Integer.parseInt(bufferSizeTextField.getText());
-        } catch (NumberFormatException e) {
-            bufferSizeTextField.selectAll();
-            return;
-        }
         aeServerSocket.setPort(port);
-        aeServerSocket.setBufferedStreamSize(bufferedStreamSize);
         aeServerSocket.setReceiveBufferSize(receiveBufferSize);
         aeServerSocket.setSendBufferSize(sendBufferSize);
         aeServerSocket.setFlushPackets(flushPacketsCheckBox.isSelected());
@@ -245,10 +204,6 @@ private void defaultsButtonActionPerformed(java.awt.event.ActionEvent evt) {//GE
         doClose(RET_CANCEL);
     }//GEN-LAST:event_closeDialog
 
-    private void useBufferedStreamsCheckBoxActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_useBufferedStreamsCheckBoxActionPerformed
-        // TODO add your handling code here:
-}//GEN-LAST:event_useBufferedStreamsCheckBoxActionPerformed
-
     private void doClose(int retStatus) {
         returnStatus = retStatus;
         setVisible(false);
@@ -257,17 +212,14 @@ private void defaultsButtonActionPerformed(java.awt.event.ActionEvent evt) {//GE
 
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
-    private javax.swing.JTextField bufferSizeTextField;
     private javax.swing.JButton cancelButton;
     private javax.swing.JButton defaultsButton;
     private javax.swing.JCheckBox flushPacketsCheckBox;
-    private javax.swing.JLabel jLabel2;
     private javax.swing.JLabel jLabel3;
     private javax.swing.JLabel jLabel5;
     private javax.swing.JButton okButton;
     private javax.swing.JTextField portTextField;
     private javax.swing.JTextField sendBufferSizeTextField;
-    private javax.swing.JCheckBox useBufferedStreamsCheckBox;
     // End of variables declaration//GEN-END:variables
     private int returnStatus = RET_CANCEL;
 }
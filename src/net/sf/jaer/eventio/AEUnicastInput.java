@@ -17,7 +17,10 @@ import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedSelectorException;
 import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Semaphore;
 import java.util.logging.Level;
@@ -58,6 +61,14 @@ import net.sf.jaer.eventio.Jaer3BufferParser.Jaer3EventExtractor;
  * <p>
  * The datagram socket is not connected to the receiver, i.e., connect() is not
  * called on the socket.
+ * <p>
+ * In batched receive mode (the default) the receiver thread waits on a
+ * Selector and then drains all datagrams that are queued on the socket into
+ * the preallocated direct buffers, rather than making one blocking receive per
+ * wakeup. If readPacket() falls behind so that no buffer is free, datagrams
+ * are dropped and counted rather than stalling the socket. Dropped datagrams
+ * and gaps in the sequence numbers are counted, see getDroppedDatagramCount()
+ * and getMissedDatagramCount().
  *
  * @see #setAddressFirstEnabled
  * @see #setSequenceNumberEnabled
@@ -105,6 +116,11 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
     private Jaer3BufferParser j3Parser;
     private int secGen2TimestampMSB = 0;
     private int secGen2TimestampLSB = 0;
+    private boolean batchReceiveEnabled = prefs.getBoolean("AEUnicastInput.batchReceiveEnabled", true);
+    private Selector selector = null; // used in batched receive mode
+    private ByteBuffer overflowBuffer = null; // receives datagrams that are dropped because readPacket has not freed any buffer
+    private ByteBuffer jaer3ReassemblyBuffer = null; // reused for jAER 3.x packets split across datagrams
+    private volatile long receivedDatagramCount = 0, droppedDatagramCount = 0, missedDatagramCount = 0;
 
     /**
      * Constructs an instance of AEUnicastInput and binds it to the default
@@ -141,6 +157,8 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
             availableBufferQueue.add(buffer);
         }
         filledBufferQueue.clear();
+        overflowBuffer = ByteBuffer.allocateDirect(bufferSize);
+        overflowBuffer.order(swapBytesEnabled || spinnakerProtocolEnabled || secDvsProtocolEnabled ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
     }
 
     private void freeBuffers() {
@@ -176,9 +194,9 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
         packet.clear();
         readingThread.maxSizeExceeded = false;
         try {
+            ByteBuffer buffer;
             returnearly:
-            while (filledBufferQueue.peek() != null) {
-                ByteBuffer buffer = filledBufferQueue.take();
+            while ((buffer = filledBufferQueue.poll()) != null) {
                 // buffer.clear();
                 extractEvents(buffer, packet);
                 buffer.clear();
@@ -200,12 +218,74 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
 //                log.info("recieved packet with sequence number "+packetSequenceNumber);
             if (datagramSequenceNumber != datagramCounter) {
                 log.warning(String.format("Dropped %d packets. (Incoming packet sequence number (%d) doesn't match expected packetCounter (%d), resetting packetCounter)", datagramSequenceNumber - datagramCounter, datagramSequenceNumber, datagramCounter));
+                if (datagramSequenceNumber > datagramCounter) {
+                    missedDatagramCount += datagramSequenceNumber - datagramCounter;
+                }
                 datagramCounter = datagramSequenceNumber;
             }
             datagramCounter++;
         }
     }
 
+    /**
+     * Waits for datagrams on the socket and then drains all datagrams that are
+     * queued into free buffers, which are put to filledBufferQueue. Used in
+     * batched receive mode, where the channel is non-blocking and registered
+     * with the selector. If no buffer is free, the datagram is received into
+     * overflowBuffer and dropped.
+     *
+     * @param packet used to store the source host(s) information.
+     * @return the number of datagrams put to filledBufferQueue
+     */
+    private int receiveDatagramsAndPutToExchanger(AENetworkRawPacket packet) {
+        int n = 0;
+        try {
+            if (selector.select() == 0) {
+                Thread.interrupted(); // woken up by setPaused or close; clear the interrupt so that the next select blocks again
+                return 0;
+            }
+            selector.selectedKeys().clear();
+            for (int i = 0; i < (2 * NBUFFERS); i++) { // bounded so that we check stopme and paused once in a while
+                ByteBuffer buffer = availableBufferQueue.poll();
+                final boolean drop = buffer == null;
+                if (drop) {
+                    buffer = overflowBuffer;
+                    buffer.clear();
+                }
+                final SocketAddress client = channel.receive(buffer);
+                if (client == null) { // no more datagrams queued
+                    if (!drop) {
+                        availableBufferQueue.add(buffer);
+                    }
+                    break;
+                }
+                receivedDatagramCount++;
+                if (!printedHost) {
+                    printedHost = true;
+                    log.info("received first packet from " + client + " of length " + buffer.position() + " bytes");
+                }
+                buffer.flip();
+                if (!spinnakerProtocolEnabled && !secDvsProtocolEnabled) {
+                    checkSequenceNumber(buffer); // also for dropped datagrams, so that they are not counted as missed
+                }
+                if (drop) {
+                    droppedDatagramCount++;
+                    continue;
+                }
+                if (client instanceof InetSocketAddress) {
+                    packet.addClientAddress((InetSocketAddress) client, packet.getNumEvents());
+                }
+                filledBufferQueue.add(buffer); // cannot be full since it has room for all buffers
+                n++;
+            }
+        } catch (ClosedSelectorException e) {
+            return n; // closed
+        } catch (IOException e) {
+            log.warning(e.toString());
+        }
+        return n;
+    }
+
     /**
      * Receives a buffer from the UDP socket. Data is stored in internal buffer.
      *
@@ -221,6 +301,7 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
 //            buffer.order(swapBytesEnabled ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
 
             client = channel.receive(buffer); // fill buffer with data from datagram, blocks here until packet received
+            receivedDatagramCount++;
             if (!printedHost) {
                 printedHost = true;
                 log.info("received first packet from " + client + " of length " + buffer.position() + " bytes"); // , connecting channel
@@ -283,16 +364,52 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
         return (short) ((0xffff & (b1 << 8) | (0xffff & (b2 << 0))));
     }
 
-    private static ByteBuffer clone(ByteBuffer original) {
-        ByteBuffer clone = ByteBuffer.allocate(original.capacity());
-        if (clone.capacity() < 90000) { // The max length of a whole frame packet is 86464, so the capacity must be bigger than 86464, here we use 90000 for convience. 
-            clone = ByteBuffer.allocate(90000);
+    /**
+     * Copies the datagram to the start of the buffer used to reassemble jAER
+     * 3.x packets that are split across datagrams. The buffer is reused.
+     *
+     * @param original the datagram holding the packet header
+     * @return the reassembly buffer, positioned after the copied datagram
+     */
+    private ByteBuffer startJaer3Packet(ByteBuffer original) {
+        // The max length of a whole frame packet is 86464, so the capacity must be bigger than 86464, here we use 90000 for convience.
+        final int capacity = Math.max(original.capacity(), 90000);
+        if ((jaer3ReassemblyBuffer == null) || (jaer3ReassemblyBuffer.capacity() < capacity)) {
+            jaer3ReassemblyBuffer = ByteBuffer.allocate(capacity);
         }
+        jaer3ReassemblyBuffer.clear();
         original.rewind(); //copy from the beginning
-        clone.put(original);
+        jaer3ReassemblyBuffer.put(original);
         original.rewind();
-        // clone.flip(); // We still need to put data in the buffer, we will flip it in the end buffer, so we don't need flip at the head buffer.
-        return clone;
+        // We still need to put data in the buffer, we will flip it in the end buffer, so we don't need flip at the head buffer.
+        return jaer3ReassemblyBuffer;
+    }
+
+    /**
+     * Converts a remote timestamp to a jAER timestamp by subtracting the first
+     * timestamp received and multiplying by the timestampMultiplier.
+     *
+     * @param rawTime the remote timestamp
+     * @return the jAER timestamp
+     */
+    private int convertTimestamp(int rawTime) {
+        int zeroedRawTime;
+        if (readTimeZeroAlready) {
+            // TODO TDS sends 32 bit timestamp which overflows after multiplication
+            // by timestampMultiplier and cast to int jaer timestamp
+            zeroedRawTime = rawTime - timeZero;
+        } else {
+            readTimeZeroAlready = true;
+            timeZero = rawTime;
+            zeroedRawTime = 0;
+        }
+        float floatFinalTime = timestampMultiplier * zeroedRawTime;
+        if ((floatFinalTime >= Integer.MAX_VALUE) || (floatFinalTime <= Integer.MIN_VALUE)) {
+            timeZero = rawTime; // after overflow reset timezero
+            return Integer.MIN_VALUE + (int) (floatFinalTime - Integer.MAX_VALUE); // Change to -2k seconds now - was: wrap around at 2k seconds, back to 0 seconds. TODO different than hardware which wraps back to -2k seconds
+        } else {
+            return (int) floatFinalTime;
+        }
     }
 
     /**
@@ -387,27 +504,7 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
 
                     //timestamps, only if enabled and non local
                     if (timestampsEnabled && !localTimestampsEnabled) {
-                        int rawTime = buffer.getInt();
-
-                        int zeroedRawTime;
-                        if (readTimeZeroAlready) {
-                            // TODO TDS sends 32 bit timestamp which overflows after multiplication
-                            // by timestampMultiplier and cast to int jaer timestamp
-                            zeroedRawTime = rawTime - timeZero;
-                        } else {
-                            readTimeZeroAlready = true;
-                            timeZero = rawTime;
-                            zeroedRawTime = 0;
-                        }
-                        float floatFinalTime = timestampMultiplier * zeroedRawTime;
-                        int finalTime;
-                        if ((floatFinalTime >= Integer.MAX_VALUE) || (floatFinalTime <= Integer.MIN_VALUE)) {
-                            timeZero = rawTime; // after overflow reset timezero
-                            finalTime = Integer.MIN_VALUE + (int) (floatFinalTime - Integer.MAX_VALUE); // Change to -2k seconds now - was: wrap around at 2k seconds, back to 0 seconds. TODO different than hardware which wraps back to -2k seconds
-                        } else {
-                            finalTime = (int) floatFinalTime;
-                        }
-                        eventRaw.timestamp = finalTime;
+                        eventRaw.timestamp = convertTimestamp(buffer.getInt());
                     } else { //ignore remote timestamp
                         eventRaw.timestamp = ts;
                         buffer.getInt();
@@ -555,18 +652,24 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
              */
             if (cAERStreamEnabled) {
                 try {
-                    Jaer3BufferParser j3Parser = new Jaer3BufferParser(buffer, chip);
-                    long nEventsNum = j3Parser.size();
+                    if (j3Parser == null) {
+                        j3Parser = new Jaer3BufferParser(buffer, chip);
+                    } else { // reuse the parser and its decode buffers for every datagram
+                        j3Parser.setInBuffer(buffer);
+                        j3Parser.setInBufferOrder(ByteOrder.LITTLE_ENDIAN);
+                    }
+                    long nEventsNum = j3Parser.bufferNumEvents();
 
                     if (nEventsNum != 0) {  // This is a valid packet's head buffer
                         jaer3PktSize = buffer.getInt(4);
                         jaer3PktNum = buffer.getInt(20);
                         jaer3EventsNum = nEventsNum;
-                        wholePktBuffer = clone(buffer);
+                        wholePktBuffer = startJaer3Packet(buffer);
 
                         if (wholePktBuffer.position() == (jaer3PktSize * jaer3PktNum + 28)) { // This is the end buffer, the packet is finished.
                             wholePktBuffer.flip();
-                            j3Parser = new Jaer3BufferParser(wholePktBuffer, chip);
+                            j3Parser.setInBuffer(wholePktBuffer);
+                            j3Parser.setInBufferOrder(ByteOrder.LITTLE_ENDIAN);
                         } else {
                             return;
                         }
@@ -582,71 +685,63 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
                         }
                         if (wholePktBuffer.position() == (jaer3PktSize * jaer3PktNum + 28)) { // This is the end buffer, the packet is finished.
                             wholePktBuffer.flip();
-                            j3Parser = new Jaer3BufferParser(wholePktBuffer, chip);
+                            j3Parser.setInBuffer(wholePktBuffer);
+                            j3Parser.setInBufferOrder(ByteOrder.LITTLE_ENDIAN);
                         } else {
                             return;
                         }
                     }
 
-                    newPacketLength = (int) (startingIndex + jaer3EventsNum);
-                    packet.ensureCapacity((int) newPacketLength);
+                    packet.ensureCapacity((int) (startingIndex + jaer3EventsNum));
                     EventRaw.EventType[] etypes = packet.getEventtypes(); // For jAER 3.0, no influence on jAER 2.0
                     int[] pixelDataArray = packet.getPixelDataArray();
                     addresses = packet.getAddresses();
                     timestamps = packet.getTimestamps();
-                    for (int i = 0; i < jaer3EventsNum; i++) {
-                        ByteBuffer tmpEventBuffer = ByteBuffer.allocate(16);
-                        tmpEventBuffer = j3Parser.getJaer2EventBuf();
-                        int etypeValue = tmpEventBuffer.getInt();
-                        eventRaw.eventtype = EventRaw.EventType.values()[etypeValue];
-                        eventRaw.address = tmpEventBuffer.getInt();
-                        eventRaw.timestamp = tmpEventBuffer.getInt();
-                        eventRaw.pixelData = tmpEventBuffer.getInt();
-                        etypes[startingIndex + i] = eventRaw.eventtype;
-                        addresses[startingIndex + i] = eventRaw.address;
-                        timestamps[startingIndex + i] = eventRaw.timestamp;
-                        pixelDataArray[startingIndex + i] = eventRaw.pixelData;
+                    int n = startingIndex;
+                    while (j3Parser.hasNextDecodedEvent()) { // decode all complete packets in the buffer
+                        j3Parser.nextDecodedEvent(eventRaw);
+                        if (n >= packet.getCapacity()) {
+                            packet.ensureCapacity(n + 1);
+                            etypes = packet.getEventtypes();
+                            pixelDataArray = packet.getPixelDataArray();
+                            addresses = packet.getAddresses();
+                            timestamps = packet.getTimestamps();
+                        }
+                        etypes[n] = eventRaw.eventtype;
+                        addresses[n] = eventRaw.address;
+                        timestamps[n] = eventRaw.timestamp;
+                        pixelDataArray[n] = eventRaw.pixelData;
+                        n++;
                     }
-                    packet.setNumEvents((int) (startingIndex + jaer3EventsNum));
+                    packet.setNumEvents(n);
                 } catch (IOException ex) {
                     Logger.getLogger(AEUnicastInput.class.getName()).log(Level.SEVERE, null, ex);
                 }
                 return;
             }
 
+            if (addressFirstEnabled && use4ByteAddrTs && timestampsEnabled && !localTimestampsEnabled) {
+                // common case of int32 address and timestamp, decoded in bulk with absolute gets
+                final boolean swap = swapBytesEnabled;
+                final int end = startingIndex + nEventsInPacket;
+                int p = buffer.position();
+                for (int i = startingIndex; i < end; i++, p += 8) {
+                    final int address = buffer.getInt(p), rawTime = buffer.getInt(p + 4);
+                    addresses[i] = swap ? Integer.reverseBytes(address) : address;
+                    timestamps[i] = convertTimestamp(swap ? Integer.reverseBytes(rawTime) : rawTime);
+                }
+                buffer.position(p);
+                packet.setNumEvents(newPacketLength);
+                return;
+            }
+
             for (int i = 0; i < nEventsInPacket; i++) {
                 if (addressFirstEnabled) {
                     if (use4ByteAddrTs) {
                         eventRaw.address = maybeSwapByteOrder(buffer.getInt());
                         // if timestamps are enabled, they have to be read out even if they are not used because of local timestamps
                         if (timestampsEnabled && !localTimestampsEnabled) {
-                            int rawTime = maybeSwapByteOrder(buffer.getInt()); //swab(v);
-                            //                  if(rawTime<lastts) {
-                            //                      System.out.println("backwards timestamp at event "+i+"of "+nEventsInPacket);
-                            //                  }else if(rawTime!=lastts){
-                            //                      System.out.println("time jump at event "+i+"of "+nEventsInPacket);
-                            //                  }
-                            //                  lastts=rawTime;
-                            int zeroedRawTime;
-                            if (readTimeZeroAlready) {
-                                // TODO TDS sends 32 bit timestamp which overflows after multiplication
-                                // by timestampMultiplier and cast to int jaer timestamp
-                                zeroedRawTime = rawTime - timeZero;
-                            } else {
-                                readTimeZeroAlready = true;
-                                timeZero = rawTime;
-                                zeroedRawTime = 0;
-                            }
-                            //                        int v3 = 0xffff & v2; // TODO hack for TDS sensor which uses all 32 bits causing overflow after multiplication by multiplier and int cast
-                            float floatFinalTime = timestampMultiplier * zeroedRawTime;
-                            int finalTime;
-                            if ((floatFinalTime >= Integer.MAX_VALUE) || (floatFinalTime <= Integer.MIN_VALUE)) {
-                                timeZero = rawTime; // after overflow reset timezero
-                                finalTime = Integer.MIN_VALUE + (int) (floatFinalTime - Integer.MAX_VALUE); // Change to -2k seconds now - was: wrap around at 2k seconds, back to 0 seconds. TODO different than hardware which wraps back to -2k seconds
-                            } else {
-                                finalTime = (int) floatFinalTime;
-                            }
-                            eventRaw.timestamp = finalTime;
+                            eventRaw.timestamp = convertTimestamp(maybeSwapByteOrder(buffer.getInt()));
                         } else { // timestamps not enabled, using local timestamps
                             //SmartEyeTDS
                             eventRaw.timestamp = ts; // this is local timestamp computed earlier
@@ -707,6 +802,9 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
                 stopme = true;
                 channel.close();
                 datagramSocket.close();
+                if (selector != null) {
+                    selector.close(); // wakes up the receiver thread
+                }
             } catch (IOException ex) {
                 log.warning("on closing DatagramChannel caught " + ex);
             }
@@ -758,7 +856,15 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
             datagramSocket.bind(address);
             log.info("bound " + this);
             datagramSocket.setSoTimeout(0); // infinite timeout
-            datagramSocket.setReceiveBufferSize(bufferSize);
+            if (batchReceiveEnabled) {
+                // let the OS queue a burst of datagrams while readPacket processes the previous ones; the OS may limit this size
+                datagramSocket.setReceiveBufferSize(NBUFFERS * bufferSize);
+                channel.configureBlocking(false);
+                selector = Selector.open();
+                channel.register(selector, SelectionKey.OP_READ);
+            } else {
+                datagramSocket.setReceiveBufferSize(bufferSize);
+            }
             return true;
         } catch (IOException e) {
             log.warning("caught " + e + ", datagramSocket will be constructed later");
@@ -776,6 +882,7 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
     public void open() throws IOException {  // TODO cannot really throw exception because socket is opened in Reader
         close();
         allocateBufffers();
+        resetStatistics();
         readingThread = new Reader();
         readingThread.start();
     }
@@ -1027,6 +1134,62 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
         prefs.putBoolean("AEUnicastInput.secDvsProtocolEnabled",secDvsProtocolEnabled);
     }
 
+    /**
+     * @return true if the receiver thread drains all queued datagrams per
+     * wakeup
+     */
+    public boolean isBatchReceiveEnabled() {
+        return batchReceiveEnabled;
+    }
+
+    /**
+     * Sets batched receive mode, in which the receiver thread waits on a
+     * Selector and then drains all queued datagrams into the free buffers,
+     * dropping (and counting) datagrams if readPacket() has not freed any
+     * buffer. Otherwise one blocking receive is made per datagram and the
+     * receiver thread blocks until a buffer is free. Takes effect on the next
+     * open(). This parameter is stored as a preference.
+     *
+     * @param batchReceiveEnabled default true
+     */
+    public void setBatchReceiveEnabled(boolean batchReceiveEnabled) {
+        this.batchReceiveEnabled = batchReceiveEnabled;
+        prefs.putBoolean("AEUnicastInput.batchReceiveEnabled", batchReceiveEnabled);
+    }
+
+    /**
+     * @return the number of datagrams received since open() or
+     * resetStatistics()
+     */
+    public long getReceivedDatagramCount() {
+        return receivedDatagramCount;
+    }
+
+    /**
+     * @return the number of datagrams received but dropped because readPacket()
+     * had not freed any buffer, in batched receive mode
+     */
+    public long getDroppedDatagramCount() {
+        return droppedDatagramCount;
+    }
+
+    /**
+     * @return the number of datagrams that never arrived, from the gaps in the
+     * sequence numbers, if sequence numbers are enabled
+     */
+    public long getMissedDatagramCount() {
+        return missedDatagramCount;
+    }
+
+    /**
+     * Resets the received, dropped and missed datagram counts.
+     */
+    public void resetStatistics() {
+        receivedDatagramCount = 0;
+        droppedDatagramCount = 0;
+        missedDatagramCount = 0;
+    }
+
     private class Reader extends Thread {
 
         volatile boolean maxSizeExceeded = false;
@@ -1065,7 +1228,11 @@ public class AEUnicastInput implements AEUnicastSettings, PropertyChangeListener
                 // recieve datagrams and put them to exchanger
                 if (!maxSizeExceeded && !paused) { // if paused, don't overrun memory
                     try {
-                        receiveDatagramAndPutToExchanger(packet); // also save source hosts to packet
+                        if (batchReceiveEnabled && (selector != null)) {
+                            receiveDatagramsAndPutToExchanger(packet); // also save source hosts to packet
+                        } else {
+                            receiveDatagramAndPutToExchanger(packet); // also save source hosts to packet
+                        }
                     } catch (NullPointerException e) {
                         log.warning(e.toString());
                         break;
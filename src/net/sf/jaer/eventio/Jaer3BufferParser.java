@@ -11,11 +11,15 @@ import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import eu.seebetter.ini.chips.davis.DavisBaseCamera;
 import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.aemonitor.EventRaw;
 import net.sf.jaer.aemonitor.EventRaw.EventType;
 import net.sf.jaer.chip.AEChip;
 import net.sf.jaer.chip.EventExtractor2D;
@@ -36,6 +40,12 @@ import net.sf.jaer.event.OutputEventIterator;
  * did) will be returned. After get this buffer similar to jAER 2.0, all other
  * things will be processed by AEFileInputStream. The stream will be treated
  * like it's a jAER 2.0 buffer.
+ * <p>
+ * For reading files, nextDecodedEvent() is much faster. It indexes the packet
+ * headers of the buffer once, then decodes batches of whole packets at a time
+ * (in parallel on the common ForkJoinPool if the batch is large enough) into
+ * arrays of address, timestamp, type and pixel data, which are then handed out
+ * in file order without any per-event allocation or header search.
  *
  * @author min liu
  * @author tobi
@@ -104,6 +114,35 @@ public class Jaer3BufferParser {
 
     private static Jaer3EventExtractor JAER3_EXTRACTOR = null;
 
+    /**
+     * The packet headers of the buffer in file order, built once per buffer
+     * for nextDecodedEvent()
+     */
+    private final ArrayList<PacketDescriptor> packetIndex = new ArrayList<>();
+    private ByteBuffer indexedBuffer = null; // the buffer packetIndex was built for
+    private int indexStart = 0; // the position packetIndex starts searching at, after the end of a packet carried over from the previous buffer
+    private int partialHeaderPosition = -1; // the position of a packet header cut off by the end of the buffer, or -1
+
+    /**
+     * Approximate number of events decoded per batch by nextDecodedEvent();
+     * whole packets are always decoded
+     */
+    private static final int DECODE_BATCH_EVENTS = 1 << 17;
+    /**
+     * Batches with fewer events than this are decoded in the calling thread
+     */
+    private static final int PARALLEL_DECODE_MIN_EVENTS = 1 << 14;
+    private boolean parallelDecodingEnabled = true;
+    // the decoded events of the current batch, and the buffer and position they were decoded up to
+    private int[] decodedAddr = new int[0], decodedTs = new int[0], decodedPixelData = new int[0];
+    private EventType[] decodedTypes = new EventType[0];
+    private int decodedCount = 0, decodedCursor = 0, decodedEndPosition = -1;
+    private ByteBuffer decodedBuffer = null;
+    // the packet that straddles the end of the previous buffer: its bytes from the header on, its header once complete, and its first event to decode
+    private ByteBuffer carry = null;
+    private PacketDescriptor carryPkt = null;
+    private int carryFirstEvent = 0;
+
     public class PacketHeader {
 
         EventType eventType = EventType.SpecialEvent;
@@ -753,37 +792,497 @@ public class Jaer3BufferParser {
      * @throws IOException
      */
     public long bufferNumEvents() throws IOException {
-        PacketDescriptor pkt = getNextPkt(0);
+        if (indexedBuffer != in) {
+            buildPacketIndex();
+        }
         long numEvents = 0;
-        int validPkttNum = 0;  // Total number of valid packets.
-        int framePktNum = 0;   // Total number of valid frame packets.
-        while (pkt != null) {
+        for (PacketDescriptor pkt : packetIndex) {
             // TODO: complete all kinds of the events
-            if (pkt.pktHeader.eventType == EventType.PolarityEvent) {
-                numEvents += pkt.pktHeader.eventValid;
-            }
-
-            if (pkt.pktHeader.eventType == EventType.SpecialEvent) {
+            if ((pkt.pktHeader.eventType == EventType.PolarityEvent) || (pkt.pktHeader.eventType == EventType.SpecialEvent)) {
                 numEvents += pkt.pktHeader.eventValid;
             }
 
-            if (pkt.pktHeader.eventType == EventType.FrameEvent) {
+            if ((pkt.pktHeader.eventType == EventType.FrameEvent) && ((pkt.pktPosition + PKT_HEADER_SIZE + 28) <= in.limit())) {
                 int xlength = in.getInt(pkt.pktPosition + PKT_HEADER_SIZE + 20);
                 int ylength = in.getInt(pkt.pktPosition + PKT_HEADER_SIZE + 24);
-                
-                framePktNum += 1;
 
                 numEvents += 2 * (xlength * ylength * (pkt.pktHeader.eventValid)); // One array has been divided into 2 arrays, so the event numbers in Frame should also increase
             }
+        }
+        return numEvents;
+    }
+
+    /**
+     * Builds the index of packet headers of the current buffer by walking
+     * from each header to the next, starting after the end of a packet that
+     * was carried over from the previous buffer. The last packet may extend
+     * beyond the limit of the buffer, or its header may be cut off by the
+     * limit, which is remembered in partialHeaderPosition.
+     *
+     * @throws IOException
+     */
+    private void buildPacketIndex() throws IOException {
+        packetIndex.clear();
+        indexedBuffer = in;
+        partialHeaderPosition = -1;
+        PacketDescriptor pkt = searchPacketHeader(indexStart, 1);
+        if ((pkt == null) && (indexStart > (in.limit() - PKT_HEADER_SIZE)) && (indexStart < in.limit())) {
+            partialHeaderPosition = indexStart; // a packet ended just before the end of the buffer
+        }
+        while (pkt != null) {
+            packetIndex.add(pkt);
+            final long next = packetEnd(pkt);
+            if (next > (in.limit() - PKT_HEADER_SIZE)) {
+                if (next < in.limit()) {
+                    partialHeaderPosition = (int) next;
+                }
+                break;
+            }
+            pkt = searchPacketHeader((int) next, 1);
+        }
+    }
+
+    /**
+     * @return the buffer position just after the last event of the packet
+     */
+    private long packetEnd(PacketDescriptor pkt) {
+        return pkt.pktPosition + PKT_HEADER_SIZE + ((long) pkt.pktHeader.eventNumber * pkt.pktHeader.eventSize);
+    }
+
+    /**
+     * Finds the first packet in packetIndex that contains the position or
+     * starts after it.
+     *
+     * @param position the buffer position
+     * @return the index in packetIndex, or packetIndex.size() if there is none
+     */
+    private int packetIndexOf(int position) {
+        int lo = 0, hi = packetIndex.size() - 1;
+        if ((hi < 0) || (position < packetIndex.get(0).pktPosition)) {
+            return 0;
+        }
+        while (lo < hi) { // find last packet that starts at or before position
+            final int mid = (lo + hi + 1) >>> 1;
+            if (packetIndex.get(mid).pktPosition <= position) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return position < packetEnd(packetIndex.get(lo)) ? lo : lo + 1;
+    }
+
+    /**
+     * Returns the next event of the buffer, decoded like getJaer2EventBuf()
+     * would decode it. Events are decoded a batch of whole packets at a time
+     * starting from the buffer position; afterwards the buffer is positioned
+     * after the last packet of the batch. If the buffer position is changed by
+     * someone else, the batch is discarded and decoding restarts from the new
+     * position at the next event boundary. IMU6 and IMU9 packets are skipped,
+     * like getNextValidEventOffset() skips them.
+     * <p>
+     * A packet that straddles the end of the buffer is copied when the buffer
+     * is exhausted, and is completed and decoded from the start of the next
+     * buffer if that is set with setNextInBuffer.
+     *
+     * @param e the event to fill in
+     * @return e
+     * @throws BufferUnderflowException if there is no complete packet left in
+     * the buffer
+     * @throws IOException
+     */
+    public EventRaw nextDecodedEvent(EventRaw e) throws IOException {
+        if (!hasNextDecodedEvent()) {
+            throw new BufferUnderflowException();
+        }
+        final int i = decodedCursor++;
+        e.address = decodedAddr[i];
+        e.timestamp = decodedTs[i];
+        e.eventtype = decodedTypes[i];
+        e.pixelData = decodedPixelData[i];
+        return e;
+    }
+
+    /**
+     * Reports if nextDecodedEvent() can return another event of the buffer,
+     * decoding the next batch of packets if needed. Lets callers that decode
+     * a whole buffer stop without catching BufferUnderflowException.
+     *
+     * @return false if there is no complete packet left in the buffer
+     * @throws IOException
+     */
+    public boolean hasNextDecodedEvent() throws IOException {
+        while ((decodedCursor >= decodedCount) || (decodedBuffer != in) || (in.position() != decodedEndPosition)) {
+            if (!decodeNextBatch()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Pushes back the event last returned by nextDecodedEvent, so that it is
+     * returned again by the next call.
+     */
+    public void unreadDecodedEvent() {
+        if (decodedCursor > 0) {
+            decodedCursor--;
+        }
+    }
+
+    /**
+     * Discards the decoded events that have not been read yet, and a packet
+     * carried over from the previous buffer, e.g. after changing the buffer
+     * position. Decoding restarts from the buffer position.
+     */
+    public void discardDecodedEvents() {
+        clearDecodedEvents();
+        carry = null;
+        carryPkt = null;
+        indexStart = 0;
+        indexedBuffer = null;
+    }
+
+    private void clearDecodedEvents() {
+        decodedCount = 0;
+        decodedCursor = 0;
+        decodedEndPosition = -1;
+        decodedBuffer = null;
+    }
+
+    /**
+     * Decodes the next batch of complete packets from the buffer position.
+     * If the next packet is not complete in the buffer, it is carried over
+     * to the next buffer.
+     *
+     * @return false if there is no complete packet left in the buffer
+     * @throws IOException
+     */
+    private boolean decodeNextBatch() throws IOException {
+        clearDecodedEvents();
+        if (carry != null) {
+            return decodeCarriedPacket();
+        }
+        if (indexedBuffer != in) {
+            buildPacketIndex();
+        }
+        final int position = in.position();
+        final int first = packetIndexOf(position);
+        if (first >= packetIndex.size()) {
+            if ((partialHeaderPosition >= position) && (partialHeaderPosition >= 0)) {
+                carryOver(partialHeaderPosition, null, 0);
+            }
+            return false;
+        }
+        // skip the events of the first packet that start before the position, like getNextEventOffset() does
+        final PacketDescriptor firstPkt = packetIndex.get(first);
+        final int eventStart = firstPkt.pktPosition + PKT_HEADER_SIZE;
+        final int firstEvent = position <= eventStart ? 0
+                : ((position - eventStart) + firstPkt.pktHeader.eventSize - 1) / firstPkt.pktHeader.eventSize;
+        if (packetEnd(firstPkt) > in.limit()) {
+            carryOver(firstPkt.pktPosition, firstPkt, firstEvent);
+            return false;
+        }
+
+        // take whole complete packets until the batch is full, giving each packet a slot large enough for its events
+        int last = first, total = 0;
+        while ((last < packetIndex.size()) && (packetEnd(packetIndex.get(last)) <= in.limit()) && ((last == first) || (total < DECODE_BATCH_EVENTS))) {
+            total += maxDecodedEvents(in, packetIndex.get(last));
+            last++;
+        }
+        final int numPackets = last - first;
+        final int[] slots = new int[numPackets + 1], counts = new int[numPackets];
+        for (int j = 0, slot = 0; j < numPackets; j++) {
+            slots[j] = slot;
+            slot += maxDecodedEvents(in, packetIndex.get(first + j));
+            slots[j + 1] = slot;
+        }
+        ensureDecodedCapacity(total);
+
+        final DecodeTask task = new DecodeTask(first, 0, numPackets, firstEvent, slots, counts);
+        if (parallelDecodingEnabled && (numPackets > 1) && (total >= PARALLEL_DECODE_MIN_EVENTS)) {
+            ForkJoinPool.commonPool().invoke(task);
+        } else {
+            task.compute();
+        }
+
+        // merge the slots in packet order, which is the order getJaer2EventBuf() returns the events in
+        int n = 0;
+        for (int j = 0; j < numPackets; j++) {
+            if ((slots[j] != n) && (counts[j] > 0)) {
+                System.arraycopy(decodedAddr, slots[j], decodedAddr, n, counts[j]);
+                System.arraycopy(decodedTs, slots[j], decodedTs, n, counts[j]);
+                System.arraycopy(decodedPixelData, slots[j], decodedPixelData, n, counts[j]);
+                System.arraycopy(decodedTypes, slots[j], decodedTypes, n, counts[j]);
+            }
+            n += counts[j];
+        }
+        currentPkt = packetIndex.get(last - 1);
+        decodedCount = n;
+        decodedEndPosition = (int) packetEnd(currentPkt);
+        decodedBuffer = in;
+        in.position(decodedEndPosition);
+        return true;
+    }
+
+    private void ensureDecodedCapacity(int n) {
+        if (decodedAddr.length < n) {
+            decodedAddr = new int[n];
+            decodedTs = new int[n];
+            decodedPixelData = new int[n];
+            decodedTypes = new EventType[n];
+        }
+    }
+
+    /**
+     * Copies the rest of the buffer from the start of a packet that does not
+     * end in the buffer, and positions the buffer at its limit.
+     *
+     * @param position the position of the packet header
+     * @param pkt the packet, or null if its header is cut off too
+     * @param firstEvent the first event of the packet to decode
+     */
+    private void carryOver(int position, PacketDescriptor pkt, int firstEvent) {
+        final int length = pkt == null ? PKT_HEADER_SIZE : (int) (packetEnd(pkt) - pkt.pktPosition);
+        carry = ByteBuffer.allocate(length).order(in.order());
+        if (pkt != null) {
+            carryPkt = new PacketDescriptor();
+            carryPkt.setPktHeader(pkt.pktHeader);
+            carryPkt.setPosition(0);
+        } else {
+            carryPkt = null;
+        }
+        carryFirstEvent = firstEvent;
+        in.position(fillCarry(position));
+    }
+
+    /**
+     * Copies bytes from the buffer into the carried packet until it is
+     * complete or the buffer ends.
+     *
+     * @param position the position to copy from
+     * @return the position after the copied bytes
+     */
+    private int fillCarry(int position) {
+        final int n = Math.min(carry.remaining(), in.limit() - position);
+        for (int i = 0; i < n; i++) {
+            carry.put(in.get(position + i));
+        }
+        return position + n;
+    }
+
+    /**
+     * Completes the packet carried over from the previous buffer from the
+     * start of the buffer and decodes it. Packets are searched from its end
+     * on.
+     *
+     * @return false if the buffer ends before the packet does
+     * @throws IOException
+     */
+    private boolean decodeCarriedPacket() throws IOException {
+        int position = fillCarry(in.position());
+        if ((carryPkt == null) && !carry.hasRemaining()) { // the header is complete now
+            final ByteBuffer buffer = in;
+            in = carry; // searchPacketHeader parses the header from in
             try {
-                validPkttNum += 1;
-                pkt = getNextPkt(pkt.pktPosition + ((pkt.pktHeader.eventNumber) * (pkt.pktHeader.eventSize)));
-            } catch (IllegalArgumentException e) { // It means it reaches the buffer end
-                // log.warning("Reaches the end of the buffer!");
-                pkt = null;
+                carryPkt = searchPacketHeader(0, 1);
+            } finally {
+                in = buffer;
+            }
+            if (carryPkt == null) { // not a packet after all, search on from here
+                carry = null;
+                in.position(position);
+                indexStart = position;
+                indexedBuffer = null;
+                decodedBuffer = in;
+                decodedEndPosition = position;
+                return true;
             }
+            final ByteBuffer header = carry;
+            carry = ByteBuffer.allocate((int) packetEnd(carryPkt)).order(header.order());
+            header.flip();
+            carry.put(header);
+            position = fillCarry(position);
         }
-        return numEvents;
+        in.position(position);
+        indexStart = position;
+        indexedBuffer = null;
+        if (carry.hasRemaining()) {
+            return false; // the packet continues in the next buffer
+        }
+        final ByteBuffer packet = carry;
+        carry = null;
+        ensureDecodedCapacity(maxDecodedEvents(packet, carryPkt));
+        decodedCount = decodePacket(packet, carryPkt, carryFirstEvent, 0);
+        decodedBuffer = in;
+        decodedEndPosition = position;
+        return true;
+    }
+
+    /**
+     * Decodes a range of the packets of a batch, splitting it in parallel
+     * subtasks if it is large.
+     */
+    private final class DecodeTask extends RecursiveAction {
+
+        final int firstPacket, from, to, firstEvent;
+        final int[] slots, counts;
+
+        DecodeTask(int firstPacket, int from, int to, int firstEvent, int[] slots, int[] counts) {
+            this.firstPacket = firstPacket;
+            this.from = from;
+            this.to = to;
+            this.firstEvent = firstEvent;
+            this.slots = slots;
+            this.counts = counts;
+        }
+
+        @Override
+        protected void compute() {
+            if (((to - from) > 1) && ((slots[to] - slots[from]) >= PARALLEL_DECODE_MIN_EVENTS) && (getPool() != null)) {
+                final int mid = (from + to) >>> 1;
+                invokeAll(new DecodeTask(firstPacket, from, mid, firstEvent, slots, counts),
+                        new DecodeTask(firstPacket, mid, to, firstEvent, slots, counts));
+                return;
+            }
+            for (int j = from; j < to; j++) {
+                counts[j] = decodePacket(in, packetIndex.get(firstPacket + j), j == 0 ? firstEvent : 0, slots[j]);
+            }
+        }
+    }
+
+    /**
+     * @return the maximum number of events decodePacket can produce for the
+     * packet
+     */
+    private int maxDecodedEvents(ByteBuffer buf, PacketDescriptor pkt) {
+        final PacketHeader h = pkt.pktHeader;
+        switch (h.eventType) {
+            case Imu6Event:
+            case Imu9Event:
+                return 0;
+            case FrameEvent:
+                int n = 0;
+                for (int j = 0, off = pkt.pktPosition + PKT_HEADER_SIZE; j < h.eventNumber; j++, off += h.eventSize) {
+                    final int xlength = buf.getInt(off + 20), ylength = buf.getInt(off + 24);
+                    if (frameFits(h, xlength, ylength)) {
+                        n += 2 * xlength * ylength;
+                    }
+                }
+                return n;
+            default:
+                return h.eventNumber;
+        }
+    }
+
+    /**
+     * @return true if a frame of this size fits in the frame events of the
+     * packet
+     */
+    private boolean frameFits(PacketHeader h, int xlength, int ylength) {
+        return (xlength > 0) && (ylength > 0) && ((36 + (2L * xlength * ylength)) <= h.eventSize);
+    }
+
+    /**
+     * Decodes the valid events of a complete packet into the decoded event
+     * arrays. Only absolute gets are used on the buffer, so that packets can
+     * be decoded concurrently. IMU6 and IMU9 packets decode to no events.
+     *
+     * @param buf the buffer holding the packet
+     * @param pkt the packet
+     * @param firstEvent the first event of the packet to decode
+     * @param dst the index in the decoded arrays to start writing at
+     * @return the number of decoded events
+     */
+    private int decodePacket(ByteBuffer buf, PacketDescriptor pkt, int firstEvent, int dst) {
+        final PacketHeader h = pkt.pktHeader;
+        final int validMask = 1 << JAER3VALIDITY_BIT;
+        final int size = h.eventSize;
+        int n = dst;
+        int off = pkt.pktPosition + PKT_HEADER_SIZE + (firstEvent * size);
+        switch (h.eventType) {
+            case Imu6Event:
+            case Imu9Event:
+                break; // not used by jAER, skipped like in getNextValidEventOffset()
+            case FrameEvent:
+                for (int j = firstEvent; j < h.eventNumber; j++, off += size) {
+                    if ((buf.getInt(off) & validMask) != 0) {
+                        n = decodeFrame(buf, h, off, n);
+                    }
+                }
+                break;
+            default:
+                final EventType type = h.eventType;
+                final int tsOffset = h.eventTSOffset;
+                final int[] addrs = decodedAddr, timestamps = decodedTs, pixelData = decodedPixelData;
+                final EventType[] types = decodedTypes;
+                for (int j = firstEvent; j < h.eventNumber; j++, off += size) {
+                    final int data = buf.getInt(off);
+                    if ((data & validMask) == 0) {
+                        continue;
+                    }
+                    addrs[n] = data;
+                    timestamps[n] = buf.getInt(off + tsOffset);
+                    types[n] = type;
+                    pixelData[n] = 0;
+                    n++;
+                }
+        }
+        return n - dst;
+    }
+
+    /**
+     * Decodes one frame into reset and signal read events in the same order
+     * and with the same addresses as getJaer2EventBuf().
+     *
+     * @return the new index in the decoded arrays
+     */
+    private int decodeFrame(ByteBuffer buf, PacketHeader h, int off, int n) {
+        final int frameInfo = buf.getInt(off);
+        final int numChannels = (frameInfo >>> 1) & 7;
+        final int xlength = buf.getInt(off + 20), ylength = buf.getInt(off + 24);
+        if (!frameFits(h, xlength, ylength)) {
+            log.warning("skipping frame with size " + xlength + "x" + ylength + " that does not fit in the frame event size " + h.eventSize);
+            return n;
+        }
+        if (numChannels > 1) {
+            log.warning("number of (color) channels is larger than 1, cannot currently handle multi-channel input");
+        }
+        final int numPixels = xlength * ylength * numChannels;
+        final int resetTs = buf.getInt(off + 4); // Start of Frame Capture timestamp
+        final int signalTs = buf.getInt(off + 8); // End of Frame Capture timestamp
+        for (int index = (2 * xlength * ylength) - 1; index >= 0; index--) {
+            if ((index >= numPixels) && (index <= ((2 * numPixels) - 1))) { // Reset Read Array
+                final int i = index - numPixels;
+                final int pixelOffset = (xlength - 1 - (i / ylength)) + (xlength * (i % ylength));
+                decodedAddr[n] = ((i / ylength) << 17) + ((i % ylength) << 2);
+                decodedTs[n] = resetTs;
+                decodedPixelData[n] = buf.getShort(off + 36 + (2 * pixelOffset));
+            } else { // Signal Read Array
+                decodedAddr[n] = ((index / ylength) << 17) + ((index % ylength) << 2) + 1;
+                decodedTs[n] = signalTs;
+                decodedPixelData[n] = 0;
+            }
+            decodedTypes[n] = EventType.FrameEvent;
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * @return true if nextDecodedEvent() decodes large batches on the common
+     * ForkJoinPool
+     */
+    public boolean isParallelDecodingEnabled() {
+        return parallelDecodingEnabled;
+    }
+
+    /**
+     * @param parallelDecodingEnabled true to decode large batches in parallel
+     * on the common ForkJoinPool
+     */
+    public void setParallelDecodingEnabled(boolean parallelDecodingEnabled) {
+        this.parallelDecodingEnabled = parallelDecodingEnabled;
     }
 
     /** 
@@ -847,9 +1346,26 @@ public class Jaer3BufferParser {
      */
     public void setInBuffer(ByteBuffer BufferToBeProcessed) throws IOException {
         in = BufferToBeProcessed; // To change body of generated methods, choose Tools | Templates.
+        discardDecodedEvents(); // the packet index is rebuilt for the new buffer when needed
         // currentPkt = searchPacketHeader(0, 1); TODO, Now the different chuncks may seperate the data in the same packet, so it's not easy to find the currentPkt
     }
 
+    /**
+     * Sets the buffer that continues the current buffer in the file, e.g. the
+     * next memory mapped chunk. Unlike setInBuffer, a packet that straddles
+     * the end of the current buffer is completed from the start of the next
+     * one and is not lost.
+     *
+     * @param next the buffer starting at the file position where the current
+     * buffer ends
+     */
+    public void setNextInBuffer(ByteBuffer next) {
+        in = next;
+        clearDecodedEvents();
+        indexStart = 0;
+        indexedBuffer = null;
+    }
+
     /**
      * Sets the buffer's order
      *
@@ -12,6 +12,8 @@
 
 package net.sf.jaer.eventprocessing;
 
+import javax.swing.SwingUtilities;
+
 import net.sf.jaer.event.EventPacket;
 
 /**
@@ -32,7 +34,10 @@ public class EventProcessingPerformanceMeter {
     private float thisNspe=0, nspeSum=0,nspeSq=0; // summary stats for ns per event
     private EventFilter filter;
     private String filterClassName;
-    private EventProcessingPerformanceView view=null;
+    private volatile EventProcessingPerformanceView view=null; // set on the Swing thread
+    private boolean pipelined=false;
+    private int queueDepth=0;
+    private long stallCount=0, stallNs=0; // pipeline statistics, see FilterChain.ProcessingMode.PIPELINED
  
     /** Creates a new instance of EventProcessingPerformanceMeter */
     public EventProcessingPerformanceMeter(EventFilter f, EventProcessingPerformanceView view) {
@@ -95,6 +100,29 @@ public class EventProcessingPerformanceMeter {
         nspeSq = 0; // summary stats for ns per event
     }
     
+    /** Sets the statistics of the pipeline stage running the filter in FilterChain.ProcessingMode.PIPELINED.
+     * 
+     * @param queueDepth the number of packets waiting for the stage
+     * @param stallCount the number of times the stage waited for the next stage to return a packet buffer
+     * @param stallNs the total time in ns the stage waited
+     */
+    public void setPipelineStatistics(int queueDepth, long stallCount, long stallNs){
+        this.pipelined=true;
+        this.queueDepth=queueDepth;
+        this.stallCount=stallCount;
+        this.stallNs=stallNs;
+    }
+    
+    /** @return the number of packets waiting for the pipeline stage of the filter, 0 if not pipelined */
+    public int getQueueDepth(){
+        return queueDepth;
+    }
+    
+    /** @return the number of stalls of the pipeline stage of the filter, 0 if not pipelined */
+    public long getStallCount(){
+        return stallCount;
+    }
+    
 //    public float meanEps(){
 //        float m=durationSum/n
 //    }
@@ -109,11 +137,18 @@ public class EventProcessingPerformanceMeter {
                 NSPS*stdErrSecPerEvent(),
                 nSamples
                 );
+        if(pipelined){
+            s+=String.format("queue depth %d, %d stalls (%.1f ms), ", queueDepth, stallCount, stallNs*1e-6f);
+        }
         return s;
     }
 
+    /** Shows the current statistics in the view, if it has been constructed yet. May be called from any thread. */
     void updateView() {
-        getView().updateView(this.toString());
+        final EventProcessingPerformanceView v=view;
+        if(v==null) return;
+        final String s=this.toString();
+        SwingUtilities.invokeLater(() -> v.updateView(s));
     }
 
     /**
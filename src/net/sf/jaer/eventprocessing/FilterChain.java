@@ -3,6 +3,7 @@
  * Created on January 30, 2006, 7:58 PM */
 package net.sf.jaer.eventprocessing;
 
+import java.awt.GraphicsEnvironment;
 import java.beans.PropertyChangeSupport;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -14,10 +15,12 @@ import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.prefs.BackingStoreException;
 import java.util.prefs.Preferences;
+import javax.swing.SwingUtilities;
 
 import net.sf.jaer.chip.AEChip;
 import net.sf.jaer.event.EventPacket;
@@ -114,12 +117,28 @@ public class FilterChain extends LinkedList<EventFilter2D> {
      * graphics this processing can cause threading problems, e.g. if the
      * annotation modifies the graphics buffer while the image is being
      * rendered.
+     * <p>
+     * PIPELINED processing is called from the rendering cycle like RENDERING,
+     * but runs the enabled filters on a pipeline of worker threads, so that
+     * several cores are used and throughput is limited by the slowest stage
+     * rather than by the sum of all filters, at the cost of a latency of a few
+     * packets.
+     *
+     * @see FilterChainPipeline
      */
     public enum ProcessingMode {
 
-        RENDERING, ACQUISITION
+        RENDERING, ACQUISITION, PIPELINED
     };
     private ProcessingMode processingMode = ProcessingMode.RENDERING;
+    /**
+     * The pipeline used in PIPELINED mode, constructed lazily
+     */
+    private FilterChainPipeline pipeline = null;
+    /**
+     * Maximum number of pipeline stages (worker threads) in PIPELINED mode
+     */
+    private int pipelineMaxStages;
 
     /**
      * Creates a new instance of FilterChain. Use
@@ -135,6 +154,7 @@ public class FilterChain extends LinkedList<EventFilter2D> {
         timeLimitEnabled = chip.getPrefs().getBoolean("FilterChain.timeLimitEnabled", false);
         timeLimitMs = chip.getPrefs().getInt("FilterChain.timeLimitMs", 10);
         updateIntervalMs = chip.getPrefs().getFloat("FilterChain.updateIntervalMs", 10);
+        pipelineMaxStages = chip.getPrefs().getInt("FilterChain.pipelineMaxStages", Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
 
         timedOut = false;
         try {
@@ -162,6 +182,7 @@ public class FilterChain extends LinkedList<EventFilter2D> {
      * @see EventFilter#cleanup()
      */
     public void cleanup() {
+        shutdownPipeline();
         for (EventFilter f : this) {
             f.cleanup();
         }
@@ -181,7 +202,6 @@ public class FilterChain extends LinkedList<EventFilter2D> {
         if (!filteringEnabled || size() == 0) {
             return in;
         }
-        EventPacket out;
 //        if (timeLimitEnabled) {
 //            if (chip.getAeViewer().isPaused()) {
 //                in.setTimeLimitEnabled(false);
@@ -201,33 +221,132 @@ public class FilterChain extends LinkedList<EventFilter2D> {
             log.info("compute performance statistics reset");
             resetPerformanceMeasurementStatistics = false;
         }
+        if (processingMode == ProcessingMode.PIPELINED && !enclosed) { // enclosed chains run inside their enclosing filter's stage
+            return filterPacketPipelined(in);
+        }
+        return filterPacketSequentially(in); // the pipeline was shut down by setProcessingMode
+    }
+
+    /**
+     * Applies the enabled filters one after the other in the calling thread,
+     * regardless of the processing mode, e.g. for FilterChainBatchRunner or
+     * DvsSliceDatasetExporter where the PIPELINED output lag would lose the
+     * last packets of a file.
+     *
+     * @param in the input packet of events
+     * @return the resulting output.
+     */
+    public EventPacket filterPacketSequentially(EventPacket in) {
+        EventPacket out;
         for (EventFilter2D f : this) {
             if (!f.isFilterEnabled()) {
                 continue;
             }
-            if (measurePerformanceEnabled) {
-                if (f.perf == null) {
+            out = filterPacketMeasured(f, in);
+//            timedOut = in.isTimedOut();
+            in = out;
+        }
+        return in;
+    }
+
+    /**
+     * Filters the packet with one filter, measuring its performance if
+     * measurePerformanceEnabled is set. May be called from PIPELINED worker
+     * threads, so the performance view is constructed and shown on the Swing
+     * thread.
+     *
+     * @param f the filter
+     * @param in the input packet
+     * @return the output packet of the filter
+     */
+    EventPacket filterPacketMeasured(EventFilter2D f, EventPacket in) {
+        if (measurePerformanceEnabled) {
+            if (f.perf == null) {
+                final EventProcessingPerformanceMeter perf = new EventProcessingPerformanceMeter(f, null);
+                f.perf = perf;
+                SwingUtilities.invokeLater(() -> {
                     EventProcessingPerformanceView view = new EventProcessingPerformanceView(f.getChip().getFilterFrame());
-                    f.perf = new EventProcessingPerformanceMeter(f, view);
-                    view.setModel(f.perf);
+                    view.setModel(perf);
+                    perf.setView(view);
+                });
+            }
+            final EventProcessingPerformanceView view = f.perf.getView();
+            if (view != null && !view.isVisible()) {
+                SwingUtilities.invokeLater(() -> {
+                    if (!view.isVisible()) {
+                        view.setFocusableWindowState(false);
+                        view.setVisible(true);  // only set visible if not visible
+                        view.setFocusableWindowState(true);
+                    }
+                });
+            }
+            f.perf.start(in);
+        }
+        EventPacket out = f.filterPacket(in);
+        if (measurePerformanceEnabled && f.perf != null) {
+            f.perf.stop();
+//                System.out.println(f.perf);
+            f.perf.updateView();
+        }
+        return out;
+    }
+
+    /**
+     * Runs the packet through the pipeline, rebuilding the pipeline if the set
+     * of enabled filters has changed, i.e. only when filters were enabled,
+     * disabled, added or removed.
+     */
+    private EventPacket filterPacketPipelined(EventPacket in) {
+        FilterChainPipeline p;
+        synchronized (this) { // setProcessingMode may shut down the pipeline meanwhile
+            p = pipeline;
+            if (p == null || !isPipelineOfEnabledFilters(p)) {
+                ArrayList<EventFilter2D> enabled = new ArrayList<>();
+                for (EventFilter2D f : this) {
+                    if (f.isFilterEnabled()) {
+                        enabled.add(f);
+                    }
                 }
-                if (f.perf.getView() != null && !f.perf.getView().isVisible()) {
-                    f.perf.getView().setFocusableWindowState(false);
-                    f.perf.getView().setVisible(true);  // only set visible if not visible
-                    f.perf.getView().setFocusableWindowState(true);
+                shutdownPipeline();
+                if (enabled.isEmpty()) {
+                    return in;
                 }
-                f.perf.start(in);
+                p = pipeline = new FilterChainPipeline(this, enabled, pipelineMaxStages);
             }
-            out = f.filterPacket(in);
-//            timedOut = in.isTimedOut();
-            if (measurePerformanceEnabled && f.perf != null) {
-                f.perf.stop();
-//                System.out.println(f.perf);
-                f.perf.updateView();
+        }
+        return p.process(in);
+    }
+
+    /**
+     * Compares the filters of the pipeline with the enabled filters of the
+     * chain in place, without collecting the enabled filters for every packet.
+     *
+     * @return true if the pipeline runs exactly the enabled filters, in order
+     */
+    private boolean isPipelineOfEnabledFilters(FilterChainPipeline p) {
+        final List<EventFilter2D> filters = p.getFilters();
+        final int n = filters.size();
+        int i = 0;
+        for (EventFilter2D f : this) {
+            if (!f.isFilterEnabled()) {
+                continue;
             }
-            in = out;
+            if (i == n || filters.get(i) != f) {
+                return false;
+            }
+            i++;
+        }
+        return i == n;
+    }
+
+    /**
+     * Stops the worker threads of PIPELINED mode, if they are running.
+     */
+    synchronized private void shutdownPipeline() {
+        if (pipeline != null) {
+            pipeline.shutdown();
+            pipeline = null;
         }
-        return in;
     }
 
     /**
@@ -297,6 +416,33 @@ public class FilterChain extends LinkedList<EventFilter2D> {
         getSupport().firePropertyChange("processingmode", this.processingMode, processingMode);
         this.processingMode = processingMode;
         chip.getPrefs().put("FilterChain.processingMode", processingMode.toString());
+        if (processingMode != ProcessingMode.PIPELINED) {
+            shutdownPipeline();
+        }
+    }
+
+    /**
+     * @return the maximum number of worker threads used in PIPELINED mode
+     */
+    public int getPipelineMaxStages() {
+        return pipelineMaxStages;
+    }
+
+    /**
+     * Sets the maximum number of pipeline stages (worker threads) used in
+     * PIPELINED mode. If there are more enabled filters than stages,
+     * neighboring filters are grouped into the same stage. Takes effect when
+     * the pipeline is next rebuilt.
+     *
+     * @param pipelineMaxStages the maximum number of stages, at least 1
+     */
+    synchronized public void setPipelineMaxStages(int pipelineMaxStages) {
+        if (pipelineMaxStages < 1) {
+            pipelineMaxStages = 1;
+        }
+        this.pipelineMaxStages = pipelineMaxStages;
+        chip.getPrefs().putInt("FilterChain.pipelineMaxStages", pipelineMaxStages);
+        shutdownPipeline();
     }
 
     /**
@@ -427,7 +573,8 @@ public class FilterChain extends LinkedList<EventFilter2D> {
 
                 }
             }
-            if (toRemove.size() > 0) {
+            // in a headless JVM, filters that need the GUI fail to construct; keep them in Preferences for the GUI
+            if ((toRemove.size() > 0) && !GraphicsEnvironment.isHeadless()) {
                 classNames.removeAll(toRemove);
                 try {
                     storePreferredFilterPreferences(classNames);
@@ -0,0 +1,698 @@
+/* FilterChainBatchRunner.java
+ *
+ * Headless processing of recordings through a FilterChain.
+ */
+package net.sf.jaer.eventprocessing;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.prefs.InvalidPreferencesFormatException;
+import java.util.prefs.Preferences;
+
+import ml.options.Options;
+import ml.options.Options.Multiplicity;
+import ml.options.Options.Separator;
+import net.sf.jaer.JaerConstants;
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.chip.EventExtractor2D;
+import net.sf.jaer.event.EventPacket;
+import net.sf.jaer.eventio.AEDataFile;
+import net.sf.jaer.eventio.AEFileInputStreamInterface;
+import net.sf.jaer.eventio.AEFileOutputStream;
+import net.sf.jaer.eventio.AEInputStream;
+import net.sf.jaer.util.LoggingAnsiColorConsoleFormatter;
+
+/**
+ * Runs a FilterChain over recordings without AEViewer, e.g. for regression
+ * or analysis jobs on a server. Each file is read as fast as possible with the
+ * AEFileInputStreamInterface constructed by
+ * AEChip.constuctFileInputStream (e.g. AEFileInputStream or
+ * RosbagFileInputStream), extracted, filtered, and optionally written as a
+ * filtered AEDAT 2.0 file. A summary line per file can be written to a CSV
+ * file.
+ * <p>
+ * Every file gets its own AEChip and FilterChain, constructed from the
+ * Preferences of the chip exactly as in AEViewer, so files can be processed in
+ * parallel on several threads. Filters that keep static state must then be run
+ * with one thread. Saved filter settings (exported from the FilterFrame or
+ * AEViewer) can be imported first; note that like importing in the GUI this
+ * overwrites the stored Preferences.
+ * <p>
+ * Run with -Djava.awt.headless=true on machines without display; the AEChip
+ * then does not create its OpenGL canvas, and filters that need a display to
+ * construct are skipped with a warning. The chain is always processed
+ * sequentially in the calling thread, since in PIPELINED mode the last packets
+ * of a file would still be in the pipeline at the end of the file.
+ * TextFileInputStream opens its format dialog in AEViewer and so cannot be
+ * used headless yet.
+ *
+ * @see #USAGE
+ */
+public class FilterChainBatchRunner {
+
+    private static final Logger log = Logger.getLogger("net.sf.jaer");
+
+    /**
+     * Appended to the base name of the input file for the filtered output
+     */
+    public static final String OUTPUT_FILE_SUFFIX = "-filtered";
+
+    public static final String USAGE = "java -Djava.awt.headless=true net.sf.jaer.eventprocessing.FilterChainBatchRunner \n"
+            + "     [-aechip=aechipclassname (fully qualified class name, e.g. eu.seebetter.ini.chips.davis.Davis346red; default is the last chip used in AEViewer)] \n"
+            + "     [-prefs=filterSettings.xml (Preferences to import before processing)] \n"
+            + "     [-filters=class1,class2,... (fully qualified class names; default is the preferred FilterChain of the chip)] \n"
+            + "     [-writeaedat=true] [-outdir=directory] \n"
+            + "     [-csv=summary.csv] \n"
+            + "     [-packetus=10000] [-threads=numberOfProcessors] [-verbose] \n"
+            + "         inputFile1 [inputFile2 ...]"
+            + "\n"
+            + "Arguments values are assigned with =, not space\n"
+            + "Filtered files are written to outdir (default is the folder of the input file) with " + OUTPUT_FILE_SUFFIX + AEDataFile.DATA_FILE_EXTENSION + " appended to the input file base name";
+
+    private final String chipClassName;
+    private List<String> filterClassNames = null;
+    private boolean writeFilteredAedat = false;
+    private File outputDirectory = null;
+    private int packetDurationUs = 10000;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The outcome of processing one file in a batch. Subclasses add their
+     * counters and the CSV line written by writeCsv.
+     */
+    public static abstract class BatchResult {
+
+        /**
+         * The recording
+         */
+        public final File file;
+        public long wallTimeNs = 0;
+        /**
+         * The exception that stopped processing, or null if the file was
+         * processed to its end
+         */
+        public Exception error = null;
+
+        protected BatchResult(File file) {
+            this.file = file;
+        }
+
+        /**
+         * @return one line of CSV, matching the header passed to writeCsv
+         */
+        public abstract String toCsvLine();
+
+        /**
+         * @param s a value
+         * @return the value quoted for CSV
+         */
+        protected static String csv(String s) {
+            return "\"" + s.replace("\"", "\"\"") + "\"";
+        }
+    }
+
+    /**
+     * The outcome of processing one file.
+     */
+    public static class Result extends BatchResult {
+
+        /**
+         * Header line of the CSV summary
+         */
+        public static final String CSV_HEADER = "file,eventsIn,eventsOut,packets,firstTimestampUs,lastTimestampUs,wallTimeMs,eventsPerSecond,outputFile,error";
+
+        /**
+         * The filtered output file, or null if none was written
+         */
+        public File outputFile = null;
+        public long eventsIn = 0, eventsOut = 0;
+        public int packets = 0;
+        public int firstTimestampUs = 0, lastTimestampUs = 0;
+
+        Result(File file) {
+            super(file);
+        }
+
+        /**
+         * @return input events processed per second of wall time
+         */
+        public double getEventsPerSecond() {
+            return wallTimeNs == 0 ? 0 : (1e9 * eventsIn) / wallTimeNs;
+        }
+
+        @Override
+        public String toCsvLine() {
+            return String.format("%s,%d,%d,%d,%d,%d,%.1f,%.0f,%s,%s",
+                    csv(file.getPath()), eventsIn, eventsOut, packets, firstTimestampUs, lastTimestampUs,
+                    wallTimeNs * 1e-6, getEventsPerSecond(),
+                    outputFile == null ? "" : csv(outputFile.getPath()),
+                    error == null ? "" : csv(error.toString()));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %,d events in, %,d out in %,d packets, %.1f s, %.2f Mev/s%s",
+                    file.getName(), eventsIn, eventsOut, packets, wallTimeNs * 1e-9, getEventsPerSecond() * 1e-6,
+                    error == null ? "" : ", failed with " + error);
+        }
+    }
+
+    /**
+     * Reads the next packet from a recording, e.g. by time or by number of
+     * events.
+     */
+    public interface PacketReader {
+
+        /**
+         * @param ais the stream
+         * @return the next packet, or null at the end
+         * @throws IOException on read errors; EOFException ends the recording
+         */
+        AEPacketRaw read(AEFileInputStreamInterface ais) throws IOException;
+    }
+
+    /**
+     * Receives the packets of a recording from forEachPacket.
+     */
+    public interface PacketConsumer {
+
+        /**
+         * @param raw the packet
+         * @return false to stop reading
+         * @throws IOException to stop reading with an error
+         */
+        boolean accept(AEPacketRaw raw) throws IOException;
+    }
+
+    /**
+     * Constructs a new runner.
+     *
+     * @param chipClassName the fully qualified class name of the AEChip
+     */
+    public FilterChainBatchRunner(String chipClassName) {
+        this.chipClassName = chipClassName;
+    }
+
+    /**
+     * Imports Preferences, e.g. filter settings exported from the
+     * FilterFrame, into the user Preferences, overwriting existing values.
+     * Call before processing, so that the chips and filters construct with
+     * these settings.
+     *
+     * @param xmlFile the exported Preferences
+     * @throws IOException if the file cannot be read
+     * @throws InvalidPreferencesFormatException if the file is not exported
+     * Preferences
+     */
+    public static void importPreferences(File xmlFile) throws IOException, InvalidPreferencesFormatException {
+        try (InputStream is = new BufferedInputStream(new FileInputStream(xmlFile))) {
+            Preferences.importPreferences(is);
+        }
+        log.info("imported preferences from " + xmlFile);
+    }
+
+    /**
+     * Constructs a new AEChip of the runner's class.
+     *
+     * @return the chip
+     * @throws ReflectiveOperationException if the chip cannot be constructed
+     */
+    protected AEChip constructChip() throws ReflectiveOperationException {
+        return constructChip(chipClassName);
+    }
+
+    /**
+     * Constructs a new AEChip.
+     *
+     * @param chipClassName the fully qualified class name of the AEChip
+     * @return the chip
+     * @throws ReflectiveOperationException if the chip cannot be constructed
+     */
+    public static AEChip constructChip(String chipClassName) throws ReflectiveOperationException {
+        Class<?> chipClass = Class.forName(chipClassName);
+        Constructor<?> constructor = chipClass.getConstructor();
+        return (AEChip) constructor.newInstance();
+    }
+
+    /**
+     * Sets up the FilterChain of a newly constructed chip. If filter class
+     * names were set, the chain is replaced by these filters, all enabled;
+     * otherwise the preferred filters of the chip are used with their
+     * preferred enabled state.
+     *
+     * @param chip the chip
+     * @return the chain
+     * @throws ReflectiveOperationException if a filter cannot be constructed
+     */
+    protected FilterChain buildFilterChain(AEChip chip) throws ReflectiveOperationException {
+        FilterChain chain = chip.getFilterChain();
+        if (filterClassNames != null) {
+            chain.clear();
+            for (String name : filterClassNames) {
+                Constructor<?> co = Class.forName(name).getConstructor(FilterChain.filterConstructorParams);
+                chain.add((EventFilter2D) co.newInstance(chip));
+            }
+        }
+        chain.setMeasurePerformanceEnabled(false); // would open a window
+        chain.initFilters();
+        for (EventFilter2D f : chain) {
+            if (filterClassNames != null) {
+                f.setFilterEnabled(true);
+            } else {
+                f.setPreferredEnabledState();
+            }
+        }
+        return chain;
+    }
+
+    /**
+     * Processes one file to its end. Exceptions are not thrown but returned in
+     * the Result.
+     *
+     * @param file the recording
+     * @return the result
+     */
+    public Result process(File file) {
+        final Result result = new Result(file);
+        final long startNs = System.nanoTime();
+        AEFileOutputStream aos = null;
+        FilterChain chain = null;
+        try {
+            final AEChip chip = constructChip();
+            chain = buildFilterChain(chip);
+            if (writeFilteredAedat) {
+                result.outputFile = outputFileFor(file);
+                aos = new AEFileOutputStream(new FileOutputStream(result.outputFile), chip, AEDataFile.DATA_FILE_VERSION_NUMBER);
+            }
+            final FilterChain filters = chain;
+            final AEFileOutputStream output = aos;
+            final EventExtractor2D extractor = chip.getEventExtractor();
+            log.info("processing " + file + " with " + chain.size() + " filters");
+            forEachPacket(file, chip, ais -> ais.readPacketByTime(packetDurationUs), raw -> {
+                final int n = raw.getNumEvents();
+                if (n > 0) {
+                    if (result.eventsIn == 0) {
+                        result.firstTimestampUs = raw.getFirstTimestamp();
+                    }
+                    result.lastTimestampUs = raw.getLastTimestamp();
+                }
+                result.eventsIn += n;
+                result.packets++;
+                final EventPacket out = filters.filterPacketSequentially(extractor.extractPacket(raw));
+                result.eventsOut += out.getSizeNotFilteredOut();
+                if (output != null) {
+                    output.writePacket(extractor.reconstructRawPacket(out));
+                }
+                return true;
+            });
+        } catch (Exception e) {
+            result.error = e;
+            log.log(Level.WARNING, "processing " + file + " failed: " + e.toString(), e);
+        } finally {
+            if (chain != null) {
+                chain.cleanup();
+            }
+            if (aos != null) {
+                try {
+                    aos.close();
+                } catch (IOException e) {
+                    log.warning("closing " + result.outputFile + ": " + e.toString());
+                    if (result.error == null) {
+                        result.error = e;
+                    }
+                }
+            }
+            result.wallTimeNs = System.nanoTime() - startNs;
+        }
+        log.info(result.toString());
+        return result;
+    }
+
+    /**
+     * Reads a recording as fast as possible, from its start to its end, and
+     * passes each packet to a consumer. The stream is constructed by
+     * AEChip.constuctFileInputStream and closed at the end. Streams end
+     * differently: some throw EOFException, some return null and some fire
+     * EVENT_EOF or rewind by themselves; all of these end the recording.
+     *
+     * @param file the recording
+     * @param chip the chip that constructs the stream
+     * @param reader reads the next packet, e.g. by time or by number
+     * @param consumer receives the packets until it returns false
+     * @throws IOException if the stream cannot be opened or read, or the
+     * consumer throws it
+     * @throws InterruptedException if interrupted while opening the stream
+     */
+    public static void forEachPacket(File file, AEChip chip, PacketReader reader, PacketConsumer consumer) throws IOException, InterruptedException {
+        final AEFileInputStreamInterface ais = chip.constuctFileInputStream(file, null);
+        try {
+            ais.setNonMonotonicTimeExceptionsChecked(false);
+            final boolean[] ended = {false};
+            ais.getSupport().addPropertyChangeListener(new PropertyChangeListener() {
+                @Override
+                public void propertyChange(PropertyChangeEvent evt) {
+                    if (AEInputStream.EVENT_EOF.equals(evt.getPropertyName()) || AEInputStream.EVENT_REWOUND.equals(evt.getPropertyName())) {
+                        ended[0] = true;
+                    }
+                }
+            });
+            while (!ended[0]) {
+                AEPacketRaw raw;
+                try {
+                    raw = reader.read(ais);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (raw == null || !consumer.accept(raw)) {
+                    break;
+                }
+            }
+        } finally {
+            try {
+                ais.close();
+            } catch (IOException e) {
+                log.warning("closing " + file + ": " + e.toString());
+            }
+        }
+    }
+
+    /**
+     * Processes the files on getNumThreads() threads.
+     *
+     * @param files the recordings
+     * @return the results, in the order of files
+     * @throws InterruptedException if interrupted while waiting for the
+     * results
+     */
+    public List<Result> processAll(List<File> files) throws InterruptedException {
+        return processAll(files, numThreads, this::process, Result::new);
+    }
+
+    /**
+     * Processes files in parallel, one task per file, on a fixed pool of at
+     * most numThreads threads.
+     *
+     * @param files the recordings
+     * @param numThreads the maximum number of files processed at once
+     * @param process processes one file; it should return its exceptions in
+     * the result
+     * @param newResult makes an empty result for a file whose processing threw
+     * @return the results, in the order of files
+     * @throws InterruptedException if interrupted while waiting for the
+     * results
+     */
+    public static <R extends BatchResult> List<R> processAll(List<File> files, int numThreads, Function<File, R> process, Function<File, R> newResult) throws InterruptedException {
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(numThreads, files.size())));
+        try {
+            ArrayList<Future<R>> futures = new ArrayList<>();
+            for (final File f : files) {
+                futures.add(executor.submit(() -> process.apply(f)));
+            }
+            ArrayList<R> results = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) { // process returns its exceptions, so only Errors come here
+                    R r = newResult.apply(files.get(i));
+                    r.error = new Exception(e.getCause());
+                    results.add(r);
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Writes results as CSV with a header line.
+     *
+     * @param results the results
+     * @param csvHeader the header line, matching BatchResult.toCsvLine
+     * @param csvFile the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeCsv(List<? extends BatchResult> results, String csvHeader, File csvFile) throws IOException {
+        try (PrintWriter w = new PrintWriter(csvFile, "UTF-8")) {
+            w.println(csvHeader);
+            for (BatchResult r : results) {
+                w.println(r.toCsvLine());
+            }
+        }
+        log.info("wrote summary of " + results.size() + " files to " + csvFile);
+    }
+
+    /**
+     * @param input the recording
+     * @return the filtered output file for the recording
+     */
+    public File outputFileFor(File input) {
+        String name = input.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        File dir = outputDirectory != null ? outputDirectory : input.getAbsoluteFile().getParentFile();
+        return new File(dir, base + OUTPUT_FILE_SUFFIX + AEDataFile.DATA_FILE_EXTENSION);
+    }
+
+    /**
+     * @return the filter class names, or null to use the preferred filters
+     */
+    public List<String> getFilterClassNames() {
+        return filterClassNames;
+    }
+
+    /**
+     * @param filterClassNames the fully qualified filter class names to run,
+     * all enabled, or null to use the preferred FilterChain of the chip
+     */
+    public void setFilterClassNames(List<String> filterClassNames) {
+        this.filterClassNames = filterClassNames;
+    }
+
+    /**
+     * @return true if filtered AEDAT files are written
+     */
+    public boolean isWriteFilteredAedat() {
+        return writeFilteredAedat;
+    }
+
+    /**
+     * @param writeFilteredAedat true to write the filtered events of each
+     * file to an AEDAT 2.0 file, named by outputFileFor
+     */
+    public void setWriteFilteredAedat(boolean writeFilteredAedat) {
+        this.writeFilteredAedat = writeFilteredAedat;
+    }
+
+    /**
+     * @return the folder for filtered files, or null for the folder of each
+     * input file
+     */
+    public File getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    /**
+     * @param outputDirectory the folder for filtered files, or null for the
+     * folder of each input file
+     */
+    public void setOutputDirectory(File outputDirectory) {
+        this.outputDirectory = outputDirectory;
+    }
+
+    /**
+     * @return the duration of each packet in us
+     */
+    public int getPacketDurationUs() {
+        return packetDurationUs;
+    }
+
+    /**
+     * @param packetDurationUs the duration of each packet in us, like the
+     * time slice of AEViewer
+     */
+    public void setPacketDurationUs(int packetDurationUs) {
+        this.packetDurationUs = Math.max(1, packetDurationUs);
+    }
+
+    /**
+     * @return the number of files processed in parallel
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * @param numThreads the number of files processed in parallel
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * Adds the options shared by the batch tools: -aechip, -csv, -threads
+     * and -verbose.
+     *
+     * @param opt the options of a tool
+     */
+    public static void addCommonOptions(Options opt) {
+        opt.getSet().addOption("aechip", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("csv", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("threads", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("verbose", Multiplicity.ZERO_OR_ONE);
+    }
+
+    /**
+     * Sets up logging to the console and checks the arguments. Exits with the
+     * usage if they are wrong.
+     *
+     * @param opt the options of a tool, including the common options
+     * @param usage the usage of the tool
+     */
+    public static void checkOptions(Options opt, String usage) {
+        ConsoleHandler handler = new ConsoleHandler();
+        handler.setFormatter(new LoggingAnsiColorConsoleFormatter());
+        log.setUseParentHandlers(false);
+        log.addHandler(handler);
+        log.setLevel(Level.WARNING); // default only warnings, -verbose adds info logging
+        if (!opt.check()) {
+            log.warning(opt.getCheckErrors());
+            System.err.println(usage);
+            System.exit(1);
+        }
+        if (opt.getSet().isSet("verbose")) {
+            log.setLevel(Level.INFO);
+            handler.setLevel(Level.INFO);
+        }
+    }
+
+    /**
+     * Returns the -aechip option, or the chip last used in AEViewer. Exits
+     * with the usage if there is neither.
+     *
+     * @param opt the checked options
+     * @param usage the usage of the tool
+     * @return the fully qualified class name of the AEChip
+     */
+    public static String chipClassNameOption(Options opt, String usage) {
+        if (opt.getSet().isSet("aechip")) {
+            return opt.getSet().getOption("aechip").getResultValue(0);
+        }
+        String chipClassName = JaerConstants.PREFS_ROOT.node("AEViewer").get("AEViewer.aeChipClassName", null);
+        if (chipClassName == null) {
+            log.warning("no -aechip given and no chip used before in AEViewer");
+            System.err.println(usage);
+            System.exit(1);
+        }
+        return chipClassName;
+    }
+
+    /**
+     * @param opt the checked options
+     * @return the -csv summary file, or null if not given
+     */
+    public static File csvFileOption(Options opt) {
+        return opt.getSet().isSet("csv") ? new File(opt.getSet().getOption("csv").getResultValue(0)) : null;
+    }
+
+    /**
+     * Prints the results, writes them to the CSV summary if there is one, and
+     * exits with 0 if all files were processed, 2 if some failed and 1 if the
+     * summary could not be written.
+     *
+     * @param results the results
+     * @param csvHeader the header line of the CSV summary
+     * @param csvFile the CSV summary, or null
+     */
+    public static void exitWithResults(List<? extends BatchResult> results, String csvHeader, File csvFile) {
+        int numFailed = 0;
+        for (BatchResult r : results) {
+            System.out.println(r);
+            if (r.error != null) {
+                numFailed++;
+            }
+        }
+        if (csvFile != null) {
+            try {
+                writeCsv(results, csvHeader, csvFile);
+            } catch (IOException e) {
+                log.warning(e.toString());
+                System.exit(1);
+            }
+        }
+        System.exit(numFailed == 0 ? 0 : 2);
+    }
+
+    public static void main(String[] args) {
+        Options opt = new Options(args, 1, Integer.MAX_VALUE);
+        addCommonOptions(opt);
+        opt.getSet().addOption("prefs", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("filters", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("writeaedat", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("outdir", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("packetus", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        checkOptions(opt, USAGE);
+
+        FilterChainBatchRunner runner = new FilterChainBatchRunner(chipClassNameOption(opt, USAGE));
+        try {
+            if (opt.getSet().isSet("prefs")) {
+                importPreferences(new File(opt.getSet().getOption("prefs").getResultValue(0)));
+            }
+            if (opt.getSet().isSet("filters")) {
+                runner.setFilterClassNames(Arrays.asList(opt.getSet().getOption("filters").getResultValue(0).split(",")));
+            }
+            if (opt.getSet().isSet("writeaedat")) {
+                runner.setWriteFilteredAedat(Boolean.parseBoolean(opt.getSet().getOption("writeaedat").getResultValue(0)));
+            }
+            if (opt.getSet().isSet("outdir")) {
+                File dir = new File(opt.getSet().getOption("outdir").getResultValue(0));
+                if (!dir.isDirectory() && !dir.mkdirs()) {
+                    throw new IOException("could not create output folder " + dir);
+                }
+                runner.setOutputDirectory(dir);
+            }
+            if (opt.getSet().isSet("packetus")) {
+                runner.setPacketDurationUs(Integer.parseInt(opt.getSet().getOption("packetus").getResultValue(0)));
+            }
+            if (opt.getSet().isSet("threads")) {
+                runner.setNumThreads(Integer.parseInt(opt.getSet().getOption("threads").getResultValue(0)));
+            }
+        } catch (IOException | InvalidPreferencesFormatException | NumberFormatException e) {
+            log.warning(e.toString());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        ArrayList<File> files = new ArrayList<>();
+        for (String s : opt.getSet().getData()) {
+            files.add(new File(s));
+        }
+        try {
+            exitWithResults(runner.processAll(files), Result.CSV_HEADER, csvFileOption(opt));
+        } catch (InterruptedException e) {
+            log.warning(e.toString());
+            System.exit(1);
+        }
+    }
+}
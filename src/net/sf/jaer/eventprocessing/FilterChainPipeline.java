@@ -0,0 +1,303 @@
+/* FilterChainPipeline.java
+ *
+ * Pipelined execution of a FilterChain on worker threads.
+ */
+package net.sf.jaer.eventprocessing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.sf.jaer.event.EventPacket;
+import net.sf.jaer.event.OutputEventIterator;
+
+/**
+ * Runs the enabled filters of a FilterChain as a pipeline of worker threads,
+ * used for FilterChain.ProcessingMode.PIPELINED. The filters are split into
+ * contiguous stages, each running on its own thread, so that different packets
+ * are processed by different stages at the same time and throughput is
+ * bounded by the slowest stage rather than by the sum of all filters.
+ * <p>
+ * Since filters reuse their output packets, each stage hands the result of
+ * its last filter to the next stage in one of its own packet buffers. The
+ * events are swapped into the buffer (EventPacket.swapEvents) rather than
+ * copied, so the filter gets the buffer's previous events to reuse; a filter
+ * that returns its input packet passes the buffer on as is. Only packets that
+ * cannot be swapped, e.g. output packets that reference events of their input
+ * packet, are copied. The input packet is handed to the first stage the same
+ * way. A stage owns BUFFERS_PER_STAGE buffers (double buffering), so a
+ * stage that gets ahead of its successor stalls until a buffer is returned;
+ * the stall count and stall time are reported by the
+ * EventProcessingPerformanceMeter of each filter in the stage.
+ * <p>
+ * The output of the pipeline lags its input by at least the number of
+ * stages; the first packets after construction return an empty packet.
+ * Filters that annotate graphics are subject to the same threading caveats as
+ * in ACQUISITION mode.
+ *
+ * @see FilterChain#setProcessingMode(net.sf.jaer.eventprocessing.FilterChain.ProcessingMode)
+ */
+class FilterChainPipeline {
+
+    private static final Logger log = Logger.getLogger("net.sf.jaer");
+    /**
+     * Number of packet buffers owned by the input and by each stage
+     */
+    static final int BUFFERS_PER_STAGE = 2;
+
+    private final FilterChain chain;
+    private final List<EventFilter2D> filters;
+    private final ArrayList<Stage> stages = new ArrayList<>();
+    private final ArrayBlockingQueue<Buffer> inputPool = newPool(BUFFERS_PER_STAGE);
+    private final ArrayBlockingQueue<Buffer> outputQueue;
+    private Buffer heldOutput = null;
+    private EventPacket emptyPacket = null;
+    private volatile Throwable failure = null;
+    private volatile boolean stopped = false;
+    private long inputStallCount = 0, inputStallNs = 0;
+
+    /**
+     * A packet buffer and the pool it is returned to when consumed.
+     */
+    private static final class Buffer {
+
+        EventPacket packet = null;
+        final ArrayBlockingQueue<Buffer> home;
+
+        Buffer(ArrayBlockingQueue<Buffer> home) {
+            this.home = home;
+        }
+    }
+
+    private static ArrayBlockingQueue<Buffer> newPool(int n) {
+        ArrayBlockingQueue<Buffer> pool = new ArrayBlockingQueue<>(n);
+        for (int i = 0; i < n; i++) {
+            pool.add(new Buffer(pool));
+        }
+        return pool;
+    }
+
+    /**
+     * Constructs and starts the pipeline.
+     *
+     * @param chain the chain, used for performance measurement
+     * @param filters the enabled filters, in chain order
+     * @param maxStages the maximum number of stages (threads); filters are
+     * grouped into contiguous stages if there are more filters than this
+     */
+    FilterChainPipeline(FilterChain chain, List<EventFilter2D> filters, int maxStages) {
+        this.chain = chain;
+        this.filters = new ArrayList<>(filters);
+        final int n = this.filters.size();
+        final int numStages = Math.max(1, Math.min(n, maxStages));
+        for (int s = 0; s < numStages; s++) {
+            // the last stage gets enough buffers that it can never block while the consumer waits for an input buffer
+            int nBuffers = s == numStages - 1 ? BUFFERS_PER_STAGE * numStages + 2 : BUFFERS_PER_STAGE;
+            stages.add(new Stage(s, this.filters.subList((s * n) / numStages, ((s + 1) * n) / numStages), nBuffers));
+        }
+        outputQueue = new ArrayBlockingQueue<>(BUFFERS_PER_STAGE * numStages + 2);
+        for (int s = 0; s < numStages; s++) {
+            stages.get(s).downstream = s == numStages - 1 ? outputQueue : stages.get(s + 1).inQueue;
+        }
+        for (Stage s : stages) {
+            s.thread.start();
+        }
+        log.info("started " + this);
+    }
+
+    /**
+     * @return the filters this pipeline was built for
+     */
+    List<EventFilter2D> getFilters() {
+        return filters;
+    }
+
+    /**
+     * Submits the events of the packet to the pipeline and returns the next
+     * processed packet, or an empty packet if none is ready yet. Blocks if the
+     * first stage has not yet consumed the previous inputs. The returned packet
+     * is valid until the next call. The events of in are swapped with those of
+     * a free input buffer, so afterwards in holds stale events. If the
+     * pipeline is shut down meanwhile, in is returned unfiltered.
+     *
+     * @param in the input packet
+     * @return the next output packet of the last stage
+     * @throws RuntimeException if a filter threw an exception in a worker
+     * thread
+     */
+    EventPacket process(EventPacket in) {
+        if (failure != null) {
+            throw new RuntimeException("filter in pipeline threw " + failure, failure);
+        }
+        if (heldOutput != null) { // the previous output has been consumed by now
+            heldOutput.home.add(heldOutput);
+            heldOutput = null;
+        }
+        try {
+            Buffer b = inputPool.poll();
+            if (b == null) {
+                long start = System.nanoTime();
+                while (b == null) {
+                    b = inputPool.poll(100, TimeUnit.MILLISECONDS);
+                    if (failure != null) {
+                        throw new RuntimeException("filter in pipeline threw " + failure, failure);
+                    }
+                    if (stopped) {
+                        return in;
+                    }
+                }
+                inputStallCount++;
+                inputStallNs += System.nanoTime() - start;
+            }
+            b.packet = handOver(in, b.packet);
+            stages.get(0).inQueue.put(b);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return in;
+        }
+        heldOutput = outputQueue.poll();
+        if (heldOutput == null) {
+            if (emptyPacket == null || emptyPacket.getEventClass() != in.getEventClass()) {
+                emptyPacket = in.constructNewPacket();
+            }
+            emptyPacket.clear();
+            return emptyPacket;
+        }
+        return heldOutput.packet;
+    }
+
+    /**
+     * Stops the worker threads. Packets still in the pipeline are discarded.
+     */
+    void shutdown() {
+        stopped = true;
+        for (Stage s : stages) {
+            s.thread.interrupt();
+        }
+        for (Stage s : stages) {
+            try {
+                s.thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        log.info("stopped " + this);
+    }
+
+    /**
+     * Moves the events of src to dst by swapping them if possible, or else by
+     * copying them.
+     *
+     * @return dst, or the new packet
+     */
+    static EventPacket handOver(EventPacket<?> src, EventPacket dst) {
+        if (dst == null) {
+            dst = src.constructNewPacket();
+        }
+        if (dst.canSwapEvents(src)) {
+            dst.swapEvents(src);
+            return dst;
+        }
+        return copyPacket(src, dst);
+    }
+
+    /**
+     * Copies all events of src, including the filtered out ones, to dst,
+     * which is constructed if necessary.
+     *
+     * @return dst, or the new packet
+     */
+    static EventPacket copyPacket(EventPacket<?> src, EventPacket dst) {
+        if (dst == null || dst.getClass() != src.getClass() || dst.getEventClass() != src.getEventClass()) {
+            dst = src.constructNewPacket();
+        }
+        dst.allocate(src.getSize());
+        final OutputEventIterator outItr = dst.outputIterator();
+        final int n = src.getSize();
+        for (int i = 0; i < n; i++) {
+            outItr.nextOutput().copyFrom(src.getEvent(i));
+        }
+        dst.setRawPacket(src.getRawPacket());
+        dst.systemModificationTimeNs = src.systemModificationTimeNs;
+        return dst;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("FilterChainPipeline with ").append(stages.size()).append(" stages: ");
+        for (Stage s : stages) {
+            sb.append(s.thread.getName()).append(' ');
+        }
+        sb.append(String.format("(input stalls=%d, %.1f ms)", inputStallCount, inputStallNs * 1e-6f));
+        return sb.toString();
+    }
+
+    /**
+     * One stage of the pipeline, running a group of filters on its own thread.
+     */
+    private final class Stage implements Runnable {
+
+        final List<EventFilter2D> stageFilters;
+        final ArrayBlockingQueue<Buffer> inQueue = new ArrayBlockingQueue<>(BUFFERS_PER_STAGE);
+        final ArrayBlockingQueue<Buffer> pool;
+        ArrayBlockingQueue<Buffer> downstream;
+        final Thread thread;
+        long stallCount = 0, stallNs = 0;
+
+        Stage(int index, List<EventFilter2D> stageFilters, int nBuffers) {
+            this.stageFilters = stageFilters;
+            this.pool = newPool(nBuffers);
+            StringBuilder name = new StringBuilder("FilterChainPipeline-").append(index);
+            for (EventFilter2D f : stageFilters) {
+                name.append('-').append(f.getClass().getSimpleName());
+            }
+            thread = new Thread(this, name.toString());
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    final Buffer in = inQueue.take();
+                    final int queueDepth = inQueue.size();
+                    EventPacket p = in.packet;
+                    for (EventFilter2D f : stageFilters) {
+                        if (f.isFilterEnabled()) {
+                            p = chain.filterPacketMeasured(f, p);
+                        }
+                    }
+                    Buffer out = pool.poll();
+                    if (out == null) {
+                        long start = System.nanoTime();
+                        out = pool.take();
+                        stallCount++;
+                        stallNs += System.nanoTime() - start;
+                    }
+                    if (p == in.packet) { // the filters worked in place, pass the buffer's packet on
+                        in.packet = out.packet;
+                        out.packet = p;
+                    } else {
+                        out.packet = handOver(p, out.packet);
+                    }
+                    in.home.add(in);
+                    downstream.put(out);
+                    for (EventFilter2D f : stageFilters) {
+                        if (f.perf != null) {
+                            f.perf.setPipelineStatistics(queueDepth, stallCount, stallNs);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                // shutdown
+            } catch (Throwable t) {
+                log.log(Level.WARNING, thread.getName() + " caught " + t, t);
+                failure = t;
+            }
+        }
+    }
+}
@@ -128,6 +128,9 @@ public class FilterFrame<PanelType extends FilterPanel> extends javax.swing.JFra
             case ACQUISITION:
                 acquisitionModeMenuItem.setSelected(true);
                 break;
+            case PIPELINED:
+                pipelinedModeMenuItem.setSelected(true);
+                break;
             default:
 
         }
@@ -376,6 +379,7 @@ public class FilterFrame<PanelType extends FilterPanel> extends javax.swing.JFra
         modeMenu = new javax.swing.JMenu();
         renderingModeMenuItem = new javax.swing.JRadioButtonMenuItem();
         acquisitionModeMenuItem = new javax.swing.JRadioButtonMenuItem();
+        pipelinedModeMenuItem = new javax.swing.JRadioButtonMenuItem();
         jSeparator1 = new javax.swing.JSeparator();
         measurePerformanceCheckBoxMenuItem = new javax.swing.JCheckBoxMenuItem();
         resetPerformanceMeasurementMI = new javax.swing.JMenuItem();
@@ -667,6 +671,17 @@ public class FilterFrame<PanelType extends FilterPanel> extends javax.swing.JFra
             }
         });
         modeMenu.add(acquisitionModeMenuItem);
+
+        modeButtonGroup.add(pipelinedModeMenuItem);
+        pipelinedModeMenuItem.setMnemonic('p');
+        pipelinedModeMenuItem.setText("Process in pipelined worker threads");
+        pipelinedModeMenuItem.setToolTipText("Process events on rendering cycle, running filters as a multithreaded pipeline with a latency of a few packets");
+        pipelinedModeMenuItem.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                pipelinedModeMenuItemActionPerformed(evt);
+            }
+        });
+        modeMenu.add(pipelinedModeMenuItem);
         modeMenu.add(jSeparator1);
 
         measurePerformanceCheckBoxMenuItem.setAccelerator(javax.swing.KeyStroke.getKeyStroke(java.awt.event.KeyEvent.VK_P, java.awt.event.InputEvent.CTRL_DOWN_MASK));
@@ -780,6 +795,10 @@ public class FilterFrame<PanelType extends FilterPanel> extends javax.swing.JFra
             filterChain.setProcessingMode(FilterChain.ProcessingMode.RENDERING);
 	}//GEN-LAST:event_renderingModeMenuItemActionPerformed
 
+    private void pipelinedModeMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_pipelinedModeMenuItemActionPerformed
+        filterChain.setProcessingMode(FilterChain.ProcessingMode.PIPELINED);
+    }//GEN-LAST:event_pipelinedModeMenuItemActionPerformed
+
     /**
      * renews contents by newing all filters, thus filling them with preference
      * values. This is how preferences can replace values without using
@@ -1123,6 +1142,8 @@ public class FilterFrame<PanelType extends FilterPanel> extends javax.swing.JFra
                 acquisitionModeMenuItem.setSelected(true);
             } else if (evt.getNewValue() == FilterChain.ProcessingMode.RENDERING) {
                 renderingModeMenuItem.setSelected(true);
+            } else if (evt.getNewValue() == FilterChain.ProcessingMode.PIPELINED) {
+                pipelinedModeMenuItem.setSelected(true);
             }
         }
     }
@@ -1246,6 +1267,7 @@ public class FilterFrame<PanelType extends FilterPanel> extends javax.swing.JFra
     private javax.swing.ButtonGroup modeButtonGroup;
     private javax.swing.JMenu modeMenu;
     private javax.swing.JButton overviewButton;
+    private javax.swing.JRadioButtonMenuItem pipelinedModeMenuItem;
     private javax.swing.JMenuItem rebuildPanelB;
     private javax.swing.JButton redoButton;
     private javax.swing.JMenuItem redoEditMenuItem;
@@ -96,6 +96,11 @@ public abstract class AbstractNoiseFilter extends EventFilter2D implements Frame
     @Preferred
     protected int sigmaDistPixels = getInt("sigmaDistPixels", 1);
 
+    /**
+     * Largest sigmaDistPixels, also the border of TimestampPolarityMap
+     */
+    protected static final int MAX_SIGMA_DIST_PIXELS = 15;
+
     /**
      * the amount to subsample x and y event location by in bit shifts when
      * writing to past event times map. This effectively increases the range of
@@ -262,6 +267,25 @@ public abstract class AbstractNoiseFilter extends EventFilter2D implements Frame
         log.warning("initializeLastTimesMapForNoiseRate() method should be implemented for this filter " + this.getClass().getSimpleName() + " to produce correct statistics after reset");
     }
 
+    /**
+     * Returns a TimestampPolarityMap of the subsampled chip size, which can hold
+     * neighborhoods up to MAX_SIGMA_DIST_PIXELS.
+     *
+     * @param map the current map, may be null
+     * @return map if it already has the right shape, otherwise a new empty
+     * map, or map if the chip has no size yet
+     */
+    protected TimestampPolarityMap allocateTimestampPolarityMap(TimestampPolarityMap map) {
+        if ((chip == null) || (chip.getNumCells() <= 0)) {
+            return map;
+        }
+        final int sx = ((chip.getSizeX() - 1) >> subsampleBy) + 1, sy = ((chip.getSizeY() - 1) >> subsampleBy) + 1;
+        if ((map == null) || !map.hasShape(sx, sy, MAX_SIGMA_DIST_PIXELS)) {
+            map = new TimestampPolarityMap(sx, sy, MAX_SIGMA_DIST_PIXELS);
+        }
+        return map;
+    }
+
     protected static void fill2dTimestampAndPolarityImagesWithNoiseEvents(float noiseRateHz, int lastTimestampUs, int[][] timestampImage, byte[][] polarityImage) {
         Random random = new Random();
         if (timestampImage != null) {
@@ -399,8 +423,8 @@ public abstract class AbstractNoiseFilter extends EventFilter2D implements Frame
         int min = (chip instanceof CDAVIS ? 2 : 1); // tobi added for CDAVIS since DVS pitch is half of full pitch
         if (sigmaDistPixels < min) {
             sigmaDistPixels = min;
-        } else if (sigmaDistPixels > 15) {
-            sigmaDistPixels = 15;
+        } else if (sigmaDistPixels > MAX_SIGMA_DIST_PIXELS) {
+            sigmaDistPixels = MAX_SIGMA_DIST_PIXELS;
         }
         this.sigmaDistPixels = sigmaDistPixels;
         putInt("sigmaDistPixels", sigmaDistPixels);
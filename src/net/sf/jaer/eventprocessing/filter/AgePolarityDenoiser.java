@@ -69,9 +69,7 @@ public class AgePolarityDenoiser extends SpatioTemporalCorrelationFilter {
     @Override
     synchronized public EventPacket<? extends BasicEvent> filterPacket(EventPacket<? extends BasicEvent> in) {
         resetCountsAndNegativeEvents();
-        if (timestampImage == null) {
-            allocateMaps(chip);
-        }
+        allocateMaps(chip);
         tauUs = (int) Math.round(getCorrelationTimeS() * 1e6f);
         ssx = sxm1 >> subsampleBy;
         ssy = sym1 >> subsampleBy;
@@ -80,6 +78,8 @@ public class AgePolarityDenoiser extends SpatioTemporalCorrelationFilter {
         final boolean record = recordFilteredOutEvents; // to speed up loop, maybe
         final boolean fhp = filterHotPixels;
         final NnbRange nnbRange = new NnbRange();
+        final int[] tsMap = timestampMap.getTimestamps();
+        final byte[] polMap = timestampMap.getPolarities();
 
         final boolean hasPolarites = in.getEventPrototype() instanceof PolarityEvent;
 
@@ -99,7 +99,7 @@ public class AgePolarityDenoiser extends SpatioTemporalCorrelationFilter {
                     filterOut(e);
                     continue;
                 }
-                if (timestampImage[x][y] == DEFAULT_TIMESTAMP) {
+                if (timestampMap.isEmpty(x, y)) {
                     storeTimestampPolarity(x, y, e);
                     if (letFirstEventThrough) {
                         filterIn(e);
@@ -117,13 +117,12 @@ public class AgePolarityDenoiser extends SpatioTemporalCorrelationFilter {
                 nnbRange.compute(x, y, ssx, ssy);
                 outerloop:
                 for (int xx = nnbRange.x0; xx <= nnbRange.x1; xx++) {
-                    final int[] col = timestampImage[xx];
-                    final byte[] polCol = polImage[xx];
                     for (int yy = nnbRange.y0; yy <= nnbRange.y1; yy++) {
+                        final int i = timestampMap.index(xx, yy);
                         if (fhp && xx == x && yy == y) {
                             continue; // like BAF, don't correlate with ourself
                         }
-                        final int lastT = col[yy];
+                        final int lastT = tsMap[i];
                         final int deltaT = (ts - lastT); // note deltaT will be very negative for DEFAULT_TIMESTAMP because of overflow
 
                         boolean occupied = false;
@@ -133,7 +132,7 @@ public class AgePolarityDenoiser extends SpatioTemporalCorrelationFilter {
                                 occupied = true;
                             } else {
                                 PolarityEvent pe = (PolarityEvent) e;
-                                if (pe.getPolaritySignum() == polCol[yy]) {
+                                if (pe.getPolaritySignum() == polMap[i]) {
                                     score += age(deltaT);
                                     occupied = true;
                                 }
@@ -177,7 +176,7 @@ public class AgePolarityDenoiser extends SpatioTemporalCorrelationFilter {
                     filterOut(e);
                     continue;
                 }
-                if (timestampImage[x][y] == DEFAULT_TIMESTAMP) {
+                if (timestampMap.isEmpty(x, y)) {
                     storeTimestampPolarity(x, y, e);
                     if (letFirstEventThrough) {
                         filterIn(e);
@@ -193,13 +192,12 @@ public class AgePolarityDenoiser extends SpatioTemporalCorrelationFilter {
                 nnbRange.compute(x, y, ssx, ssy);
                 outerloop:
                 for (int xx = nnbRange.x0; xx <= nnbRange.x1; xx++) {
-                    final int[] col = timestampImage[xx];
-                    final byte[] polCol = polImage[xx];
                     for (int yy = nnbRange.y0; yy <= nnbRange.y1; yy++) {
+                        final int i = timestampMap.index(xx, yy);
                         if (fhp && xx == x && yy == y) {
                             continue; // like BAF, don't correlate with ourself
                         }
-                        final int lastT = col[yy];
+                        final int lastT = tsMap[i];
                         final int deltaT = (ts - lastT); // note deltaT will be very negative for DEFAULT_TIMESTAMP because of overflow
 
                         if (deltaT < tauUs && lastT != DEFAULT_TIMESTAMP) { // ignore correlations for DEFAULT_TIMESTAMP that are neighbors which never got event so far
@@ -207,7 +205,7 @@ public class AgePolarityDenoiser extends SpatioTemporalCorrelationFilter {
                                 score += age(deltaT);
                             } else {
                                 PolarityEvent pe = (PolarityEvent) e;
-                                if (pe.getPolaritySignum() == polCol[yy]) {
+                                if (pe.getPolaritySignum() == polMap[i]) {
                                     score += age(deltaT);
                                 }
                             }
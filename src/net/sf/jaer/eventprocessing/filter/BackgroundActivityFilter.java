@@ -3,7 +3,6 @@
  * Created on October 21, 2005, 12:33 PM */
 package net.sf.jaer.eventprocessing.filter;
 
-import java.util.Arrays;
 import java.util.Observable;
 import java.util.Random;
 
@@ -28,10 +27,7 @@ import net.sf.jaer.util.RemoteControlCommand;
 @DevelopmentStatus(DevelopmentStatus.Status.Stable)
 public class BackgroundActivityFilter extends AbstractNoiseFilter {
 
-    private int sx;
-    private int sy;
-
-    int[][] timestampImage;
+    TimestampPolarityMap timestampMap;
     private int ts = 0, lastTimestamp = DEFAULT_TIMESTAMP; // used to reset filter
 
     public BackgroundActivityFilter(AEChip chip) {
@@ -49,11 +45,10 @@ public class BackgroundActivityFilter extends AbstractNoiseFilter {
     @Override
     synchronized public EventPacket<? extends BasicEvent> filterPacket(EventPacket<? extends BasicEvent> in) {
         super.filterPacket(in);
-        if (timestampImage == null) {
-            allocateMaps(chip);
-        }
+        timestampMap = allocateTimestampPolarityMap(timestampMap);
 
         int dt = (int) Math.round(getCorrelationTimeS() * 1e6f);
+        final TimestampPolarityMap map = timestampMap;
         // for each event only keep it if it is within dt of the last time
         // an event happened in the direct neighborhood
         for (BasicEvent e : in) {
@@ -67,13 +62,13 @@ public class BackgroundActivityFilter extends AbstractNoiseFilter {
             int ts = e.timestamp;
             lastTimestamp = ts;
             final int x = (e.x >> subsampleBy), y = (e.y >> subsampleBy);
-            if ((x < 0) || (x > sx) || (y < 0) || (y > sy)) {
+            if (!map.contains(x, y)) {
                 filterOut(e);
                 continue;
             }
 
-            if (timestampImage[x][y] == DEFAULT_TIMESTAMP) {
-                timestampImage[x][y] = ts;
+            if (map.isEmpty(x, y)) {
+                map.setTimestamp(x, y, ts);
                 if (letFirstEventThrough) {
                     filterIn(e);
                     continue;
@@ -83,30 +78,14 @@ public class BackgroundActivityFilter extends AbstractNoiseFilter {
                 }
             }
             final int numMustBeCorrelated = 1;
-            int ncorrelated = 0;
-            outerloop:
-            for (int xx = x - 1; xx <= x + 1; xx++) {
-                for (int yy = y - 1; yy <= y + 1; yy++) {
-                    if ((xx < 0) || (xx > sx) || (yy < 0) || (yy > sy)) {
-                        continue;
-                    }
-                    if (filterHotPixels && xx == x && yy == y) {
-                        continue; // like BAF, don't correlate with ourself
-                    }
-                    final int lastT = timestampImage[xx][yy];
-                    final int deltaT = (ts - lastT);
-                    if (deltaT < dt && lastT != DEFAULT_TIMESTAMP) {
-                        ncorrelated++;
-                        break outerloop; // csn stop checking n                    }
-                    }
-                }
-            }
+            // like BAF, don't correlate with ourself if filtering hot pixels
+            final int ncorrelated = map.countCorrelated(x, y, 1, ts, dt, filterHotPixels);
             if (ncorrelated < numMustBeCorrelated) {
                 filterOut(e);
             } else {
                 filterIn(e);
             }
-            timestampImage[x][y] = ts;
+            map.setTimestamp(x, y, ts);
         }
         getNoiseFilterControl().maybePerformControl(in);
         return in;
@@ -116,21 +95,19 @@ public class BackgroundActivityFilter extends AbstractNoiseFilter {
     public synchronized final void resetFilter() {
         super.resetFilter();
 //        log.info("resetting BackgroundActivityFilter");
-        for (int[] arrayRow : timestampImage) {
-            Arrays.fill(arrayRow, DEFAULT_TIMESTAMP);
+        if (timestampMap != null) {
+            timestampMap.clear();
         }
     }
 
     @Override
     public final void initFilter() {
-        allocateMaps(chip);
-        sx = chip.getSizeX() - 1;
-        sy = chip.getSizeY() - 1;
+        timestampMap = allocateTimestampPolarityMap(timestampMap);
         resetFilter();
     }
     
-           /**
-     * Fills timestampImage with waiting times drawn from Poisson process with
+    /**
+     * Fills timestampMap with waiting times drawn from Poisson process with
  rate noiseRateHz
      *
      * @param noiseRateHz rate in Hz
@@ -138,19 +115,15 @@ public class BackgroundActivityFilter extends AbstractNoiseFilter {
      * before this time
      */
     @Override
-     public void initializeLastTimesMapForNoiseRate(float noiseRateHz, int lastTimestampUs) {
-            fill2dTimestampAndPolarityImagesWithNoiseEvents(noiseRateHz, lastTimestampUs, timestampImage, null);
-}
-
-
-    private void allocateMaps(AEChip chip) {
-        if ((chip != null) && (chip.getNumCells() > 0) && (timestampImage == null || timestampImage.length != chip.getSizeX() >> subsampleBy)) {
-            timestampImage = new int[chip.getSizeX()][chip.getSizeY()]; // TODO handle subsampling to save memory (but check in filterPacket for range check optomization)
+    public void initializeLastTimesMapForNoiseRate(float noiseRateHz, int lastTimestampUs) {
+        if (timestampMap != null) {
+            timestampMap.fillWithNoiseEvents(noiseRateHz, lastTimestampUs, false);
         }
     }
 
+
     public Object getFilterState() {
-        return timestampImage;
+        return timestampMap;
     }
 
     private String USAGE = "BackgroundFilter needs at least 2 arguments: noisefilter <command> <args>\nCommands are: setParameters dt xx subsample xx\n";
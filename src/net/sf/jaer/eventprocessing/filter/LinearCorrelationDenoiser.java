@@ -352,9 +352,7 @@ public class LinearCorrelationDenoiser extends SpatioTemporalCorrelationFilter {
     @Override
     synchronized public EventPacket<? extends BasicEvent> filterPacket(EventPacket<? extends BasicEvent> in) {
         resetCountsAndNegativeEvents();
-        if (timestampImage == null) {
-            allocateMaps(chip);
-        }
+        allocateMaps(chip);
         tauUs = (int) Math.round(getCorrelationTimeS() * 1e6f);
         ssx = sxm1 >> subsampleBy;
         ssy = sym1 >> subsampleBy;
@@ -363,6 +361,8 @@ public class LinearCorrelationDenoiser extends SpatioTemporalCorrelationFilter {
         final boolean record = recordFilteredOutEvents; // to speed up loop, maybe
         final boolean fhp = filterHotPixels;
         final NnbRange nnbRange = new NnbRange();
+        final int[] tsMap = timestampMap.getTimestamps();
+        final byte[] polMap = timestampMap.getPolarities();
 
         final boolean hasPolarites = in.getEventPrototype() instanceof PolarityEvent;
 
@@ -383,7 +383,7 @@ public class LinearCorrelationDenoiser extends SpatioTemporalCorrelationFilter {
                         filterOut(e);
                         continue;
                     }
-                    if (timestampImage[x][y] == DEFAULT_TIMESTAMP) {
+                    if (timestampMap.isEmpty(x, y)) {
                         storeTimestampPolarity(x, y, e);
                         if (letFirstEventThrough) {
                             filterIn(e);
@@ -399,18 +399,17 @@ public class LinearCorrelationDenoiser extends SpatioTemporalCorrelationFilter {
                     nnbRange.compute(x, y, ssx, ssy);
                     outerloop:
                     for (int xx = nnbRange.x0; xx <= nnbRange.x1; xx++) {
-                        final int[] col = timestampImage[xx];
-                        final byte[] polCol = polImage[xx];
                         for (int yy = nnbRange.y0; yy <= nnbRange.y1; yy++) {
+                            final int i = timestampMap.index(xx, yy);
                             if (fhp && xx == x && yy == y) {
                                 continue; // like BAF, don't correlate with ourself
                             }
-                            final int lastT = col[yy];
+                            final int lastT = tsMap[i];
                             final int deltaT = (ts - lastT); // note deltaT will be very negative for DEFAULT_TIMESTAMP because of overflow
                             final int dx = xx - x, dy = yy - y; // delta x and y
                             if (deltaT < tauUs && lastT != DEFAULT_TIMESTAMP) { // ignore correlations for DEFAULT_TIMESTAMP that are neighbors which never got event so far
                                 PolarityEvent pe = (PolarityEvent) e;
-                                if (pe.getPolaritySignum() == polCol[yy]) {
+                                if (pe.getPolaritySignum() == polMap[i]) {
                                     final float age = useAge ? age(deltaT) : 1;
                                     angleHist.addToHist(dx, dy, age);
                                 }
@@ -445,7 +444,7 @@ public class LinearCorrelationDenoiser extends SpatioTemporalCorrelationFilter {
                     filterOut(e);
                     continue;
                 }
-                if (timestampImage[x][y] == DEFAULT_TIMESTAMP) {
+                if (timestampMap.isEmpty(x, y)) {
                     storeTimestampPolarity(x, y, e);
                     if (letFirstEventThrough) {
                         filterIn(e);
@@ -461,13 +460,12 @@ public class LinearCorrelationDenoiser extends SpatioTemporalCorrelationFilter {
                 nnbRange.compute(x, y, ssx, ssy);
                 outerloop:
                 for (int xx = nnbRange.x0; xx <= nnbRange.x1; xx++) {
-                    final int[] col = timestampImage[xx];
-                    final byte[] polCol = polImage[xx];
                     for (int yy = nnbRange.y0; yy <= nnbRange.y1; yy++) {
+                        final int i = timestampMap.index(xx, yy);
                         if (fhp && xx == x && yy == y) {
                             continue; // like BAF, don't correlate with ourself
                         }
-                        final int lastT = col[yy];
+                        final int lastT = tsMap[i];
                         final int deltaT = (ts - lastT); // note deltaT will be very negative for DEFAULT_TIMESTAMP because of overflow
 
                         if (deltaT < tauUs && lastT != DEFAULT_TIMESTAMP) { // ignore correlations for DEFAULT_TIMESTAMP that are neighbors which never got event so far
@@ -475,7 +473,7 @@ public class LinearCorrelationDenoiser extends SpatioTemporalCorrelationFilter {
                                 score += age(deltaT);
                             } else {
                                 PolarityEvent pe = (PolarityEvent) e;
-                                if (pe.getPolaritySignum() == polCol[yy]) {
+                                if (pe.getPolaritySignum() == polMap[i]) {
                                     score += age(deltaT);
                                 }
                             }
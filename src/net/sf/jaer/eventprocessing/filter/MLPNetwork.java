@@ -0,0 +1,746 @@
+/* MLPNetwork.java
+ *
+ * Pure-Java dense multilayer perceptron for MLPNoiseFilter.
+ */
+package net.sf.jaer.eventprocessing.filter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A dense multilayer perceptron (MLP) that is evaluated in pure Java, so that
+ * MLPNoiseFilter can run without the TensorFlow native library.
+ * <p>
+ * The weights are read directly from the same frozen TensorFlow GraphDef
+ * protobuf (.pb) file that is loaded into TensorFlow, e.g.
+ * MLPF_2xMSEO1H20_linear_7.pb. The graph is followed backwards from its
+ * output to the input placeholder; each layer must be a MatMul with a
+ * constant kernel, optionally followed by a BiasAdd (or Add) of a constant
+ * bias and an activation (Relu, Relu6, Sigmoid, Tanh or Elu). Identity ops
+ * (e.g. from dropout at inference time) are skipped.
+ * <p>
+ * evaluate classifies a whole batch of input vectors stored row by row in a
+ * flat float[]. The batch is split into blocks of ROW_BLOCK rows that are
+ * taken through all layers together, so their activations stay in cache; in
+ * each layer GEMM_BLOCK_ROWS rows share each load of a weight row, and all
+ * zero inputs (common in sparse timestamp image patches) are skipped. Large
+ * batches are evaluated in parallel over the blocks. The activation buffers
+ * of the blocks are reused, so evaluate does not allocate memory once it has
+ * seen the largest batch.
+ */
+public class MLPNetwork {
+
+    private static final int ROW_BLOCK = 64; // rows taken through all layers together, so that their activations stay in L1 cache
+    private static final int GEMM_BLOCK_ROWS = 4; // rows that share each load of a weight row
+    private static final int PARALLEL_MIN_MACS = 1 << 18; // smaller batches are evaluated in the calling thread
+
+    /**
+     * The supported activation functions
+     */
+    public enum Activation {
+        Linear, Relu, Relu6, Sigmoid, Tanh, Elu
+    };
+
+    /**
+     * A fully connected layer
+     */
+    public static final class Layer {
+
+        private final int nin, nout;
+        private final float[] kernel; // nin rows of nout weights
+        private final float[] bias;
+        private final Activation activation;
+
+        private Layer(int nin, int nout, float[] kernel, float[] bias, Activation activation) {
+            this.nin = nin;
+            this.nout = nout;
+            this.kernel = kernel;
+            this.bias = bias;
+            this.activation = activation;
+        }
+
+        /**
+         * @return the number of inputs
+         */
+        public int getNumInputs() {
+            return nin;
+        }
+
+        /**
+         * @return the number of outputs
+         */
+        public int getNumOutputs() {
+            return nout;
+        }
+
+        /**
+         * @return the activation function
+         */
+        public Activation getActivation() {
+            return activation;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Dense %d->%d %s", nin, nout, activation);
+        }
+    }
+
+    private final List<Layer> layers;
+    private final int maxWidth, macsPerRow;
+    private float[][][] blockActivations = new float[0][][]; // two ping-pong activation buffers for each row block
+
+    private MLPNetwork(List<Layer> layers) {
+        this.layers = layers;
+        int w = 0, macs = 0;
+        for (Layer l : layers) {
+            w = Math.max(w, l.nout);
+            macs += l.nin * l.nout;
+        }
+        this.maxWidth = w;
+        this.macsPerRow = macs;
+    }
+
+    /**
+     * Loads the network from a frozen TensorFlow GraphDef protobuf file
+     *
+     * @param f the .pb file
+     * @return the network
+     * @throws IOException if the file cannot be read or does not hold a dense
+     * MLP that this class can evaluate
+     */
+    public static MLPNetwork load(File f) throws IOException {
+        return fromGraphDef(Files.readAllBytes(f.toPath()));
+    }
+
+    /**
+     * Builds the network from a serialized frozen TensorFlow GraphDef
+     *
+     * @param graphDef the GraphDef protobuf bytes
+     * @return the network
+     * @throws IOException if graphDef does not hold a dense MLP that this
+     * class can evaluate
+     */
+    public static MLPNetwork fromGraphDef(byte[] graphDef) throws IOException {
+        final HashMap<String, Node> nodes = new HashMap<>();
+        final ArrayList<Node> nodeList = new ArrayList<>();
+        ProtoReader r = new ProtoReader(graphDef, 0, graphDef.length);
+        while (r.hasMore()) {
+            final int tag = r.readTag();
+            if ((tag >>> 3) == 1 && (tag & 7) == 2) { // GraphDef.node
+                Node n = Node.parse(r.readMessage());
+                nodes.put(n.name, n);
+                nodeList.add(n);
+            } else {
+                r.skip(tag & 7);
+            }
+        }
+        if (nodeList.isEmpty()) {
+            throw new IOException("no nodes in GraphDef");
+        }
+
+        // the output is the last node that no other node uses
+        final HashSet<String> used = new HashSet<>();
+        for (Node n : nodeList) {
+            for (String in : n.inputs) {
+                used.add(inputName(in));
+            }
+        }
+        Node node = null;
+        for (Node n : nodeList) {
+            if (!used.contains(n.name) && !n.op.equals("Const") && !n.op.equals("Placeholder") && !n.op.equals("NoOp")) {
+                node = n;
+            }
+        }
+        if (node == null) {
+            throw new IOException("could not find output node of graph");
+        }
+
+        // walk back from the output to the input, collecting layers in reverse order
+        final ArrayList<Layer> layers = new ArrayList<>();
+        Activation activation = null;
+        float[] bias = null;
+        while (!node.op.equals("Placeholder")) {
+            switch (node.op) {
+                case "Identity":
+                case "StopGradient":
+                    break;
+                case "Relu":
+                case "Relu6":
+                case "Sigmoid":
+                case "Tanh":
+                case "Elu":
+                    if (activation != null || bias != null) {
+                        throw new IOException("unexpected activation " + node.op + " at node " + node.name);
+                    }
+                    activation = Activation.valueOf(node.op);
+                    break;
+                case "BiasAdd":
+                case "Add":
+                case "AddV2": {
+                    if (bias != null) {
+                        throw new IOException("two bias additions in one layer at node " + node.name);
+                    }
+                    node.checkInputs(2);
+                    Tensor b = constant(nodes, node.inputs.get(1));
+                    if (b != null) {
+                        bias = b.values;
+                    } else if ((b = constant(nodes, node.inputs.get(0))) != null) {
+                        bias = b.values;
+                        node = node(nodes, node.inputs.get(1));
+                        continue;
+                    } else {
+                        throw new IOException("no constant bias for node " + node.name);
+                    }
+                    break;
+                }
+                case "MatMul": {
+                    node.checkInputs(2);
+                    if (node.getBoolAttr("transpose_a")) {
+                        throw new IOException("transposed input of MatMul node " + node.name + " is not supported");
+                    }
+                    Tensor k = constant(nodes, node.inputs.get(1));
+                    if (k == null || k.shape.length != 2) {
+                        throw new IOException("no constant 2d kernel for MatMul node " + node.name);
+                    }
+                    final boolean transposed = node.getBoolAttr("transpose_b");
+                    final int nin = transposed ? k.shape[1] : k.shape[0], nout = transposed ? k.shape[0] : k.shape[1];
+                    float[] kernel = k.values;
+                    if (transposed) {
+                        kernel = new float[nin * nout];
+                        for (int i = 0; i < nin; i++) {
+                            for (int o = 0; o < nout; o++) {
+                                kernel[i * nout + o] = k.values[o * nin + i];
+                            }
+                        }
+                    }
+                    if (bias == null) {
+                        bias = new float[nout];
+                    } else if (bias.length != nout) {
+                        throw new IOException(String.format("bias of layer %s has %d values but layer has %d outputs", node.name, bias.length, nout));
+                    }
+                    layers.add(new Layer(nin, nout, kernel, bias, activation == null ? Activation.Linear : activation));
+                    activation = null;
+                    bias = null;
+                    break;
+                }
+                default:
+                    throw new IOException("unsupported op " + node.op + " at node " + node.name + "; only dense MLPs can be evaluated in pure Java");
+            }
+            node.checkInputs(1);
+            node = node(nodes, node.inputs.get(0));
+        }
+        if (activation != null || bias != null) {
+            throw new IOException("activation or bias without a MatMul before the input " + node.name);
+        }
+        if (layers.isEmpty()) {
+            throw new IOException("no MatMul layers in graph");
+        }
+        Collections.reverse(layers);
+        for (int i = 1; i < layers.size(); i++) {
+            if (layers.get(i).nin != layers.get(i - 1).nout) {
+                throw new IOException(String.format("layer %d has %d inputs but the previous layer has %d outputs", i, layers.get(i).nin, layers.get(i - 1).nout));
+            }
+        }
+        return new MLPNetwork(layers);
+    }
+
+    /**
+     * @return the layers, from input to output
+     */
+    public List<Layer> getLayers() {
+        return Collections.unmodifiableList(layers);
+    }
+
+    /**
+     * @return the length of each input vector
+     */
+    public int getNumInputs() {
+        return layers.get(0).nin;
+    }
+
+    /**
+     * @return the length of each output vector
+     */
+    public int getNumOutputs() {
+        return layers.get(layers.size() - 1).nout;
+    }
+
+    /**
+     * Evaluates the network for a batch of input vectors. Not thread safe,
+     * since the activation buffers are reused.
+     *
+     * @param input numRows input vectors of getNumInputs() values, one after
+     * the other
+     * @param numRows the number of input vectors
+     * @param output the getNumOutputs() outputs for each input vector are
+     * written here, one after the other
+     */
+    public void evaluate(float[] input, int numRows, float[] output) {
+        final int nin = getNumInputs(), nout = getNumOutputs();
+        if (input.length < numRows * nin || output.length < numRows * nout) {
+            throw new IllegalArgumentException(String.format("%d rows need %d inputs and %d outputs, but input has length %d and output has length %d",
+                    numRows, numRows * nin, numRows * nout, input.length, output.length));
+        }
+        final int numBlocks = (numRows + ROW_BLOCK - 1) / ROW_BLOCK;
+        if (blockActivations.length < numBlocks) {
+            float[][][] b = new float[numBlocks][][];
+            System.arraycopy(blockActivations, 0, b, 0, blockActivations.length);
+            for (int i = blockActivations.length; i < numBlocks; i++) {
+                b[i] = new float[][]{new float[ROW_BLOCK * maxWidth], new float[ROW_BLOCK * maxWidth]};
+            }
+            blockActivations = b;
+        }
+        if ((numBlocks > 1) && ((long) numRows * macsPerRow >= PARALLEL_MIN_MACS)) {
+            ForkJoinPool.commonPool().invoke(new RowBlocksTask(input, numRows, output, 0, numBlocks));
+        } else {
+            for (int block = 0; block < numBlocks; block++) {
+                evaluateBlock(input, numRows, output, block);
+            }
+        }
+    }
+
+    /**
+     * Takes the rows of one row block through all layers
+     */
+    private void evaluateBlock(float[] input, int numRows, float[] output, int block) {
+        final int row0 = block * ROW_BLOCK, rows = Math.min(ROW_BLOCK, numRows - row0);
+        final float[][] buffers = blockActivations[block];
+        float[] x = input;
+        int xOffset = row0 * getNumInputs();
+        for (int i = 0; i < layers.size(); i++) {
+            final float[] y = buffers[i & 1];
+            dense(layers.get(i), x, xOffset, rows, y);
+            x = y;
+            xOffset = 0;
+        }
+        final int nout = getNumOutputs();
+        System.arraycopy(x, 0, output, row0 * nout, rows * nout);
+    }
+
+    /**
+     * Computes y=activation(x*kernel+bias) for rows rows of x starting at
+     * xOffset
+     */
+    private static void dense(Layer l, float[] x, int xOffset, int rows, float[] y) {
+        final int nin = l.nin, nout = l.nout;
+        final float[] w = l.kernel;
+        int r = 0;
+        for (; r + GEMM_BLOCK_ROWS <= rows; r += GEMM_BLOCK_ROWS) {
+            final int x0 = xOffset + r * nin, x1 = x0 + nin, x2 = x1 + nin, x3 = x2 + nin;
+            final int y0 = r * nout, y1 = y0 + nout, y2 = y1 + nout, y3 = y2 + nout;
+            System.arraycopy(l.bias, 0, y, y0, nout);
+            System.arraycopy(l.bias, 0, y, y1, nout);
+            System.arraycopy(l.bias, 0, y, y2, nout);
+            System.arraycopy(l.bias, 0, y, y3, nout);
+            for (int k = 0; k < nin; k++) {
+                final float v0 = x[x0 + k], v1 = x[x1 + k], v2 = x[x2 + k], v3 = x[x3 + k];
+                if (v0 == 0 && v1 == 0 && v2 == 0 && v3 == 0) {
+                    continue;
+                }
+                final int wk = k * nout;
+                for (int o = 0; o < nout; o++) {
+                    final float wo = w[wk + o];
+                    y[y0 + o] += v0 * wo;
+                    y[y1 + o] += v1 * wo;
+                    y[y2 + o] += v2 * wo;
+                    y[y3 + o] += v3 * wo;
+                }
+            }
+        }
+        for (; r < rows; r++) {
+            final int x0 = xOffset + r * nin, y0 = r * nout;
+            System.arraycopy(l.bias, 0, y, y0, nout);
+            for (int k = 0; k < nin; k++) {
+                final float v = x[x0 + k];
+                if (v == 0) {
+                    continue;
+                }
+                final int wk = k * nout;
+                for (int o = 0; o < nout; o++) {
+                    y[y0 + o] += v * w[wk + o];
+                }
+            }
+        }
+        activate(l.activation, y, rows * nout);
+    }
+
+    private static void activate(Activation a, float[] y, int n) {
+        switch (a) {
+            case Linear:
+                break;
+            case Relu:
+                for (int i = 0; i < n; i++) {
+                    if (y[i] < 0) {
+                        y[i] = 0;
+                    }
+                }
+                break;
+            case Relu6:
+                for (int i = 0; i < n; i++) {
+                    y[i] = Math.min(6, Math.max(0, y[i]));
+                }
+                break;
+            case Sigmoid:
+                for (int i = 0; i < n; i++) {
+                    y[i] = (float) (1 / (1 + Math.exp(-y[i])));
+                }
+                break;
+            case Tanh:
+                for (int i = 0; i < n; i++) {
+                    y[i] = (float) Math.tanh(y[i]);
+                }
+                break;
+            case Elu:
+                for (int i = 0; i < n; i++) {
+                    if (y[i] < 0) {
+                        y[i] = (float) Math.expm1(y[i]);
+                    }
+                }
+                break;
+        }
+    }
+
+    /**
+     * Evaluates row blocks from..to-1, splitting the range in halves
+     */
+    private final class RowBlocksTask extends RecursiveAction {
+
+        private final float[] input, output;
+        private final int numRows, from, to;
+
+        RowBlocksTask(float[] input, int numRows, float[] output, int from, int to) {
+            this.input = input;
+            this.numRows = numRows;
+            this.output = output;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                evaluateBlock(input, numRows, output, from);
+            } else {
+                final int mid = (from + to) >>> 1;
+                invokeAll(new RowBlocksTask(input, numRows, output, from, mid), new RowBlocksTask(input, numRows, output, mid, to));
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("MLPNetwork with ").append(layers.size()).append(" layers:");
+        for (Layer l : layers) {
+            sb.append(' ').append(l);
+        }
+        return sb.toString();
+    }
+
+    private static String inputName(String s) {
+        if (s.startsWith("^")) { // control dependency
+            s = s.substring(1);
+        }
+        final int colon = s.indexOf(':');
+        return colon < 0 ? s : s.substring(0, colon);
+    }
+
+    private static Node node(HashMap<String, Node> nodes, String input) throws IOException {
+        Node n = nodes.get(inputName(input));
+        if (n == null) {
+            throw new IOException("graph has no node " + input);
+        }
+        return n;
+    }
+
+    /**
+     * @return the value of the Const node that input refers to, following
+     * Identity nodes, or null if it is not a constant
+     */
+    private static Tensor constant(HashMap<String, Node> nodes, String input) throws IOException {
+        Node n = node(nodes, input);
+        while (n.op.equals("Identity") && !n.inputs.isEmpty()) {
+            n = node(nodes, n.inputs.get(0));
+        }
+        if (!n.op.equals("Const")) {
+            return null;
+        }
+        ProtoReader value = n.attrs.get("value");
+        if (value == null) {
+            throw new IOException("Const node " + n.name + " has no value");
+        }
+        value = value.copy();
+        while (value.hasMore()) {
+            final int tag = value.readTag();
+            if ((tag >>> 3) == 8 && (tag & 7) == 2) { // AttrValue.tensor
+                return Tensor.parse(n.name, value.readMessage());
+            }
+            value.skip(tag & 7);
+        }
+        throw new IOException("Const node " + n.name + " has no tensor value");
+    }
+
+    /**
+     * A NodeDef of the graph
+     */
+    private static final class Node {
+
+        String name = "", op = "";
+        final ArrayList<String> inputs = new ArrayList<>();
+        final HashMap<String, ProtoReader> attrs = new HashMap<>(); // AttrValue messages
+
+        static Node parse(ProtoReader r) throws IOException {
+            Node n = new Node();
+            while (r.hasMore()) {
+                final int tag = r.readTag();
+                switch (tag >>> 3) {
+                    case 1:
+                        n.name = r.readString();
+                        break;
+                    case 2:
+                        n.op = r.readString();
+                        break;
+                    case 3:
+                        n.inputs.add(r.readString());
+                        break;
+                    case 5: { // map<string, AttrValue> entry
+                        ProtoReader entry = r.readMessage();
+                        String key = null;
+                        ProtoReader value = null;
+                        while (entry.hasMore()) {
+                            final int t = entry.readTag();
+                            if ((t >>> 3) == 1) {
+                                key = entry.readString();
+                            } else if ((t >>> 3) == 2) {
+                                value = entry.readMessage();
+                            } else {
+                                entry.skip(t & 7);
+                            }
+                        }
+                        if (key != null && value != null) {
+                            n.attrs.put(key, value);
+                        }
+                        break;
+                    }
+                    default:
+                        r.skip(tag & 7);
+                }
+            }
+            return n;
+        }
+
+        void checkInputs(int n) throws IOException {
+            if (inputs.size() < n) {
+                throw new IOException("node " + name + " has " + inputs.size() + " inputs, expected " + n);
+            }
+        }
+
+        boolean getBoolAttr(String key) throws IOException {
+            ProtoReader r = attrs.get(key);
+            if (r == null) {
+                return false;
+            }
+            r = r.copy();
+            while (r.hasMore()) {
+                final int tag = r.readTag();
+                if ((tag >>> 3) == 5) { // AttrValue.b
+                    return r.readVarint() != 0;
+                }
+                r.skip(tag & 7);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A float TensorProto
+     */
+    private static final class Tensor {
+
+        int[] shape = new int[0];
+        float[] values;
+
+        static Tensor parse(String name, ProtoReader r) throws IOException {
+            Tensor t = new Tensor();
+            int dtype = 0;
+            float[] content = null;
+            float[] floatVal = new float[16];
+            int numFloatVal = 0;
+            while (r.hasMore()) {
+                final int tag = r.readTag(), field = tag >>> 3, wireType = tag & 7;
+                if (field == 1) {
+                    dtype = (int) r.readVarint();
+                } else if (field == 2 && wireType == 2) { // TensorShapeProto
+                    ArrayList<Integer> dims = new ArrayList<>();
+                    ProtoReader s = r.readMessage();
+                    while (s.hasMore()) {
+                        final int st = s.readTag();
+                        if ((st >>> 3) == 2 && (st & 7) == 2) { // dim
+                            ProtoReader d = s.readMessage();
+                            long size = 0;
+                            while (d.hasMore()) {
+                                final int dt = d.readTag();
+                                if ((dt >>> 3) == 1) {
+                                    size = d.readVarint();
+                                } else {
+                                    d.skip(dt & 7);
+                                }
+                            }
+                            dims.add((int) size);
+                        } else {
+                            s.skip(st & 7);
+                        }
+                    }
+                    t.shape = new int[dims.size()];
+                    for (int i = 0; i < t.shape.length; i++) {
+                        t.shape[i] = dims.get(i);
+                    }
+                } else if (field == 4 && wireType == 2) { // tensor_content, little endian
+                    ProtoReader c = r.readMessage();
+                    content = new float[c.remaining() / 4];
+                    for (int i = 0; i < content.length; i++) {
+                        content[i] = Float.intBitsToFloat(c.readFixed32());
+                    }
+                } else if (field == 5 && wireType == 2) { // packed float_val
+                    ProtoReader c = r.readMessage();
+                    while (c.hasMore()) {
+                        if (numFloatVal == floatVal.length) {
+                            floatVal = Arrays.copyOf(floatVal, 2 * numFloatVal);
+                        }
+                        floatVal[numFloatVal++] = Float.intBitsToFloat(c.readFixed32());
+                    }
+                } else if (field == 5 && wireType == 5) { // unpacked float_val
+                    if (numFloatVal == floatVal.length) {
+                        floatVal = Arrays.copyOf(floatVal, 2 * numFloatVal);
+                    }
+                    floatVal[numFloatVal++] = Float.intBitsToFloat(r.readFixed32());
+                } else {
+                    r.skip(wireType);
+                }
+            }
+            if (dtype != 1) { // DT_FLOAT
+                throw new IOException("Const " + name + " has dtype " + dtype + ", only float (1) is supported");
+            }
+            int n = 1;
+            for (int d : t.shape) {
+                n *= d;
+            }
+            if (content != null) {
+                t.values = content;
+            } else {
+                t.values = new float[n];
+                for (int i = 0; i < n && numFloatVal > 0; i++) {
+                    t.values[i] = floatVal[Math.min(i, numFloatVal - 1)]; // the last value is repeated to fill the tensor
+                }
+            }
+            if (t.values.length != n) {
+                throw new IOException("Const " + name + " has " + t.values.length + " values but its shape " + Arrays.toString(t.shape) + " needs " + n);
+            }
+            return t;
+        }
+    }
+
+    /**
+     * Reads the protobuf wire format
+     */
+    private static final class ProtoReader {
+
+        private final byte[] buf;
+        private final int start, limit;
+        private int pos;
+
+        ProtoReader(byte[] buf, int start, int limit) {
+            this.buf = buf;
+            this.start = start;
+            this.pos = start;
+            this.limit = limit;
+        }
+
+        ProtoReader copy() {
+            return new ProtoReader(buf, start, limit);
+        }
+
+        boolean hasMore() {
+            return pos < limit;
+        }
+
+        int remaining() {
+            return limit - pos;
+        }
+
+        int readTag() throws IOException {
+            return (int) readVarint();
+        }
+
+        long readVarint() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (pos >= limit) {
+                    throw new IOException("truncated protobuf");
+                }
+                final byte b = buf[pos++];
+                v |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return v;
+                }
+            }
+            throw new IOException("malformed protobuf varint");
+        }
+
+        int readFixed32() throws IOException {
+            if (pos + 4 > limit) {
+                throw new IOException("truncated protobuf");
+            }
+            final int v = (buf[pos] & 0xff) | ((buf[pos + 1] & 0xff) << 8) | ((buf[pos + 2] & 0xff) << 16) | ((buf[pos + 3] & 0xff) << 24);
+            pos += 4;
+            return v;
+        }
+
+        ProtoReader readMessage() throws IOException {
+            final long len = readVarint();
+            if (len < 0 || len > limit - pos) {
+                throw new IOException("truncated protobuf");
+            }
+            ProtoReader r = new ProtoReader(buf, pos, pos + (int) len);
+            pos += (int) len;
+            return r;
+        }
+
+        String readString() throws IOException {
+            ProtoReader r = readMessage();
+            return new String(buf, r.start, r.limit - r.start, StandardCharsets.UTF_8);
+        }
+
+        void skip(int wireType) throws IOException {
+            switch (wireType) {
+                case 0:
+                    readVarint();
+                    break;
+                case 1:
+                    pos += 8;
+                    break;
+                case 2:
+                    readMessage();
+                    break;
+                case 5:
+                    pos += 4;
+                    break;
+                default:
+                    throw new IOException("unsupported protobuf wire type " + wireType);
+            }
+            if (pos > limit) {
+                throw new IOException("truncated protobuf");
+            }
+        }
+    }
+}
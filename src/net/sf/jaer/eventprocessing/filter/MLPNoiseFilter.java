@@ -107,7 +107,20 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
     @Preferred
     private int tfBatchSizeEvents = getInt("tfBatchSizeEvents", 1024);
     private int tfNumInBatchSoFar = 0;
-    private FloatBuffer tfInputFloatBuffer = null;
+    private float[] mlpInput = null; // flat patch buffer holding the network input vectors of the batch, one after the other
+    private int mlpInputPos = 0; // next position to write in mlpInput
+    private float[] mlpOutput = null; // network output for each event of the batch
+    private MLPNetwork mlpNetwork = null; // the pure-Java network, if the network file could be loaded as one
+    private File networkFile = null; // the last loaded network
+
+    /**
+     * The engine that runs the network
+     */
+    public enum InferenceEngine {
+        PureJava, TensorFlow
+    };
+    @Preferred
+    private InferenceEngine inferenceEngine = InferenceEngine.valueOf(getString("inferenceEngine", InferenceEngine.PureJava.toString()));
     private ArrayList<BasicEvent> eventList = new ArrayList(tfBatchSizeEvents);
     @Preferred
     protected float signalClassifierThreshold = getFloat("signalClassifierThreshold", 0.5f);
@@ -190,12 +203,13 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
     public MLPNoiseFilter(AEChip chip) {
         super(chip);
         String deb = "5. Debug", disp = "2. Display", anal = "4. Analysis", tf = "0. Multilayer Perceptron", input = "1. Input";
-        setPropertyTooltip(tf, "loadNetwork", "Load a protobuf .pb file containing the network or select a folder holding SavedModelBundle");
+        setPropertyTooltip(tf, "loadNetwork", "Load a protobuf .pb file containing the network or select a folder holding SavedModelBundle (TensorFlow only)");
         setPropertyTooltip(tf, "lastManuallyLoadedNetwork", "Last network we manually loaded");
         setPropertyTooltip(disp, "measurePerformance", "Measures and logs time in ms to process each frame along with estimated operations count (MAC=2OPS)");
         setPropertyTooltip(tf, "inputLayerName", "(TensorFlow only) Input layer; parse it from loading the network and examining console output for layers for lines starting with ****");
         setPropertyTooltip(tf, "outputLayerName", "(TensorFlow only) Output layer; parse it from loading the network and examining console output for layers for lines starting with ****");
-        setPropertyTooltip(tf, "tfBatchSizeEvents", "Number of events to process in parallel for inference");
+        setPropertyTooltip(tf, "tfBatchSizeEvents", "Number of events to process in parallel for inference; with the PureJava inferenceEngine, large batches are split over all cores");
+        setPropertyTooltip(tf, "inferenceEngine", "<html>Engine that runs the network:<br>PureJava: built-in dense MLP engine that reads the weights from the .pb file; needs no TensorFlow native library<br>TensorFlow: TensorFlow native library; needed for SavedModelBundle folders or graphs that are not dense MLPs");
         setPropertyTooltip(tf, "patchWidthAndHeightPixels", "<html>Dimension s<sub>MLPF</sub> (width and height in pixels) of the timestamp image input to DNN around each event (default 11)"); // TODO fix default to match training
         setPropertyTooltip(tf, "signalClassifierThreshold", "<html>Threshold T<sub>MLPF</sub>  for clasifying event as signal"); // TODO fix default to match training
         setPropertyTooltip(tf, "useTI", "use TI only as input of MLP"); // TODO fix default to match training
@@ -281,12 +295,12 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
                     // iterate over NNb, computing the TI patch value
                     for (int indy = y - radius; indy <= y + radius; indy++) {
                         if (indx < 0 || indx >= ssx || indy < 0 || indy > ssy) {
-                            tfInputFloatBuffer.put(0); // For NNbs that are outside chip address space, set the TI patch input to zero
+                            mlpInput[mlpInputPos++] = 0; // For NNbs that are outside chip address space, set the TI patch input to zero
                             continue;
                         }
                         int nnbTs = timestampImage[indx][indy]; // NNb timestamp 
                         if (nnbTs == DEFAULT_TIMESTAMP) {
-                            tfInputFloatBuffer.put(0); // if the NNb pixel had no event, then just write 0 to TI patch
+                            mlpInput[mlpInputPos++] = 0; // if the NNb pixel had no event, then just write 0 to TI patch
                         } else {
                             int dt = nnbTs - ts; // dt is negative delta time, i.e. the time in us of NNb event relative to us.  When NNb ts is older, dt is more negative
                             float v = 0; // value put into TI patch
@@ -310,7 +324,7 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
                                     log.warning(String.format("timestamp in patch in future by %ss", eng.format(1e-6f * dt)));
                                 }
                             }
-                            tfInputFloatBuffer.put(v);
+                            mlpInput[mlpInputPos++] = v;
                             if (tiPatchDisplay != null && eventToDisplayTIPatchFor != null && e == eventToDisplayTIPatchFor) {
                                 if (useTI) {
                                     tiPatchDisplay.setPixmapGray(indx + radius - x, indy + radius - y, v); // shift back to 0,0 coordinate at LL
@@ -340,11 +354,11 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
                     // iterate over NNb, computing the TI patch value
                     for (int indy = y - radius; indy <= y + radius; indy++) {
                         if (indx < 0 || indx >= ssx || indy < 0 || indy > ssy) {
-                            tfInputFloatBuffer.put(0); // For NNbs that are outside chip address space, set the TI patch input to zero
+                            mlpInput[mlpInputPos++] = 0; // For NNbs that are outside chip address space, set the TI patch input to zero
                             continue;
                         }
                         if (indx == x && indy == y) {
-                            tfInputFloatBuffer.put(pol);
+                            mlpInput[mlpInputPos++] = pol;
                             continue;
                         }
 
@@ -359,7 +373,7 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
                                 p = 0;
                             }
                         }
-                        tfInputFloatBuffer.put(p); // if the NNb pixel had no event, then just write 0 to TI patch
+                        mlpInput[mlpInputPos++] = p; // if the NNb pixel had no event, then just write 0 to TI patch
                     }
                 }
 
@@ -417,15 +431,19 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
     }
 
     /**
-     * Checks the FloatBuffer used to hold input vector to MLP to make sure it
-     * is the correct size
+     * Checks the buffers used to hold input vectors to MLP and its outputs to
+     * make sure they are the correct size
      */
-    private void checkMlpInputFloatBufferSize() {
+    private void checkMlpInputBufferSize() {
         final int bufsize = tfBatchSizeEvents * inputSF * patchWidthAndHeightPixels * patchWidthAndHeightPixels;
-        if (tfInputFloatBuffer == null || tfInputFloatBuffer.capacity() != bufsize) {
-            log.info(String.format("resizing network input float buffer for tfBatchSizeEvents * inputSF * patchWidthAndHeightPixels * patchWidthAndHeightPixels = %d x %d x %d x %d",
+        if (mlpInput == null || mlpInput.length != bufsize) {
+            log.info(String.format("resizing network input buffer for tfBatchSizeEvents * inputSF * patchWidthAndHeightPixels * patchWidthAndHeightPixels = %d x %d x %d x %d",
                     tfBatchSizeEvents, inputSF, patchWidthAndHeightPixels, patchWidthAndHeightPixels));
-            tfInputFloatBuffer = FloatBuffer.allocate(bufsize);
+            mlpInput = new float[bufsize];
+            mlpInputPos = 0;
+        }
+        if (mlpOutput == null || mlpOutput.length != tfBatchSizeEvents) {
+            mlpOutput = new float[tfBatchSizeEvents];
         }
     }
 
@@ -434,30 +452,23 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
      *
      */
     synchronized private void classifyEvents() {
-        // Create input tensor with channel first. Each event's input TI patch is a vector arranged according to for loop order above,
+        // Each event's input TI patch is a vector arranged according to for loop order above,
         // i.e. y last order, with y index changing fastest.
-        tfInputFloatBuffer.flip();
-        try (Tensor<Float> tfInputTensor = Tensor.create(new long[]{tfNumInBatchSoFar, inputSF * patchWidthAndHeightPixels * patchWidthAndHeightPixels}, tfInputFloatBuffer)) {
-            if (tfSession == null) {
-                tfSession = new Session(tfExecutionGraph);
-            }
-            List<Tensor<?>> tfOutputs = tfSession.runner().feed("input", tfInputTensor).fetch("output/Sigmoid").run();
-            Tensor<Float> tfOutput = tfOutputs.get(0).expect(Float.class);
-            final long[] rshape = tfOutput.shape();
-            if (tfOutput.numDimensions() != 2 || rshape[0] != tfNumInBatchSoFar || rshape[1] != 1) {
-                throw new RuntimeException(
-                        String.format(
-                                "Expected model to produce a [N 1] shaped tensor where N is the tfBatchSizeEvents, instead it produced one with shape %s",
-                                Arrays.toString(rshape)));
+        try {
+            final int ninput = inputSF * patchWidthAndHeightPixels * patchWidthAndHeightPixels;
+            if (mlpNetwork != null && (inferenceEngine == InferenceEngine.PureJava || tfExecutionGraph == null)) {
+                if (mlpNetwork.getNumInputs() != ninput) {
+                    throw new RuntimeException(String.format("network has %d inputs but the patch has %d values; check patchWidthAndHeightPixels and useTIandPol",
+                            mlpNetwork.getNumInputs(), ninput));
+                }
+                mlpNetwork.evaluate(mlpInput, tfNumInBatchSoFar, mlpOutput);
+            } else {
+                classifyEventsWithTensorFlow(ninput);
             }
-            float[] outputVector = new float[tfNumInBatchSoFar];
-            FloatBuffer fb = FloatBuffer.wrap(outputVector);
-            tfOutput.writeTo(fb);
-            tfOutput.close();
 
             int idx = 0;
             for (BasicEvent ev : eventList) {
-                float scalarClassification = outputVector[idx];
+                float scalarClassification = mlpOutput[idx];
                 stats.addValue(scalarClassification);
                 final boolean signalEvent = scalarClassification > signalClassifierThreshold;
                 if (signalEvent) {
@@ -475,7 +486,7 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
                 }
                 idx++;
             }
-            tfInputFloatBuffer.clear();
+            mlpInputPos = 0;
             eventList.clear();
             tfNumInBatchSoFar = 0;
         } catch (Exception ex) {
@@ -483,9 +494,36 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
             if (tfSession != null) {
                 tfSession.close();
                 tfSession = null;
-                setFilterEnabled(false);
-                resetFilter();
             }
+            setFilterEnabled(false);
+            resetFilter();
+        }
+    }
+
+    /**
+     * Runs the batch through the TensorFlow graph, writing the classifications
+     * to mlpOutput
+     *
+     * @param ninput the length of each input vector
+     */
+    private void classifyEventsWithTensorFlow(int ninput) {
+        // Create input tensor with channel first.
+        try (Tensor<Float> tfInputTensor = Tensor.create(new long[]{tfNumInBatchSoFar, ninput}, FloatBuffer.wrap(mlpInput, 0, tfNumInBatchSoFar * ninput))) {
+            if (tfSession == null) {
+                tfSession = new Session(tfExecutionGraph);
+            }
+            List<Tensor<?>> tfOutputs = tfSession.runner().feed("input", tfInputTensor).fetch("output/Sigmoid").run();
+            Tensor<Float> tfOutput = tfOutputs.get(0).expect(Float.class);
+            final long[] rshape = tfOutput.shape();
+            if (tfOutput.numDimensions() != 2 || rshape[0] != tfNumInBatchSoFar || rshape[1] != 1) {
+                throw new RuntimeException(
+                        String.format(
+                                "Expected model to produce a [N 1] shaped tensor where N is the tfBatchSizeEvents, instead it produced one with shape %s",
+                                Arrays.toString(rshape)));
+            }
+            FloatBuffer fb = FloatBuffer.wrap(mlpOutput, 0, tfNumInBatchSoFar);
+            tfOutput.writeTo(fb);
+            tfOutput.close();
         }
     }
 
@@ -536,7 +574,7 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
     @Override
     public void initFilter() {
         // if dnn was loaded before, load it now
-        if (preferenceExists(KEY_NETWORK_FILENAME) && tfExecutionGraph == null) {
+        if (preferenceExists(KEY_NETWORK_FILENAME) && tfExecutionGraph == null && mlpNetwork == null) {
             File f = new File(getString(KEY_NETWORK_FILENAME, getDefaultSettingsFolder()));
             if (f.exists() && f.isFile()) {
                 try {
@@ -551,7 +589,7 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
         ssx = sxm1 >> subsampleBy;
         ssy = sym1 >> subsampleBy;
         buildexptable(-10, 0, .01f);// interpolation for exp approximation
-        checkMlpInputFloatBufferSize();
+        checkMlpInputBufferSize();
         allocateMaps(chip);
         resetFilter();
 
@@ -570,11 +608,9 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
         for (byte[] arrayRow : lastPolMap) {
             Arrays.fill(arrayRow, (byte) 0);
         }
-        checkMlpInputFloatBufferSize();  // in case size changed
+        checkMlpInputBufferSize();  // in case size changed
         tfNumInBatchSoFar = 0;
-        if (tfInputFloatBuffer != null) {
-            tfInputFloatBuffer.clear();
-        }
+        mlpInputPos = 0;
         eventList.clear();
         if (stats == null) {
             stats = new DescriptiveStatistics(100000);
@@ -694,6 +730,20 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
         if (f == null) {
             throw new IOException("null file");
         }
+        networkFile = f;
+        closeTensorFlow();
+        mlpNetwork = null;
+        if (!f.isDirectory()) {
+            try {
+                mlpNetwork = MLPNetwork.load(f);
+                log.info("loaded pure-Java " + mlpNetwork + " from file " + f);
+            } catch (IOException e) {
+                log.warning("could not load " + f + " as pure-Java MLP, only TensorFlow can run it: " + e.toString());
+            }
+        }
+        if (mlpNetwork != null && inferenceEngine == InferenceEngine.PureJava) {
+            return setInputSizeFromNetwork(f, mlpNetwork.getNumInputs());
+        }
         ArrayList<String> ioLayers = new ArrayList();
         String sizeMsg = "";
         try {
@@ -728,17 +778,7 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
                     Output output = o.output(onum);
                     Shape shape = output.shape();
                     if (opnum == 0) { // assume input layer
-                        long nin = shape.size(1);
-                        double sqrt = (Math.sqrt(nin));
-                        boolean usesPolarity = sqrt % 1 != 0;
-                        if (usesPolarity) {
-                            sqrt = Math.sqrt(nin / 2);
-                        }
-                        int tiInputDim = (int) Math.round(sqrt);
-                        sizeMsg = String.format("<html>Loaded MLP named \"%s\". <p>Set patchWidthAndHeightPixels=%d and useTIandPol=%s from input # pixels=%d", f.toString(), tiInputDim, usesPolarity, nin);
-                        log.info(sizeMsg);
-                        setPatchWidthAndHeightPixels(tiInputDim);
-                        setUseTIandPol(usesPolarity);
+                        sizeMsg = setInputSizeFromNetwork(f, shape.size(1));
                     }
                     b.append(opnum++ + ": " + o.toString() + "\t" + output.toString() + "\n");
 //                        int numDimensions = shape.numDimensions();
@@ -750,7 +790,12 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
 //                    int inputLength=o.inputListLength("");
             }
             log.info(b.toString());
-        } catch (Exception e) {
+        } catch (Exception | LinkageError e) { // LinkageError if TensorFlow native library is missing
+            closeTensorFlow();
+            if (mlpNetwork != null) {
+                log.warning("could not load TensorFlow graph, using pure-Java MLP instead: " + e.toString());
+                return setInputSizeFromNetwork(f, mlpNetwork.getNumInputs());
+            }
             log.warning(e.toString());
             e.printStackTrace();
             return e.toString();
@@ -758,6 +803,45 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
         return sizeMsg;
     }
 
+    /**
+     * Sets the patch size and input channels to match the number of network
+     * inputs
+     *
+     * @param f the network file
+     * @param nin the number of network inputs
+     * @return the message for the user
+     */
+    private String setInputSizeFromNetwork(File f, long nin) {
+        double sqrt = (Math.sqrt(nin));
+        boolean usesPolarity = sqrt % 1 != 0;
+        if (usesPolarity) {
+            sqrt = Math.sqrt(nin / 2);
+        }
+        int tiInputDim = (int) Math.round(sqrt);
+        String sizeMsg = String.format("<html>Loaded MLP named \"%s\". <p>Set patchWidthAndHeightPixels=%d and useTIandPol=%s from input # pixels=%d", f.toString(), tiInputDim, usesPolarity, nin);
+        log.info(sizeMsg);
+        setPatchWidthAndHeightPixels(tiInputDim);
+        setUseTIandPol(usesPolarity);
+        return sizeMsg;
+    }
+
+    /**
+     * Closes the TensorFlow session and graph, if any
+     */
+    private void closeTensorFlow() {
+        if (tfSession != null) {
+            tfSession.close();
+            tfSession = null;
+        }
+        if (tfSavedModelBundle != null) {
+            tfSavedModelBundle.close(); // also closes its graph
+            tfSavedModelBundle = null;
+        } else if (tfExecutionGraph != null) {
+            tfExecutionGraph.close();
+        }
+        tfExecutionGraph = null;
+    }
+
     private String getExtension(File f) {
         String ext = null;
         String s = f.getName();
@@ -938,7 +1022,7 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
     synchronized public void setTfBatchSizeEvents(int tfBatchSizeEvents) {
         this.tfBatchSizeEvents = tfBatchSizeEvents;
         putInt("tfBatchSizeEvents", tfBatchSizeEvents);
-        checkMlpInputFloatBufferSize();
+        checkMlpInputBufferSize();
     }
 
     /**
@@ -956,7 +1040,7 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
         this.patchWidthAndHeightPixels = patchWidthAndHeightPixels;
         putInt("patchWidthAndHeightPixels", patchWidthAndHeightPixels);
         getSupport().firePropertyChange("patchWidthAndHeightPixels", old, this.patchWidthAndHeightPixels);
-        checkMlpInputFloatBufferSize();
+        checkMlpInputBufferSize();
     }
 
     /**
@@ -974,6 +1058,33 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
         putString("tiPatchMethod", tiPatchMethod.toString());
     }
 
+    /**
+     * @return the inferenceEngine
+     */
+    public InferenceEngine getInferenceEngine() {
+        return inferenceEngine;
+    }
+
+    /**
+     * Sets the engine that runs the network and reloads the last network with
+     * it
+     *
+     * @param inferenceEngine the inferenceEngine to set
+     */
+    synchronized public void setInferenceEngine(InferenceEngine inferenceEngine) {
+        InferenceEngine old = this.inferenceEngine;
+        this.inferenceEngine = inferenceEngine;
+        putString("inferenceEngine", inferenceEngine.toString());
+        getSupport().firePropertyChange("inferenceEngine", old, this.inferenceEngine);
+        if (old != inferenceEngine && networkFile != null) {
+            try {
+                loadNetwork(networkFile);
+            } catch (IOException ex) {
+                log.warning("Couldn't reload network: Caught " + ex.toString());
+            }
+        }
+    }
+
     // https://gist.github.com/Alrecenk/55be1682fe46cdd89663
     public static float fastexp(float x) {
         final int temp = (int) (12102203 * x + 1065353216);
@@ -1054,7 +1165,7 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
             setUsePolarity(false);
             setUseTIandPol(false);
         }
-        checkMlpInputFloatBufferSize();
+        checkMlpInputBufferSize();
     }
 
     /**
@@ -1079,7 +1190,7 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
             setUseTI(false);
             setUseTIandPol(false);
         }
-        checkMlpInputFloatBufferSize();
+        checkMlpInputBufferSize();
     }
 
     /**
@@ -1106,7 +1217,7 @@ public class MLPNoiseFilter extends AbstractNoiseFilter implements MouseListener
             setUseTI(false);
             setUsePolarity(false);
         }
-        checkMlpInputFloatBufferSize();
+        checkMlpInputBufferSize();
     }
 
     /**
@@ -47,6 +47,7 @@ import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.nio.file.Path;
+import java.text.SimpleDateFormat;
 import net.sf.jaer.Description;
 import net.sf.jaer.DevelopmentStatus;
 import net.sf.jaer.chip.AEChip;
@@ -71,6 +72,12 @@ import java.util.PriorityQueue;
 import java.util.Random;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.ComboBoxModel;
@@ -159,6 +166,10 @@ public class NoiseTesterFilter extends AbstractNoiseFilter implements FrameAnnot
     private ArrayList<ROCHistory> rocHistoriesSaved = new ArrayList();
     private int rocHistoryLabelPosY = 0;
     private ROCSweep rocSweep;
+    private final ParallelROCSweep parallelRocSweep = new ParallelROCSweep();
+    private int parallelRocSweepNumThreads = getInt("parallelRocSweepNumThreads", Runtime.getRuntime().availableProcessors());
+    private boolean parallelRocSweepAllFilters = getBoolean("parallelRocSweepAllFilters", false);
+    private int parallelRocSweepMaxEvents = getInt("parallelRocSweepMaxEvents", 20_000_000);
 
     int[] colors = new int[6];
     int lastcolor = 0;
@@ -336,6 +347,11 @@ public class NoiseTesterFilter extends AbstractNoiseFilter implements FrameAnnot
         setPropertyTooltip(rocSw, "rocSweepLogStep", "<html>Selected: sweep property by factors of rocSweepStep<br>Unselected: sweep in linear steps of rocSweepStep");
 //        setPropertyTooltip(rocSw, "rocSweepPropertyName", "Which property of the selected denoiser to sweep");
         setPropertyTooltip(rocSw, "rocSweepParameterComboBoxModel", "Which property of the selected denoiser to sweep");
+        setPropertyTooltip(rocSw, "startParallelROCSweep", "<html>Captures one pass of the marked (or entire) recording with the injected noise,<br>then evaluates all sweep points in parallel and writes the ROC curves to a CSV file in the last ROC CSV folder");
+        setPropertyTooltip(rocSw, "stopParallelROCSweep", "Stops the parallel ROC sweep");
+        setPropertyTooltip(rocSw, "parallelRocSweepNumThreads", "Number of threads that evaluate the sweep points of the parallel ROC sweep");
+        setPropertyTooltip(rocSw, "parallelRocSweepAllFilters", "<html>Selected: parallel ROC sweep sweeps every denoiser with its stored ROC sweep parameters<br>Unselected: sweep only the selected denoiser");
+        setPropertyTooltip(rocSw, "parallelRocSweepMaxEvents", "Maximum number of events captured for the parallel ROC sweep; each event takes 13 bytes");
 
         String out = "5. Output";
         setPropertyTooltip(out, "doCloseMLP_CSVFile", "Closes the MLP training output CSV spreadsheet data file.");
@@ -455,6 +471,14 @@ public class NoiseTesterFilter extends AbstractNoiseFilter implements FrameAnnot
 
             gl.glPopMatrix();
         }
+        if (parallelRocSweep.isActive()) {
+            gl.glPushMatrix();
+            DrawGL.drawStringDropShadow(getShowFilteringStatisticsFontSize(),
+                    chip.getSizeX(), rocHistoryLabelPosY, 1,
+                    Color.white, parallelRocSweep.toString());
+            rocHistoryLabelPosY -= (2 * getShowFilteringStatisticsFontSize());
+            gl.glPopMatrix();
+        }
 
         // draw X for last packet TPR / TNR point
         float x = (1 - TNR) * sx;
@@ -779,6 +803,9 @@ public class NoiseTesterFilter extends AbstractNoiseFilter implements FrameAnnot
         } else {
             addNoise((EventPacket<? extends PolarityEvent>) in, signalAndNoisePacket, noiseList, 0, 0);
         }
+        if (parallelRocSweep.isCapturing()) {
+            parallelRocSweep.capture(signalAndNoisePacket, noiseList);
+        }
         // we need to copy the augmented event packet to a HashSet for use with Collections
         ArrayList<PolarityEvent> signalPlusNoiseList;
         try {
@@ -1856,6 +1883,14 @@ public class NoiseTesterFilter extends AbstractNoiseFilter implements FrameAnnot
         rocSweep.stop();
     }
 
+    synchronized public void doStartParallelROCSweep() {
+        parallelRocSweep.start();
+    }
+
+    synchronized public void doStopParallelROCSweep() {
+        parallelRocSweep.stop();
+    }
+
     @Preferred
     synchronized public void doSaveROCSweepsToCSV() {
         try {
@@ -2716,6 +2751,597 @@ public class NoiseTesterFilter extends AbstractNoiseFilter implements FrameAnnot
         rocSweep.setRocSweepPropertyName(rocSweepPropertyName);
     }
 
+    /**
+     * Sweeps the ROC sweep property of the selected denoiser, or of every
+     * denoiser that has stored ROC sweep parameters, in a single pass over the
+     * marked (or entire) recording.
+     * <p>
+     * During the pass the signal events with the injected noise are captured
+     * to memory together with their noise labels. When the recording rewinds,
+     * each sweep point is evaluated on a thread pool by its own instance of the
+     * denoiser, which replays the captured packets. The resulting ROC curves
+     * are added to the saved ROC curves and written to a CSV file in the last
+     * ROC CSV folder.
+     * <p>
+     * The denoiser instances share the preferences of the displayed denoisers,
+     * so the swept properties are restored to their starting values when the
+     * sweep ends.
+     */
+    private class ParallelROCSweep implements PropertyChangeListener {
+
+        private static final byte FLAG_ON = 1, FLAG_NOISE = 2, FLAG_SPECIAL = 4;
+        private static final int MAX_SWEEP_POINTS = 1000;
+
+        private volatile State state = State.IDLE;
+        private volatile boolean cancelled = false;
+        private boolean installedPropertyChangeListeners = false;
+        private boolean savedDisableDenoising = false;
+
+        // captured events, stored in primitive arrays to save memory
+        private int[] timestamps = new int[0], addresses = new int[0];
+        private short[] xs = new short[0], ys = new short[0];
+        private byte[] flags = new byte[0];
+        private int numEvents = 0;
+        private int[] packetStarts = new int[0]; // index of the first event of each packet
+        private int numPackets = 0;
+        private int captureStartTimestamp = 0;
+        private float captureNoiseRateHz = 0;
+        private String captureSource = null;
+
+        private final AtomicInteger pointsDone = new AtomicInteger();
+        private int numPoints = 0;
+
+        private enum State {
+            IDLE, WAITING_FOR_REWIND, CAPTURING, EVALUATING
+        }
+
+        /**
+         * A swept property of one denoiser class
+         */
+        private class SweepCurve {
+
+            AbstractNoiseFilter filter; // the displayed instance, whose property is restored after the sweep
+            String propertyName;
+            Method setter, getter;
+            Object startingValue;
+            float[] values;
+            SweepPoint[] points;
+        }
+
+        /**
+         * The statistics of one value of the swept property
+         */
+        private class SweepPoint {
+
+            final SweepCurve curve;
+            final float value;
+            float fpr = Float.NaN, tpr = Float.NaN; // averages over the packets, like the sequential sweep
+            long tp, fn, fp, tn;
+
+            SweepPoint(SweepCurve curve, float value) {
+                this.curve = curve;
+                this.value = value;
+            }
+        }
+
+        boolean isCapturing() {
+            return state == State.CAPTURING;
+        }
+
+        boolean isActive() {
+            return state != State.IDLE;
+        }
+
+        @Override
+        public String toString() {
+            switch (state) {
+                case WAITING_FOR_REWIND:
+                    return "Parallel ROC sweep: waiting for rewind";
+                case CAPTURING:
+                    return String.format("Parallel ROC sweep: captured %,d events", numEvents);
+                case EVALUATING:
+                    return String.format("Parallel ROC sweep: evaluated %d/%d points on %d threads", pointsDone.get(), numPoints, parallelRocSweepNumThreads);
+                default:
+                    return "Parallel ROC sweep (not running)";
+            }
+        }
+
+        /**
+         * Rewinds the recording and starts capturing it from the rewind
+         */
+        void start() {
+            if (state != State.IDLE) {
+                log.warning("parallel ROC sweep is already running: " + this);
+                return;
+            }
+            if (selectedNoiseFilter == null && !parallelRocSweepAllFilters) {
+                showWarningDialogInSwingThread("Select a denoiser to sweep", "Parallel ROC sweep");
+                return;
+            }
+            if (chip.getAeViewer() == null || chip.getAeViewer().getPlayMode() != AEViewer.PlayMode.PLAYBACK) {
+                showWarningDialogInSwingThread("Parallel ROC sweep needs a recording to be playing", "Parallel ROC sweep");
+                return;
+            }
+            if (!installedPropertyChangeListeners) {
+                chip.getAeViewer().getSupport().addPropertyChangeListener(AEInputStream.EVENT_REWOUND, this);
+                chip.getAeViewer().getSupport().addPropertyChangeListener(AEInputStream.EVENT_INIT, this);
+                installedPropertyChangeListeners = true;
+            }
+            clearCapture();
+            captureSource = chip.getAeInputStream() != null && chip.getAeInputStream().getFile() != null ? chip.getAeInputStream().getFile().toString() : "(live input)";
+            savedDisableDenoising = disableDenoising;
+            disableDenoising = true; // the denoisers are run later on the captured events
+            cancelled = false;
+            state = State.WAITING_FOR_REWIND;
+            chip.getAeViewer().getAePlayer().rewind();
+        }
+
+        /**
+         * Stops capturing, or cancels the evaluation
+         */
+        void stop() {
+            switch (state) {
+                case WAITING_FOR_REWIND:
+                case CAPTURING:
+                    endCapture();
+                    clearCapture();
+                    state = State.IDLE;
+                    log.info("parallel ROC sweep stopped during capture");
+                    break;
+                case EVALUATING:
+                    cancelled = true; // the remaining points return at once
+                    break;
+            }
+        }
+
+        @Override
+        public void propertyChange(PropertyChangeEvent evt) {
+            switch (evt.getPropertyName()) {
+                case AEInputStream.EVENT_REWOUND:
+                    if (state == State.WAITING_FOR_REWIND) {
+                        state = State.CAPTURING;
+                    } else if (state == State.CAPTURING && numEvents > 0) {
+                        finishCapture();
+                    }
+                    break;
+                case AEInputStream.EVENT_INIT:
+                    if (state == State.WAITING_FOR_REWIND || state == State.CAPTURING) {
+                        stop();
+                    }
+                    break;
+            }
+        }
+
+        /**
+         * Appends a packet of signal and injected noise events to the capture
+         *
+         * @param packet the events
+         * @param noise the injected noise events of the packet, which are the
+         * same objects as in packet, in the same order
+         */
+        void capture(EventPacket<? extends PolarityEvent> packet, List<PolarityEvent> noise) {
+            if (state != State.CAPTURING || packet.isEmpty()) {
+                return;
+            }
+            final int n = packet.getSize();
+            if ((long) numEvents + n > parallelRocSweepMaxEvents) {
+                log.warning(String.format("parallel ROC sweep reached parallelRocSweepMaxEvents=%,d; sweeping only the first %,d events", parallelRocSweepMaxEvents, numEvents));
+                finishCapture();
+                return;
+            }
+            if (numEvents == 0) {
+                captureStartTimestamp = timestampAfterReset;
+                captureNoiseRateHz = shotNoiseRateHz + leakNoiseRateHz;
+            }
+            ensureCapacity(numEvents + n);
+            if (numPackets == packetStarts.length) {
+                packetStarts = Arrays.copyOf(packetStarts, Math.max(1024, 2 * numPackets));
+            }
+            packetStarts[numPackets++] = numEvents;
+            int nextNoise = 0;
+            for (int i = 0; i < n; i++) {
+                final PolarityEvent e = packet.getEvent(i);
+                byte f = e.getPolarity() == Polarity.On ? FLAG_ON : 0;
+                if (nextNoise < noise.size() && noise.get(nextNoise) == e) {
+                    f |= FLAG_NOISE;
+                    nextNoise++;
+                }
+                if (e.isSpecial()) { // labeled noise in the recording
+                    f |= FLAG_SPECIAL | FLAG_NOISE;
+                }
+                timestamps[numEvents] = e.timestamp;
+                addresses[numEvents] = e.address;
+                xs[numEvents] = e.x;
+                ys[numEvents] = e.y;
+                flags[numEvents] = f;
+                numEvents++;
+            }
+        }
+
+        private void ensureCapacity(int n) {
+            if (n <= timestamps.length) {
+                return;
+            }
+            final int c = (int) Math.min(Math.max(n, 2L * timestamps.length), Integer.MAX_VALUE - 8);
+            timestamps = Arrays.copyOf(timestamps, c);
+            addresses = Arrays.copyOf(addresses, c);
+            xs = Arrays.copyOf(xs, c);
+            ys = Arrays.copyOf(ys, c);
+            flags = Arrays.copyOf(flags, c);
+        }
+
+        private void clearCapture() {
+            timestamps = new int[0];
+            addresses = new int[0];
+            xs = new short[0];
+            ys = new short[0];
+            flags = new byte[0];
+            packetStarts = new int[0];
+            numEvents = 0;
+            numPackets = 0;
+        }
+
+        private void endCapture() {
+            disableDenoising = savedDisableDenoising;
+        }
+
+        /**
+         * Ends the capture and starts evaluating the sweep points in the
+         * background
+         */
+        private void finishCapture() {
+            endCapture();
+            final ArrayList<SweepCurve> curves = makeCurves();
+            if (curves.isEmpty()) {
+                clearCapture();
+                state = State.IDLE;
+                showWarningDialogInSwingThread("No denoiser property to sweep; check the ROC sweep parameters", "Parallel ROC sweep");
+                return;
+            }
+            numPoints = 0;
+            for (SweepCurve c : curves) {
+                numPoints += c.points.length;
+            }
+            pointsDone.set(0);
+            state = State.EVALUATING;
+            log.info(String.format("parallel ROC sweep captured %,d events in %,d packets; evaluating %d points of %d curves", numEvents, numPackets, numPoints, curves.size()));
+            Thread t = new Thread(() -> evaluateAll(curves), "NoiseTesterFilter.ParallelROCSweep");
+            t.setDaemon(true);
+            t.start();
+        }
+
+        /**
+         * @return the curves to sweep, with their sweep points
+         */
+        private ArrayList<SweepCurve> makeCurves() {
+            ArrayList<SweepCurve> curves = new ArrayList<>();
+            if (!parallelRocSweepAllFilters) {
+                addCurve(curves, selectedNoiseFilter, rocSweep.getRocSweepPropertyName(), rocSweep.getRocSweepStart(),
+                        rocSweep.getRocSweepEnd(), rocSweep.getRocSweepStep(), rocSweep.isRocSweepLogStep());
+                return curves;
+            }
+            rocSweep.storeParams(); // make sure the current parameters of the selected denoiser are in the map
+            for (AbstractNoiseFilter f : noiseFilters) {
+                if (f == null) {
+                    continue;
+                }
+                ROCSweep.ROCSweepParams p = rocSweep.rocSweepParamesHashMap == null ? null : rocSweep.rocSweepParamesHashMap.get(f.getClass().getName());
+                if (p == null) {
+                    log.info("no stored ROC sweep parameters for " + f.getClass().getSimpleName() + "; not sweeping it");
+                    continue;
+                }
+                addCurve(curves, f, p.rocSweepPropertyName, p.rocSweepStart, p.rocSweepEnd, p.rocSweepStep, p.rocSweepLogStep);
+            }
+            return curves;
+        }
+
+        private void addCurve(ArrayList<SweepCurve> curves, AbstractNoiseFilter filter, String propertyName, float start, float end, float step, boolean logStep) {
+            if (filter == null || propertyName == null) {
+                return;
+            }
+            SweepCurve c = new SweepCurve();
+            c.filter = filter;
+            c.propertyName = propertyName;
+            try {
+                for (PropertyDescriptor p : Introspector.getBeanInfo(filter.getClass()).getPropertyDescriptors()) {
+                    if (p.getName().equals(propertyName) && p.getWriteMethod() != null && p.getReadMethod() != null) {
+                        final Class type = p.getWriteMethod().getParameterTypes()[0];
+                        if (type == float.class || type == int.class) {
+                            c.setter = p.getWriteMethod();
+                            c.getter = p.getReadMethod();
+                        }
+                        break;
+                    }
+                }
+                if (c.setter == null) {
+                    log.warning(String.format("%s has no int or float property %s to sweep", filter.getClass().getSimpleName(), propertyName));
+                    return;
+                }
+                c.startingValue = c.getter.invoke(filter);
+                c.values = sweepValues(start, end, step, logStep);
+            } catch (IntrospectionException | IllegalAccessException | InvocationTargetException | IllegalArgumentException ex) {
+                log.warning(String.format("cannot sweep %s of %s: %s", propertyName, filter.getClass().getSimpleName(), ex.toString()));
+                return;
+            }
+            c.points = new SweepPoint[c.values.length];
+            for (int i = 0; i < c.values.length; i++) {
+                c.points[i] = new SweepPoint(c, c.values[i]);
+            }
+            curves.add(c);
+        }
+
+        /**
+         * @return the values from start towards end, like the sequential
+         * sweep
+         */
+        private float[] sweepValues(float start, float end, float step, boolean logStep) {
+            if (logStep ? (step <= 1 || start <= 0 || end <= 0) : step <= 0) {
+                throw new IllegalArgumentException(String.format("cannot sweep from %s to %s with %s step %s",
+                        eng.format(start), eng.format(end), logStep ? "log" : "linear", eng.format(step)));
+            }
+            final boolean up = end >= start;
+            final float last = end + (up ? 1 : -1) * 1e-4f * Math.abs(end); // tolerate rounding of the last step
+            float[] values = new float[MAX_SWEEP_POINTS];
+            int n = 0;
+            for (float v = start; (up ? v <= last : v >= last) && n < values.length;) {
+                values[n++] = v;
+                if (logStep) {
+                    v = up ? v * step : v / step;
+                } else {
+                    v += up ? step : -step;
+                }
+            }
+            return Arrays.copyOf(values, n);
+        }
+
+        /**
+         * Evaluates all points on the thread pool, then stores the curves and
+         * restores the swept properties
+         */
+        private void evaluateAll(ArrayList<SweepCurve> curves) {
+            final long startMs = System.currentTimeMillis();
+            final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelRocSweepNumThreads, numPoints)));
+            try {
+                ArrayList<Future<?>> futures = new ArrayList<>();
+                for (SweepCurve c : curves) {
+                    for (final SweepPoint p : c.points) {
+                        futures.add(executor.submit(() -> {
+                            try {
+                                evaluate(p);
+                            } catch (Exception ex) {
+                                log.warning(String.format("evaluating %s=%s of %s: %s", p.curve.propertyName, eng.format(p.value),
+                                        p.curve.filter.getClass().getSimpleName(), ex.toString()));
+                            }
+                            pointsDone.incrementAndGet();
+                        }));
+                    }
+                }
+                for (Future<?> f : futures) {
+                    try {
+                        f.get();
+                    } catch (ExecutionException | CancellationException ex) {
+                        log.warning("parallel ROC sweep point failed: " + ex.toString());
+                    }
+                }
+            } catch (InterruptedException ex) {
+                cancelled = true;
+            } finally {
+                executor.shutdownNow();
+                for (SweepCurve c : curves) {
+                    setSweptValue(c.filter, c, c.startingValue);
+                }
+                clearCapture();
+            }
+            if (cancelled) {
+                log.info("parallel ROC sweep cancelled");
+            } else {
+                log.info(String.format("parallel ROC sweep evaluated %d points in %ss", numPoints, eng.format(1e-3f * (System.currentTimeMillis() - startMs))));
+                saveCurves(curves);
+            }
+            state = State.IDLE;
+        }
+
+        /**
+         * Replays the captured packets through a new instance of the denoiser
+         * with the swept property set to the point value and counts the
+         * classified events.
+         */
+        private void evaluate(SweepPoint p) throws ReflectiveOperationException {
+            if (cancelled) {
+                return;
+            }
+            final AbstractNoiseFilter f = p.curve.filter.getClass().getConstructor(AEChip.class).newInstance(chip);
+            try {
+                f.setEnclosed(true, NoiseTesterFilter.this); // so that enabling it does not change its preferences
+                f.initFilter();
+                f.setFilterEnabled(true);
+                if (!setSweptValue(f, p.curve, p.value)) {
+                    return;
+                }
+                f.resetFilter();
+                f.initializeLastTimesMapForNoiseRate(captureNoiseRateHz, captureStartTimestamp);
+                final EventPacket<ApsDvsEvent> packet = new EventPacket<>(ApsDvsEvent.class);
+                final float initUs = correlationTimeS * 1e6f;
+                double sumFpr = 0, sumTpr = 0;
+                int numSamples = 0;
+                for (int k = 0; k < numPackets && !cancelled; k++) {
+                    final int start = packetStarts[k], end = k + 1 < numPackets ? packetStarts[k + 1] : numEvents;
+                    packet.clear();
+                    final OutputEventIterator<ApsDvsEvent> outItr = packet.outputIterator();
+                    for (int i = start; i < end; i++) {
+                        final ApsDvsEvent e = outItr.nextOutput();
+                        e.timestamp = timestamps[i];
+                        e.address = addresses[i];
+                        e.x = xs[i];
+                        e.y = ys[i];
+                        e.setPolarity((flags[i] & FLAG_ON) != 0 ? Polarity.On : Polarity.Off);
+                        e.setSpecial((flags[i] & FLAG_SPECIAL) != 0);
+                        e.setReadoutType(ApsDvsEvent.ReadoutType.DVS);
+                    }
+                    f.filterPacket(packet);
+                    if (timestamps[start] - captureStartTimestamp < initUs) {
+                        continue; // like isInitializingPreviousEvents
+                    }
+                    int tp = 0, fn = 0, fp = 0, tn = 0;
+                    for (int i = start; i < end; i++) {
+                        final boolean passed = !packet.getEvent(i - start).isFilteredOut();
+                        if ((flags[i] & FLAG_NOISE) == 0) {
+                            if (passed) {
+                                tp++;
+                            } else {
+                                fn++;
+                            }
+                        } else if (passed) {
+                            fp++;
+                        } else {
+                            tn++;
+                        }
+                    }
+                    p.tp += tp;
+                    p.fn += fn;
+                    p.fp += fp;
+                    p.tn += tn;
+                    // same per-packet rates as filterPacket
+                    final float tpr = tp + fn == 0 ? 0f : (float) tp / (tp + fn);
+                    final float tnr = tn + fp == 0 ? 0f : (float) tn / (tn + fp);
+                    sumTpr += tpr;
+                    sumFpr += 1 - tnr;
+                    numSamples++;
+                }
+                if (numSamples > 0) {
+                    p.fpr = (float) (sumFpr / numSamples);
+                    p.tpr = (float) (sumTpr / numSamples);
+                }
+            } finally {
+                // the constructor registered the instances with the chip
+                chip.getSupport().removePropertyChangeListener(f);
+                if (f.getEnclosedFilterChain() != null) {
+                    for (EventFilter2D e : f.getEnclosedFilterChain()) {
+                        chip.getSupport().removePropertyChangeListener(e);
+                    }
+                }
+            }
+        }
+
+        private boolean setSweptValue(AbstractNoiseFilter f, SweepCurve c, Object value) {
+            try {
+                if (c.setter.getParameterTypes()[0] == float.class) {
+                    c.setter.invoke(f, ((Number) value).floatValue());
+                } else {
+                    c.setter.invoke(f, Math.round(((Number) value).floatValue()));
+                }
+                return true;
+            } catch (IllegalAccessException | InvocationTargetException | IllegalArgumentException | ClassCastException ex) {
+                log.warning(String.format("Could not set %s of %s to %s: %s", c.propertyName, f.getClass().getSimpleName(), value, ex.toString()));
+                return false;
+            }
+        }
+
+        /**
+         * Adds the curves to the saved ROC curves and writes them to a CSV
+         * file
+         */
+        private void saveCurves(ArrayList<SweepCurve> curves) {
+            ArrayList<ROCHistory> summaries = new ArrayList<>();
+            for (SweepCurve c : curves) {
+                ROCHistory h = new ROCHistory(c.filter, Math.max(1, c.points.length));
+                h.summary = true;
+                h.rocSweepPropertyName = c.propertyName;
+                h.setColor(new Color(colors[lastcolor % colors.length]));
+                lastcolor += 1;
+                h.setPtSize(8);
+                for (SweepPoint p : c.points) {
+                    if (!Float.isNaN(p.fpr) && !Float.isNaN(p.tpr)) {
+                        h.addSample(p.fpr, p.tpr, p.value);
+                    }
+                }
+                h.computeAUC();
+                h.label = c.filter.getClass().getSimpleName() + " " + c.propertyName;
+                summaries.add(h);
+            }
+            synchronized (NoiseTesterFilter.this) {
+                rocHistoriesSaved.addAll(summaries);
+            }
+
+            final String folder = getString("lastROCCSVFolder", System.getProperty("user.dir"));
+            final Path path = Path.of(folder, DEFAULT_CSV_FILENAME_BASE + "-ParallelROCSweep-" + new SimpleDateFormat("yyyyMMdd'T'HHmmss").format(new Date()) + ".csv");
+            try (PrintWriter writer = new PrintWriter(path.toFile())) {
+                writer.println("# Parallel ROC sweep");
+                writer.println("# created " + new Date().toString());
+                writer.println("# source-file: " + captureSource);
+                writer.println(String.format("# shotNoiseRateHz=%f leakNoiseRateHz=%f", shotNoiseRateHz, leakNoiseRateHz));
+                for (ROCHistory h : summaries) {
+                    writer.println(String.format("# %s AUC=%f", h.label, h.auc));
+                }
+                writer.println("filter,property,value,fpr,tpr,TP,FN,FP,TN");
+                for (SweepCurve c : curves) {
+                    for (SweepPoint p : c.points) {
+                        writer.println(String.format("%s,%s,%f,%f,%f,%d,%d,%d,%d", c.filter.getClass().getSimpleName(), c.propertyName,
+                                p.value, p.fpr, p.tpr, p.tp, p.fn, p.fp, p.tn));
+                    }
+                }
+                log.info("wrote parallel ROC sweep to " + path);
+            } catch (FileNotFoundException ex) {
+                log.warning("could not write parallel ROC sweep CSV file " + path + ": " + ex.toString());
+            }
+        }
+    }
+
+    /**
+     * @return the number of threads for the parallel ROC sweep
+     */
+    public int getParallelRocSweepNumThreads() {
+        return parallelRocSweepNumThreads;
+    }
+
+    /**
+     * @param parallelRocSweepNumThreads the number of threads for the parallel
+     * ROC sweep
+     */
+    public void setParallelRocSweepNumThreads(int parallelRocSweepNumThreads) {
+        int old = this.parallelRocSweepNumThreads;
+        this.parallelRocSweepNumThreads = Math.max(1, parallelRocSweepNumThreads);
+        putInt("parallelRocSweepNumThreads", this.parallelRocSweepNumThreads);
+        getSupport().firePropertyChange("parallelRocSweepNumThreads", old, this.parallelRocSweepNumThreads);
+    }
+
+    /**
+     * @return true if the parallel ROC sweep sweeps all denoisers
+     */
+    public boolean isParallelRocSweepAllFilters() {
+        return parallelRocSweepAllFilters;
+    }
+
+    /**
+     * @param parallelRocSweepAllFilters true to sweep every denoiser that has
+     * stored ROC sweep parameters, false to sweep only the selected denoiser
+     */
+    public void setParallelRocSweepAllFilters(boolean parallelRocSweepAllFilters) {
+        boolean old = this.parallelRocSweepAllFilters;
+        this.parallelRocSweepAllFilters = parallelRocSweepAllFilters;
+        putBoolean("parallelRocSweepAllFilters", parallelRocSweepAllFilters);
+        getSupport().firePropertyChange("parallelRocSweepAllFilters", old, parallelRocSweepAllFilters);
+    }
+
+    /**
+     * @return the maximum number of events captured for the parallel ROC
+     * sweep
+     */
+    public int getParallelRocSweepMaxEvents() {
+        return parallelRocSweepMaxEvents;
+    }
+
+    /**
+     * @param parallelRocSweepMaxEvents the maximum number of events captured
+     * for the parallel ROC sweep
+     */
+    public void setParallelRocSweepMaxEvents(int parallelRocSweepMaxEvents) {
+        int old = this.parallelRocSweepMaxEvents;
+        this.parallelRocSweepMaxEvents = Math.max(1, parallelRocSweepMaxEvents);
+        putInt("parallelRocSweepMaxEvents", this.parallelRocSweepMaxEvents);
+        getSupport().firePropertyChange("parallelRocSweepMaxEvents", old, this.parallelRocSweepMaxEvents);
+    }
+
     private class ROCHistory {
 
         private EvictingQueue<ROCSample> rocHistoryList = EvictingQueue.create(rocHistoryLength);
@@ -2740,6 +3366,11 @@ public class NoiseTesterFilter extends AbstractNoiseFilter implements FrameAnnot
             this.noiseFilter = noiseFilter;
         }
 
+        public ROCHistory(AbstractNoiseFilter noiseFilter, int capacity) {
+            this.noiseFilter = noiseFilter;
+            this.rocHistoryList = EvictingQueue.create(capacity);
+        }
+
         public String toString() {
             return String.format("ROCHistory with %,d points", rocHistoryList.size());
         }
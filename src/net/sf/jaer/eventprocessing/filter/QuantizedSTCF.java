@@ -76,9 +76,7 @@ public class QuantizedSTCF extends SpatioTemporalCorrelationFilter {
         // code from AbstractNoiseFilter filterPacket()
         resetCountsAndNegativeEvents();
         // end code from super.super
-        if (timestampImage == null) {
-            allocateMaps(chip);
-        }
+        allocateMaps(chip);
         final int dt = quantizeTimestamp(((int) Math.round(getCorrelationTimeS() * 1e6f)));
         ssx = sxm1 >> subsampleBy;
         ssy = sym1 >> subsampleBy;
@@ -87,6 +85,8 @@ public class QuantizedSTCF extends SpatioTemporalCorrelationFilter {
         final boolean record = recordFilteredOutEvents; // to speed up loop, maybe
         final boolean fhp = filterHotPixels;
         final NnbRange nnbRange = new NnbRange();
+        final int[] tsMap = timestampMap.getTimestamps();
+        final byte[] polMap = timestampMap.getPolarities();
 
         final boolean hasPolarites = in.getEventPrototype() instanceof PolarityEvent;
 
@@ -106,7 +106,7 @@ public class QuantizedSTCF extends SpatioTemporalCorrelationFilter {
                     filterOut(e);
                     continue;
                 }
-                if (timestampImage[x][y] == DEFAULT_TIMESTAMP) {
+                if (timestampMap.isEmpty(x, y)) {
                     storeTimestampPolarity(x, y, e);
                     if (letFirstEventThrough) {
                         filterIn(e);
@@ -124,14 +124,13 @@ public class QuantizedSTCF extends SpatioTemporalCorrelationFilter {
                 nnbRange.compute(x, y, ssx, ssy);
                 outerloop:
                 for (int xx = nnbRange.x0; xx <= nnbRange.x1; xx++) {
-                    final int[] col = timestampImage[xx];
-                    final byte[] polCol = polImage[xx];
                     for (int yy = nnbRange.y0; yy <= nnbRange.y1; yy++) {
+                        final int i = timestampMap.index(xx, yy);
                         if (fhp && xx == x && yy == y) {
                             continue; // like BAF, don't correlate with ourself
                         }
 
-                        int lastTsFull = col[yy];
+                        int lastTsFull = tsMap[i];
                         boolean isDefaultTs = lastTsFull == DEFAULT_TIMESTAMP;
                         final int lastT = quantizeTimestamp(lastTsFull);
                         final int deltaT = (ts - lastT);
@@ -143,7 +142,7 @@ public class QuantizedSTCF extends SpatioTemporalCorrelationFilter {
                                 occupied = true;
                             } else {
                                 PolarityEvent pe = (PolarityEvent) e;
-                                if (pe.getPolaritySignum() == polCol[yy]) {
+                                if (pe.getPolaritySignum() == polMap[i]) {
                                     ncorrelated++;
                                     occupied = true;
                                 }
@@ -181,7 +180,7 @@ public class QuantizedSTCF extends SpatioTemporalCorrelationFilter {
                     filterOut(e);
                     continue;
                 }
-                if (timestampImage[x][y] == DEFAULT_TIMESTAMP) {
+                if (timestampMap.isEmpty(x, y)) {
                     storeTimestampPolarity(x, y, e);
                     if (letFirstEventThrough) {
                         filterIn(e);
@@ -197,13 +196,12 @@ public class QuantizedSTCF extends SpatioTemporalCorrelationFilter {
                 nnbRange.compute(x, y, ssx, ssy);
                 outerloop:
                 for (int xx = nnbRange.x0; xx <= nnbRange.x1; xx++) {
-                    final int[] col = timestampImage[xx];
-                    final byte[] polCol = polImage[xx];
                     for (int yy = nnbRange.y0; yy <= nnbRange.y1; yy++) {
+                        final int i = timestampMap.index(xx, yy);
                         if (fhp && xx == x && yy == y) {
                             continue; // like BAF, don't correlate with ourself
                         }
-                        int lastTsFull = col[yy];
+                        int lastTsFull = tsMap[i];
                         boolean isDefaultTs = lastTsFull == DEFAULT_TIMESTAMP;
                         final int lastT = quantizeTimestamp(lastTsFull);
                         final int deltaT = (ts - lastT);
@@ -213,7 +211,7 @@ public class QuantizedSTCF extends SpatioTemporalCorrelationFilter {
                                 ncorrelated++;
                             } else {
                                 PolarityEvent pe = (PolarityEvent) e;
-                                if (pe.getPolaritySignum() == polCol[yy]) {
+                                if (pe.getPolaritySignum() == polMap[i]) {
                                     ncorrelated++;
                                 }
                             }
@@ -5,7 +5,6 @@ package net.sf.jaer.eventprocessing.filter;
 
 import java.beans.PropertyChangeEvent;
 import static java.lang.Math.random;
-import java.util.Arrays;
 import java.util.Random;
 
 import net.sf.jaer.Description;
@@ -47,8 +46,7 @@ public class SpatioTemporalCorrelationFilter extends AbstractNoiseFilter {
     protected int ssx; // size of subsampled timestamp map
     protected int ssy;
 
-    int[][] timestampImage; // timestamp image
-    byte[][] polImage; // -1 is OFF +1 is ON, last event polarities according to getPolaritySignum
+    TimestampPolarityMap timestampMap; // last timestamps and polarities, -1 is OFF +1 is ON according to getPolaritySignum
 
     public SpatioTemporalCorrelationFilter(AEChip chip) {
         super(chip);
@@ -71,174 +69,71 @@ public class SpatioTemporalCorrelationFilter extends AbstractNoiseFilter {
     @Override
     synchronized public EventPacket<? extends BasicEvent> filterPacket(EventPacket<? extends BasicEvent> in) {
         super.filterPacket(in);
-        if (timestampImage == null) {
-            allocateMaps(chip);
-        }
+        allocateMaps(chip);
         int dt = (int) Math.round(getCorrelationTimeS() * 1e6f);
         ssx = sxm1 >> subsampleBy;
         ssy = sym1 >> subsampleBy;
         // for each event only keep it if it is within dt of the last time
         // an event happened in the direct neighborhood
-        final boolean record = recordFilteredOutEvents; // to speed up loop, maybe
         final boolean fhp = filterHotPixels;
-        final NnbRange nnbRange = new NnbRange();
+        final int radius = sigmaDistPixels;
+        final TimestampPolarityMap map = timestampMap;
 
         final boolean hasPolarites = in.getEventPrototype() instanceof PolarityEvent;
+        final boolean matchPolarity = polaritiesMustMatch && hasPolarites;
 
-        if (record) { // branch here to save a tiny bit if not instrumenting denoising
-            for (BasicEvent e : in) {
-                if (e == null) {
-                    continue;
-                }
-                // comment out to support special "noise" events that are labeled special for denoising study
-//                if (e.isSpecial()) {
-//                    continue;
-//                }
-                totalEventCount++;
-                final int ts = e.timestamp;
-                final int x = (e.x >> subsampleBy), y = (e.y >> subsampleBy); // subsampling address
-                if ((x < 0) || (x > ssx) || (y < 0) || (y > ssy)) { // out of bounds, discard (maybe bad USB or something)
-                    filterOut(e);
-                    continue;
-                }
-                if (timestampImage[x][y] == DEFAULT_TIMESTAMP) {
-                    storeTimestampPolarity(x, y, e);
-                    if (letFirstEventThrough) {
-                        filterIn(e);
-                        continue;
-                    } else {
-                        filterOut(e);
-                        continue;
-                    }
-                }
-
-                // finally the real denoising starts here
-                int ncorrelated = 0;
-                byte nnb = 0;
-                int bit = 0;
-                nnbRange.compute(x, y, ssx, ssy);
-                outerloop:
-                for (int xx = nnbRange.x0; xx <= nnbRange.x1; xx++) {
-                    final int[] col = timestampImage[xx];
-                    final byte[] polCol = polImage[xx];
-                    for (int yy = nnbRange.y0; yy <= nnbRange.y1; yy++) {
-                        if (fhp && xx == x && yy == y) {
-                            continue; // like BAF, don't correlate with ourself
-                        }
-                        final int lastT = col[yy];
-                        final int deltaT = (ts - lastT); // note deltaT will be very negative for DEFAULT_TIMESTAMP because of overflow
-
-                        boolean occupied = false;
-                        if (deltaT < dt && lastT != DEFAULT_TIMESTAMP) { // ignore correlations for DEFAULT_TIMESTAMP that are neighbors which never got event so far
-                            if (!polaritiesMustMatch || !hasPolarites) {
-                                ncorrelated++;
-                                occupied = true;
-                            } else {
-                                PolarityEvent pe = (PolarityEvent) e;
-                                if (pe.getPolaritySignum() == polCol[yy]) {
-                                    ncorrelated++;
-                                    occupied = true;
-                                }
-                            }
-                        }
-                        if (occupied) {
-                            // nnb bits are like this
-                            // 0 3 5
-                            // 1 x 6
-                            // 2 4 7
-                            nnb |= (0xff & (1 << bit));
-                        }
-                        bit++;
-                    }
-                }
-                if (ncorrelated < numMustBeCorrelated) {
-                    filterOut(e);
-                } else {
-                    // correlated, but might be shot noise event with opposite polarity to recent event from this same pixel
-                    if (testIsShotNoiseOppositePolarity(x, y, e)) {
-                        filterOut(e);
-                    } else {
-                        filterIn(e);
-                    }
-                }
+        for (BasicEvent e : in) {
+            if (e == null) {
+                continue;
+            }
+            // comment out to support special "noise" events that are labeled special for denoising study
+//            if (e.isSpecial()) {
+//                continue;
+//            }
+            totalEventCount++;
+            final int ts = e.timestamp;
+            final int x = (e.x >> subsampleBy), y = (e.y >> subsampleBy); // subsampling address
+            if ((x < 0) || (x > ssx) || (y < 0) || (y > ssy)) { // out of bounds, discard (maybe bad USB or something)
+                filterOut(e);
+                continue;
+            }
+            if (map.isEmpty(x, y)) {
                 storeTimestampPolarity(x, y, e);
-            } // event packet loop
-        } else { // not keep stats
-            for (BasicEvent e : in) {
-                if (e == null) {
+                if (letFirstEventThrough) {
+                    filterIn(e);
                     continue;
-                }
-//                if (e.isSpecial()) {
-//                    continue;
-//                }
-                totalEventCount++;
-                int ts = e.timestamp;
-                final int x = (e.x >> subsampleBy), y = (e.y >> subsampleBy); // subsampling address
-                if ((x < 0) || (x > ssx) || (y < 0) || (y > ssy)) { // out of bounds, discard (maybe bad USB or something)
+                } else {
                     filterOut(e);
                     continue;
                 }
-                if (timestampImage[x][y] == DEFAULT_TIMESTAMP) {
-                    storeTimestampPolarity(x, y, e);
-                    if (letFirstEventThrough) {
-                        filterIn(e);
-                        continue;
-                    } else {
-                        filterOut(e);
-                        continue;
-                    }
-                }
-
-                // finally the real denoising starts here
-                int ncorrelated = 0;
-                nnbRange.compute(x, y, ssx, ssy);
-                outerloop:
-                for (int xx = nnbRange.x0; xx <= nnbRange.x1; xx++) {
-                    final int[] col = timestampImage[xx];
-                    final byte[] polCol = polImage[xx];
-                    for (int yy = nnbRange.y0; yy <= nnbRange.y1; yy++) {
-                        if (fhp && xx == x && yy == y) {
-                            continue; // like BAF, don't correlate with ourself. Makes no difference if polaritiesMustMatch because shot noise events almost never follow each other with same polarity
-                        }
-                        final int lastT = col[yy];
-                        final int deltaT = (ts - lastT); // note deltaT will be very negative for DEFAULT_TIMESTAMP because of overflow
-
-                        if (deltaT < dt && lastT != DEFAULT_TIMESTAMP) { // ignore correlations for DEFAULT_TIMESTAMP that are neighbors which never got event so far
-                            if (!polaritiesMustMatch || !hasPolarites) {
-                                ncorrelated++;
-                            } else {
-                                PolarityEvent pe = (PolarityEvent) e;
-                                if (pe.getPolaritySignum() == polCol[yy]) {
-                                    ncorrelated++;
-                                }
-                            }
-                            if (ncorrelated >= numMustBeCorrelated) {
-                                break outerloop; // csn stop checking now
-                            }
-                        }
+            }
 
-                    }
-                }
-                if (ncorrelated < numMustBeCorrelated) {
+            // finally the real denoising starts here
+            // fhp: like BAF, don't correlate with ourself. Makes no difference if polaritiesMustMatch because shot noise events almost never follow each other with same polarity
+            final int ncorrelated = matchPolarity
+                    ? map.countCorrelated(x, y, radius, ts, dt, ((PolarityEvent) e).getPolaritySignum(), fhp)
+                    : map.countCorrelated(x, y, radius, ts, dt, fhp);
+            if (ncorrelated < numMustBeCorrelated) {
+                filterOut(e);
+            } else {
+                // correlated, but might be shot noise event with opposite polarity to recent event from this same pixel
+                if (testIsShotNoiseOppositePolarity(x, y, e)) {
                     filterOut(e);
                 } else {
-                    if (testIsShotNoiseOppositePolarity(x, y, e)) {
-                        filterOut(e);
-                    } else {
-                        filterIn(e);
-                    }
+                    filterIn(e);
                 }
-                storeTimestampPolarity(x, y, e);
             }
+            storeTimestampPolarity(x, y, e);
         }
         getNoiseFilterControl().maybePerformControl(in);
         return in;
     }
 
     protected void storeTimestampPolarity(final int x, final int y, BasicEvent e) {
-        timestampImage[x][y] = e.timestamp;
         if (e instanceof PolarityEvent) {
-            polImage[x][y] = (byte) ((PolarityEvent) e).getPolaritySignum();
+            timestampMap.set(x, y, e.timestamp, ((PolarityEvent) e).getPolaritySignum());
+        } else {
+            timestampMap.setTimestamp(x, y, e.timestamp);
         }
     }
 
@@ -246,13 +141,11 @@ public class SpatioTemporalCorrelationFilter extends AbstractNoiseFilter {
     public synchronized void resetFilter() {
         super.resetFilter();
 //        log.info("resetting SpatioTemporalCorrelationFilter");
-        if (timestampImage == null) {
+        if (timestampMap == null) {
 //            log.warning("tried to clear lastTimesMap but it is null");
             return;
         }
-        for (int[] arrayRow : timestampImage) {
-            Arrays.fill(arrayRow, DEFAULT_TIMESTAMP);
-        }
+        timestampMap.clear();
         resetShotNoiseTestStats();
     }
 
@@ -272,14 +165,11 @@ public class SpatioTemporalCorrelationFilter extends AbstractNoiseFilter {
     }
 
     protected void allocateMaps(AEChip chip) {
-        if ((chip != null) && (chip.getNumCells() > 0) && (timestampImage == null || timestampImage.length != chip.getSizeX() >> subsampleBy)) {
-            timestampImage = new int[chip.getSizeX()][chip.getSizeY()]; // TODO handle subsampling to save memory (but check in filterPacket for range check optomization)
-            polImage = new byte[chip.getSizeX()][chip.getSizeY()]; // TODO handle subsampling to save memory (but check in filterPacket for range check optomization)
-        }
+        timestampMap = allocateTimestampPolarityMap(timestampMap); // reallocated with the subsampled size if subsampleBy changed
     }
 
     /**
-     * Fills timestampImage and polImage with waiting times drawn from Poisson
+     * Fills timestampMap timestamps and polarities with waiting times drawn from Poisson
      * process with rate noiseRateHz
      *
      * @param noiseRateHz rate in Hz
@@ -288,7 +178,9 @@ public class SpatioTemporalCorrelationFilter extends AbstractNoiseFilter {
      */
     @Override
     public void initializeLastTimesMapForNoiseRate(float noiseRateHz, int lastTimestampUs) {
-        fill2dTimestampAndPolarityImagesWithNoiseEvents(noiseRateHz, lastTimestampUs, timestampImage, polImage);
+        if (timestampMap != null) {
+            timestampMap.fillWithNoiseEvents(noiseRateHz, lastTimestampUs, true);
+        }
     }
 
     // </editor-fold>
@@ -398,14 +290,14 @@ public class SpatioTemporalCorrelationFilter extends AbstractNoiseFilter {
         }
         numShotNoiseTests++;
         PolarityEvent p = (PolarityEvent) e;
-        if (p.getPolaritySignum() == polImage[x][y]) {
+        if (p.getPolaritySignum() == timestampMap.getPolarity(x, y)) {
             return false; // if same polarity, don't filter out
         }
-        int prevT = timestampImage[x][y];
+        int prevT = timestampMap.getTimestamp(x, y);
         if (prevT == DEFAULT_TIMESTAMP) {
             return false; // if there is no previous event, treat as signal event
         }
-        float dt = 1e-6f * (e.timestamp - timestampImage[x][y]);
+        float dt = 1e-6f * (e.timestamp - prevT);
         if (dt > shotNoiseCorrelationTimeS) {
             return false; // if the previous event was too far in past, treat as signal event
         }
@@ -0,0 +1,291 @@
+/*
+ * TimestampPolarityMap.java
+ *
+ * Flat last-timestamp and last-polarity map for noise filters.
+ */
+package net.sf.jaer.eventprocessing.filter;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Map of the last event timestamp and polarity of each (subsampled) pixel,
+ * stored as flat row-major int[] and byte[] arrays with a border of empty
+ * pixels around the sensor. It replaces the int[][] timestampImage and
+ * byte[][] polImage of AbstractNoiseFilter subclasses.
+ * <p>
+ * The border means that neighborhoods of up to getBorder() pixels radius never
+ * need range checks: border pixels hold DEFAULT_TIMESTAMP and so never
+ * correlate. The neighborhood counts iterate contiguous rows and accumulate
+ * without data dependent branches, so the JIT can unroll them and the cost per
+ * event does not depend on the activity around the event.
+ * <p>
+ * Pixels are addressed by (x,y) in map coordinates (i.e. already shifted by
+ * subsampleBy), or by index(x,y) for callers that do their own iteration over
+ * getTimestamps() and getPolarities().
+ *
+ * @see AbstractNoiseFilter
+ */
+public class TimestampPolarityMap {
+
+    /**
+     * Timestamp of pixels that have not had an event since the last clear()
+     */
+    public static final int DEFAULT_TIMESTAMP = Integer.MIN_VALUE;
+
+    private final int sizeX, sizeY, border, stride;
+    private final int[] timestamps;
+    private final byte[] polarities;
+
+    /**
+     * Constructs a new map where all pixels are empty.
+     *
+     * @param sizeX number of columns, i.e. the largest x is sizeX-1
+     * @param sizeY number of rows
+     * @param border the largest neighborhood radius that will be used
+     */
+    public TimestampPolarityMap(int sizeX, int sizeY, int border) {
+        if (sizeX <= 0 || sizeY <= 0 || border < 0) {
+            throw new IllegalArgumentException("invalid map size " + sizeX + "x" + sizeY + " with border " + border);
+        }
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.border = border;
+        this.stride = sizeX + (2 * border);
+        final int n = stride * (sizeY + (2 * border));
+        timestamps = new int[n];
+        polarities = new byte[n];
+        clear();
+    }
+
+    /**
+     * Returns true if this map has the given shape, e.g. to check if a filter
+     * must reallocate its map after a change of subsampling.
+     *
+     * @param sizeX number of columns
+     * @param sizeY number of rows
+     * @param border the border
+     * @return true if the map has this size and border
+     */
+    public boolean hasShape(int sizeX, int sizeY, int border) {
+        return this.sizeX == sizeX && this.sizeY == sizeY && this.border == border;
+    }
+
+    /**
+     * Empties all pixels, i.e. sets them to DEFAULT_TIMESTAMP and polarity 0.
+     */
+    public final void clear() {
+        Arrays.fill(timestamps, DEFAULT_TIMESTAMP);
+        Arrays.fill(polarities, (byte) 0);
+    }
+
+    /**
+     * Returns the index of a pixel in getTimestamps() and getPolarities().
+     * Moving by one in y changes the index by getStride().
+     *
+     * @param x the column, from -getBorder() to sizeX-1+getBorder()
+     * @param y the row, from -getBorder() to sizeY-1+getBorder()
+     * @return the index
+     */
+    public final int index(int x, int y) {
+        return ((y + border) * stride) + x + border;
+    }
+
+    /**
+     * @param x the column
+     * @param y the row
+     * @return true if the pixel lies on the sensor, i.e. outside the border
+     */
+    public final boolean contains(int x, int y) {
+        return x >= 0 && x < sizeX && y >= 0 && y < sizeY;
+    }
+
+    /**
+     * @param x the column
+     * @param y the row
+     * @return true if the pixel has had no event since the last clear()
+     */
+    public final boolean isEmpty(int x, int y) {
+        return timestamps[index(x, y)] == DEFAULT_TIMESTAMP;
+    }
+
+    /**
+     * @param x the column
+     * @param y the row
+     * @return the last timestamp, or DEFAULT_TIMESTAMP
+     */
+    public final int getTimestamp(int x, int y) {
+        return timestamps[index(x, y)];
+    }
+
+    /**
+     * @param x the column
+     * @param y the row
+     * @return the last polarity, -1 for OFF, +1 for ON, 0 if unknown
+     */
+    public final int getPolarity(int x, int y) {
+        return polarities[index(x, y)];
+    }
+
+    /**
+     * Stores the last timestamp of a pixel, leaving its polarity unchanged.
+     *
+     * @param x the column
+     * @param y the row
+     * @param timestamp the timestamp in us
+     */
+    public final void setTimestamp(int x, int y, int timestamp) {
+        timestamps[index(x, y)] = timestamp;
+    }
+
+    /**
+     * Stores the last timestamp and polarity of a pixel.
+     *
+     * @param x the column
+     * @param y the row
+     * @param timestamp the timestamp in us
+     * @param polarity -1 for OFF, +1 for ON, as returned by
+     * PolarityEvent.getPolaritySignum()
+     */
+    public final void set(int x, int y, int timestamp, int polarity) {
+        final int i = index(x, y);
+        timestamps[i] = timestamp;
+        polarities[i] = (byte) polarity;
+    }
+
+    /**
+     * Counts the pixels in the (2*radius+1)^2 neighborhood of (x,y) that had
+     * an event less than dt before timestamp. As in the original loops over
+     * timestampImage, neighbors with a later timestamp than <code>timestamp</code>
+     * also count.
+     *
+     * @param x the column
+     * @param y the row
+     * @param radius the neighborhood radius, at most getBorder()
+     * @param timestamp the timestamp of the current event
+     * @param dt the correlation time in us
+     * @param excludeCenter true to not count (x,y) itself, e.g. to filter hot
+     * pixels
+     * @return the number of correlated pixels
+     */
+    public final int countCorrelated(int x, int y, int radius, int timestamp, int dt, boolean excludeCenter) {
+        final int w = (2 * radius) + 1;
+        final int[] t = timestamps;
+        int n = 0;
+        for (int row = index(x - radius, y - radius), rowEnd = row + (w * stride); row < rowEnd; row += stride) {
+            for (int i = row, end = row + w; i < end; i++) {
+                final int lastT = t[i];
+                n += (((timestamp - lastT) < dt) & (lastT != DEFAULT_TIMESTAMP)) ? 1 : 0;
+            }
+        }
+        if (excludeCenter) {
+            final int lastT = t[index(x, y)];
+            n -= (((timestamp - lastT) < dt) & (lastT != DEFAULT_TIMESTAMP)) ? 1 : 0;
+        }
+        return n;
+    }
+
+    /**
+     * Like countCorrelated(int, int, int, int, int, boolean), but only counts
+     * pixels whose last event had the given polarity.
+     *
+     * @param x the column
+     * @param y the row
+     * @param radius the neighborhood radius, at most getBorder()
+     * @param timestamp the timestamp of the current event
+     * @param dt the correlation time in us
+     * @param polarity the polarity that must match, -1 or +1
+     * @param excludeCenter true to not count (x,y) itself
+     * @return the number of correlated pixels with matching polarity
+     */
+    public final int countCorrelated(int x, int y, int radius, int timestamp, int dt, int polarity, boolean excludeCenter) {
+        final int w = (2 * radius) + 1;
+        final int[] t = timestamps;
+        final byte[] p = polarities;
+        final byte pol = (byte) polarity;
+        int n = 0;
+        for (int row = index(x - radius, y - radius), rowEnd = row + (w * stride); row < rowEnd; row += stride) {
+            for (int i = row, end = row + w; i < end; i++) {
+                final int lastT = t[i];
+                n += (((timestamp - lastT) < dt) & (lastT != DEFAULT_TIMESTAMP) & (p[i] == pol)) ? 1 : 0;
+            }
+        }
+        if (excludeCenter) {
+            final int i = index(x, y);
+            final int lastT = t[i];
+            n -= (((timestamp - lastT) < dt) & (lastT != DEFAULT_TIMESTAMP) & (p[i] == pol)) ? 1 : 0;
+        }
+        return n;
+    }
+
+    /**
+     * Fills the sensor pixels with timestamps drawn from a Poisson process with
+     * rate noiseRateHz ending at lastTimestampUs, and with random polarities,
+     * like AbstractNoiseFilter.fill2dTimestampAndPolarityImagesWithNoiseEvents.
+     *
+     * @param noiseRateHz rate in Hz
+     * @param lastTimestampUs the last timestamp; waiting times are created
+     * before this time
+     * @param fillPolarities true to also fill the polarities
+     */
+    public void fillWithNoiseEvents(float noiseRateHz, int lastTimestampUs, boolean fillPolarities) {
+        final Random random = new Random();
+        final double noiseIntvlS = 1 / noiseRateHz;
+        for (int y = 0; y < sizeY; y++) {
+            for (int i = index(0, y), end = i + sizeX; i < end; i++) {
+                final double t = -noiseIntvlS * Math.log(1 - random.nextDouble());
+                timestamps[i] = lastTimestampUs - (int) (1000000 * t);
+                if (fillPolarities) {
+                    polarities[i] = random.nextBoolean() ? (byte) 1 : (byte) -1;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the timestamps, indexed by index(x,y); for reading only
+     */
+    public final int[] getTimestamps() {
+        return timestamps;
+    }
+
+    /**
+     * @return the polarities, indexed by index(x,y); for reading only
+     */
+    public final byte[] getPolarities() {
+        return polarities;
+    }
+
+    /**
+     * @return the number of columns
+     */
+    public int getSizeX() {
+        return sizeX;
+    }
+
+    /**
+     * @return the number of rows
+     */
+    public int getSizeY() {
+        return sizeY;
+    }
+
+    /**
+     * @return the width of the border of empty pixels
+     */
+    public int getBorder() {
+        return border;
+    }
+
+    /**
+     * @return the difference of index(x,y+1) and index(x,y)
+     */
+    public final int getStride() {
+        return stride;
+    }
+
+    @Override
+    public String toString() {
+        return "TimestampPolarityMap " + sizeX + "x" + sizeY + " with border " + border;
+    }
+}
@@ -20,9 +20,9 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Random;
@@ -207,9 +207,10 @@ public class RectangularClusterTracker extends EventFilter2D
     private float zoomFactor = getFloat("zoomFactor", 2);
 
     /**
-     * The list of clusters (visible and invisible).
+     * The list of clusters (visible and invisible), in the order they were
+     * added.
      */
-    volatile protected LinkedList<Cluster> clusters = new LinkedList<>();
+    volatile protected ArrayList<Cluster> clusters = new ArrayList<>();
 
     /**
      * The list of visible clusters.
@@ -934,6 +935,7 @@ public class RectangularClusterTracker extends EventFilter2D
         updateVisibilities(t);
         mergeClusters(); // adds pruned clusters to list
         pruneClusters(t); // clears pruneList after pruning
+        fastClusterFinder.updateAll();
         lastUpdateTimestamp = t;
     }
 
@@ -992,6 +994,7 @@ public class RectangularClusterTracker extends EventFilter2D
         for (Cluster c : clusters) {
             c.getLastPacketLocation().setLocation(c.location);
         }
+        fastClusterFinder.updateAll(); // clusters or their size parameters may have been changed since the last packet
 
         // for each event, see which cluster it is closest to and append it to this cluster.
         // if its too far from any cluster, make a new cluster if we have not jet
@@ -1005,7 +1008,7 @@ public class RectangularClusterTracker extends EventFilter2D
                 continue; // out of bounds from e.g. steadicom transform
             }
             Cluster closest = fastClusterFinder.findClusterNear(ev);
-            if (useEllipticalClusters && updateClustersOnlyFromEventsNearEdge) {
+            if ((closest != null) && useEllipticalClusters && updateClustersOnlyFromEventsNearEdge) {
                 float dist = closest.distanceTo(ev);
                 if (dist > closest.radius || dist < closest.radius * (1 - ellipticalClusterEdgeThickness)) {
                     continue;
@@ -1018,6 +1021,7 @@ public class RectangularClusterTracker extends EventFilter2D
                 } else {
                     closest.addEvent(ev);
                 }
+                fastClusterFinder.update(closest); // it moved and maybe grew
             } else if (clusters.size() < maxNumClusters) { // start a new cluster
                 Cluster newCluster;
                 if (filterEventsEnabled) {
@@ -1104,10 +1108,23 @@ public class RectangularClusterTracker extends EventFilter2D
      *
      */
     protected Cluster findNearestCluster(BasicEvent event) { // TODO needs to account for the cluster angle
+        return findNearestCluster(event, clusters);
+    }
+
+    /**
+     * Returns the closest of the candidate clusters to the event, as
+     * {@link #findNearestCluster(net.sf.jaer.event.BasicEvent)}
+     *
+     * @param event the event
+     * @param candidates the clusters to test
+     * @return closest cluster, or null if no cluster is within the distance
+     */
+    protected Cluster findNearestCluster(BasicEvent event, List<Cluster> candidates) {
         float minDistance = Float.MAX_VALUE;
         Cluster closest = null;
         float currentDistance = 0;
-        for (Cluster c : clusters) {
+        for (int i = 0, n = candidates.size(); i < n; i++) {
+            final Cluster c = candidates.get(i);
             float rX = c.radiusX;
             float rY = c.radiusY; // this is surround region for purposes of dynamicSize scaling of cluster size or
             // aspect ratio
@@ -1181,10 +1198,23 @@ public class RectangularClusterTracker extends EventFilter2D
      * by aspect ratio. null is returned if no cluster is close enough.
      */
     protected Cluster findFirstContainingCluster(BasicEvent event) {
+        return findFirstContainingCluster(event, clusters);
+    }
+
+    /**
+     * Returns the first of the candidate clusters that contains the event, as
+     * {@link #findFirstContainingCluster(net.sf.jaer.event.BasicEvent)}
+     *
+     * @param event the event
+     * @param candidates the clusters to test, in the order of the cluster list
+     * @return the first cluster that contains the event, or null
+     */
+    protected Cluster findFirstContainingCluster(BasicEvent event, List<Cluster> candidates) {
         float minDistance = Float.MAX_VALUE;
         Cluster closest = null;
         float currentDistance = 0;
-        for (Cluster c : clusters) {
+        for (int i = 0, n = candidates.size(); i < n; i++) {
+            final Cluster c = candidates.get(i);
             float rX = c.radiusX;
             float rY = c.radiusY; // this is surround region for purposes of dynamicSize scaling of cluster size or
             // aspect ratio
@@ -1416,6 +1446,12 @@ public class RectangularClusterTracker extends EventFilter2D
         protected float distanceToLastEvent = 0;
         protected float xDistanceToLastEvent = 0, yDistanceToLastEvent = 0;
 
+        // the region of the FastClusterFinder grid this cluster is listed in
+        private int indexGeneration = -1, indexCellX0, indexCellX1, indexCellY0, indexCellY1;
+        private float indexMinX, indexMaxX, indexMinY, indexMaxY; // in pixels
+        private long indexOrder = 0; // the order the cluster was first indexed, which is the order of the cluster list
+        private int indexPass; // the last FastClusterFinder.updateAll that found the cluster in the cluster list
+
         /**
          * Computed at start of each packet based on locationMixingFactor and
          * mixingFactorInverseWithEventRate
@@ -2986,7 +3022,7 @@ public class RectangularClusterTracker extends EventFilter2D
      * @return list of clusters
      */
     @Override
-    public LinkedList<RectangularClusterTracker.Cluster> getClusters() {
+    public List<RectangularClusterTracker.Cluster> getClusters() {
         return this.clusters;
     }
 
@@ -3128,80 +3164,179 @@ public class RectangularClusterTracker extends EventFilter2D
     }
 
     /**
-     * Speeds up finding the nearest cluster to an event.
+     * Says if the FastClusterFinder grid can be used to find the cluster of an
+     * event. Subclasses whose clusters take events outside of their radius,
+     * e.g. shifted by a disparity, return false, so that every event is tested
+     * against all clusters by findNearestCluster(BasicEvent) or
+     * findFirstContainingCluster(BasicEvent).
+     *
+     * @return true if clusters only take events within their radius (or
+     * surround, or ellipse)
+     */
+    protected boolean isClusterGridIndexUsable() {
+        return true;
+    }
+
+    /**
+     * Speeds up finding the cluster of an event. The chip is divided into
+     * a grid of cells, and each cell lists the clusters whose capture region
+     * (the region in which they can take an event, including the surround or
+     * the bounding box of the ellipse) overlaps it, in the order of the
+     * cluster list. An event is then only tested against the few clusters of
+     * its cell.
+     * <p>
+     * A cluster is listed in a region a cell larger than its capture region on
+     * every side, so that it only needs to be relisted after it has moved or
+     * grown by that margin. update(c) must be called after a cluster moved or
+     * changed size, and updateAll() after clusters were changed otherwise.
      */
     protected class FastClusterFinder {
 
         /**
          * How much the map is subsampled in bits relative to the pixel array
          */
-        final int SUBSAMPLE_BY = 2;
-        private Cluster[][] grid = null;
-        private HashMap<Cluster, Point> map = new HashMap();
+        final int SUBSAMPLE_BY = 3;
+        private final float MARGIN = 1 << SUBSAMPLE_BY; // in pixels
+        private ArrayList<Cluster>[] cells = null; // cell x*ny+y
         int nx = 0, ny = 0;
+        private int generation = 0; // clusters indexed in an earlier generation are not listed in the cells
+        private long indexCounter = 0;
+        private int pass = 0;
 
         void init() {
-            nx = chip.getSizeX() >> SUBSAMPLE_BY;
-            ny = chip.getSizeY() >> SUBSAMPLE_BY;
-            grid = new Cluster[nx + 1][ny + 1];
+            nx = (chip.getSizeX() >> SUBSAMPLE_BY) + 1;
+            ny = (chip.getSizeY() >> SUBSAMPLE_BY) + 1;
+            cells = new ArrayList[nx * ny];
+            generation++;
         }
 
         /**
-         * Finds the nearest cluster to an event. If the cluster has been cached
-         * in the grid map it is returned, otherwise either nearest or first
-         * cluster is returned depending on useNearestCluster flag.
+         * Finds the nearest cluster to an event among the clusters listed in
+         * its cell: either the nearest or first containing cluster depending
+         * on the useNearestCluster flag.
          *
          * @param e the event
          * @return the nearest cluster or null
          */
         protected Cluster findClusterNear(BasicEvent e) {
-            Cluster c = null;
-            c = grid[(e.x) >>> SUBSAMPLE_BY][(e.y) >>> SUBSAMPLE_BY];
-            if (c == null) {
-                if (useNearestCluster) {
-                    c = findNearestCluster(e);
-                } else {
-                    c = findFirstContainingCluster(e); // find cluster that event falls within (or also within surround
-                    // if scaling enabled)
-                }
+            if (!isClusterGridIndexUsable()) {
+                return useNearestCluster ? findNearestCluster(e) : findFirstContainingCluster(e);
+            }
+            if (cells == null) {
+                init();
+                updateAll();
+            }
+            final int x = e.x >> SUBSAMPLE_BY, y = e.y >> SUBSAMPLE_BY;
+            if ((x < 0) || (x >= nx) || (y < 0) || (y >= ny)) {
+                return null;
+            }
+            final ArrayList<Cluster> cell = cells[(x * ny) + y];
+            if ((cell == null) || cell.isEmpty()) {
+                return null;
+            }
+            if (useNearestCluster) {
+                return findNearestCluster(e, cell);
+            } else {
+                return findFirstContainingCluster(e, cell); // find cluster that event falls within (or also within surround
+                // if scaling enabled)
             }
-            return c;
         }
 
         /**
-         * Adds/updates the lookup table for this cluster. Adds the cluster if
-         * not in list.
+         * Lists the cluster in the cells of its capture region, unless it is
+         * already listed in a region that contains it.
          *
          * @param c the cluster to add/update
          */
         protected void update(Cluster c) {
+            if (cells == null) {
+                init();
+            }
+            float rX = c.radiusX, rY = c.radiusY;
+            if (dynamicSizeEnabled) {
+                rX *= surround;
+                rY *= surround;
+            }
+            if (useEllipticalClusters) { // the rotated ellipse is within the circle of its major axis
+                final float r = Math.max(c.radiusX, c.radiusY);
+                rX = Math.max(rX, r);
+                rY = Math.max(rY, r);
+            }
+            final float x = c.location.x, y = c.location.y;
+            if ((c.indexGeneration == generation) && (x - rX >= c.indexMinX) && (x + rX <= c.indexMaxX)
+                    && (y - rY >= c.indexMinY) && (y + rY <= c.indexMaxY)) {
+                return;
+            }
             removeCluster(c);
-            int x = (int) (c.location.x) >> SUBSAMPLE_BY;
-            if (x < 0) {
-                x = 0;
-            } else if (x >= nx) {
-                x = nx - 1;
+            c.indexMinX = x - rX - MARGIN;
+            c.indexMaxX = x + rX + MARGIN;
+            c.indexMinY = y - rY - MARGIN;
+            c.indexMaxY = y + rY + MARGIN;
+            c.indexCellX0 = cell(c.indexMinX, nx);
+            c.indexCellX1 = cell(c.indexMaxX, nx);
+            c.indexCellY0 = cell(c.indexMinY, ny);
+            c.indexCellY1 = cell(c.indexMaxY, ny);
+            if (c.indexOrder == 0) {
+                c.indexOrder = ++indexCounter;
+            }
+            c.indexGeneration = generation;
+            for (int cx = c.indexCellX0; cx <= c.indexCellX1; cx++) {
+                for (int cy = c.indexCellY0; cy <= c.indexCellY1; cy++) {
+                    ArrayList<Cluster> cell = cells[(cx * ny) + cy];
+                    if (cell == null) {
+                        cell = cells[(cx * ny) + cy] = new ArrayList<>(4);
+                    }
+                    int i = cell.size(); // keep the cell in the order of the cluster list
+                    while ((i > 0) && (cell.get(i - 1).indexOrder > c.indexOrder)) {
+                        i--;
+                    }
+                    cell.add(i, c);
+                }
+            }
+        }
+
+        private int cell(float v, int n) {
+            final int i = (int) Math.floor(v) >> SUBSAMPLE_BY;
+            return i < 0 ? 0 : (i >= n ? n - 1 : i);
+        }
+
+        /**
+         * Updates all clusters, and removes clusters that are no longer in the
+         * cluster list
+         */
+        protected void updateAll() {
+            if (cells == null) {
+                init();
             }
-            int y = (int) (c.location.y) >> SUBSAMPLE_BY;
-            if (y < 0) {
-                y = 0;
-            } else if (y >= ny) {
-                y = ny - 1;
+            pass++;
+            for (Cluster c : clusters) {
+                c.indexPass = pass;
+            }
+            for (ArrayList<Cluster> cell : cells) {
+                if (cell != null) {
+                    cell.removeIf(c -> { // removed from the cluster list without removeCluster
+                        if (c.indexPass != pass) {
+                            c.indexGeneration = -1;
+                            return true;
+                        }
+                        return false;
+                    });
+                }
+            }
+            for (Cluster c : clusters) {
+                update(c);
             }
-            grid[x][y] = c;
-            map.put(c, new Point(x, y));
         }
 
         /**
          * Clears the map
          */
         protected void reset() {
-            if (grid == null) {
+            if (cells == null) {
                 init();
             } else {
-                for (Cluster[] ca : grid) {
-                    Arrays.fill(ca, null);
-                }
+                Arrays.fill(cells, null);
+                generation++;
             }
         }
 
@@ -3211,11 +3346,18 @@ public class RectangularClusterTracker extends EventFilter2D
          * @param c the cluster to be removed
          */
         protected void removeCluster(Cluster c) {
-            if (map.containsKey(c)) {
-                Point p = map.get(c);
-                grid[p.x][p.y] = null;
-                map.remove(c);
+            if (c.indexGeneration != generation) {
+                return;
+            }
+            for (int cx = c.indexCellX0; cx <= c.indexCellX1; cx++) {
+                for (int cy = c.indexCellY0; cy <= c.indexCellY1; cy++) {
+                    final ArrayList<Cluster> cell = cells[(cx * ny) + cy];
+                    if (cell != null) {
+                        cell.remove(c);
+                    }
+                }
             }
+            c.indexGeneration = -1;
         }
     }
 
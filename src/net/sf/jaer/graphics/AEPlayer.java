@@ -23,7 +23,9 @@ import java.time.ZoneId;
 
 import net.sf.jaer.aemonitor.AEPacketRaw;
 import net.sf.jaer.eventio.AEDataFile;
+import net.sf.jaer.eventio.AEFileInputStream;
 import net.sf.jaer.eventio.AEFileInputStreamInterface;
+import net.sf.jaer.eventio.AEFileTimestampIndex;
 import net.sf.jaer.eventio.AEInputStream;
 import net.sf.jaer.graphics.AEViewer.PlayMode;
 import net.sf.jaer.hardwareinterface.HardwareInterfaceException;
@@ -708,6 +710,38 @@ public class AEPlayer extends AbstractAEPlayer implements AEFileInputStreamInter
         }
     }
 
+    /**
+     * Seeks playback to the first event at or after the timestamp. Uses the
+     * timestamp index of AEFileInputStream if it is ready, otherwise starts it
+     * and estimates the fractional position by assuming a constant event rate.
+     *
+     * @param timestamp the timestamp to seek to
+     * @return false if the index is ready but the timestamp is not in the
+     * recording, in which case the position is not changed
+     * @see AEFileInputStream#seekToTimestamp(int)
+     */
+    public boolean seekToTimestamp(int timestamp) {
+        if (aeFileInputStream == null) {
+            return false;
+        }
+        AEFileTimestampIndex index = (aeFileInputStream instanceof AEFileInputStream) ? ((AEFileInputStream) aeFileInputStream).startTimestampIndex() : null;
+        if ((index != null) && index.isReady()) {
+            if (!((AEFileInputStream) aeFileInputStream).seekToTimestamp(timestamp)) {
+                log.info("timestamp " + timestamp + " is not in the recording, not seeking");
+                return false;
+            }
+        } else {
+            int duration = aeFileInputStream.getDurationUs();
+            float frac = duration <= 0 ? 0 : (float) (timestamp - aeFileInputStream.getFirstTimestamp()) / duration;
+            aeFileInputStream.setFractionalPosition(Math.max(0, Math.min(1, frac)));
+        }
+        if (viewer != null) {
+            viewer.filterChain.reset();
+            viewer.getRenderer().resetAccumulation();
+        }
+        return true;
+    }
+
     @Override
     public void setTime(int time) {
 //            System.out.println(this+".setTime("+time+")");
@@ -2065,7 +2065,7 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
 
         /**
          * Filters packet through processing chain if ProcessingMode is
-         * RENDERING or LIVE. If any filter throws an exception, all filters are
+         * RENDERING or PIPELINED, or if not LIVE. If any filter throws an exception, all filters are
          * disabled.
          *
          * @return true if packet is null, otherwise false.
@@ -2076,7 +2076,7 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
                 return inputPacket; // don't run filters if user is manipulating position or playing backwards
             }
             // filter events, do processing on them in rendering loop here
-            if ((filterChain.getProcessingMode() == FilterChain.ProcessingMode.RENDERING) || (getPlayMode() != PlayMode.LIVE)) {
+            if ((filterChain.getProcessingMode() != FilterChain.ProcessingMode.ACQUISITION) || (getPlayMode() != PlayMode.LIVE)) {
                 try {
                     EventPacket p = filterChain.filterPacket(inputPacket);
                     return p;
@@ -2141,29 +2141,14 @@ public class AEViewer extends javax.swing.JFrame implements PropertyChangeListen
          * @return true to break out of loop, e.g. there is error, false is OK
          */
         private boolean writeOutputStreams(AEPacketRaw rawPacket, EventPacket cookedPacket) {
-            // write to network socket if a client has opened a socket to us
-            // we serve up events on this socket
-
-            if ((getAeServerSocket() != null) && (getAeServerSocket().getAESocket() != null)) {
-                AESocket s = getAeServerSocket().getAESocket();
-                try {
-                    if (!isLogFilteredEventsEnabled()) {
-                        s.writePacket(rawPacket);
-                    } else {
-                        // send the reconstructed packet after filtering
-                        AEPacketRaw aeRawRecon = extractor.reconstructRawPacket(cookedPacket);
-                        s.writePacket(aeRawRecon);
-                    }
-                } catch (IOException e) {
-                    log.warning("sending packet " + rawPacket + " from " + this + " to " + s + " failed, closing socket");
-                    try {
-                        s.close();
-                    } catch (IOException e2) {
-                        log.log(Level.SEVERE, e2.toString(), e2);
-
-                    } finally {
-                        getAeServerSocket().setSocket(null);
-                    }
+            // write to network sockets if clients have connected to us
+            // we serve up events to all of them
+            if ((getAeServerSocket() != null) && (getAeServerSocket().getNumClients() > 0)) {
+                if (!isLogFilteredEventsEnabled()) {
+                    getAeServerSocket().writePacket(rawPacket);
+                } else {
+                    // send the reconstructed packet after filtering
+                    getAeServerSocket().writePacket(extractor.reconstructRawPacket(cookedPacket));
                 }
             }
 
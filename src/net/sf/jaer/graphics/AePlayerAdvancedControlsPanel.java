@@ -725,7 +725,20 @@ public class AePlayerAdvancedControlsPanel extends javax.swing.JPanel implements
         }
         try {
             int t = Integer.parseInt(timeField.getText());
-            aePlayer.setTime(t);
+            if (aePlayer instanceof AEPlayer) {
+                synchronized (aePlayer) {
+                    if (!((AEPlayer) aePlayer).seekToTimestamp(t)) {
+                        timeField.selectAll();
+                        return;
+                    }
+                    boolean wasPaused = aeViewer.getJaerViewer().getSyncPlayer().isPaused();
+                    aeViewer.getJaerViewer().getSyncPlayer().doSingleStep();
+                    aeViewer.getJaerViewer().getSyncPlayer().setPaused(wasPaused);
+                    aePlayer.getSupport().firePropertyChange(AEInputStream.EVENT_REPOSITIONED, null, aePlayer.getAEInputStream().position());
+                }
+            } else {
+                aePlayer.setTime(t);
+            }
         } catch (Exception e) {
             log.warning(e.toString());
             timeField.selectAll();
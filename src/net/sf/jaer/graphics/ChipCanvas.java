@@ -181,6 +181,11 @@ public class ChipCanvas implements GLEventListener, Observer {
         origin3dy = prefs.getInt("ChipCanvas.origin3dy", 0);
         pwidth = prefs.getInt("ChipCanvas.pwidth", 512);
 
+        if (GraphicsEnvironment.isHeadless()) { // e.g. FilterChainBatchRunner on a server; filters run but nothing is drawn
+            log.info("headless JVM, not creating GLCanvas for " + chip);
+            chip.addObserver(this);
+            return;
+        }
         // make the glCanvas
         try {
 //            final GLProfile glp = GLProfile.getMaxProgrammable(true);//GLProfile.getDefault(); //getGL2ES1(); // getMaxProgrammable(true);// FixedFunc(true);
@@ -545,7 +550,7 @@ public class ChipCanvas implements GLEventListener, Observer {
      * The actual drawing surface is a Canvas and this method returns a
      * reference to it.
      *
-     * @return the actual drawing Canvas.
+     * @return the actual drawing Canvas, or null in a headless JVM.
      */
     public Canvas getCanvas() {
         return glCanvas;
@@ -779,6 +784,9 @@ public class ChipCanvas implements GLEventListener, Observer {
      * @see #display(com.jogamp.opengl.GLAutoDrawable)
      */
     public void paintFrame() {
+        if (glCanvas == null) {
+            return; // headless
+        }
 //        synchronized (glCanvas.getTreeLock()) {
         try {
 //                glCanvas.getContext().makeCurrent();
@@ -810,7 +818,9 @@ public class ChipCanvas implements GLEventListener, Observer {
      * calls repaint on the glCanvas
      */
     public void repaint() {
-        glCanvas.repaint();
+        if (glCanvas != null) {
+            glCanvas.repaint();
+        }
     }
 
     /**
@@ -819,7 +829,9 @@ public class ChipCanvas implements GLEventListener, Observer {
      * @param tm time to repaint within, in ms
      */
     public void repaint(final long tm) {
-        glCanvas.repaint(tm);
+        if (glCanvas != null) {
+            glCanvas.repaint(tm);
+        }
     }
 
     /**
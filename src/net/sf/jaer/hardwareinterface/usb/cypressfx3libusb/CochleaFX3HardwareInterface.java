@@ -149,8 +149,8 @@ public class CochleaFX3HardwareInterface extends CypressFX3Biasgen {
 
 		@Override
 		protected void translateEvents(final ByteBuffer b) {
-			synchronized (aePacketRawPool) {
-				final AEPacketRaw buffer = aePacketRawPool.writeBuffer();
+			synchronized (aePacketRawRing) {
+				final AEPacketRaw buffer = aePacketRawRing.writeBuffer();
 
 				// Truncate off any extra partial event.
 				if ((b.limit() & 0x01) != 0) {
@@ -308,7 +308,7 @@ public class CochleaFX3HardwareInterface extends CypressFX3Biasgen {
 				buffer.setNumEvents(eventCounter);
 				// write capture size
 				buffer.lastCaptureLength = eventCounter - buffer.lastCaptureIndex;
-			} // sync on aePacketRawPool
+			} // sync on aePacketRawRing
 		}
 
 		@Override
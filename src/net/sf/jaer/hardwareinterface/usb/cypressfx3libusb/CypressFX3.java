@@ -38,7 +38,7 @@ import net.sf.jaer.JaerConstants;
 import net.sf.jaer.aemonitor.AEListener;
 import net.sf.jaer.aemonitor.AEMonitorInterface;
 import net.sf.jaer.aemonitor.AEPacketRaw;
-import net.sf.jaer.aemonitor.AEPacketRawPool;
+import net.sf.jaer.aemonitor.AEPacketRawRing;
 import net.sf.jaer.chip.AEChip;
 import net.sf.jaer.chip.Chip;
 import net.sf.jaer.event.EventPacket;
@@ -191,10 +191,14 @@ public class CypressFX3 implements AEMonitorInterface, ReaderBufferControl, USBI
     public static final int AE_BUFFER_SIZE = 600000; // 100k should handle 5Meps at
     // 30FPS, but tobi increased to 600k to handle APS frames from Davis346B at 40FPS
     /**
-     * this is the size of the AEPacketRaw that are part of AEPacketRawPool that
-     * double buffer the translated events between rendering and capture threads
+     * this is the size of the AEPacketRaw that hold the translated events
+     * between rendering and capture threads
      */
     protected int aeBufferSize = CypressFX3.prefs.getInt("CypressFX3.aeBufferSize", CypressFX3.AE_BUFFER_SIZE);
+    /**
+     * the number of AEPacketRaw in aePacketRawRing
+     */
+    protected int aePacketRingDepth = CypressFX3.prefs.getInt("CypressFX3.aePacketRingDepth", AEPacketRawRing.DEFAULT_DEPTH);
     /**
      * the event reader - a buffer pool thread from USBIO subclassing
      */
@@ -204,9 +208,12 @@ public class CypressFX3 implements AEMonitorInterface, ReaderBufferControl, USBI
      */
     protected AsyncStatusThread asyncStatusThread = null;
     /**
-     * The pool of raw AE packets, used for data transfer
+     * The ring of raw AE packets, used for data transfer. The acquisition
+     * thread fills and publishes packets while holding the monitor of the
+     * ring, so that allocateAEBuffers can exclude it; the consumer polls
+     * without locking.
      */
-    protected AEPacketRawPool aePacketRawPool = new AEPacketRawPool(this);
+    protected AEPacketRawRing aePacketRawRing = new AEPacketRawRing(this, aePacketRingDepth);
     private String stringDescription = "CypressFX3"; // default which is
     private USBPacketStatistics usbPacketStatistics = new USBPacketStatistics();
 
@@ -429,8 +436,8 @@ public class CypressFX3 implements AEMonitorInterface, ReaderBufferControl, USBI
      * <p>
      * This method also starts event acquisition if it is not running already.
      *
-     * Not thread safe but does use the thread-safe swap() method of
-     * AEPacketRawPool to swap data with the acquisition thread.
+     * Not thread safe but does use the lock-free pollAll() method of
+     * AEPacketRawRing to get the data from the acquisition thread.
      *
      * @return packet of events acquired.
      * @throws HardwareInterfaceException
@@ -457,17 +464,9 @@ public class CypressFX3 implements AEMonitorInterface, ReaderBufferControl, USBI
         // int[] timestamps;
         int nEvents;
 
-        // getString the 'active' buffer for events (the one that has just been
-        // written by the hardware thread)
-        // synchronized(aePacketRawPool){ // synchronize on aeReader so that we
-        // don't try to access the events at the
-        // same time
-        synchronized (aePacketRawPool) {
-            aePacketRawPool.swap();
-            lastEventsAcquired = aePacketRawPool.readBuffer();
-            eventCounter = 0;
-            realTimeEventCounterStart = 0;
-        }
+        // get the packets published by the hardware thread since the last call,
+        // without blocking it
+        lastEventsAcquired = aePacketRawRing.pollAll();
 
         nEvents = lastEventsAcquired.getNumEvents();
         computeEstimatedEventRate(lastEventsAcquired);
@@ -1084,7 +1083,7 @@ public class CypressFX3 implements AEMonitorInterface, ReaderBufferControl, USBI
              */
             @Override
             public void processTransfer(final RestrictedTransfer transfer) {
-                synchronized (aePacketRawPool) {
+                synchronized (aePacketRawRing) {
                     if (transfer.status() == LibUsb.TRANSFER_COMPLETED) {
                         usbPacketStatistics.addSample(transfer);
                         translateEvents(transfer.buffer());
@@ -1099,13 +1098,16 @@ public class CypressFX3 implements AEMonitorInterface, ReaderBufferControl, USBI
                             // synchronize here so that rendering thread doesn't
                             // swap the buffer out from under us while
                             // we process these events
-                            // aePacketRawPool.writeBuffer is also synchronized
-                            // so we the same lock twice which is ok
-                            final AEPacketRaw buffer = aePacketRawPool.writeBuffer();
+                            final AEPacketRaw buffer = aePacketRawRing.writeBuffer();
                             final int[] addresses = buffer.getAddresses();
                             final int[] timestamps = buffer.getTimestamps();
                             realTimeFilter(addresses, timestamps);
                         }
+                        // hand the events of this transfer to the consumer; if it is behind, keep appending to the same packet
+                        if (aePacketRawRing.publish()) {
+                            eventCounter = 0;
+                            realTimeEventCounterStart = 0;
+                        }
                     } else if (transfer.status() != LibUsb.TRANSFER_CANCELLED) {
                         CypressFX3.log.warning("ProcessAEData: Bytes transferred: " + transfer.actualLength() + "  Status: "
                                 + LibUsb.errorName(transfer.status()));
@@ -1278,8 +1280,36 @@ public class CypressFX3 implements AEMonitorInterface, ReaderBufferControl, USBI
      * e.g. rendering.
      */
     protected void allocateAEBuffers() {
-        synchronized (aePacketRawPool) {
-            aePacketRawPool.allocateMemory();
+        synchronized (aePacketRawRing) {
+            aePacketRawRing.allocateMemory();
+            eventCounter = 0;
+            realTimeEventCounterStart = 0;
+        }
+    }
+
+    /**
+     * @return the number of raw packets in the ring between the capture and
+     * rendering threads
+     */
+    public int getAEPacketRingDepth() {
+        return aePacketRingDepth;
+    }
+
+    /**
+     * Sets the number of raw packets in the ring between the capture and
+     * rendering threads. A deeper ring lets the capture thread publish more
+     * USB transfers before the consumer reads them. This call discards
+     * collected events.
+     *
+     * @param depth the number of packets, at least 2
+     */
+    public void setAEPacketRingDepth(final int depth) {
+        aePacketRingDepth = Math.max(2, depth);
+        CypressFX3.prefs.putInt("CypressFX3.aePacketRingDepth", aePacketRingDepth);
+        synchronized (aePacketRawRing) {
+            aePacketRawRing.setDepth(aePacketRingDepth);
+            eventCounter = 0;
+            realTimeEventCounterStart = 0;
         }
     }
 
@@ -1288,7 +1318,7 @@ public class CypressFX3 implements AEMonitorInterface, ReaderBufferControl, USBI
      */
     @Override
     public int getAEBufferSize() {
-        return aeBufferSize; // aePacketRawPool.writeBuffer().getCapacity();
+        return aeBufferSize; // aePacketRawRing.writeBuffer().getCapacity();
     }
 
     /**
@@ -206,8 +206,8 @@ public class DVXplorerFX3HardwareInterface extends CypressFX3 {
 
         @Override
         protected void translateEvents(final ByteBuffer b) {
-            synchronized (aePacketRawPool) {
-                final AEPacketRaw buffer = aePacketRawPool.writeBuffer();
+            synchronized (aePacketRawRing) {
+                final AEPacketRaw buffer = aePacketRawRing.writeBuffer();
 
                 // Truncate off any extra partial event.
                 if ((b.limit() & 0x01) != 0) {
@@ -576,7 +576,7 @@ public class DVXplorerFX3HardwareInterface extends CypressFX3 {
                 buffer.setNumEvents(eventCounter);
                 // write capture size
                 buffer.lastCaptureLength = eventCounter - buffer.lastCaptureIndex;
-            } // sync on aePacketRawPool
+            } // sync on aePacketRawRing
         }
 
         @Override
@@ -0,0 +1,471 @@
+/* MultiCameraEventMerger.java
+ *
+ * Streaming k-way merge of raw event streams from several cameras.
+ */
+package net.sf.jaer.stereopsis;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import net.sf.jaer.aemonitor.AEPacketRaw;
+import net.sf.jaer.eventio.AEFileInputStream;
+
+/**
+ * Merges the raw event streams of several cameras into a single stream that
+ * is ordered by timestamp, without waiting for whole packets.
+ * <p>
+ * The events of each camera are appended to a queue of primitive timestamps
+ * and addresses by {@link #offer}. {@link #merge} then outputs, in timestamp
+ * order, all queued events up to the release time, using a binary min-heap of
+ * the cameras keyed by the timestamp of the first queued event of each.
+ * Assuming that the events of each camera are in time order, an event is
+ * certainly next once every camera has delivered an event at least as late
+ * (the watermark of that camera), so the release time is the earliest
+ * watermark of the cameras that have not ended.
+ * <p>
+ * A camera that sends no events (e.g. a DVS looking at a static scene) would
+ * hold back all the others, so the release time is never allowed to lag the
+ * latest timestamp of any camera by more than the latency budget. Events that
+ * arrive later than the release time that was already used (i.e. from a camera
+ * that was skewed by more than the latency budget) are output with the next
+ * merge and counted as late events, so they are not lost, but they break the
+ * time order. The number of events queued for a camera is bounded too; when a
+ * queue is full, its oldest events are released.
+ * <p>
+ * Timestamps are compared by their difference so that the merge works across
+ * the wrapping of the 32 bit timestamp.
+ */
+public class MultiCameraEventMerger {
+
+    private static final Logger log = Logger.getLogger("net.sf.jaer");
+    /**
+     * Default latency budget in timestamp ticks (us)
+     */
+    public static final int DEFAULT_LATENCY_BUDGET_US = 50000;
+    /**
+     * Default maximum number of events queued for each camera
+     */
+    public static final int DEFAULT_MAX_QUEUED_EVENTS = 1 << 20;
+
+    /**
+     * Labels the raw addresses of a packet with the camera they come from
+     */
+    public interface CameraLabeler {
+
+        void labelCamera(AEPacketRaw packet, int camera);
+    }
+
+    /**
+     * The queued events of one camera
+     */
+    private static final class Queue {
+
+        int[] timestamps = new int[1024], addresses = new int[1024];
+        int head = 0, tail = 0; // queued events are head..tail-1
+        int watermark; // the latest timestamp received
+        boolean received = false, ended = false;
+
+        int size() {
+            return tail - head;
+        }
+
+        void add(int[] ts, int[] addr, int n) {
+            if (tail + n > timestamps.length) {
+                final int size = size();
+                if (size + n > timestamps.length) {
+                    final int cap = Math.max(2 * timestamps.length, size + n);
+                    timestamps = copy(timestamps, head, size, new int[cap]);
+                    addresses = copy(addresses, head, size, new int[cap]);
+                } else { // compact
+                    copy(timestamps, head, size, timestamps);
+                    copy(addresses, head, size, addresses);
+                }
+                head = 0;
+                tail = size;
+            }
+            System.arraycopy(ts, 0, timestamps, tail, n);
+            System.arraycopy(addr, 0, addresses, tail, n);
+            tail += n;
+        }
+
+        private static int[] copy(int[] src, int from, int length, int[] dst) {
+            System.arraycopy(src, from, dst, 0, length);
+            return dst;
+        }
+    }
+
+    private final Queue[] queues;
+    private final int[] heap; // camera numbers, ordered by the first queued timestamp of each
+    private int heapSize = 0;
+    private int latencyBudgetUs = DEFAULT_LATENCY_BUDGET_US;
+    private int maxQueuedEvents = DEFAULT_MAX_QUEUED_EVENTS;
+    private int releaseTime;
+    private boolean released = false; // true once releaseTime has been used
+    private long eventsMerged = 0, lateEvents = 0, latencyBudgetReleases = 0, fullQueueReleases = 0;
+    private int maxQueuedEventsSeen = 0;
+
+    /**
+     * Makes a new merger
+     *
+     * @param numCameras the number of input streams
+     */
+    public MultiCameraEventMerger(int numCameras) {
+        if (numCameras < 1) {
+            throw new IllegalArgumentException("numCameras=" + numCameras + " must be at least 1");
+        }
+        queues = new Queue[numCameras];
+        for (int i = 0; i < numCameras; i++) {
+            queues[i] = new Queue();
+        }
+        heap = new int[numCameras];
+    }
+
+    /**
+     * @return the number of input streams
+     */
+    public int getNumCameras() {
+        return queues.length;
+    }
+
+    /**
+     * Queues the events of a packet from one camera. The events must be in
+     * time order.
+     *
+     * @param camera the camera number
+     * @param packet the events; the packet may be reused by the caller after
+     * the method returns
+     */
+    synchronized public void offer(int camera, AEPacketRaw packet) {
+        if ((packet == null) || (packet.getNumEvents() == 0)) {
+            return;
+        }
+        final Queue q = queues[camera];
+        final int n = packet.getNumEvents();
+        final int[] ts = packet.getTimestamps();
+        if (released) {
+            for (int i = 0; (i < n) && (ts[i] - releaseTime < 0); i++) {
+                lateEvents++;
+            }
+        }
+        q.add(ts, packet.getAddresses(), n);
+        if (!q.received || (ts[n - 1] - q.watermark > 0)) {
+            q.watermark = ts[n - 1];
+        }
+        q.received = true;
+    }
+
+    /**
+     * Marks the end of the stream of a camera, e.g. the end of a recording, so
+     * that it no longer holds back the other cameras
+     *
+     * @param camera the camera number
+     */
+    synchronized public void endOfStream(int camera) {
+        queues[camera].ended = true;
+    }
+
+    /**
+     * Clears all queued events and statistics, e.g. after a timestamp reset
+     */
+    synchronized public void reset() {
+        for (Queue q : queues) {
+            q.head = 0;
+            q.tail = 0;
+            q.received = false;
+            q.ended = false;
+        }
+        released = false;
+        eventsMerged = 0;
+        lateEvents = 0;
+        latencyBudgetReleases = 0;
+        fullQueueReleases = 0;
+        maxQueuedEventsSeen = 0;
+    }
+
+    /**
+     * Outputs the queued events that are certainly next in time order, or
+     * that are older than the latency budget allows
+     *
+     * @param out the packet to write to; it is cleared first
+     * @return the number of events output
+     */
+    synchronized public int merge(AEPacketRaw out) {
+        boolean any = false, open = false, bounded = true;
+        int t = 0, latest = 0;
+        for (Queue q : queues) {
+            if (!q.received) {
+                bounded &= q.ended; // a camera that has not sent anything yet could send any timestamp
+                continue;
+            }
+            if (!any || (q.watermark - latest > 0)) {
+                latest = q.watermark;
+            }
+            if (!q.ended && (!open || (q.watermark - t < 0))) {
+                t = q.watermark;
+                open = true;
+            }
+            any = true;
+        }
+        if (!any) {
+            out.clear();
+            return 0;
+        }
+        if (!bounded) {
+            t = latest - latencyBudgetUs;
+            latencyBudgetReleases++;
+        } else if (!open) {
+            t = latest; // all cameras have ended
+        } else if (latest - latencyBudgetUs - t > 0) {
+            t = latest - latencyBudgetUs;
+            latencyBudgetReleases++;
+        }
+        for (Queue q : queues) {
+            final int size = q.size();
+            if (size > maxQueuedEventsSeen) {
+                maxQueuedEventsSeen = size;
+            }
+            if ((size > maxQueuedEvents) && (q.timestamps[q.tail - maxQueuedEvents - 1] - t > 0)) {
+                t = q.timestamps[q.tail - maxQueuedEvents - 1]; // release the oldest events of a full queue
+                fullQueueReleases++;
+            }
+        }
+        if (!released || (t - releaseTime > 0)) {
+            releaseTime = t;
+        }
+        released = true;
+        return mergeUpTo(releaseTime, out);
+    }
+
+    /**
+     * Outputs all queued events in time order, e.g. at the end of the
+     * recordings
+     *
+     * @param out the packet to write to; it is cleared first
+     * @return the number of events output
+     */
+    synchronized public int flush(AEPacketRaw out) {
+        int latest = 0;
+        boolean any = false;
+        for (Queue q : queues) {
+            if (q.size() > 0 && (!any || (q.timestamps[q.tail - 1] - latest > 0))) {
+                latest = q.timestamps[q.tail - 1];
+                any = true;
+            }
+        }
+        if (!any) {
+            out.clear();
+            return 0;
+        }
+        if (!released || (latest - releaseTime > 0)) {
+            releaseTime = latest;
+        }
+        released = true;
+        return mergeUpTo(latest, out);
+    }
+
+    /**
+     * Outputs all queued events with timestamps up to t (and all late
+     * events, which are earlier than t) in timestamp order
+     */
+    private int mergeUpTo(int t, AEPacketRaw out) {
+        int n = 0;
+        heapSize = 0;
+        for (int i = 0; i < queues.length; i++) {
+            final Queue q = queues[i];
+            n += q.size();
+            if ((q.size() > 0) && (q.timestamps[q.head] - t <= 0)) {
+                heap[heapSize++] = i;
+                siftUp(heapSize - 1);
+            }
+        }
+        out.clear();
+        out.ensureCapacity(n);
+        final int[] ots = out.getTimestamps(), oaddr = out.getAddresses();
+        int count = 0;
+        while (heapSize > 0) {
+            final Queue q = queues[heap[0]];
+            final int[] ts = q.timestamps;
+            // output the run of events of this camera up to the first event of the next camera, which is one of the children of the root
+            int limit = t;
+            if (heapSize > 1) {
+                final int next = ((heapSize > 2) && less(2, 1)) ? first(heap[2]) : first(heap[1]);
+                if (next - limit < 0) {
+                    limit = next;
+                }
+            }
+            int i = q.head;
+            do {
+                ots[count] = ts[i];
+                oaddr[count++] = q.addresses[i++];
+            } while ((i < q.tail) && (ts[i] - limit <= 0));
+            q.head = i;
+            if ((q.size() > 0) && (ts[q.head] - t <= 0)) {
+                siftDown(0);
+            } else {
+                heap[0] = heap[--heapSize];
+                if (heapSize > 0) {
+                    siftDown(0);
+                }
+            }
+        }
+        out.setNumEvents(count);
+        eventsMerged += count;
+        return count;
+    }
+
+    private int first(int camera) {
+        final Queue q = queues[camera];
+        return q.timestamps[q.head];
+    }
+
+    private boolean less(int i, int j) {
+        return first(heap[i]) - first(heap[j]) < 0;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            final int p = (i - 1) / 2;
+            if (!less(i, p)) {
+                return;
+            }
+            swap(i, p);
+            i = p;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            final int l = (2 * i) + 1, r = l + 1;
+            int m = i;
+            if ((l < heapSize) && less(l, m)) {
+                m = l;
+            }
+            if ((r < heapSize) && less(r, m)) {
+                m = r;
+            }
+            if (m == i) {
+                return;
+            }
+            swap(i, m);
+            i = m;
+        }
+    }
+
+    private void swap(int i, int j) {
+        final int h = heap[i];
+        heap[i] = heap[j];
+        heap[j] = h;
+    }
+
+    /**
+     * Merges recordings, one per camera, reading them in chunks of events
+     * until all have ended
+     *
+     * @param inputs the recordings; their repeat flag is cleared
+     * @param eventsPerRead the number of events read from each recording at
+     * a time
+     * @param labeler labels the events with the camera number, or null to
+     * leave the addresses as they are
+     * @param output gets each merged packet; the packet is reused for the
+     * next one
+     * @return the number of events merged
+     * @throws IOException if a recording cannot be read
+     */
+    public long mergeRecordings(AEFileInputStream[] inputs, int eventsPerRead, CameraLabeler labeler, Consumer<AEPacketRaw> output) throws IOException {
+        if (inputs.length != queues.length) {
+            throw new IllegalArgumentException(inputs.length + " inputs for merger of " + queues.length + " cameras");
+        }
+        reset();
+        final AEPacketRaw out = new AEPacketRaw(eventsPerRead);
+        for (AEFileInputStream in : inputs) {
+            in.setRepeat(false);
+        }
+        int ended = 0;
+        while (ended < inputs.length) {
+            for (int i = 0; i < inputs.length; i++) {
+                if (queues[i].ended) {
+                    continue;
+                }
+                final long remaining = inputs[i].size() - inputs[i].position();
+                try {
+                    if (remaining <= 0) {
+                        throw new EOFException();
+                    }
+                    final AEPacketRaw p = inputs[i].readPacketByNumber((int) Math.min(eventsPerRead, remaining));
+                    if (labeler != null) {
+                        labeler.labelCamera(p, i);
+                    }
+                    offer(i, p);
+                } catch (EOFException e) {
+                    endOfStream(i);
+                    ended++;
+                }
+            }
+            if (merge(out) > 0) {
+                output.accept(out);
+            }
+        }
+        if (flush(out) > 0) {
+            output.accept(out);
+        }
+        log.info(toString());
+        return eventsMerged;
+    }
+
+    /**
+     * @return the maximum time in timestamp ticks (us) that events are held
+     * back waiting for earlier events from other cameras
+     */
+    public int getLatencyBudgetUs() {
+        return latencyBudgetUs;
+    }
+
+    /**
+     * @param latencyBudgetUs the maximum time in timestamp ticks (us) that
+     * events are held back waiting for earlier events from other cameras
+     */
+    synchronized public void setLatencyBudgetUs(int latencyBudgetUs) {
+        this.latencyBudgetUs = Math.max(0, latencyBudgetUs);
+    }
+
+    /**
+     * @return the maximum number of events queued for each camera
+     */
+    public int getMaxQueuedEvents() {
+        return maxQueuedEvents;
+    }
+
+    /**
+     * @param maxQueuedEvents the maximum number of events queued for each
+     * camera before its oldest events are released
+     */
+    synchronized public void setMaxQueuedEvents(int maxQueuedEvents) {
+        this.maxQueuedEvents = Math.max(1, maxQueuedEvents);
+    }
+
+    /**
+     * @return the number of events queued for all cameras
+     */
+    synchronized public int getQueuedEvents() {
+        int n = 0;
+        for (Queue q : queues) {
+            n += q.size();
+        }
+        return n;
+    }
+
+    /**
+     * @return the number of events that arrived after later events were
+     * already output
+     */
+    public long getLateEvents() {
+        return lateEvents;
+    }
+
+    @Override
+    synchronized public String toString() {
+        return String.format("MultiCameraEventMerger with %d cameras: %,d events merged, %,d queued (max %,d per camera), %,d late, %,d latency budget releases, %,d full queue releases",
+                queues.length, eventsMerged, getQueuedEvents(), maxQueuedEventsSeen, lateEvents, latencyBudgetReleases, fullQueueReleases);
+    }
+}
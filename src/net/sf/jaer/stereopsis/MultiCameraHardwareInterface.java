@@ -65,6 +65,8 @@ public class MultiCameraHardwareInterface implements AEMonitorInterface, ReaderB
     private AEFifo[] aeFifos = new AEFifo[NUM_CAMERAS];    // this packet is re-used for outputting the merged events
     public final int INITIAL_CAPACITY = CypressFX3.AE_BUFFER_SIZE;
     private AEPacketRaw aeOut = new AEPacketRaw(INITIAL_CAPACITY * NUM_CAMERAS);//    AEPacketRaw bufLeft=new AEPacketRaw(BUFFER_CAPACITY); // holds events that arrive after the last event from the other packet.
+    /** Merges the events from the cameras in timestamp order, holding back events that may be followed by earlier events from other cameras */
+    private MultiCameraEventMerger merger = new MultiCameraEventMerger(NUM_CAMERAS);
     boolean openMultipleView=true;
     
     public void setChip(AEChip chip) {
@@ -238,16 +240,30 @@ public class MultiCameraHardwareInterface implements AEMonitorInterface, ReaderB
             for (AEFifo f : aeFifos) {
                 f.reset(null); // isEmpty will return true after this reset
             }
+            merger.reset();
             try {
                 Thread.sleep(RESET_DELAY_MS);
             } catch (InterruptedException e) {
             }
         } // requestTimestampReset
 
-        // we only popNextEvent data from a camera if we have used up all the data from it that we got before.
-        // we can only output an event (to the user) if we know it is the next event, meaning it has to be
-        // followed by an event from the other cameras.
+        if (!ignoreTimestampNonmonotonicity) {
+            // queue all available events from all sources, and pass out those that are known to be next in time order,
+            // i.e. that are not later than the latest event from any other camera (or older than the latency budget)
+            for (int i = 0; i < aemons.length; i++) {
+                AEPacketRaw ae = aemons[i].acquireAvailableEventsFromDriver();
+                labelCamera(ae, i);
+                if (requestTimestampReset) {
+                    log.info("after timestampsReset camera " + i + " acquired " + ae + " t0,t1=" + ae.getFirstTimestamp() + ", " + ae.getLastTimestamp());
+                }
+                merger.offer(i, ae);
+            }
+            requestTimestampReset = false;
+            merger.merge(aeOut);
+            return aeOut;
+        }
 
+        // we only popNextEvent data from a camera if we have used up all the data from it that we got before.
         initAdd();
         // popNextEvent available events from all sources
 
@@ -263,66 +279,16 @@ public class MultiCameraHardwareInterface implements AEMonitorInterface, ReaderB
 
         requestTimestampReset = false;
 
-//       // if we haven't gotten events from one interface for too long, reset timestamps 
-//        if( !aeRight.isEmpty()  && !aeLeft.isEmpty() && (aeRight.ae.getNumEvents()>2 || aeLeft.ae.getNumEvents()>2) ){ 
-//            // && (Math.abs(aeRight.getTimeAcquired()-aeLeft.getTimeAcquired())<RESET_TIMESTAMPS_THRESHOLD_DT_US/1000)
-//            int dt=Math.abs(aeRight.ae.getLastTimestamp()-aeLeft.ae.getLastTimestamp());
-//            if(dt>RESET_TIMESTAMPS_THRESHOLD_DT_US){
-//                log.warning("resetTimestamps because dt="+dt+" > "+RESET_TIMESTAMPS_THRESHOLD_DT_US);
-//                resetTimestamps();
-//            }
-//        }
-
-        if (ignoreTimestampNonmonotonicity) {
-            // here just igmore temporal ordering, pass out events from both interfaces, in order of cameras
-            for (AEFifo f : aeFifos) {
-                while (!f.isEmpty()) {
-                    addEvent(f);
-                }
-            }
-
-        } else {
-            // here we order the events and only pass out an event from an interface if there is a later event from the other interface
-            // each time we pop event we also check if fifo is empty. If so, we break from this loop since there is the possibility that an earlier event
-            // could come from this stream than from another one.
-            boolean eventsAvailable = isEventsFromAllAvailable();
-            while (eventsAvailable) {
-                // while both packets still have events, pick the earliest event and write it out
-                int tsMin = Integer.MAX_VALUE;
-                int ind = 0;
-                for (int i = 0; i < aeFifos.length; i++) {
-                    AEFifo f = aeFifos[i];
-                    int t = f.peekNextTimestamp();
-                    if (t < tsMin) {
-                        tsMin = t;
-                        ind = i;                        
-                    }
-                }
-                if (count==timestamps.length) {
-                    break;
-                }
-                addEvent(aeFifos[ind]);
-                if (aeFifos[ind].isEmpty()) {
-                    eventsAvailable = false;
-                    break;
-                }
+        // here just igmore temporal ordering, pass out events from both interfaces, in order of cameras
+        for (AEFifo f : aeFifos) {
+            while (!f.isEmpty()) {
+                addEvent(f);
             }
         }
         finishAdd();
         return aeOut;
     }
 
-    private boolean isEventsFromAllAvailable() {
-        boolean allHaveEvent = true;
-        for (AEFifo f : aeFifos) {
-            if (f.isEmpty()) {
-                allHaveEvent = false;
-                break;
-            }
-        }
-        return allHaveEvent;
-    }
-
     public int getNumEventsAcquired() {
         return aeOut.getNumEvents();
     }
@@ -586,9 +552,29 @@ public class MultiCameraHardwareInterface implements AEMonitorInterface, ReaderB
      */
     public void setIgnoreTimestampNonmonotonicity(boolean yes) {
         ignoreTimestampNonmonotonicity = yes;
+        merger.reset();
         log.info("ignoreTimestampNonmonotonicity=" + ignoreTimestampNonmonotonicity);
 
     }
+
+    /** @return the maximum time in us that events from one camera are held back waiting for earlier events from the others */
+    public int getLatencyBudgetUs() {
+        return merger.getLatencyBudgetUs();
+    }
+
+    /** Sets the maximum time that events from one camera are held back waiting for earlier events from the others.
+     * Events that arrive later than this from a lagging camera are passed out immediately, out of timestamp order.
+     *
+     * @param latencyBudgetUs the latency budget in us
+     */
+    public void setLatencyBudgetUs(int latencyBudgetUs) {
+        merger.setLatencyBudgetUs(latencyBudgetUs);
+    }
+
+    /** @return the merger that orders the events from the cameras */
+    public MultiCameraEventMerger getMerger() {
+        return merger;
+    }
     
     /**Return the number of HardwareInterface.
      * @return the number of hardware interface (number of cameras)
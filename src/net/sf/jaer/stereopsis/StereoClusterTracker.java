@@ -151,6 +151,14 @@ public class StereoClusterTracker extends RectangularClusterTracker{
 	}
 
 
+	/** Stereo clusters take events shifted by their disparity, so they are not found by the grid index of the cluster regions.
+	 * @return false
+	 */
+	@Override
+	protected boolean isClusterGridIndexUsable (){
+		return false;
+	}
+
 	//    /** Factory method to create a new Cluster; override when subclassing Cluster.
 	//     *
 	//     * @return a new empty Cluster
@@ -25,6 +25,10 @@ import javax.swing.SwingWorker;
  * Finds subclasses of a given class name in classes on the loaded classpath.
  * Classes are cached in a HashMap to reduce cost of subsequent lookups.
  * <p>
+ * If the jAER jar contains a SubclassIndex, which is generated by the build,
+ * the subclasses are read from it without loading them. A subclass list
+ * cached after a rescan is used instead if it is newer than the index.
+ * <p>
  * See http://www.javaworld.com/javaworld/javatips/jw-javatip113.html?page=2
  *
  * @author tobi
@@ -100,7 +104,7 @@ public class SubclassFinder {
             Class c;
             if ((c = map.get(name)) == null) {
                 try {
-                    c = Class.forName(name);
+                    c = Class.forName(name, false, SubclassFinder.class.getClassLoader()); // don't initialize, we only need its modifiers, super classes and annotations
                     map.put(name, c);
                 } catch (ClassNotFoundException e) {
                     log.warning("caught " + e + " when trying to get class named " + name);
@@ -172,6 +176,8 @@ public class SubclassFinder {
                 log.warning("tried to find subclasses of null class name, returning empty list");
                 return classes;
             }
+            final SubclassIndex index = useCacheIfAvailable ? SubclassIndex.getInstance() : null;
+            final List<ClassNameWithDescriptionAndDevelopmentStatus> indexedClasses = index == null ? null : index.getSubclasses(superClassName);
             // see if cache should be used
             if (useCacheIfAvailable && className2subclassListFileNameMap != null) {
                 String cachefilename = className2subclassListFileNameMap.get(superClassName);
@@ -182,6 +188,10 @@ public class SubclassFinder {
                 if (cachefilename != null) {
                     f = new File(cachefilename);
                 }
+                if (f != null && indexedClasses != null && f.lastModified() < index.getGeneratedTimeMs()) {
+                    log.info("cache file " + f + " is older than the subclass index; using the index");
+                    f = null;
+                }
                 if (f != null && f.exists() && f.isFile()) {
                     log.info("For super class " + superClassName + ", found cache file " + f.getAbsolutePath() + "; reading subclasses from this file");
                     LineNumberReader is = new LineNumberReader(new FileReader(f));
@@ -196,24 +206,40 @@ public class SubclassFinder {
                     String line = is.readLine();
                     int linesReadCount = 0;
                     while (line != null) {
-                        Class c = Class.forName(line);
-                        final ClassNameWithDescriptionAndDevelopmentStatus myFoundClass = new ClassNameWithDescriptionAndDevelopmentStatus(c);
-//sees if e.g. superclass AEChip can be cast from e.g. c=DVS128, i.e. can we do (AEChip)DVS128?
-                        classes.add(myFoundClass);
+                        ClassNameWithDescriptionAndDevelopmentStatus myFoundClass = index == null ? null : index.getClass(line);
+                        if (myFoundClass == null) { // not in the index, e.g. a class added after the build
+                            Class c = FastClassFinder.forName(line);
+                            if (c != null) {
+                                myFoundClass = new ClassNameWithDescriptionAndDevelopmentStatus(c);
+                            }
+                        }
+                        if (myFoundClass != null) {
+                            classes.add(myFoundClass);
+                            publish(myFoundClass);
+                        }
                         int prog = (int) (100 * ((float) (linesReadCount++) / nLines));
                         if (prog > 100) {
                             prog = 100;
                         }
                         setProgress(prog);
-                        publish(myFoundClass);
                         line = is.readLine();
                     }
                     long duration = System.currentTimeMillis() - startTime;
                     log.info("Read " + classes.size() + " subclasses from cache file " + cachefilename + " in " + duration / 1000 + "s");
                     return classes;
                 } else {
-                    log.info("Cache filename " + cachefilename + " does not lead to a readable file; will rescan entire classpath");
+                    log.info("Cache filename " + cachefilename + " does not lead to a readable file");
+                }
+            }
+            if (indexedClasses != null) {
+                classes.addAll(indexedClasses);
+                for (ClassNameWithDescriptionAndDevelopmentStatus c : indexedClasses) {
+                    publish(c);
                 }
+                setProgress(100);
+                long duration = System.currentTimeMillis() - startTime;
+                log.info("Read " + classes.size() + " subclasses of " + superClassName + " from subclass index in " + duration + "ms");
+                return classes;
             }
             log.info("No cache found for " + superClassName + "; now scanning entire classpath to build list of subclasses of " + superClassName);
             Class superClass = FastClassFinder.forName(superClassName);
@@ -347,6 +373,13 @@ public class SubclassFinder {
             log.warning("tried to find subclasses of null class name, returning empty list");
             return classes;
         }
+        SubclassIndex index = SubclassIndex.getInstance();
+        if (index != null && index.getSubclasses(superClassName) != null) {
+            for (ClassNameWithDescriptionAndDevelopmentStatus c : index.getSubclasses(superClassName)) {
+                classes.add(c.getClassName());
+            }
+            return classes;
+        }
         if (progressMonitor != null) {
             progressMonitor.setNote("Building class list");
         }
@@ -0,0 +1,314 @@
+/* SubclassIndex.java
+ *
+ * Build-time index of jAER subclasses for SubclassFinder.
+ */
+package net.sf.jaer.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+import net.sf.jaer.Description;
+import net.sf.jaer.DevelopmentStatus;
+
+/**
+ * An index of the non-abstract subclasses of the classes that SubclassFinder
+ * is asked about (event filters and chips), with their Description and
+ * DevelopmentStatus.
+ * <p>
+ * The index is generated after compilation by running main on the compiled
+ * classes (see the -post-compile target in build.xml) and is stored as the
+ * resource RESOURCE in the jAER jar, so it always matches the classes it is
+ * shipped with. Reading it does not load any of the indexed classes.
+ * <p>
+ * Each line of the index is the super class name, the class name, the
+ * development status and the description, separated by tabs. Tabs, newlines
+ * and backslashes in descriptions are escaped with backslashes.
+ */
+public class SubclassIndex {
+
+    private final static Logger log = Logger.getLogger("net.sf.jaer");
+
+    /**
+     * The class path resource of the index
+     */
+    public static final String RESOURCE = "net/sf/jaer/util/subclass-index.txt";
+
+    /**
+     * The super classes indexed by default
+     */
+    public static final String[] DEFAULT_SUPER_CLASSES = {
+        "net.sf.jaer.eventprocessing.EventFilter",
+        "net.sf.jaer.eventprocessing.EventFilter2D",
+        "net.sf.jaer.chip.AEChip"
+    };
+
+    private static final String GENERATED_KEY = "# generated-ms ";
+
+    private static SubclassIndex instance = null;
+    private static boolean loaded = false;
+
+    private final HashMap<String, List<ClassNameWithDescriptionAndDevelopmentStatus>> superClass2subclasses = new HashMap<>();
+    private final HashMap<String, ClassNameWithDescriptionAndDevelopmentStatus> className2class = new HashMap<>();
+    private long generatedTimeMs = 0;
+
+    private SubclassIndex() {
+    }
+
+    /**
+     * Returns the index, loading it on first use
+     *
+     * @return the index, or null if there is no index on the class path
+     */
+    public static synchronized SubclassIndex getInstance() {
+        if (!loaded) {
+            loaded = true;
+            try (InputStream is = SubclassIndex.class.getClassLoader().getResourceAsStream(RESOURCE)) {
+                if (is == null) {
+                    log.info("no subclass index resource " + RESOURCE + " on class path; SubclassFinder will use its cache or scan the class path");
+                } else {
+                    instance = read(is);
+                    log.info("loaded subclass index with " + instance.className2class.size() + " classes of " + instance.superClass2subclasses.size() + " super classes");
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warning("could not read subclass index " + RESOURCE + ": " + e.toString());
+                instance = null;
+            }
+        }
+        return instance;
+    }
+
+    private static SubclassIndex read(InputStream is) throws IOException {
+        SubclassIndex index = new SubclassIndex();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith(GENERATED_KEY)) {
+                index.generatedTimeMs = Long.parseLong(line.substring(GENERATED_KEY.length()).trim());
+                continue;
+            }
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\t", -1);
+            if (fields.length != 4) {
+                throw new IOException("malformed line \"" + line + "\"");
+            }
+            String className = fields[1];
+            ClassNameWithDescriptionAndDevelopmentStatus c = index.className2class.get(className);
+            if (c == null) {
+                c = new ClassNameWithDescriptionAndDevelopmentStatus(className,
+                        fields[3].isEmpty() ? null : unescape(fields[3]),
+                        fields[2].isEmpty() ? null : developmentStatus(DevelopmentStatus.Status.valueOf(fields[2])));
+                index.className2class.put(className, c);
+            }
+            index.superClass2subclasses.computeIfAbsent(fields[0], k -> new ArrayList<>()).add(c);
+        }
+        return index;
+    }
+
+    /**
+     * @param superClassName the fully qualified name of the super class
+     * @return the subclasses, or null if the super class is not indexed
+     */
+    public List<ClassNameWithDescriptionAndDevelopmentStatus> getSubclasses(String superClassName) {
+        List<ClassNameWithDescriptionAndDevelopmentStatus> l = superClass2subclasses.get(superClassName);
+        return l == null ? null : Collections.unmodifiableList(l);
+    }
+
+    /**
+     * @param className the fully qualified class name
+     * @return the indexed class, or null if it is not in the index
+     */
+    public ClassNameWithDescriptionAndDevelopmentStatus getClass(String className) {
+        return className2class.get(className);
+    }
+
+    /**
+     * @return the time the index was generated in ms since the epoch, or 0 if
+     * unknown
+     */
+    public long getGeneratedTimeMs() {
+        return generatedTimeMs;
+    }
+
+    private static final EnumMap<DevelopmentStatus.Status, DevelopmentStatus> statusAnnotations = new EnumMap<>(DevelopmentStatus.Status.class);
+
+    /**
+     * @return a DevelopmentStatus annotation with the value status, like the
+     * one that annotates the class
+     */
+    private static synchronized DevelopmentStatus developmentStatus(final DevelopmentStatus.Status status) {
+        return statusAnnotations.computeIfAbsent(status, s -> new DevelopmentStatus() {
+            @Override
+            public DevelopmentStatus.Status value() {
+                return s;
+            }
+
+            @Override
+            public Class<? extends Annotation> annotationType() {
+                return DevelopmentStatus.class;
+            }
+
+            @Override
+            public String toString() {
+                return "@" + DevelopmentStatus.class.getName() + "(" + s + ")";
+            }
+        });
+    }
+
+    private static String escape(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String unescape(String s) {
+        if (s.indexOf('\\') < 0) {
+            return s;
+        }
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\' && i + 1 < s.length()) {
+                c = s.charAt(++i);
+                switch (c) {
+                    case 't':
+                        c = '\t';
+                        break;
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 'r':
+                        c = '\r';
+                        break;
+                }
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes the index of the classes in a folder of compiled classes. The
+     * classes are loaded without initializing them; the folder must be on the
+     * class path together with the libraries the classes use.
+     *
+     * @param classesDir the root folder of the compiled classes
+     * @param indexFile the file to write
+     * @param superClassNames the super classes to index
+     * @throws IOException if the folder cannot be listed or the file cannot be
+     * written
+     */
+    public static void generate(File classesDir, File indexFile, String[] superClassNames) throws IOException {
+        final ClassLoader loader = SubclassIndex.class.getClassLoader();
+        ArrayList<Class> superClasses = new ArrayList<>();
+        for (String s : superClassNames) {
+            try {
+                superClasses.add(Class.forName(s, false, loader));
+            } catch (ClassNotFoundException e) {
+                log.warning("super class " + s + " not found; not indexing it");
+            }
+        }
+        final Path root = classesDir.toPath();
+        ArrayList<String> classNames = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(root)) {
+            files.filter(p -> p.toString().endsWith(".class")).forEach(p -> {
+                String s = root.relativize(p).toString();
+                s = s.substring(0, s.length() - ".class".length()).replace(File.separatorChar, '.');
+                if (s.indexOf('$') < 0) { // inner classes are not listed by SubclassFinder either
+                    classNames.add(s);
+                }
+            });
+        }
+        Collections.sort(classNames);
+        int count = 0, failed = 0;
+        indexFile.getAbsoluteFile().getParentFile().mkdirs();
+        try (PrintWriter w = new PrintWriter(indexFile, "UTF-8")) {
+            w.println("# jAER subclass index of " + superClasses.size() + " super classes, generated " + new Date());
+            w.println(GENERATED_KEY + System.currentTimeMillis());
+            for (String name : classNames) {
+                final Class c;
+                try {
+                    c = Class.forName(name, false, loader);
+                    if (Modifier.isAbstract(c.getModifiers())) {
+                        continue;
+                    }
+                } catch (ClassNotFoundException | LinkageError e) {
+                    failed++;
+                    continue;
+                }
+                for (Class superClass : superClasses) {
+                    if (c == superClass || !superClass.isAssignableFrom(c)) {
+                        continue;
+                    }
+                    final Description description = (Description) c.getAnnotation(Description.class);
+                    final DevelopmentStatus status = (DevelopmentStatus) c.getAnnotation(DevelopmentStatus.class);
+                    w.println(superClass.getName() + "\t" + name + "\t"
+                            + (status == null ? "" : status.value().name()) + "\t"
+                            + (description == null ? "" : escape(description.value())));
+                    count++;
+                }
+            }
+        }
+        log.info(String.format("wrote %d subclass entries of %d classes to %s; %d classes could not be loaded", count, classNames.size(), indexFile, failed));
+    }
+
+    /**
+     * Generates the index.
+     *
+     * @param args the folder of compiled classes, the index file to write, and
+     * optionally the super classes to index (by default
+     * DEFAULT_SUPER_CLASSES)
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("usage: java net.sf.jaer.util.SubclassIndex <classesDir> <indexFile> [superClassName ...]");
+            System.exit(1);
+        }
+        String[] superClassNames = DEFAULT_SUPER_CLASSES;
+        if (args.length > 2) {
+            superClassNames = new String[args.length - 2];
+            System.arraycopy(args, 2, superClassNames, 0, superClassNames.length);
+        }
+        try {
+            generate(new File(args[0]), new File(args[1]), superClassNames);
+        } catch (IOException e) {
+            System.err.println("could not generate subclass index: " + e);
+            System.exit(1);
+        }
+    }
+}
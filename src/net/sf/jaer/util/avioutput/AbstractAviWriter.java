@@ -77,6 +77,9 @@ public class AbstractAviWriter extends EventFilter2DMouseAdaptor implements Fram
     @Preferred private int frameRate = getInt("frameRate", 30);
     private boolean writeOnlyWhenMousePressed = getBoolean("writeOnlyWhenMousePressed", false);
     protected volatile boolean writeEnabled = true;
+    private boolean encodeInBackground = getBoolean("encodeInBackground", true);
+    private int encoderQueueLength = getInt("encoderQueueLength", 16);
+    private int encoderThreads = getInt("encoderThreads", 1);
 
     public enum OutputContainer {
         AVI, AnimatedGIF, ImageSequence
@@ -104,6 +107,9 @@ public class AbstractAviWriter extends EventFilter2DMouseAdaptor implements Fram
         setPropertyTooltip("saveFramesAsIndividualImageFiles", "If selected, then the frames are saved as individual image files in the selected folder");
         setPropertyTooltip("writeOnlyWhenMousePressed", "If selected, then the frames are are saved only when the mouse is pressed in the AEViewer window");
         setPropertyTooltip("writeEnabled", "Selects if writing frames is enabled. Use this to temporarily disable output, or in conjunction with writeOnlyWhenMousePressed");
+        setPropertyTooltip("encodeInBackground", "<html>Frames are copied and encoded and written in background threads, so that rendering or file playback does not wait for the encoder.<p>Takes effect on the next recording.");
+        setPropertyTooltip("encoderQueueLength", "<html>Number of frames that can wait to be encoded when encodeInBackground is selected;<br>if the encoder falls further behind, writing a frame waits for it");
+        setPropertyTooltip("encoderThreads", "<html>Number of threads that encode frames of ImageSequence output when encodeInBackground is selected.<p>AVI and AnimatedGIF are always encoded by one thread.");
         chip.getSupport().addPropertyChangeListener(this);
 
     }
@@ -248,7 +254,7 @@ public class AbstractAviWriter extends EventFilter2DMouseAdaptor implements Fram
                 return;
             }
             frameSequenceOutputFolder = selectedFile;
-            setVideoOutputStream(new ImageSequenceWriter(frameSequenceOutputFolder));
+            setVideoOutputStream(maybeEncodeInBackground(new ImageSequenceWriter(frameSequenceOutputFolder)));
             if (rewindBeforeRecording) {
                 ignoreRewinwdEventFlag = true;
                 chip.getAeViewer().getAePlayer().rewind();
@@ -369,6 +375,7 @@ public class AbstractAviWriter extends EventFilter2DMouseAdaptor implements Fram
                     videoOutputStream = frameWriter;
                     break;
             }
+            videoOutputStream = maybeEncodeInBackground(videoOutputStream);
         } catch (IOException ex) {
             JOptionPane.showMessageDialog(null, ex.toString(), "Couldn't create output", JOptionPane.WARNING_MESSAGE, null);
             return null;
@@ -489,7 +496,21 @@ public class AbstractAviWriter extends EventFilter2DMouseAdaptor implements Fram
         }
     }
 
-    private class ImageSequenceWriter implements VideoFrameWriterInterface {
+    /**
+     * Wraps the writer in an AsyncVideoFrameWriter if encodeInBackground is
+     * selected
+     *
+     * @param writer the writer
+     * @return the writer to write frames to
+     */
+    protected VideoFrameWriterInterface maybeEncodeInBackground(VideoFrameWriterInterface writer) {
+        if (!encodeInBackground || writer == null) {
+            return writer;
+        }
+        return new AsyncVideoFrameWriter(writer, encoderQueueLength, encoderThreads);
+    }
+
+    private class ImageSequenceWriter implements AsyncVideoFrameWriter.NumberedFrameWriter {
 
         File folder;
 
@@ -504,10 +525,14 @@ public class AbstractAviWriter extends EventFilter2DMouseAdaptor implements Fram
 
         @Override
         public void writeFrame(BufferedImage img) throws IOException {
+            writeFrame(img, framesWritten);
+        }
+
+        @Override
+        public void writeFrame(BufferedImage img, int frameNumber) throws IOException {
             String fmt = getFormat().toString().toLowerCase();
-            String filename = String.format("%05d.%s", framesWritten, fmt);
-            String path = frameSequenceOutputFolder + File.separator + filename;
-            File file = new File(path);
+            String filename = String.format("%05d.%s", frameNumber, fmt);
+            File file = new File(folder, filename);
             ImageIO.write(img, fmt, file);
         }
 
@@ -552,7 +577,11 @@ public class AbstractAviWriter extends EventFilter2DMouseAdaptor implements Fram
 
     protected void incrementFramecountAndMaybeCloseOutput() {
         if (++framesWritten % LOG_EVERY_THIS_MANY_FRAMES == 0) {
-            log.info(String.format("wrote %d frames", framesWritten));
+            if (getVideoOutputStream() instanceof AsyncVideoFrameWriter) {
+                log.info(String.format("wrote %d frames; %s", framesWritten, getVideoOutputStream()));
+            } else {
+                log.info(String.format("wrote %d frames", framesWritten));
+            }
         }
         getSupport().firePropertyChange("framesWritten", null, framesWritten);
         if (maxFrames > 0 && framesWritten >= maxFrames) {
@@ -761,6 +790,57 @@ public class AbstractAviWriter extends EventFilter2DMouseAdaptor implements Fram
         this.videoOutputStream = videoOutputStream;
     }
 
+    /**
+     * @return the encodeInBackground
+     */
+    public boolean isEncodeInBackground() {
+        return encodeInBackground;
+    }
+
+    /**
+     * @param encodeInBackground the encodeInBackground to set
+     */
+    public void setEncodeInBackground(boolean encodeInBackground) {
+        this.encodeInBackground = encodeInBackground;
+        putBoolean("encodeInBackground", encodeInBackground);
+    }
+
+    /**
+     * @return the encoderQueueLength
+     */
+    public int getEncoderQueueLength() {
+        return encoderQueueLength;
+    }
+
+    /**
+     * @param encoderQueueLength the encoderQueueLength to set
+     */
+    public void setEncoderQueueLength(int encoderQueueLength) {
+        if (encoderQueueLength < 1) {
+            encoderQueueLength = 1;
+        }
+        this.encoderQueueLength = encoderQueueLength;
+        putInt("encoderQueueLength", encoderQueueLength);
+    }
+
+    /**
+     * @return the encoderThreads
+     */
+    public int getEncoderThreads() {
+        return encoderThreads;
+    }
+
+    /**
+     * @param encoderThreads the encoderThreads to set
+     */
+    public void setEncoderThreads(int encoderThreads) {
+        if (encoderThreads < 1) {
+            encoderThreads = 1;
+        }
+        this.encoderThreads = encoderThreads;
+        putInt("encoderThreads", encoderThreads);
+    }
+
     /**
      * @return the outputContainer
      */
@@ -0,0 +1,303 @@
+/* AsyncVideoFrameWriter.java
+ *
+ * Writes video frames in background encoder threads.
+ */
+package net.sf.jaer.util.avioutput;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Logger;
+
+/**
+ * Writes frames to another VideoFrameWriterInterface in background encoder
+ * threads, so that PNG/JPEG compression and file output do not hold up the
+ * thread that renders the frames.
+ * <p>
+ * writeFrame copies the image into a pooled image buffer and queues it. When
+ * all buffers are in use (queueLength frames are waiting to be encoded),
+ * writeFrame blocks until an encoder returns a buffer, so no frame is lost;
+ * the number of times and the total time it blocked are the back-pressure
+ * metrics, which show if the encoders are slower than the frames come.
+ * <p>
+ * Frames are encoded in the order they are written by a single encoder
+ * thread. If the writer is a NumberedFrameWriter, whose frames are
+ * independent of each other (e.g. one image file per frame), then several
+ * encoder threads can write frames concurrently; each frame gets its number
+ * when it is queued, and frames are committed (counted in
+ * getFramesCommitted()) in frame order. A frame buffer is only reused after
+ * its frame is committed, so a slow frame holds back the following ones.
+ * <p>
+ * An exception thrown by the writer is rethrown by the next writeFrame or by
+ * close.
+ */
+public class AsyncVideoFrameWriter implements VideoFrameWriterInterface {
+
+    private static final Logger log = Logger.getLogger("net.sf.jaer");
+
+    /**
+     * A writer whose frames are independent of each other, so that they can be
+     * written concurrently by several encoder threads
+     */
+    public interface NumberedFrameWriter extends VideoFrameWriterInterface {
+
+        /**
+         * Writes a frame. May be called concurrently from several threads.
+         *
+         * @param img the frame
+         * @param frameNumber the number of the frame, starting from 0 for the
+         * first frame written
+         * @throws IOException
+         */
+        void writeFrame(BufferedImage img, int frameNumber) throws IOException;
+    }
+
+    /**
+     * A queued frame
+     */
+    private static final class Frame {
+
+        BufferedImage image;
+        int number;
+    }
+
+    private static final Frame END = new Frame(); // tells an encoder thread to finish
+
+    private final VideoFrameWriterInterface writer;
+    private final NumberedFrameWriter numberedWriter;
+    private final BlockingQueue<Frame> freeFrames, queuedFrames;
+    private final Thread[] encoders;
+    private final Frame[] encodedFrames; // encoded frames that are not committed yet, indexed by frame number modulo the number of buffers
+    private final Object commitLock = new Object();
+    private volatile int framesQueued = 0, framesCommitted = 0, maxQueuedFrames = 0, blockedCount = 0;
+    private volatile long blockedTimeNs = 0;
+    private volatile Exception encoderException = null;
+    private boolean closed = false;
+
+    /**
+     * Makes a new writer and starts its encoder threads
+     *
+     * @param writer the writer to write the frames to
+     * @param queueLength the number of frames that can wait to be encoded
+     * before writeFrame blocks
+     * @param numEncoderThreads the number of encoder threads; only used if
+     * writer is a NumberedFrameWriter, otherwise one thread is used
+     */
+    public AsyncVideoFrameWriter(VideoFrameWriterInterface writer, int queueLength, int numEncoderThreads) {
+        if (writer == null) {
+            throw new IllegalArgumentException("null writer");
+        }
+        if (queueLength < 1) {
+            throw new IllegalArgumentException("queueLength=" + queueLength + " must be at least 1");
+        }
+        this.writer = writer;
+        this.numberedWriter = (writer instanceof NumberedFrameWriter) ? (NumberedFrameWriter) writer : null;
+        final int n = numberedWriter != null ? Math.max(1, numEncoderThreads) : 1;
+        final int numBuffers = queueLength + n; // each encoder holds one frame while it encodes it
+        freeFrames = new ArrayBlockingQueue<>(numBuffers);
+        queuedFrames = new ArrayBlockingQueue<>(numBuffers + n);
+        for (int i = 0; i < numBuffers; i++) {
+            freeFrames.add(new Frame());
+        }
+        encodedFrames = new Frame[numBuffers];
+        encoders = new Thread[n];
+        for (int i = 0; i < n; i++) {
+            encoders[i] = new Thread(this::encode, "AsyncVideoFrameWriter-" + i);
+            encoders[i].setDaemon(true);
+            encoders[i].start();
+        }
+    }
+
+    /**
+     * Copies the image and queues it for encoding. Blocks while all image
+     * buffers are in use.
+     *
+     * @param img the frame; it may be reused by the caller after the method
+     * returns
+     * @throws IOException if the writer threw an exception for an earlier
+     * frame, or if interrupted
+     */
+    @Override
+    public synchronized void writeFrame(BufferedImage img) throws IOException {
+        if (closed) {
+            throw new IOException("writer is closed");
+        }
+        checkEncoderException();
+        Frame frame = freeFrames.poll();
+        if (frame == null) {
+            final long startNs = System.nanoTime();
+            try {
+                frame = freeFrames.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while waiting for a free frame buffer", ex);
+            }
+            blockedCount++;
+            blockedTimeNs += System.nanoTime() - startNs;
+            checkEncoderException();
+        }
+        frame.image = copy(img, frame.image);
+        frame.number = framesQueued++;
+        queuedFrames.add(frame); // never full, since there are no more frames than buffers
+        final int queued = queuedFrames.size();
+        if (queued > maxQueuedFrames) {
+            maxQueuedFrames = queued;
+        }
+    }
+
+    /**
+     * Copies img to the image buffer, reallocating it if it does not match
+     * img
+     */
+    private static BufferedImage copy(BufferedImage img, BufferedImage buffer) {
+        if ((buffer == null) || (buffer.getWidth() != img.getWidth()) || (buffer.getHeight() != img.getHeight())
+                || !buffer.getColorModel().equals(img.getColorModel())
+                || !buffer.getSampleModel().equals(img.getSampleModel())) {
+            buffer = new BufferedImage(img.getColorModel(), img.getRaster().createCompatibleWritableRaster(), img.isAlphaPremultiplied(), null);
+        }
+        img.copyData(buffer.getRaster());
+        return buffer;
+    }
+
+    /**
+     * The loop of each encoder thread
+     */
+    private void encode() {
+        while (true) {
+            final Frame frame;
+            try {
+                frame = queuedFrames.take();
+            } catch (InterruptedException ex) {
+                return;
+            }
+            if (frame == END) {
+                return;
+            }
+            if (encoderException == null) { // after an exception, frames are only recycled until close
+                try {
+                    if (numberedWriter != null) {
+                        numberedWriter.writeFrame(frame.image, frame.number);
+                    } else {
+                        writer.writeFrame(frame.image);
+                    }
+                } catch (Exception ex) {
+                    log.warning("Encoder exception writing frame " + frame.number + ": " + ex.toString());
+                    encoderException = ex;
+                }
+            }
+            commit(frame);
+        }
+    }
+
+    /**
+     * Marks the frame as encoded, then commits the frames that are now
+     * encoded together with all frames before them and returns their buffers.
+     * There are never more frames in flight than buffers, so their slots in
+     * encodedFrames are distinct.
+     */
+    private void commit(Frame frame) {
+        synchronized (commitLock) {
+            encodedFrames[frame.number % encodedFrames.length] = frame;
+            Frame f;
+            while ((f = encodedFrames[framesCommitted % encodedFrames.length]) != null) {
+                encodedFrames[framesCommitted % encodedFrames.length] = null;
+                framesCommitted++;
+                freeFrames.add(f);
+            }
+        }
+    }
+
+    private void checkEncoderException() throws IOException {
+        final Exception ex = encoderException;
+        if (ex != null) {
+            if (ex instanceof IOException) {
+                throw (IOException) ex;
+            }
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Waits for the queued frames to be encoded, stops the encoder threads and
+     * closes the writer
+     *
+     * @throws IOException if the writer threw an exception for any frame or
+     * for closing it
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Thread t : encoders) {
+                queuedFrames.add(END); // after all queued frames
+            }
+        }
+        try {
+            for (Thread t : encoders) {
+                t.join();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for encoder threads to finish", ex);
+        } finally {
+            writer.close();
+        }
+        log.info(toString());
+        checkEncoderException();
+    }
+
+    /**
+     * @return the number of frames queued so far
+     */
+    public int getFramesQueued() {
+        return framesQueued;
+    }
+
+    /**
+     * @return the number of frames written so far; all frames before them are
+     * written too
+     */
+    public int getFramesCommitted() {
+        return framesCommitted;
+    }
+
+    /**
+     * @return the number of frames currently waiting to be encoded
+     */
+    public int getQueuedFrames() {
+        return queuedFrames.size();
+    }
+
+    /**
+     * @return the largest number of frames that have been waiting to be
+     * encoded
+     */
+    public int getMaxQueuedFrames() {
+        return maxQueuedFrames;
+    }
+
+    /**
+     * @return the number of times writeFrame blocked because all image
+     * buffers were in use
+     */
+    public int getBlockedCount() {
+        return blockedCount;
+    }
+
+    /**
+     * @return the total time in ms that writeFrame blocked
+     */
+    public float getBlockedTimeMs() {
+        return blockedTimeNs * 1e-6f;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AsyncVideoFrameWriter with %d encoder threads: %,d frames queued, %,d written, max %d waiting, writeFrame blocked %,d times for %.1f ms",
+                encoders.length, framesQueued, framesCommitted, maxQueuedFrames, blockedCount, getBlockedTimeMs());
+    }
+}
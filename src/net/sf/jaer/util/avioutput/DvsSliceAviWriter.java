@@ -99,6 +99,32 @@ public class DvsSliceAviWriter extends AbstractAviWriter implements FrameAnnotat
     private String APS_OUTPUT_SUFFIX = "-aps.avi";
     private String DVS_OUTPUT_SUFFIX = "-dvs.avi"; // used for separate output option
     private BufferedImage aviOutputImage = null; // holds either dvs or aps or both iamges
+    private SliceListener sliceListener = null;
+
+    /**
+     * Gets each DVS slice and APS frame as it is completed, whether or not it
+     * is written to the AVI file, e.g. to export them in another format
+     *
+     * @see DvsSliceDatasetExporter
+     */
+    public interface SliceListener {
+
+        /**
+         * Called when a DVS slice is completed and normalized
+         *
+         * @param dvsFramer holds the slice, valid only during the call
+         * @param timestamp the timestamp of the last event of the slice
+         */
+        void dvsSliceCompleted(DvsFramerSingleFrame dvsFramer, int timestamp);
+
+        /**
+         * Called on each new APS frame
+         *
+         * @param frameExtractor holds the frame, valid only during the call
+         * @param timestamp the end of frame timestamp
+         */
+        void apsFrameCompleted(ApsFrameExtractor frameExtractor, int timestamp);
+    }
 
     public DvsSliceAviWriter(AEChip chip) {
         super(chip);
@@ -166,6 +192,9 @@ public class DvsSliceAviWriter extends AbstractAviWriter implements FrameAnnotat
                 }
                 dvsFrame.normalizeFrame();
                 maybeShowOutput(dvsFrame);
+                if (sliceListener != null) {
+                    sliceListener.dvsSliceCompleted(dvsFrame, e.timestamp);
+                }
                 if (isWriteDvsFrames() && (getVideoOutputStream() != null) && isWriteEnabled()) {
                     BufferedImage bi = toImage(dvsFrame);
                     try {
@@ -198,6 +227,28 @@ public class DvsSliceAviWriter extends AbstractAviWriter implements FrameAnnotat
         return dvsFrame;
     }
 
+    /**
+     * @return the TargetLabeler that supplies the target locations
+     */
+    public TargetLabeler getTargetLabeler() {
+        return targetLabeler;
+    }
+
+    /**
+     * @return the listener that gets the completed slices and frames, or null
+     */
+    public SliceListener getSliceListener() {
+        return sliceListener;
+    }
+
+    /**
+     * @param sliceListener the listener that gets the completed slices and
+     * frames, or null for none
+     */
+    public void setSliceListener(SliceListener sliceListener) {
+        this.sliceListener = sliceListener;
+    }
+
     @Override
     public void annotate(GLAutoDrawable drawable) {
         if (dvsFrame == null) {
@@ -553,6 +604,9 @@ public class DvsSliceAviWriter extends AbstractAviWriter implements FrameAnnotat
         if ((evt.getPropertyName() == ApsFrameExtractor.EVENT_NEW_FRAME)) {
             endOfFrameTimestamp = frameExtractor.getLastFrameTimestamp();
             newApsFrameAvailable = true;
+            if (sliceListener != null) {
+                sliceListener.apsFrameCompleted(frameExtractor, endOfFrameTimestamp);
+            }
             if (isWriteApsFrames() && isRecordingActive()
                     && ((chip.getAeViewer() == null) || !chip.getAeViewer().isPaused())) {
                 BufferedImage bufferedImage = toImage(frameExtractor);
@@ -0,0 +1,822 @@
+/* DvsSliceDatasetExporter.java
+ *
+ * Headless export of DVS slices, APS frames and target labels to NPZ shards.
+ */
+package net.sf.jaer.util.avioutput;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.prefs.AbstractPreferences;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+import org.jetbrains.bio.npy.NpzFile;
+
+import ch.unizh.ini.jaer.projects.davis.frames.ApsFrameExtractor;
+import ch.unizh.ini.jaer.projects.npp.DvsFramer.TimeSliceMethod;
+import ch.unizh.ini.jaer.projects.npp.DvsFramerSingleFrame;
+import ch.unizh.ini.jaer.projects.npp.TargetLabeler;
+import ch.unizh.ini.jaer.projects.npp.TargetLabeler.TargetLocation;
+import ml.options.Options;
+import ml.options.Options.Multiplicity;
+import ml.options.Options.Separator;
+import net.sf.jaer.chip.AEChip;
+import net.sf.jaer.chip.EventExtractor2D;
+import net.sf.jaer.event.EventPacket;
+import net.sf.jaer.eventio.AEDataFile;
+import net.sf.jaer.eventio.ros.RosbagFileInputStream;
+import net.sf.jaer.eventprocessing.EventFilter;
+import net.sf.jaer.eventprocessing.FilterChain;
+import net.sf.jaer.eventprocessing.FilterChainBatchRunner;
+import net.sf.jaer.eventprocessing.FilterChainBatchRunner.BatchResult;
+
+/**
+ * Exports training sets, e.g. for DavisClassifierCNNProcessor, from many
+ * recordings at once. Each recording is sliced exactly like DvsSliceAviWriter
+ * slices it for AVI output, but the DVS slices, the APS frames and the
+ * TargetLabeler labels are written as float and int arrays to compressed NPZ
+ * shards of framesPerShard frames each, instead of being rendered to AVI
+ * frames.
+ * <p>
+ * Each shard base-NNNN.npz holds
+ * <ul>
+ * <li>dvs_frames: float32 [n,height,width], the normalized slices, indexed
+ * [frame][y][x] with y=0 at the bottom as in jAER
+ * <li>dvs_timestamps: int32 [n], the timestamp in us of the last event of each
+ * slice
+ * <li>aps_frames and aps_timestamps: the same for the APS frames, subsampled to
+ * the slice size, if APS frames are exported
+ * <li>dvs_labels and aps_labels: int32 [n,5], the target class ID, x, y, width
+ * and height in output pixels of the first target labeled before each frame,
+ * all -1 where there is none, if the recording has a labels file
+ * </ul>
+ * The labels of a recording base.aedat are read from base + labelsSuffix in
+ * the same folder, with TargetLabeler.
+ * <p>
+ * Every file gets its own AEChip and DvsSliceAviWriter, so files are processed
+ * in parallel on several threads; the slicing settings of the SliceSpec are
+ * applied to each of them. These writers start from the stored DvsSliceAviWriter
+ * settings but do not store any changes to the Preferences. As in FilterChainBatchRunner, run with
+ * -Djava.awt.headless=true on machines without display.
+ *
+ * @see #USAGE
+ */
+public class DvsSliceDatasetExporter {
+
+    private static final Logger log = Logger.getLogger("net.sf.jaer");
+
+    /**
+     * Extension of the shard files
+     */
+    public static final String SHARD_FILE_EXTENSION = ".npz";
+
+    /**
+     * Number of label fields per frame: target class ID, x, y, width, height
+     */
+    public static final int LABEL_FIELDS = 5;
+
+    public static final String USAGE = "java -Djava.awt.headless=true net.sf.jaer.util.avioutput.DvsSliceDatasetExporter \n"
+            + "     [-aechip=aechipclassname (fully qualified class name, e.g. eu.seebetter.ini.chips.davis.Davis346red; default is the last chip used in AEViewer)] \n"
+            + "     -outdir=directory \n"
+            + "     [-width=64] [-height=64] [-grayscale=100] \n"
+            + "     [-timeslicemethod=EventCount|TimeIntervalUs] [-numevents=2000] [-framedurationus=10000]\n"
+            + "     [-rectify=false] [-normalize=true] [-writedvssliceonapsframe=false] \n"
+            + "     [-aps=false] [-labels=true] [-labelsuffix=-targetLocations.txt] \n"
+            + "     [-shardframes=1000] [-maxframes=0] [-enablefilters=false] \n"
+            + "     [-csv=summary.csv] [-threads=numberOfProcessors] [-verbose] \n"
+            + "         inputFileOrFolder1 [inputFileOrFolder2 ...]"
+            + "\n"
+            + "Arguments values are assigned with =, not space\n"
+            + "Slicing settings that are not given are taken from the last DvsSliceAviWriter settings of the chip\n"
+            + "Folders are searched for " + AEDataFile.DATA_FILE_EXTENSION + ", " + AEDataFile.DATA_FILE_EXTENSION_AEDAT2 + ", "
+            + AEDataFile.OLD_DATA_FILE_EXTENSION + " and ." + RosbagFileInputStream.DATA_FILE_EXTENSION + " recordings\n"
+            + "Shards are written to outdir as base-0000" + SHARD_FILE_EXTENSION + ", base-0001" + SHARD_FILE_EXTENSION + ", ... for each input file base.aedat";
+
+    private final String chipClassName;
+    private final File outputDirectory;
+    private SliceSpec sliceSpec = null;
+    private String labelsSuffix = "-targetLocations.txt";
+    private int framesPerShard = 1000;
+    private int maxFrames = 0;
+    private int packetSizeEvents = 10000;
+    private boolean enableFilters = false;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The slicing settings applied to the DvsSliceAviWriter of every file
+     */
+    public static class SliceSpec {
+
+        public int outputImageWidth, outputImageHeight, dvsGrayScale;
+        public TimeSliceMethod timeSliceMethod;
+        public int dvsEventsPerFrame, timeDurationUsPerFrame;
+        public boolean rectifyPolarities, normalizeFrame;
+        public boolean writeDvsSliceImageOnApsFrame;
+        /**
+         * Export APS frames
+         */
+        public boolean apsFrames;
+        /**
+         * Export labels of recordings that have a labels file
+         */
+        public boolean labels;
+
+        /**
+         * Makes a spec from the current settings of a writer, e.g. to start
+         * from the stored Preferences
+         *
+         * @param writer the writer
+         * @return the spec
+         */
+        public static SliceSpec fromWriter(DvsSliceAviWriter writer) {
+            SliceSpec s = new SliceSpec();
+            DvsFramerSingleFrame f = writer.getDvsFrame();
+            s.outputImageWidth = f.getOutputImageWidth();
+            s.outputImageHeight = f.getOutputImageHeight();
+            s.dvsGrayScale = f.getDvsGrayScale();
+            s.timeSliceMethod = f.getTimeSliceMethod();
+            s.dvsEventsPerFrame = f.getDvsEventsPerFrame();
+            s.timeDurationUsPerFrame = f.getTimeDurationUsPerFrame();
+            s.rectifyPolarities = f.isRectifyPolarities();
+            s.normalizeFrame = f.isNormalizeFrame();
+            s.writeDvsSliceImageOnApsFrame = writer.isWriteDvsSliceImageOnApsFrame();
+            s.apsFrames = writer.isWriteApsFrames();
+            s.labels = writer.isWriteTargetLocations();
+            return s;
+        }
+
+        /**
+         * Applies the spec to a writer with its setters, which store the
+         * settings in the writer's Preferences. process() therefore detaches
+         * its writers from the Preferences first, so that the batch settings
+         * do not change the settings of the GUI.
+         *
+         * @param writer the writer
+         */
+        public void applyTo(DvsSliceAviWriter writer) {
+            DvsFramerSingleFrame f = writer.getDvsFrame();
+            f.setOutputImageWidth(outputImageWidth);
+            f.setOutputImageHeight(outputImageHeight);
+            f.setDvsGrayScale(dvsGrayScale);
+            f.setTimeSliceMethod(timeSliceMethod);
+            f.setDvsEventsPerFrame(dvsEventsPerFrame);
+            f.setTimeDurationUsPerFrame(timeDurationUsPerFrame);
+            f.setRectifyPolarities(rectifyPolarities);
+            f.setNormalizeFrame(normalizeFrame);
+            writer.setWriteDvsSliceImageOnApsFrame(writeDvsSliceImageOnApsFrame);
+            writer.setWriteApsFrames(apsFrames);
+            writer.setWriteTargetLocations(labels);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("width=%d height=%d grayscale=%d timeslicemethod=%s numevents=%d framedurationus=%d rectify=%s normalize=%s writedvssliceonapsframe=%s aps=%s labels=%s",
+                    outputImageWidth, outputImageHeight, dvsGrayScale, timeSliceMethod, dvsEventsPerFrame, timeDurationUsPerFrame,
+                    rectifyPolarities, normalizeFrame, writeDvsSliceImageOnApsFrame, apsFrames, labels);
+        }
+    }
+
+    /**
+     * The outcome of exporting one file.
+     */
+    public static class Result extends BatchResult {
+
+        /**
+         * Header line of the CSV summary
+         */
+        public static final String CSV_HEADER = "file,eventsIn,dvsFrames,apsFrames,labeledFrames,shards,wallTimeMs,labelsFile,error";
+
+        /**
+         * The labels file that was read, or null if none
+         */
+        public File labelsFile = null;
+        public long eventsIn = 0;
+        public int dvsFrames = 0, apsFrames = 0, labeledFrames = 0, shards = 0;
+
+        Result(File file) {
+            super(file);
+        }
+
+        @Override
+        public String toCsvLine() {
+            return String.format("%s,%d,%d,%d,%d,%d,%.1f,%s,%s",
+                    csv(file.getPath()), eventsIn, dvsFrames, apsFrames, labeledFrames, shards, wallTimeNs * 1e-6,
+                    labelsFile == null ? "" : csv(labelsFile.getPath()),
+                    error == null ? "" : csv(error.toString()));
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %,d events, %,d DVS frames, %,d APS frames, %,d labeled, %d shards in %.1f s%s",
+                    file.getName(), eventsIn, dvsFrames, apsFrames, labeledFrames, shards, wallTimeNs * 1e-9,
+                    error == null ? "" : ", failed with " + error);
+        }
+    }
+
+    /**
+     * Collects the slices and frames of one file and writes them to shards
+     */
+    private class ShardWriter implements DvsSliceAviWriter.SliceListener {
+
+        private final String baseName;
+        private final AEChip chip;
+        private final TargetLabeler labeler;
+        private final Result result;
+        private final int width, height, frameSize;
+        private final float[] dvsFrames, apsFrames;
+        private final int[] dvsTimestamps, apsTimestamps, dvsLabels, apsLabels;
+        private int numDvs = 0, numAps = 0;
+        private IOException error = null;
+
+        ShardWriter(String baseName, AEChip chip, SliceSpec spec, TargetLabeler labeler, Result result) {
+            this.baseName = baseName;
+            this.chip = chip;
+            this.labeler = labeler;
+            this.result = result;
+            width = spec.outputImageWidth;
+            height = spec.outputImageHeight;
+            frameSize = width * height;
+            dvsFrames = new float[framesPerShard * frameSize];
+            dvsTimestamps = new int[framesPerShard];
+            dvsLabels = labeler != null ? new int[framesPerShard * LABEL_FIELDS] : null;
+            apsFrames = spec.apsFrames ? new float[framesPerShard * frameSize] : null;
+            apsTimestamps = spec.apsFrames ? new int[framesPerShard] : null;
+            apsLabels = spec.apsFrames && labeler != null ? new int[framesPerShard * LABEL_FIELDS] : null;
+        }
+
+        @Override
+        public void dvsSliceCompleted(DvsFramerSingleFrame dvsFramer, int timestamp) {
+            if (error != null || isDone()) {
+                return;
+            }
+            final int off = numDvs * frameSize;
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    dvsFrames[off + y * width + x] = dvsFramer.getValueAtPixel(x, y);
+                }
+            }
+            dvsTimestamps[numDvs] = timestamp;
+            if (dvsLabels != null) {
+                label(dvsLabels, numDvs, timestamp);
+            }
+            numDvs++;
+            result.dvsFrames++;
+            maybeFlush();
+        }
+
+        @Override
+        public void apsFrameCompleted(ApsFrameExtractor frameExtractor, int timestamp) {
+            if (apsFrames == null || error != null || isDone()) {
+                return;
+            }
+            final int srcwidth = chip.getSizeX(), srcheight = chip.getSizeY();
+            final float[] frame = frameExtractor.getNewFrame();
+            final int off = numAps * frameSize;
+            for (int y = 0; y < height; y++) {
+                final int ysrc = (int) Math.floor((y * (float) srcheight) / height);
+                for (int x = 0; x < width; x++) {
+                    final int xsrc = (int) Math.floor((x * (float) srcwidth) / width); // same subsampling as DvsSliceAviWriter
+                    apsFrames[off + y * width + x] = frame[frameExtractor.getIndex(xsrc, ysrc)];
+                }
+            }
+            apsTimestamps[numAps] = timestamp;
+            if (apsLabels != null) {
+                label(apsLabels, numAps, timestamp);
+            }
+            numAps++;
+            result.apsFrames++;
+            maybeFlush();
+        }
+
+        /**
+         * Stores the first target labeled before the timestamp like
+         * DvsSliceAviWriter writes it to its target locations file, scaled to
+         * the output size
+         */
+        private void label(int[] labels, int frame, int timestamp) {
+            final int off = frame * LABEL_FIELDS;
+            Arrays.fill(labels, off, off + LABEL_FIELDS, -1);
+            ArrayList<TargetLocation> targets = labeler.findTargetsBeforeTimestamp(timestamp);
+            if (targets == null || targets.isEmpty()) {
+                return;
+            }
+            TargetLocation l = targets.get(0);
+            if (l == null || l.location == null) {
+                return;
+            }
+            final float scaleX = (float) width / chip.getSizeX(), scaleY = (float) height / chip.getSizeY();
+            labels[off] = l.targetClassID;
+            labels[off + 1] = Math.round(scaleX * l.location.x);
+            labels[off + 2] = Math.round(scaleY * l.location.y);
+            labels[off + 3] = Math.round(scaleX * l.width);
+            labels[off + 4] = Math.round(scaleY * l.height);
+            result.labeledFrames++;
+        }
+
+        /**
+         * @return true when maxFrames DVS frames have been exported
+         */
+        boolean isDone() {
+            return maxFrames > 0 && result.dvsFrames >= maxFrames;
+        }
+
+        private void maybeFlush() {
+            if (numDvs == framesPerShard || numAps == framesPerShard || isDone()) {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    error = e;
+                }
+            }
+        }
+
+        /**
+         * Writes the collected frames as the next shard
+         */
+        void flush() throws IOException {
+            if (numDvs == 0 && numAps == 0) {
+                return;
+            }
+            File f = new File(outputDirectory, String.format("%s-%04d%s", baseName, result.shards, SHARD_FILE_EXTENSION));
+            try (NpzFile.Writer w = NpzFile.write(f.toPath(), true)) {
+                w.write("dvs_frames", Arrays.copyOf(dvsFrames, numDvs * frameSize), new int[]{numDvs, height, width});
+                w.write("dvs_timestamps", Arrays.copyOf(dvsTimestamps, numDvs), new int[]{numDvs});
+                if (dvsLabels != null) {
+                    w.write("dvs_labels", Arrays.copyOf(dvsLabels, numDvs * LABEL_FIELDS), new int[]{numDvs, LABEL_FIELDS});
+                }
+                if (apsFrames != null) {
+                    w.write("aps_frames", Arrays.copyOf(apsFrames, numAps * frameSize), new int[]{numAps, height, width});
+                    w.write("aps_timestamps", Arrays.copyOf(apsTimestamps, numAps), new int[]{numAps});
+                    if (apsLabels != null) {
+                        w.write("aps_labels", Arrays.copyOf(apsLabels, numAps * LABEL_FIELDS), new int[]{numAps, LABEL_FIELDS});
+                    }
+                }
+            } catch (RuntimeException e) { // NpzFile wraps its I/O errors
+                throw new IOException("could not write " + f + ": " + e.toString(), e);
+            }
+            log.info(String.format("wrote %d DVS and %d APS frames to %s", numDvs, numAps, f));
+            result.shards++;
+            numDvs = 0;
+            numAps = 0;
+        }
+
+        /**
+         * @throws IOException if a shard could not be written
+         */
+        void checkError() throws IOException {
+            if (error != null) {
+                throw error;
+            }
+        }
+    }
+
+    /**
+     * A Preferences node that keeps the values put into it in memory and reads
+     * the other values from the node it replaces, so that a batch filter
+     * starts from the stored settings but never changes them. Child nodes are
+     * only kept in memory.
+     */
+    private static final class DetachedPreferences extends AbstractPreferences {
+
+        private final Preferences stored;
+        private final HashMap<String, String> values = new HashMap<>();
+        private final HashMap<String, DetachedPreferences> children = new HashMap<>();
+
+        DetachedPreferences(DetachedPreferences parent, String name, Preferences stored) {
+            super(parent, name);
+            this.stored = stored;
+        }
+
+        @Override
+        protected void putSpi(String key, String value) {
+            values.put(key, value);
+        }
+
+        @Override
+        protected String getSpi(String key) {
+            if (values.containsKey(key)) {
+                return values.get(key);
+            }
+            return stored == null ? null : stored.get(key, null);
+        }
+
+        @Override
+        protected void removeSpi(String key) {
+            values.put(key, null); // hides the stored value
+        }
+
+        @Override
+        protected void removeNodeSpi() throws BackingStoreException {
+            values.clear();
+        }
+
+        @Override
+        protected String[] keysSpi() throws BackingStoreException {
+            return values.entrySet().stream().filter(e -> e.getValue() != null).map(e -> e.getKey()).toArray(String[]::new);
+        }
+
+        @Override
+        protected String[] childrenNamesSpi() throws BackingStoreException {
+            return children.keySet().toArray(new String[children.size()]);
+        }
+
+        @Override
+        protected AbstractPreferences childSpi(String name) {
+            return children.computeIfAbsent(name, n -> new DetachedPreferences(this, n, null));
+        }
+
+        @Override
+        protected void syncSpi() throws BackingStoreException {
+        }
+
+        @Override
+        protected void flushSpi() throws BackingStoreException {
+        }
+    }
+
+    /**
+     * Gives the filter and all the filters it encloses a DetachedPreferences
+     * node, so that their setters do not store anything.
+     *
+     * @param filter the filter
+     */
+    private static void detachPreferences(EventFilter filter) {
+        filter.setPrefs(new DetachedPreferences(null, "", filter.getPrefs()));
+        if (filter.getEnclosedFilter() != null) {
+            detachPreferences(filter.getEnclosedFilter());
+        }
+        if (filter.getEnclosedFilterChain() != null) {
+            for (EventFilter f : filter.getEnclosedFilterChain()) {
+                detachPreferences(f);
+            }
+        }
+    }
+
+    /**
+     * Constructs a new exporter.
+     *
+     * @param chipClassName the fully qualified class name of the AEChip
+     * @param outputDirectory the folder for the shards
+     */
+    public DvsSliceDatasetExporter(String chipClassName, File outputDirectory) {
+        this.chipClassName = chipClassName;
+        this.outputDirectory = outputDirectory;
+    }
+
+    /**
+     * Constructs a new AEChip of the exporter's class.
+     *
+     * @return the chip
+     * @throws ReflectiveOperationException if the chip cannot be constructed
+     */
+    protected AEChip constructChip() throws ReflectiveOperationException {
+        return FilterChainBatchRunner.constructChip(chipClassName);
+    }
+
+    /**
+     * Exports one file to its end or to maxFrames frames. Exceptions are not
+     * thrown but returned in the Result.
+     *
+     * @param file the recording
+     * @return the result
+     */
+    public Result process(File file) {
+        final Result result = new Result(file);
+        final long startNs = System.nanoTime();
+        FilterChain chain = null;
+        try {
+            final AEChip chip = constructChip();
+            final DvsSliceAviWriter writer = new DvsSliceAviWriter(chip);
+            detachPreferences(writer); // the workers must not store their settings, concurrently, as the settings of the GUI
+            if (sliceSpec != null) {
+                sliceSpec.applyTo(writer);
+            }
+            final SliceSpec spec = SliceSpec.fromWriter(writer);
+            writer.setShowOutput(false);
+            TargetLabeler labeler = null;
+            if (spec.labels) {
+                File labelsFile = labelsFileFor(file);
+                if (labelsFile.isFile()) {
+                    writer.getTargetLabeler().readLocations(labelsFile);
+                    labeler = writer.getTargetLabeler();
+                    result.labelsFile = labelsFile;
+                } else {
+                    log.info("no labels file " + labelsFile + " for " + file);
+                }
+            }
+            final ShardWriter shards = new ShardWriter(baseNameOf(file), chip, spec, labeler, result);
+            writer.setSliceListener(shards);
+            if (enableFilters) {
+                chain = chip.getFilterChain();
+                chain.setMeasurePerformanceEnabled(false); // would open a window
+                chain.initFilters();
+                for (EventFilter f : chain) {
+                    f.setPreferredEnabledState();
+                }
+            }
+            writer.setFilterEnabled(true);
+            final FilterChain filters = chain;
+            final EventExtractor2D extractor = chip.getEventExtractor();
+            log.info("exporting " + file + " with " + spec);
+            FilterChainBatchRunner.forEachPacket(file, chip, ais -> ais.readPacketByNumber(packetSizeEvents), raw -> {
+                result.eventsIn += raw.getNumEvents();
+                EventPacket cooked = extractor.extractPacket(raw);
+                if (filters != null) {
+                    cooked = filters.filterPacketSequentially(cooked);
+                }
+                writer.filterPacket(cooked);
+                shards.checkError();
+                return !shards.isDone();
+            });
+            shards.flush();
+        } catch (Exception e) {
+            result.error = e;
+            log.log(Level.WARNING, "exporting " + file + " failed: " + e.toString(), e);
+        } finally {
+            if (chain != null) {
+                chain.cleanup();
+            }
+            result.wallTimeNs = System.nanoTime() - startNs;
+        }
+        log.info(result.toString());
+        return result;
+    }
+
+    /**
+     * Exports the files on getNumThreads() threads.
+     *
+     * @param files the recordings
+     * @return the results, in the order of files
+     * @throws InterruptedException if interrupted while waiting for the
+     * results
+     * @throws IOException if the output folder cannot be created
+     */
+    public List<Result> processAll(List<File> files) throws InterruptedException, IOException {
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("could not create output folder " + outputDirectory);
+        }
+        return FilterChainBatchRunner.processAll(files, numThreads, this::process, Result::new);
+    }
+
+    /**
+     * Lists the recordings in a folder, sorted by name.
+     *
+     * @param folder the folder
+     * @return the recordings
+     */
+    public static List<File> listRecordings(File folder) {
+        ArrayList<File> files = new ArrayList<>();
+        File[] all = folder.listFiles();
+        if (all == null) {
+            return files;
+        }
+        Arrays.sort(all);
+        for (File f : all) {
+            String n = f.getName().toLowerCase();
+            if (f.isFile() && (n.endsWith(AEDataFile.DATA_FILE_EXTENSION) || n.endsWith(AEDataFile.DATA_FILE_EXTENSION_AEDAT2)
+                    || n.endsWith(AEDataFile.OLD_DATA_FILE_EXTENSION) || n.endsWith("." + RosbagFileInputStream.DATA_FILE_EXTENSION))) {
+                files.add(f);
+            }
+        }
+        return files;
+    }
+
+    private static String baseNameOf(File input) {
+        String name = input.getName();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    /**
+     * @param input the recording
+     * @return the labels file of the recording, which might not exist
+     */
+    public File labelsFileFor(File input) {
+        return new File(input.getAbsoluteFile().getParentFile(), baseNameOf(input) + labelsSuffix);
+    }
+
+    /**
+     * @return the slicing settings, or null to use the stored settings of
+     * DvsSliceAviWriter
+     */
+    public SliceSpec getSliceSpec() {
+        return sliceSpec;
+    }
+
+    /**
+     * @param sliceSpec the slicing settings, or null to use the stored
+     * settings of DvsSliceAviWriter
+     */
+    public void setSliceSpec(SliceSpec sliceSpec) {
+        this.sliceSpec = sliceSpec;
+    }
+
+    /**
+     * @return the suffix that is appended to the base name of a recording to
+     * find its labels file
+     */
+    public String getLabelsSuffix() {
+        return labelsSuffix;
+    }
+
+    /**
+     * @param labelsSuffix the suffix that is appended to the base name of a
+     * recording to find its labels file
+     */
+    public void setLabelsSuffix(String labelsSuffix) {
+        this.labelsSuffix = labelsSuffix;
+    }
+
+    /**
+     * @return the number of frames per shard
+     */
+    public int getFramesPerShard() {
+        return framesPerShard;
+    }
+
+    /**
+     * @param framesPerShard the number of DVS (and at most APS) frames per
+     * shard
+     */
+    public void setFramesPerShard(int framesPerShard) {
+        if (framesPerShard < 1) {
+            throw new IllegalArgumentException("framesPerShard=" + framesPerShard + " must be at least 1");
+        }
+        this.framesPerShard = framesPerShard;
+    }
+
+    /**
+     * @return the maximum number of DVS frames exported per file, or 0 for
+     * no limit
+     */
+    public int getMaxFrames() {
+        return maxFrames;
+    }
+
+    /**
+     * @param maxFrames the maximum number of DVS frames exported per file, or
+     * 0 for no limit
+     */
+    public void setMaxFrames(int maxFrames) {
+        this.maxFrames = maxFrames;
+    }
+
+    /**
+     * @return the number of events read per packet
+     */
+    public int getPacketSizeEvents() {
+        return packetSizeEvents;
+    }
+
+    /**
+     * @param packetSizeEvents the number of events read per packet
+     */
+    public void setPacketSizeEvents(int packetSizeEvents) {
+        this.packetSizeEvents = packetSizeEvents;
+    }
+
+    /**
+     * @return true if the preferred filters of the chip are run before
+     * slicing
+     */
+    public boolean isEnableFilters() {
+        return enableFilters;
+    }
+
+    /**
+     * @param enableFilters true to run the preferred FilterChain of the chip,
+     * with its preferred enabled states, before slicing
+     */
+    public void setEnableFilters(boolean enableFilters) {
+        this.enableFilters = enableFilters;
+    }
+
+    /**
+     * @return the number of files processed in parallel
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * @param numThreads the number of files processed in parallel
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * @return the folder for the shards
+     */
+    public File getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    public static void main(String[] args) {
+        Options opt = new Options(args, 1, Integer.MAX_VALUE);
+        FilterChainBatchRunner.addCommonOptions(opt);
+        opt.getSet().addOption("outdir", Separator.EQUALS, Multiplicity.ONCE);
+        opt.getSet().addOption("width", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("height", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("grayscale", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("timeslicemethod", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("numevents", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("framedurationus", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("rectify", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("normalize", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("writedvssliceonapsframe", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("aps", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("labels", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("labelsuffix", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("shardframes", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("maxframes", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        opt.getSet().addOption("enablefilters", Separator.EQUALS, Multiplicity.ZERO_OR_ONE);
+        FilterChainBatchRunner.checkOptions(opt, USAGE);
+
+        String chipClassName = FilterChainBatchRunner.chipClassNameOption(opt, USAGE);
+        DvsSliceDatasetExporter exporter = new DvsSliceDatasetExporter(chipClassName, new File(opt.getSet().getOption("outdir").getResultValue(0)));
+        try {
+            // start from the stored settings, constructing the chip once here
+            SliceSpec spec = SliceSpec.fromWriter(new DvsSliceAviWriter(exporter.constructChip()));
+            if (opt.getSet().isSet("width")) {
+                spec.outputImageWidth = Integer.parseInt(opt.getSet().getOption("width").getResultValue(0));
+            }
+            if (opt.getSet().isSet("height")) {
+                spec.outputImageHeight = Integer.parseInt(opt.getSet().getOption("height").getResultValue(0));
+            }
+            if (opt.getSet().isSet("grayscale")) {
+                spec.dvsGrayScale = Integer.parseInt(opt.getSet().getOption("grayscale").getResultValue(0));
+            }
+            if (opt.getSet().isSet("timeslicemethod")) {
+                spec.timeSliceMethod = TimeSliceMethod.valueOf(opt.getSet().getOption("timeslicemethod").getResultValue(0));
+            }
+            if (opt.getSet().isSet("numevents")) {
+                spec.dvsEventsPerFrame = Integer.parseInt(opt.getSet().getOption("numevents").getResultValue(0));
+            }
+            if (opt.getSet().isSet("framedurationus")) {
+                spec.timeDurationUsPerFrame = Integer.parseInt(opt.getSet().getOption("framedurationus").getResultValue(0));
+            }
+            if (opt.getSet().isSet("rectify")) {
+                spec.rectifyPolarities = Boolean.parseBoolean(opt.getSet().getOption("rectify").getResultValue(0));
+            }
+            if (opt.getSet().isSet("normalize")) {
+                spec.normalizeFrame = Boolean.parseBoolean(opt.getSet().getOption("normalize").getResultValue(0));
+            }
+            if (opt.getSet().isSet("writedvssliceonapsframe")) {
+                spec.writeDvsSliceImageOnApsFrame = Boolean.parseBoolean(opt.getSet().getOption("writedvssliceonapsframe").getResultValue(0));
+            }
+            if (opt.getSet().isSet("aps")) {
+                spec.apsFrames = Boolean.parseBoolean(opt.getSet().getOption("aps").getResultValue(0));
+            }
+            if (opt.getSet().isSet("labels")) {
+                spec.labels = Boolean.parseBoolean(opt.getSet().getOption("labels").getResultValue(0));
+            }
+            exporter.setSliceSpec(spec);
+            if (opt.getSet().isSet("labelsuffix")) {
+                exporter.setLabelsSuffix(opt.getSet().getOption("labelsuffix").getResultValue(0));
+            }
+            if (opt.getSet().isSet("shardframes")) {
+                exporter.setFramesPerShard(Integer.parseInt(opt.getSet().getOption("shardframes").getResultValue(0)));
+            }
+            if (opt.getSet().isSet("maxframes")) {
+                exporter.setMaxFrames(Integer.parseInt(opt.getSet().getOption("maxframes").getResultValue(0)));
+            }
+            if (opt.getSet().isSet("enablefilters")) {
+                exporter.setEnableFilters(Boolean.parseBoolean(opt.getSet().getOption("enablefilters").getResultValue(0)));
+            }
+            if (opt.getSet().isSet("threads")) {
+                exporter.setNumThreads(Integer.parseInt(opt.getSet().getOption("threads").getResultValue(0)));
+            }
+        } catch (ReflectiveOperationException | IllegalArgumentException e) { // NumberFormatException is an IllegalArgumentException
+            log.warning(e.toString());
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        ArrayList<File> files = new ArrayList<>();
+        for (String s : opt.getSet().getData()) {
+            File f = new File(s);
+            if (f.isDirectory()) {
+                files.addAll(listRecordings(f));
+            } else {
+                files.add(f);
+            }
+        }
+        if (files.isEmpty()) {
+            log.warning("no recordings found");
+            System.exit(1);
+        }
+        try {
+            FilterChainBatchRunner.exitWithResults(exporter.processAll(files), Result.CSV_HEADER, FilterChainBatchRunner.csvFileOption(opt));
+        } catch (InterruptedException | IOException e) {
+            log.warning(e.toString());
+            System.exit(1);
+        }
+    }
+}